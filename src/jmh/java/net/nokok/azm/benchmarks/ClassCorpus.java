@@ -0,0 +1,171 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.benchmarks;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.Opcodes;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The class files used as input by the benchmarks. The corpus contains the classes of this library
+ * and the JDK classes listed in the <tt>corpus.txt</tt> resource. The JDK classes must be supported
+ * by {@link ClassReader}, i.e. the benchmarks must run on a JDK whose class files are not newer
+ * than Java 10. Otherwise loading the corpus fails, unless the {@link #SKIP_UNSUPPORTED_PROPERTY}
+ * system property is <tt>true</tt>, in which case the unsupported classes are skipped with a
+ * warning and the results only measure the classes of this library.
+ */
+final class ClassCorpus {
+
+    /**
+     * The name of the system property allowing the JDK classes which can't be read to be skipped.
+     */
+    static final String SKIP_UNSUPPORTED_PROPERTY = "azm.corpus.skipUnsupported";
+
+    private ClassCorpus() {
+    }
+
+    /**
+     * Loads the class files of the corpus.
+     *
+     * @return the content of the class files of the corpus.
+     * @throws IOException if a class file can not be read.
+     * @throws IllegalStateException if some JDK classes of the corpus are not found or not supported
+     *     and {@link #SKIP_UNSUPPORTED_PROPERTY} is not set, or if the corpus is empty.
+     */
+    static List<byte[]> load() throws IOException {
+        List<byte[]> classFiles = new ArrayList<>();
+        List<String> skippedClassNames = new ArrayList<>();
+        List<String> corpusList = readCorpusList();
+        for (String className : corpusList) {
+            if (!addIfSupported(classFiles, ClassLoader.getSystemResourceAsStream(className + ".class"))) {
+                skippedClassNames.add(className);
+            }
+        }
+        if (!skippedClassNames.isEmpty()) {
+            String message =
+                    skippedClassNames.size()
+                            + " of the "
+                            + corpusList.size()
+                            + " JDK classes of the corpus are missing or newer than Java 10 (running on Java "
+                            + System.getProperty("java.specification.version")
+                            + "): "
+                            + skippedClassNames;
+            if (!Boolean.getBoolean(SKIP_UNSUPPORTED_PROPERTY)) {
+                throw new IllegalStateException(
+                        message + ". Run the benchmarks on Java 10 or earlier, or set -D"
+                                + SKIP_UNSUPPORTED_PROPERTY + "=true to benchmark the library classes only.");
+            }
+            System.err.println("WARNING: " + message + ". They are skipped.");
+        }
+        for (Path path : listLibraryClassFiles()) {
+            addIfSupported(classFiles, Files.newInputStream(path));
+        }
+        if (classFiles.isEmpty()) {
+            throw new IllegalStateException("Empty benchmark corpus");
+        }
+        return classFiles;
+    }
+
+    private static List<String> readCorpusList() throws IOException {
+        InputStream inputStream = ClassCorpus.class.getResourceAsStream("corpus.txt");
+        try (BufferedReader reader =
+                     new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            return reader
+                    .lines()
+                    .map(String::trim)
+                    .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<Path> listLibraryClassFiles() throws IOException {
+        Path root;
+        try {
+            root = Paths.get(ClassReader.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException(e);
+        }
+        if (!Files.isDirectory(root)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths
+                    .filter(path -> path.toString().endsWith(".class"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Adds the content of the given class file to the corpus, if its version is supported.
+     *
+     * @param classFiles the class files of the corpus.
+     * @param inputStream the class file to add, or <tt>null</tt> if it was not found.
+     * @return whether the class file was added.
+     * @throws IOException if the class file can not be read.
+     */
+    private static boolean addIfSupported(final List<byte[]> classFiles, final InputStream inputStream)
+            throws IOException {
+        if (inputStream == null) {
+            return false;
+        }
+        byte[] classFile;
+        try {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] data = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
+                outputStream.write(data, 0, bytesRead);
+            }
+            classFile = outputStream.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+        // The major_version field is after the magic and minor_version fields (4 and 2 bytes).
+        int majorVersion = ((classFile[6] & 0xFF) << 8) | (classFile[7] & 0xFF);
+        if (majorVersion > Opcodes.V10) {
+            return false;
+        }
+        classFiles.add(classFile);
+        return true;
+    }
+}
@@ -0,0 +1,118 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.benchmarks;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Utf8Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Measures the time needed to parse the classes of the {@link ClassCorpus} with {@link
+ * ClassReader#accept}, for each parsing option. The visitor visits the method bodies, so that the
+ * Code attributes are actually parsed when {@link ClassReader#SKIP_CODE} is not set.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class ClassReaderBenchmark {
+
+    /**
+     * The parsing options: none, {@link ClassReader#SKIP_CODE}, {@link ClassReader#SKIP_DEBUG},
+     * {@link ClassReader#SKIP_FRAMES} and {@link ClassReader#EXPAND_FRAMES}.
+     */
+    @Param({"0", "1", "2", "4", "8"})
+    public int parsingOptions;
+
+    private List<byte[]> classFiles;
+
+    private Utf8Cache utf8Cache;
+
+    @Setup
+    public void setUp() throws IOException {
+        classFiles = ClassCorpus.load();
+        utf8Cache = new Utf8Cache(16384);
+    }
+
+    @Benchmark
+    public void accept(final Blackhole blackhole) {
+        for (byte[] classFile : classFiles) {
+            ClassReader classReader = new ClassReader(classFile);
+            classReader.accept(new MethodBodyVisitor(blackhole), parsingOptions);
+        }
+    }
+
+    @Benchmark
+    public void acceptWithUtf8Cache(final Blackhole blackhole) {
+        for (byte[] classFile : classFiles) {
+            ClassReader classReader = new ClassReader(classFile);
+            classReader.setUtf8Cache(utf8Cache);
+            classReader.accept(new MethodBodyVisitor(blackhole), parsingOptions);
+        }
+    }
+
+    private static final class MethodBodyVisitor extends ClassVisitor {
+
+        private final MethodVisitor methodVisitor;
+
+        MethodBodyVisitor(final Blackhole blackhole) {
+            super(Opcodes.ASM6);
+            this.methodVisitor =
+                    new MethodVisitor(Opcodes.ASM6) {
+                        @Override
+                        public void visitInsn(final int opcode) {
+                            blackhole.consume(opcode);
+                        }
+                    };
+        }
+
+        @Override
+        public MethodVisitor visitMethod(
+                final int access,
+                final String name,
+                final String descriptor,
+                final String signature,
+                final String[] exceptions) {
+            return methodVisitor;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.benchmarks;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Measures the time needed to do a {@link ClassReader} to {@link ClassWriter} round trip of the
+ * classes of the {@link ClassCorpus}, with each {@link ClassWriter} option, and with the constant
+ * pool copy optimization of {@link ClassWriter#ClassWriter(ClassReader, int)}.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@State(Scope.Benchmark)
+public class ClassWriterBenchmark {
+
+    /**
+     * The {@link ClassWriter} options: none, {@link ClassWriter#COMPUTE_MAXS}, {@link
+     * ClassWriter#COMPUTE_FRAMES} and {@link ClassWriter#COMPUTE_FRAMES} with {@link
+     * ClassWriter#REUSE_FRAMES}.
+     */
+    @Param({"0", "1", "2", "6"})
+    public int flags;
+
+    private List<byte[]> classFiles;
+
+    @Setup
+    public void setUp() throws IOException {
+        classFiles = ClassCorpus.load();
+    }
+
+    /**
+     * Reads and writes each class with an adapter in between, so that each method is decoded and
+     * re-encoded.
+     */
+    @Benchmark
+    public void toByteArray(final Blackhole blackhole) {
+        int parsingOptions;
+        if ((flags & ClassWriter.REUSE_FRAMES) != 0) {
+            parsingOptions = ClassReader.EXPAND_FRAMES;
+        } else {
+            parsingOptions = (flags & ClassWriter.COMPUTE_FRAMES) != 0 ? ClassReader.SKIP_FRAMES : 0;
+        }
+        for (byte[] classFile : classFiles) {
+            ClassWriter classWriter = new ClassWriter(flags);
+            new ClassReader(classFile).accept(new ClassVisitor(Opcodes.ASM6, classWriter) {
+            }, parsingOptions);
+            blackhole.consume(classWriter.toByteArray());
+        }
+    }
+
+    /**
+     * Reads and writes each class without adapter in between, with a {@link ClassWriter} sharing
+     * the constant pool of the {@link ClassReader}, so that each method is copied as is.
+     */
+    @Benchmark
+    public void toByteArrayWithCopyPool(final Blackhole blackhole) {
+        for (byte[] classFile : classFiles) {
+            ClassReader classReader = new ClassReader(classFile);
+            ClassWriter classWriter = new ClassWriter(classReader, flags);
+            classReader.accept(classWriter, 0);
+            blackhole.consume(classWriter.toByteArray());
+        }
+    }
+
+    /**
+     * Same as {@link #toByteArrayWithCopyPool}, but with a single {@link ClassWriter} reused for all
+     * the classes with {@link ClassWriter#reset(ClassReader)}.
+     */
+    @Benchmark
+    public void toByteArrayWithReset(final Blackhole blackhole) {
+        ClassWriter classWriter = new ClassWriter(flags);
+        for (byte[] classFile : classFiles) {
+            ClassReader classReader = new ClassReader(classFile);
+            classWriter.reset(classReader);
+            classReader.accept(classWriter, 0);
+            blackhole.consume(classWriter.toByteArray());
+        }
+    }
+}
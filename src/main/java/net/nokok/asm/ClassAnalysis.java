@@ -0,0 +1,47 @@
+package net.nokok.asm;
+
+import net.nokok.azm.tree.analysis.Value;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+// 1クラスの解析結果。メソッドの結果はClassNode.methodsと同じ順序で並ぶ
+public final class ClassAnalysis<V extends Value> {
+    private final String className;
+    private final List<MethodAnalysis<V>> methods;
+
+    private ClassAnalysis(String className, List<MethodAnalysis<V>> methods) {
+        this.className = Objects.requireNonNull(className);
+        this.methods = Collections.unmodifiableList(methods);
+    }
+
+    static <V extends Value> ClassAnalysis<V> of(String className, List<MethodAnalysis<V>> methods) {
+        return new ClassAnalysis<>(className, methods);
+    }
+
+    // 内部名 (例: net/nokok/Foo)
+    public String getClassName() {
+        return this.className;
+    }
+
+    public List<MethodAnalysis<V>> getMethods() {
+        return this.methods;
+    }
+
+    public boolean isSuccessful() {
+        return this.methods.stream().allMatch(MethodAnalysis::isSuccessful);
+    }
+
+    public List<MethodAnalysis<V>> getFailures() {
+        return this.methods.stream()
+                .filter(m -> !m.isSuccessful())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return this.className + ": " + (isSuccessful() ? "OK" : getFailures().toString());
+    }
+}
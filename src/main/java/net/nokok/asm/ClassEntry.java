@@ -0,0 +1,49 @@
+package net.nokok.asm;
+
+import java.util.Objects;
+
+public final class ClassEntry {
+    private final String name;
+    private final byte[] content;
+
+    private ClassEntry(String name, byte[] content) {
+        this.name = Objects.requireNonNull(name);
+        this.content = Objects.requireNonNull(content);
+    }
+
+    public static ClassEntry of(String name, byte[] content) {
+        return new ClassEntry(name, content);
+    }
+
+    // jarのエントリ名 (例: net/nokok/Foo.class)
+    public String getName() {
+        return this.name;
+    }
+
+    public byte[] getContent() {
+        return this.content;
+    }
+
+    // module-infoは変換の対象外
+    public boolean isClassFile() {
+        return isClassFile(this.name);
+    }
+
+    // マルチリリースjarのMETA-INF/versions/以下のクラスを除いたクラスファイル
+    public boolean isBaseClassFile() {
+        return isBaseClassFile(this.name);
+    }
+
+    static boolean isClassFile(String name) {
+        return name.endsWith(".class") && !name.endsWith("module-info.class");
+    }
+
+    // META-INF/versions/以下のクラスは同じクラスの別バージョンで、ClassReaderがサポートしていないバージョンのこともある
+    static boolean isBaseClassFile(String name) {
+        return isClassFile(name) && !name.startsWith("META-INF/versions/");
+    }
+
+    ClassEntry withContent(byte[] newContent) {
+        return new ClassEntry(this.name, newContent);
+    }
+}
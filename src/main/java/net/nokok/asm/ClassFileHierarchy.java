@@ -0,0 +1,182 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.Opcodes;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+// クラスパス上のクラスファイルのヘッダだけを読んで型階層を求めるClassHierarchy
+// 解決済みの型はLRUキャッシュに保持されるので、複数のClassWriterやスレッドで共有して使う
+public class ClassFileHierarchy implements ClassHierarchy, Closeable {
+    private static final String OBJECT = "java/lang/Object";
+
+    private final List<Path> directories = new ArrayList<>();
+    private final List<JarFile> jarFiles = new ArrayList<>();
+    // 内部名 -> そのクラスを含むjar。クラスパスで先に現れたものが優先される
+    private final Map<String, JarFile> jarIndex = new ConcurrentHashMap<>();
+    private final ClassLoader fallbackClassLoader;
+    private final LruCache<String, TypeInfo> cache;
+
+    private ClassFileHierarchy(List<Path> classpath, ClassLoader fallbackClassLoader, int cacheSize) throws IOException {
+        this.fallbackClassLoader = fallbackClassLoader;
+        this.cache = new LruCache<>(cacheSize);
+        try {
+            for (Path path : classpath) {
+                if (Files.isDirectory(path)) {
+                    this.directories.add(path);
+                } else {
+                    JarFile jarFile = new JarFile(path.toFile());
+                    this.jarFiles.add(jarFile);
+                    for (JarEntry entry : Collections.list(jarFile.entries())) {
+                        String name = entry.getName();
+                        if (name.endsWith(".class")) {
+                            this.jarIndex.putIfAbsent(name.substring(0, name.length() - ".class".length()), jarFile);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // クラスパスに見つからない型(JDKのクラスなど)はシステムクラスローダーのリソースから読む
+    public static ClassFileHierarchy newHierarchy(List<Path> classpath) throws IOException {
+        return new ClassFileHierarchy(classpath, ClassLoader.getSystemClassLoader(), 10000);
+    }
+
+    // fallbackClassLoaderはnull可。クラスのロードには使わず、クラスファイルの読み込みだけに使う
+    public static ClassFileHierarchy newHierarchy(List<Path> classpath, ClassLoader fallbackClassLoader, int cacheSize) throws IOException {
+        return new ClassFileHierarchy(classpath, fallbackClassLoader, cacheSize);
+    }
+
+    @Override
+    public String getCommonSuperClass(String type1, String type2) {
+        TypeInfo info1 = resolve(type1);
+        TypeInfo info2 = resolve(type2);
+        if (info2.supertypes.contains(type1)) {
+            return type1;
+        }
+        if (info1.supertypes.contains(type2)) {
+            return type2;
+        }
+        if (info1.isInterface || info2.isInterface) {
+            return OBJECT;
+        }
+        TypeInfo current = info1;
+        do {
+            current = resolve(current.superName);
+        } while (!info2.supertypes.contains(current.name));
+        return current.name;
+    }
+
+    public boolean isInterface(String type) {
+        return resolve(type).isInterface;
+    }
+
+    public String getSuperName(String type) {
+        return resolve(type).superName;
+    }
+
+    private TypeInfo resolve(String type) {
+        TypeInfo info = this.cache.get(type);
+        if (info == null) {
+            info = load(type);
+            this.cache.put(type, info);
+        }
+        return info;
+    }
+
+    private TypeInfo load(String type) {
+        if (type.equals(OBJECT)) {
+            return new TypeInfo(OBJECT, false, null, Collections.singleton(OBJECT));
+        }
+        ClassReader reader = openClassFile(type);
+        boolean isInterface = (reader.getAccess() & Opcodes.ACC_INTERFACE) != 0;
+        String superName = reader.getSuperName();
+        Set<String> supertypes = new HashSet<>();
+        supertypes.add(type);
+        if (superName != null) {
+            supertypes.addAll(resolve(superName).supertypes);
+        }
+        for (String interfaceName : reader.getInterfaces()) {
+            supertypes.addAll(resolve(interfaceName).supertypes);
+        }
+        return new TypeInfo(type, isInterface, superName, supertypes);
+    }
+
+    // アクセスフラグ、スーパークラス、インタフェースだけを読むので、ClassReaderがサポートしていないバージョンのクラス(JDKのクラスなど)も読める
+    private ClassReader openClassFile(String type) {
+        try {
+            String fileName = type + ".class";
+            for (Path directory : this.directories) {
+                Path path = directory.resolve(fileName);
+                if (Files.isRegularFile(path)) {
+                    return ClassReader.newHeaderReader(Files.readAllBytes(path));
+                }
+            }
+            JarFile jarFile = this.jarIndex.get(type);
+            if (jarFile != null) {
+                try (InputStream input = jarFile.getInputStream(jarFile.getEntry(fileName))) {
+                    return ClassReader.newHeaderReader(input.readAllBytes());
+                }
+            }
+            if (this.fallbackClassLoader != null) {
+                InputStream input = this.fallbackClassLoader.getResourceAsStream(fileName);
+                if (input != null) {
+                    try (InputStream in = input) {
+                        return ClassReader.newHeaderReader(in.readAllBytes());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        throw new TypeNotPresentException(type, null);
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (JarFile jarFile : this.jarFiles) {
+            try {
+                jarFile.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static final class TypeInfo {
+        private final String name;
+        private final boolean isInterface;
+        private final String superName;
+        // 自身と全てのスーパークラス、スーパーインターフェース
+        private final Set<String> supertypes;
+
+        private TypeInfo(String name, boolean isInterface, String superName, Set<String> supertypes) {
+            this.name = name;
+            this.isInterface = isInterface;
+            this.superName = superName;
+            this.supertypes = supertypes;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package net.nokok.asm;
+
+// COMPUTE_FRAMESでのスタックマップフレーム計算時に、クラスをロードせずに型の共通スーパークラスを求める
+public interface ClassHierarchy {
+    String getCommonSuperClass(String type1, String type2);
+}
@@ -0,0 +1,350 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.Opcodes;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// クラスファイルのヘッダ(とクラスのアノテーション)だけを読んで作るクラスの索引
+// 名前はidに変換し、各クラスの情報はidの配列で保持する。サブクラスやアノテーションからの逆引き用の配列も構築時に作る
+public final class ClassIndex {
+    private static final int NONE = -1;
+
+    // 名前のid -> 内部名
+    private final String[] names;
+    private final Map<String, Integer> nameIds;
+    // 名前のid -> クラスの番号。索引にないクラスはNONE
+    private final int[] classOfName;
+    // クラスの番号 -> 名前のid, スーパークラスの名前のid(なければNONE), アクセスフラグ
+    private final int[] classNames;
+    private final int[] superNames;
+    private final int[] accessFlags;
+    // クラスcのインタフェースはinterfaceNames[interfaceStarts[c]] ~ interfaceNames[interfaceStarts[c + 1] - 1]
+    private final int[] interfaceStarts;
+    private final int[] interfaceNames;
+    private final int[] annotationStarts;
+    private final int[] annotationNames;
+    // 名前のid -> そのクラスを直接継承・実装するクラスの番号、そのアノテーションを持つクラスの番号
+    private final int[] subclassStarts;
+    private final int[] subclasses;
+    private final int[] annotatedStarts;
+    private final int[] annotatedClasses;
+    // 読めなかったクラスファイル (jarのパス!/エントリ名、またはファイルのパス)
+    private final List<String> unreadableClassFiles;
+
+    private ClassIndex(List<Header> headers, List<String> unreadableClassFiles) {
+        this.unreadableClassFiles = List.copyOf(unreadableClassFiles);
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> nameList = new ArrayList<>();
+        int classCount = headers.size();
+        this.classNames = new int[classCount];
+        this.superNames = new int[classCount];
+        this.accessFlags = new int[classCount];
+        this.interfaceStarts = new int[classCount + 1];
+        this.annotationStarts = new int[classCount + 1];
+        int interfaceCount = 0;
+        int annotationCount = 0;
+        for (int c = 0; c < classCount; c++) {
+            Header header = headers.get(c);
+            this.classNames[c] = id(ids, nameList, header.name);
+            interfaceCount += header.interfaces.length;
+            annotationCount += header.annotations.length;
+        }
+        this.interfaceNames = new int[interfaceCount];
+        this.annotationNames = new int[annotationCount];
+        for (int c = 0; c < classCount; c++) {
+            Header header = headers.get(c);
+            this.superNames[c] = header.superName == null ? NONE : id(ids, nameList, header.superName);
+            this.accessFlags[c] = header.access;
+            int interfaceStart = this.interfaceStarts[c];
+            for (int i = 0; i < header.interfaces.length; i++) {
+                this.interfaceNames[interfaceStart + i] = id(ids, nameList, header.interfaces[i]);
+            }
+            this.interfaceStarts[c + 1] = interfaceStart + header.interfaces.length;
+            int annotationStart = this.annotationStarts[c];
+            for (int i = 0; i < header.annotations.length; i++) {
+                this.annotationNames[annotationStart + i] = id(ids, nameList, header.annotations[i]);
+            }
+            this.annotationStarts[c + 1] = annotationStart + header.annotations.length;
+        }
+        this.names = nameList.toArray(new String[0]);
+        this.nameIds = ids;
+        this.classOfName = new int[this.names.length];
+        Arrays.fill(this.classOfName, NONE);
+        for (int c = 0; c < classCount; c++) {
+            this.classOfName[this.classNames[c]] = c;
+        }
+
+        // 逆引き: 各名前のidを参照するクラスを数えてから詰める
+        int nameCount = this.names.length;
+        this.subclassStarts = new int[nameCount + 1];
+        for (int c = 0; c < classCount; c++) {
+            if (this.superNames[c] != NONE) {
+                this.subclassStarts[this.superNames[c] + 1]++;
+            }
+            for (int i = this.interfaceStarts[c]; i < this.interfaceStarts[c + 1]; i++) {
+                this.subclassStarts[this.interfaceNames[i] + 1]++;
+            }
+        }
+        this.subclasses = fill(this.subclassStarts, c -> {
+            int[] supertypes = new int[1 + this.interfaceStarts[c + 1] - this.interfaceStarts[c]];
+            supertypes[0] = this.superNames[c];
+            System.arraycopy(this.interfaceNames, this.interfaceStarts[c], supertypes, 1, supertypes.length - 1);
+            return supertypes;
+        }, classCount);
+        this.annotatedStarts = new int[nameCount + 1];
+        for (int i = 0; i < annotationCount; i++) {
+            this.annotatedStarts[this.annotationNames[i] + 1]++;
+        }
+        this.annotatedClasses = fill(this.annotatedStarts,
+                c -> Arrays.copyOfRange(this.annotationNames, this.annotationStarts[c], this.annotationStarts[c + 1]),
+                classCount);
+    }
+
+    // startsには各名前のidの件数がstarts[id + 1]に入っている。累積して開始位置にし、クラスの番号を詰める
+    private static int[] fill(int[] starts, IntFunction<int[]> referencedNames, int classCount) {
+        for (int i = 1; i < starts.length; i++) {
+            starts[i] += starts[i - 1];
+        }
+        int[] values = new int[starts[starts.length - 1]];
+        int[] positions = Arrays.copyOf(starts, starts.length - 1);
+        for (int c = 0; c < classCount; c++) {
+            for (int nameId : referencedNames.apply(c)) {
+                if (nameId != NONE) {
+                    values[positions[nameId]++] = c;
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int id(Map<String, Integer> ids, List<String> nameList, String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = nameList.size();
+            ids.put(name, id);
+            nameList.add(name);
+        }
+        return id;
+    }
+
+    // クラスパスの要素(jarまたはディレクトリ)を並列に読む。同じ名前のクラスはクラスパスで先に現れたものが優先される
+    public static ClassIndex build(List<Path> classpath, boolean withAnnotations) throws IOException {
+        return build(classpath, withAnnotations, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static ClassIndex build(List<Path> classpath, boolean withAnnotations, int parallelism) throws IOException {
+        List<JarFile> jarFiles = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Callable<Header>> tasks = new ArrayList<>();
+            for (Path path : classpath) {
+                if (Files.isDirectory(path)) {
+                    try (Stream<Path> files = Files.walk(path)) {
+                        for (Path file : files.filter(f -> ClassEntry.isBaseClassFile(ClassPipeline.toEntryName(path, f))).sorted().collect(Collectors.toList())) {
+                            tasks.add(() -> readHeader(file.toString(), Files.readAllBytes(file), withAnnotations));
+                        }
+                    }
+                } else {
+                    JarFile jarFile = new JarFile(path.toFile());
+                    jarFiles.add(jarFile);
+                    for (JarEntry entry : jarFile.stream().filter(e -> ClassEntry.isBaseClassFile(e.getName())).collect(Collectors.toList())) {
+                        tasks.add(() -> readHeader(path + "!/" + entry.getName(), ClassPipeline.readAllBytes(jarFile, entry), withAnnotations));
+                    }
+                }
+            }
+            Map<String, Boolean> defined = new HashMap<>();
+            List<Header> headers = new ArrayList<>();
+            List<String> unreadable = new ArrayList<>();
+            ArrayDeque<Future<Header>> inFlight = new ArrayDeque<>();
+            int maxInFlight = 64 * parallelism;
+            for (Callable<Header> task : tasks) {
+                if (inFlight.size() >= maxInFlight) {
+                    add(ClassPipeline.await(inFlight.poll()), defined, headers, unreadable);
+                }
+                inFlight.add(pool.submit(task));
+            }
+            while (!inFlight.isEmpty()) {
+                add(ClassPipeline.await(inFlight.poll()), defined, headers, unreadable);
+            }
+            return new ClassIndex(headers, unreadable);
+        } finally {
+            pool.shutdownNow();
+            for (JarFile jarFile : jarFiles) {
+                jarFile.close();
+            }
+        }
+    }
+
+    // 読めなかったクラスファイルは索引に含めず、getUnreadableClassFilesで返す
+    private static void add(Header header, Map<String, Boolean> defined, List<Header> headers, List<String> unreadable) {
+        if (header.name == null) {
+            unreadable.add(header.source);
+        } else if (defined.putIfAbsent(header.name, Boolean.TRUE) == null) {
+            headers.add(header);
+        }
+    }
+
+    // ヘッダ(定数プール、アクセスフラグ、名前、アノテーション)だけを読むので、ClassReaderがサポートしていないバージョンのクラスも読める
+    // 壊れたクラスファイルや未知の定数プールのタグを使うクラスファイルは読めないので、nameがnullのHeaderを返す
+    private static Header readHeader(String source, byte[] classFile, boolean withAnnotations) {
+        try {
+            ClassReader reader = ClassReader.newHeaderReader(classFile);
+            String[] annotations = withAnnotations ? reader.getAnnotationDescriptors() : new String[0];
+            for (int i = 0; i < annotations.length; i++) {
+                // 記述子(Lfoo/Bar;)を内部名にする
+                annotations[i] = annotations[i].substring(1, annotations[i].length() - 1);
+            }
+            return new Header(source, reader.getClassName(), reader.getSuperName(), reader.getInterfaces(), reader.getAccess(), annotations);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            return new Header(source, null, null, new String[0], 0, new String[0]);
+        }
+    }
+
+    // 読めずに索引に含めなかったクラスファイル。空でなければ問い合わせの結果は不完全
+    public List<String> getUnreadableClassFiles() {
+        return this.unreadableClassFiles;
+    }
+
+    public int size() {
+        return this.classNames.length;
+    }
+
+    public boolean contains(String name) {
+        return classOf(name) != NONE;
+    }
+
+    public List<String> getClassNames() {
+        return toNames(this.classNames, 0, this.classNames.length);
+    }
+
+    // 索引にないクラスの場合は-1
+    public int getAccess(String name) {
+        int c = classOf(name);
+        return c == NONE ? -1 : this.accessFlags[c];
+    }
+
+    public boolean isInterface(String name) {
+        int c = classOf(name);
+        return c != NONE && (this.accessFlags[c] & Opcodes.ACC_INTERFACE) != 0;
+    }
+
+    // java/lang/Objectや索引にないクラスの場合はnull
+    public String getSuperName(String name) {
+        int c = classOf(name);
+        return c == NONE || this.superNames[c] == NONE ? null : this.names[this.superNames[c]];
+    }
+
+    public List<String> getInterfaces(String name) {
+        int c = classOf(name);
+        return c == NONE ? List.of() : toNames(this.interfaceNames, this.interfaceStarts[c], this.interfaceStarts[c + 1]);
+    }
+
+    // アノテーションの内部名 (例: java/lang/Deprecated)
+    public List<String> getAnnotations(String name) {
+        int c = classOf(name);
+        return c == NONE ? List.of() : toNames(this.annotationNames, this.annotationStarts[c], this.annotationStarts[c + 1]);
+    }
+
+    // nameを直接継承・実装するクラス
+    public List<String> getDirectSubclasses(String name) {
+        Integer id = this.nameIds.get(name);
+        if (id == null) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = this.subclassStarts[id]; i < this.subclassStarts[id + 1]; i++) {
+            result.add(this.names[this.classNames[this.subclasses[i]]]);
+        }
+        return result;
+    }
+
+    // nameを直接または間接に継承・実装する全てのクラス。nameは索引になくてもよい (例: JDKのクラス)
+    public List<String> getAllSubclasses(String name) {
+        Integer id = this.nameIds.get(name);
+        if (id == null) {
+            return List.of();
+        }
+        boolean[] visited = new boolean[this.classNames.length];
+        int[] queue = new int[this.classNames.length];
+        int head = 0;
+        int tail = 0;
+        List<String> result = new ArrayList<>();
+        int nameId = id;
+        while (true) {
+            for (int i = this.subclassStarts[nameId]; i < this.subclassStarts[nameId + 1]; i++) {
+                int c = this.subclasses[i];
+                if (!visited[c]) {
+                    visited[c] = true;
+                    queue[tail++] = c;
+                    result.add(this.names[this.classNames[c]]);
+                }
+            }
+            if (head == tail) {
+                return result;
+            }
+            nameId = this.classNames[queue[head++]];
+        }
+    }
+
+    // annotationの内部名 (例: java/lang/Deprecated) のアノテーションを持つクラス
+    public List<String> getAnnotatedClasses(String annotation) {
+        Integer id = this.nameIds.get(annotation);
+        if (id == null) {
+            return List.of();
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = this.annotatedStarts[id]; i < this.annotatedStarts[id + 1]; i++) {
+            result.add(this.names[this.classNames[this.annotatedClasses[i]]]);
+        }
+        return result;
+    }
+
+    private int classOf(String name) {
+        Integer id = this.nameIds.get(name);
+        return id == null ? NONE : this.classOfName[id];
+    }
+
+    private List<String> toNames(int[] ids, int start, int end) {
+        List<String> result = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            result.add(this.names[ids[i]]);
+        }
+        return result;
+    }
+
+    private static final class Header {
+        final String source;
+        final String name;
+        final String superName;
+        final String[] interfaces;
+        final int access;
+        final String[] annotations;
+
+        Header(String source, String name, String superName, String[] interfaces, int access, String[] annotations) {
+            this.source = source;
+            this.name = name;
+            this.superName = superName;
+            this.interfaces = interfaces;
+            this.access = access;
+            this.annotations = annotations;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package net.nokok.asm;
+
+import net.nokok.azm.MetricsListener;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+// ClassReader/ClassWriterのMetricsListenerとして、全スレッドの計測値を集計する
+public final class ClassMetrics extends MetricsListener implements ClassMetricsMXBean {
+    private final LongAdder classesRead = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder constantPoolEntriesRead = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder classesWritten = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder symbolTableEntries = new LongAdder();
+    private final LongAdder symbolTableCollisions = new LongAdder();
+    private final LongAdder frameComputations = new LongAdder();
+    private final LongAdder frameComputationNanos = new LongAdder();
+    private final LongAdder commonSuperClassCalls = new LongAdder();
+    private final LongAdder commonSuperClassNanos = new LongAdder();
+    // 読み込みに最も時間がかかったクラスと、フレーム計算に最も時間がかかったメソッド。時間の単位が異なるので別々に集計する
+    private final Slowest slowestClass = new Slowest();
+    private final Slowest slowestFrameComputation = new Slowest();
+
+    private ClassMetrics() {
+    }
+
+    public static ClassMetrics newMetrics() {
+        return new ClassMetrics();
+    }
+
+    // プラットフォームのMBeanServerに登録する。nameは"net.nokok.asm:type=ClassMetrics"のようなObjectName
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void classRead(String className, int classFileLength, int constantPoolSize, long nanos) {
+        this.classesRead.increment();
+        this.bytesRead.add(classFileLength);
+        this.constantPoolEntriesRead.add(constantPoolSize);
+        this.readNanos.add(nanos);
+        this.slowestClass.update(className, null, null, nanos);
+    }
+
+    @Override
+    public void classWritten(String className, int classFileLength, int symbolCount, int symbolCollisions) {
+        this.classesWritten.increment();
+        this.bytesWritten.add(classFileLength);
+        this.symbolTableEntries.add(symbolCount);
+        this.symbolTableCollisions.add(symbolCollisions);
+    }
+
+    @Override
+    public void framesComputed(String className, String methodName, String methodDescriptor, long nanos) {
+        this.frameComputations.increment();
+        this.frameComputationNanos.add(nanos);
+        this.slowestFrameComputation.update(className, methodName, methodDescriptor, nanos);
+    }
+
+    @Override
+    public void commonSuperClassComputed(String type1, String type2, long nanos) {
+        this.commonSuperClassCalls.increment();
+        this.commonSuperClassNanos.add(nanos);
+    }
+
+    @Override
+    public long getClassesRead() {
+        return this.classesRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    @Override
+    public long getConstantPoolEntriesRead() {
+        return this.constantPoolEntriesRead.sum();
+    }
+
+    @Override
+    public long getReadNanos() {
+        return this.readNanos.sum();
+    }
+
+    @Override
+    public long getClassesWritten() {
+        return this.classesWritten.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    @Override
+    public long getSymbolTableEntries() {
+        return this.symbolTableEntries.sum();
+    }
+
+    @Override
+    public long getSymbolTableCollisions() {
+        return this.symbolTableCollisions.sum();
+    }
+
+    @Override
+    public long getFrameComputations() {
+        return this.frameComputations.sum();
+    }
+
+    @Override
+    public long getFrameComputationNanos() {
+        return this.frameComputationNanos.sum();
+    }
+
+    @Override
+    public long getCommonSuperClassCalls() {
+        return this.commonSuperClassCalls.sum();
+    }
+
+    @Override
+    public long getCommonSuperClassNanos() {
+        return this.commonSuperClassNanos.sum();
+    }
+
+    @Override
+    public String getSlowestClass() {
+        return this.slowestClass.getName();
+    }
+
+    @Override
+    public long getSlowestClassNanos() {
+        return this.slowestClass.nanos;
+    }
+
+    @Override
+    public String getSlowestFrameComputation() {
+        return this.slowestFrameComputation.getName();
+    }
+
+    @Override
+    public long getSlowestFrameComputationNanos() {
+        return this.slowestFrameComputation.nanos;
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{this.classesRead, this.bytesRead, this.constantPoolEntriesRead, this.readNanos, this.classesWritten, this.bytesWritten, this.symbolTableEntries, this.symbolTableCollisions, this.frameComputations, this.frameComputationNanos, this.commonSuperClassCalls, this.commonSuperClassNanos}) {
+            adder.reset();
+        }
+        this.slowestClass.reset();
+        this.slowestFrameComputation.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassMetrics{classesRead=" + getClassesRead() + ", classesWritten=" + getClassesWritten() + ", frameComputations=" + getFrameComputations() + ", commonSuperClassCalls=" + getCommonSuperClassCalls() + ", slowestClass=" + getSlowestClass() + ", slowestFrameComputation=" + getSlowestFrameComputation() + "}";
+    }
+
+    // 最大値の更新は稀なので、最大値を超えた場合のみロックする
+    // メソッドの場合は名前の文字列を更新時には作らず、取得時に作る
+    private static final class Slowest {
+        private String className;
+        private String methodName;
+        private String methodDescriptor;
+        private volatile long nanos;
+
+        void update(String className, String methodName, String methodDescriptor, long nanos) {
+            if (nanos <= this.nanos) {
+                return;
+            }
+            synchronized (this) {
+                if (nanos > this.nanos) {
+                    this.className = className;
+                    this.methodName = methodName;
+                    this.methodDescriptor = methodDescriptor;
+                    this.nanos = nanos;
+                }
+            }
+        }
+
+        // クラスの内部名、メソッドの場合は"クラスの内部名.メソッド名記述子" (例: foo/Bar.f(I)V)
+        synchronized String getName() {
+            return this.methodName == null ? this.className : this.className + "." + this.methodName + this.methodDescriptor;
+        }
+
+        synchronized void reset() {
+            this.className = null;
+            this.methodName = null;
+            this.methodDescriptor = null;
+            this.nanos = 0;
+        }
+    }
+}
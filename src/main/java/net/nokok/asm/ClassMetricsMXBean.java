@@ -0,0 +1,40 @@
+package net.nokok.asm;
+
+// JMXで公開するClassMetricsの集計値。時間は全てナノ秒
+public interface ClassMetricsMXBean {
+    long getClassesRead();
+
+    long getBytesRead();
+
+    long getConstantPoolEntriesRead();
+
+    long getReadNanos();
+
+    long getClassesWritten();
+
+    long getBytesWritten();
+
+    long getSymbolTableEntries();
+
+    long getSymbolTableCollisions();
+
+    long getFrameComputations();
+
+    long getFrameComputationNanos();
+
+    long getCommonSuperClassCalls();
+
+    long getCommonSuperClassNanos();
+
+    // 読み込みに最も時間がかかったクラスとその時間
+    String getSlowestClass();
+
+    long getSlowestClassNanos();
+
+    // フレーム計算に最も時間がかかったメソッド (例: foo/Bar.f(I)V) とその時間
+    String getSlowestFrameComputation();
+
+    long getSlowestFrameComputationNanos();
+
+    void reset();
+}
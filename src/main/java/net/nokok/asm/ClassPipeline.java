@@ -0,0 +1,261 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.MetricsListener;
+import net.nokok.azm.Utf8Cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+public class ClassPipeline {
+    private final Function<ClassVisitor, ClassVisitor> visitorChain;
+    private final int parsingOptions;
+    private final int writerFlags;
+    private final int parallelism;
+    private final int maxInFlight;
+    private final ClassHierarchy classHierarchy;
+    private final Utf8Cache utf8Cache;
+    private final TransformCache transformCache;
+    private final MetricsListener metricsListener;
+
+    private ClassPipeline(
+            Function<ClassVisitor, ClassVisitor> visitorChain,
+            int parsingOptions,
+            int writerFlags,
+            int parallelism,
+            int maxInFlight,
+            ClassHierarchy classHierarchy,
+            Utf8Cache utf8Cache,
+            TransformCache transformCache,
+            MetricsListener metricsListener) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.visitorChain = Objects.requireNonNull(visitorChain);
+        this.parsingOptions = parsingOptions;
+        this.writerFlags = writerFlags;
+        this.parallelism = parallelism;
+        this.maxInFlight = maxInFlight;
+        this.classHierarchy = classHierarchy;
+        this.utf8Cache = utf8Cache;
+        this.transformCache = transformCache;
+        this.metricsListener = metricsListener;
+    }
+
+    // visitorChainはClassWriterを受け取り、その前段となるClassVisitorを返す。スレッド毎・クラス毎に呼ばれる
+    public static ClassPipeline newPipeline(Function<ClassVisitor, ClassVisitor> visitorChain) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new ClassPipeline(visitorChain, 0, 0, processors, 4 * processors, null, null, null, null);
+    }
+
+    public ClassPipeline withParsingOptions(int parsingOptions) {
+        return new ClassPipeline(this.visitorChain, parsingOptions, this.writerFlags, this.parallelism, this.maxInFlight, this.classHierarchy, this.utf8Cache, this.transformCache, this.metricsListener);
+    }
+
+    public ClassPipeline withWriterFlags(int writerFlags) {
+        return new ClassPipeline(this.visitorChain, this.parsingOptions, writerFlags, this.parallelism, this.maxInFlight, this.classHierarchy, this.utf8Cache, this.transformCache, this.metricsListener);
+    }
+
+    public ClassPipeline withParallelism(int parallelism) {
+        return new ClassPipeline(this.visitorChain, this.parsingOptions, this.writerFlags, parallelism, this.maxInFlight, this.classHierarchy, this.utf8Cache, this.transformCache, this.metricsListener);
+    }
+
+    // 同時に処理中(読み込み済みで未出力)のエントリ数の上限。メモリ使用量を抑えるために使う
+    public ClassPipeline withMaxInFlight(int maxInFlight) {
+        return new ClassPipeline(this.visitorChain, this.parsingOptions, this.writerFlags, this.parallelism, maxInFlight, this.classHierarchy, this.utf8Cache, this.transformCache, this.metricsListener);
+    }
+
+    // COMPUTE_FRAMESの際に、クラスをロードせずにClassHierarchyから共通スーパークラスを求める
+    public ClassPipeline withClassHierarchy(ClassHierarchy classHierarchy) {
+        return new ClassPipeline(this.visitorChain, this.parsingOptions, this.writerFlags, this.parallelism, this.maxInFlight, Objects.requireNonNull(classHierarchy), this.utf8Cache, this.transformCache, this.metricsListener);
+    }
+
+    // 全スレッドのClassReaderで共有され、共通の文字列(java/lang/Objectなど)のデコードを一度で済ませる
+    public ClassPipeline withUtf8Cache(Utf8Cache utf8Cache) {
+        return new ClassPipeline(this.visitorChain, this.parsingOptions, this.writerFlags, this.parallelism, this.maxInFlight, this.classHierarchy, Objects.requireNonNull(utf8Cache), this.transformCache, this.metricsListener);
+    }
+
+    // 同じクラスファイルの変換結果はtransformCacheから読む。キャッシュのフィンガープリントはvisitorChainなどの設定に対応させる
+    public ClassPipeline withTransformCache(TransformCache transformCache) {
+        return new ClassPipeline(this.visitorChain, this.parsingOptions, this.writerFlags, this.parallelism, this.maxInFlight, this.classHierarchy, this.utf8Cache, Objects.requireNonNull(transformCache), this.metricsListener);
+    }
+
+    // 全スレッドのClassReader/ClassWriterに設定される。スレッドセーフである必要がある(ClassMetricsなど)
+    public ClassPipeline withMetricsListener(MetricsListener metricsListener) {
+        return new ClassPipeline(this.visitorChain, this.parsingOptions, this.writerFlags, this.parallelism, this.maxInFlight, this.classHierarchy, this.utf8Cache, this.transformCache, Objects.requireNonNull(metricsListener));
+    }
+
+    public byte[] transform(byte[] classFile) {
+        if (this.transformCache != null) {
+            return this.transformCache.computeIfAbsent(classFile, this::transformClassFile);
+        }
+        return transformClassFile(classFile);
+    }
+
+    private byte[] transformClassFile(byte[] classFile) {
+        ClassReader reader = new ClassReader(classFile);
+        reader.setUtf8Cache(this.utf8Cache);
+        reader.setMetricsListener(this.metricsListener);
+        // 定数プールをコピーすることで、変換されなかったメソッドはそのままコピーされる
+        ClassWriter writer = this.classHierarchy == null
+                ? new ClassWriter(reader, this.writerFlags)
+                : new HierarchyClassWriter(reader, this.classHierarchy, this.writerFlags);
+        writer.setMetricsListener(this.metricsListener);
+        reader.accept(this.visitorChain.apply(writer), this.parsingOptions);
+        return writer.toByteArray();
+    }
+
+    // クラスファイル以外のエントリと、マルチリリースjarのMETA-INF/versions/以下のクラスはそのまま返す
+    public ClassEntry transform(ClassEntry entry) {
+        if (!entry.isBaseClassFile()) {
+            return entry;
+        }
+        return entry.withContent(transform(entry.getContent()));
+    }
+
+    // entriesと同じ順序でoutputに渡す
+    public void transform(Iterator<ClassEntry> entries, Consumer<ClassEntry> output) {
+        ExecutorService pool = Executors.newFixedThreadPool(this.parallelism);
+        try {
+            ArrayDeque<Future<ClassEntry>> inFlight = new ArrayDeque<>();
+            while (entries.hasNext()) {
+                if (inFlight.size() >= this.maxInFlight) {
+                    output.accept(await(inFlight.poll()));
+                }
+                ClassEntry entry = entries.next();
+                inFlight.add(pool.submit(() -> transform(entry)));
+            }
+            while (!inFlight.isEmpty()) {
+                output.accept(await(inFlight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    public void transform(Stream<ClassEntry> entries, Consumer<ClassEntry> output) {
+        transform(entries.iterator(), output);
+    }
+
+    // 出力jarのエントリは入力jarと同じ順に並ぶ。ただしマニフェストは先頭に置く
+    public void transformJar(Path inputJar, Path outputJar) throws IOException {
+        try (JarFile jarFile = new JarFile(inputJar.toFile());
+             JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(outputJar))) {
+            List<JarEntry> jarEntries = manifestFirst(jarFile.stream().filter(e -> !e.isDirectory()), JarEntry::getName);
+            Iterator<ClassEntry> entries = jarEntries.stream()
+                    .map(e -> ClassEntry.of(e.getName(), readAllBytes(jarFile, e)))
+                    .iterator();
+            transform(entries, entry -> writeEntry(jarOutput, entry));
+        }
+    }
+
+    public void transformDirectory(Path inputDirectory, Path outputJar) throws IOException {
+        List<String> names;
+        try (Stream<Path> paths = Files.walk(inputDirectory)) {
+            names = manifestFirst(paths.filter(Files::isRegularFile).map(p -> toEntryName(inputDirectory, p)).sorted(), name -> name);
+        }
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(outputJar))) {
+            Iterator<ClassEntry> entries = names.stream()
+                    .map(name -> ClassEntry.of(name, readAllBytes(inputDirectory.resolve(name))))
+                    .iterator();
+            transform(entries, entry -> writeEntry(jarOutput, entry));
+        }
+    }
+
+    // JarInputStreamはマニフェストが先頭(META-INF/の直後)にある場合にしか読めないため、マニフェストを先頭に移す
+    static <T> List<T> manifestFirst(Stream<T> entries, Function<T, String> nameOf) {
+        List<T> result = new ArrayList<>();
+        entries.forEach(entry -> {
+            if (nameOf.apply(entry).equalsIgnoreCase(JarFile.MANIFEST_NAME)) {
+                result.add(0, entry);
+            } else {
+                result.add(entry);
+            }
+        });
+        return result;
+    }
+
+    static String toEntryName(Path root, Path file) {
+        return root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    static byte[] readAllBytes(JarFile jarFile, JarEntry entry) {
+        try (InputStream input = jarFile.getInputStream(entry)) {
+            if (entry.getSize() >= 0) {
+                byte[] content = new byte[(int) entry.getSize()];
+                new DataInputStream(input).readFully(content);
+                return content;
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                content.write(buffer, 0, bytesRead);
+            }
+            return content.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] readAllBytes(Path file) {
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeEntry(JarOutputStream jarOutput, ClassEntry entry) {
+        try {
+            jarOutput.putNextEntry(new JarEntry(entry.getName()));
+            jarOutput.write(entry.getContent());
+            jarOutput.closeEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+
+import java.util.Objects;
+
+// getCommonSuperClassをClassHierarchyに委譲するClassWriter。Class.forNameによるクラスのロードを行わない
+public class HierarchyClassWriter extends ClassWriter {
+    private final ClassHierarchy classHierarchy;
+
+    public HierarchyClassWriter(ClassHierarchy classHierarchy, int flags) {
+        this(null, classHierarchy, flags);
+    }
+
+    public HierarchyClassWriter(ClassReader classReader, ClassHierarchy classHierarchy, int flags) {
+        super(classReader, flags);
+        this.classHierarchy = Objects.requireNonNull(classHierarchy);
+    }
+
+    @Override
+    protected String getCommonSuperClass(String type1, String type2) {
+        return this.classHierarchy.getCommonSuperClass(type1, type2);
+    }
+}
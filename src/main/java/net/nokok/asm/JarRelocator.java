@@ -0,0 +1,290 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.commons.ClassRemapper;
+import net.nokok.azm.commons.Remapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+// jarのクラスとリソースのパッケージを移動する(シェーディング)
+// 移動対象のパッケージを参照しないクラスは、定数プールだけを調べてそのままコピーする
+public class JarRelocator {
+    private static final String SERVICES = "META-INF/services/";
+    private static final String VERSIONS = "META-INF/versions/";
+
+    // 移動元と移動先のパッケージの接頭辞 (例: com/google/ -> shaded/com/google/)。長い順に並ぶ
+    private final String[] fromPrefixes;
+    private final String[] toPrefixes;
+    // fromPrefixesの末尾の/を除いた修正UTF-8表現。定数プールの走査に使う
+    // module-infoのexports/opensやCONSTANT_Packageのパッケージ名は末尾に/がないため、/なしで調べる
+    private final byte[][] fromPrefixBytes;
+    private final int parallelism;
+    private final int maxInFlight;
+    private final Remapper remapper;
+
+    private JarRelocator(String[] fromPrefixes, String[] toPrefixes, int parallelism, int maxInFlight) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive: " + maxInFlight);
+        }
+        this.fromPrefixes = fromPrefixes;
+        this.toPrefixes = toPrefixes;
+        this.fromPrefixBytes = new byte[fromPrefixes.length][];
+        for (int i = 0; i < fromPrefixes.length; i++) {
+            this.fromPrefixBytes[i] = fromPrefixes[i].substring(0, fromPrefixes[i].length() - 1).getBytes(StandardCharsets.UTF_8);
+        }
+        this.parallelism = parallelism;
+        this.maxInFlight = maxInFlight;
+        this.remapper = new PackageRemapper();
+    }
+
+    public static JarRelocator newRelocator() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new JarRelocator(new String[0], new String[0], processors, 4 * processors);
+    }
+
+    // パッケージ名は com.google.common と com/google/common のどちらの形式でもよい。サブパッケージも移動する
+    public JarRelocator withRelocation(String fromPackage, String toPackage) {
+        String from = toPrefix(fromPackage);
+        String to = toPrefix(toPackage);
+        int count = this.fromPrefixes.length;
+        String[] newFromPrefixes = Arrays.copyOf(this.fromPrefixes, count + 1);
+        String[] newToPrefixes = Arrays.copyOf(this.toPrefixes, count + 1);
+        // より長い(具体的な)接頭辞を先に調べるように挿入する
+        int index = count;
+        while (index > 0 && newFromPrefixes[index - 1].length() < from.length()) {
+            newFromPrefixes[index] = newFromPrefixes[index - 1];
+            newToPrefixes[index] = newToPrefixes[index - 1];
+            index--;
+        }
+        newFromPrefixes[index] = from;
+        newToPrefixes[index] = to;
+        return new JarRelocator(newFromPrefixes, newToPrefixes, this.parallelism, this.maxInFlight);
+    }
+
+    public JarRelocator withParallelism(int parallelism) {
+        return new JarRelocator(this.fromPrefixes, this.toPrefixes, parallelism, this.maxInFlight);
+    }
+
+    // 同時に処理中(読み込み済みで未出力)のエントリ数の上限
+    public JarRelocator withMaxInFlight(int maxInFlight) {
+        return new JarRelocator(this.fromPrefixes, this.toPrefixes, this.parallelism, maxInFlight);
+    }
+
+    private static String toPrefix(String packageName) {
+        String prefix = packageName.replace('.', '/');
+        if (prefix.isEmpty()) {
+            throw new IllegalArgumentException("empty package name");
+        }
+        return prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    // 内部名またはリソースのパスを移動する。移動対象でなければnameをそのまま返す
+    public String relocate(String name) {
+        for (int i = 0; i < this.fromPrefixes.length; i++) {
+            if (name.startsWith(this.fromPrefixes[i])) {
+                return this.toPrefixes[i].concat(name.substring(this.fromPrefixes[i].length()));
+            }
+        }
+        return name;
+    }
+
+    // ClassRemapperで使うRemapper
+    public Remapper getRemapper() {
+        return this.remapper;
+    }
+
+    // 定数プールはClassReaderがサポートしていないバージョンのクラスでも調べられるので、移動対象を参照しないクラスはバージョンによらずそのまま返す
+    // 移動対象を参照するクラスのバージョンがサポートされていない場合はIllegalArgumentException
+    public byte[] relocateClass(byte[] classFile) {
+        if (!hasRelocatableReference(ClassReader.newHeaderReader(classFile))) {
+            return classFile;
+        }
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classFile).accept(new ClassRemapper(writer, this.remapper), 0);
+        return writer.toByteArray();
+    }
+
+    // 定数プールのUTF8文字列に移動元のパッケージ名を含むものがあるかどうか
+    // クラス名、パッケージ名、記述子、シグネチャは全てUTF8文字列として定数プールにあるので、これがfalseなら変換は不要
+    private boolean hasRelocatableReference(ClassReader reader) {
+        byte[] b = reader.b;
+        for (int i = reader.getNextItem(0, ClassReader.CONSTANT_UTF8); i != 0; i = reader.getNextItem(i, ClassReader.CONSTANT_UTF8)) {
+            int offset = reader.getItem(i);
+            int start = offset + 2;
+            int end = start + reader.readUnsignedShort(offset);
+            for (byte[] prefix : this.fromPrefixBytes) {
+                if (contains(b, start, end, prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // b[start] ~ b[end - 1] がprefixを含むかどうか
+    private static boolean contains(byte[] b, int start, int end, byte[] prefix) {
+        int last = end - prefix.length;
+        byte first = prefix[0];
+        for (int i = start; i <= last; i++) {
+            if (b[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < prefix.length && b[i + j] == prefix[j]) {
+                j++;
+            }
+            if (j == prefix.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public ClassEntry relocate(ClassEntry entry) {
+        String name = entry.getName();
+        if (name.endsWith(".class")) {
+            byte[] content;
+            try {
+                content = relocateClass(entry.getContent());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("cannot relocate " + name + ": " + e.getMessage(), e);
+            }
+            return ClassEntry.of(relocateEntryName(name), content);
+        }
+        if (name.startsWith(SERVICES) && name.indexOf('/', SERVICES.length()) == -1) {
+            return relocateServiceFile(entry);
+        }
+        return ClassEntry.of(relocateEntryName(name), entry.getContent());
+    }
+
+    // マルチリリースjarのMETA-INF/versions/9/以下のエントリも、その下のパスを移動する
+    private String relocateEntryName(String name) {
+        if (name.startsWith(VERSIONS)) {
+            int slash = name.indexOf('/', VERSIONS.length());
+            if (slash != -1) {
+                return name.substring(0, slash + 1).concat(relocate(name.substring(slash + 1)));
+            }
+        }
+        return relocate(name);
+    }
+
+    // サービスファイルは、ファイル名のサービスと各行の実装クラスを移動する
+    private ClassEntry relocateServiceFile(ClassEntry entry) {
+        String service = entry.getName().substring(SERVICES.length());
+        String content = new String(entry.getContent(), StandardCharsets.UTF_8);
+        StringBuilder newContent = new StringBuilder(content.length());
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            end = end == -1 ? content.length() : end + 1;
+            String line = content.substring(start, end);
+            int comment = line.indexOf('#');
+            String className = (comment == -1 ? line : line.substring(0, comment)).trim();
+            if (className.isEmpty()) {
+                newContent.append(line);
+            } else {
+                int classNameStart = line.indexOf(className);
+                newContent.append(line, 0, classNameStart)
+                        .append(relocateClassName(className))
+                        .append(line, classNameStart + className.length(), line.length());
+            }
+            start = end;
+        }
+        String newName = SERVICES.concat(relocateClassName(service));
+        String newContentString = newContent.toString();
+        if (newName.equals(entry.getName()) && newContentString.equals(content)) {
+            return entry;
+        }
+        return ClassEntry.of(newName, newContentString.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // com.google.Foo 形式のクラス名を移動する
+    private String relocateClassName(String className) {
+        String internalName = className.replace('.', '/');
+        String relocated = relocate(internalName);
+        return relocated == internalName ? className : relocated.replace('/', '.');
+    }
+
+    // entriesと同じ順序でoutputに渡す
+    public void relocate(Iterator<ClassEntry> entries, Consumer<ClassEntry> output) {
+        ExecutorService pool = Executors.newFixedThreadPool(this.parallelism);
+        try {
+            ArrayDeque<Future<ClassEntry>> inFlight = new ArrayDeque<>();
+            while (entries.hasNext()) {
+                if (inFlight.size() >= this.maxInFlight) {
+                    output.accept(ClassPipeline.await(inFlight.poll()));
+                }
+                ClassEntry entry = entries.next();
+                inFlight.add(pool.submit(() -> relocate(entry)));
+            }
+            while (!inFlight.isEmpty()) {
+                output.accept(ClassPipeline.await(inFlight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // 署名ファイルは移動後のクラスと一致しなくなるので出力しない。出力jarのエントリはマニフェストを先頭にして入力jarと同じ順序に並ぶ
+    public void relocateJar(Path inputJar, Path outputJar) throws IOException {
+        try (JarFile jarFile = new JarFile(inputJar.toFile());
+             JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(outputJar))) {
+            List<JarEntry> jarEntries = ClassPipeline.manifestFirst(
+                    jarFile.stream().filter(e -> !e.isDirectory() && !isSignatureFile(e.getName())), JarEntry::getName);
+            Iterator<ClassEntry> entries = jarEntries.stream()
+                    .map(e -> ClassEntry.of(e.getName(), ClassPipeline.readAllBytes(jarFile, e)))
+                    .iterator();
+            relocate(entries, entry -> writeEntry(jarOutput, entry));
+        }
+    }
+
+    private static boolean isSignatureFile(String name) {
+        if (!name.startsWith("META-INF/") || name.indexOf('/', "META-INF/".length()) != -1) {
+            return false;
+        }
+        return name.endsWith(".SF") || name.endsWith(".DSA") || name.endsWith(".RSA") || name.endsWith(".EC");
+    }
+
+    private static void writeEntry(JarOutputStream jarOutput, ClassEntry entry) {
+        try {
+            jarOutput.putNextEntry(new JarEntry(entry.getName()));
+            jarOutput.write(entry.getContent());
+            jarOutput.closeEntry();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private class PackageRemapper extends Remapper {
+        @Override
+        public String map(String typeName) {
+            return relocate(typeName);
+        }
+
+        @Override
+        public String mapPackageName(String name) {
+            String relocated = relocate(name.concat("/"));
+            return relocated.substring(0, relocated.length() - 1);
+        }
+    }
+}
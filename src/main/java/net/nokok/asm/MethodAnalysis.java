@@ -0,0 +1,62 @@
+package net.nokok.asm;
+
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.analysis.AnalyzerException;
+import net.nokok.azm.tree.analysis.ControlFlowGraph;
+import net.nokok.azm.tree.analysis.Frame;
+import net.nokok.azm.tree.analysis.Value;
+
+import java.util.Objects;
+
+// 1メソッドの解析結果。成功した場合はフレーム、失敗した場合はAnalyzerExceptionを持つ
+public final class MethodAnalysis<V extends Value> {
+    private final MethodNode method;
+    private final Frame<V>[] frames;
+    private final AnalyzerException exception;
+    private ControlFlowGraph controlFlowGraph;
+
+    private MethodAnalysis(MethodNode method, Frame<V>[] frames, AnalyzerException exception) {
+        this.method = Objects.requireNonNull(method);
+        this.frames = frames;
+        this.exception = exception;
+    }
+
+    static <V extends Value> MethodAnalysis<V> success(MethodNode method, Frame<V>[] frames) {
+        return new MethodAnalysis<>(method, frames, null);
+    }
+
+    static <V extends Value> MethodAnalysis<V> failure(MethodNode method, AnalyzerException exception) {
+        return new MethodAnalysis<>(method, null, Objects.requireNonNull(exception));
+    }
+
+    public MethodNode getMethod() {
+        return this.method;
+    }
+
+    public boolean isSuccessful() {
+        return this.exception == null;
+    }
+
+    // 解析に失敗した場合、またはフレームを保持しない設定の場合はnull
+    public Frame<V>[] getFrames() {
+        return this.frames;
+    }
+
+    public AnalyzerException getException() {
+        return this.exception;
+    }
+
+    // 初回の呼び出しで作成し、以降は同じグラフを返す。メソッドの命令を変更した後は使えない
+    public synchronized ControlFlowGraph getControlFlowGraph() {
+        if (this.controlFlowGraph == null) {
+            this.controlFlowGraph = new ControlFlowGraph(this.method);
+        }
+        return this.controlFlowGraph;
+    }
+
+    @Override
+    public String toString() {
+        String result = isSuccessful() ? "OK" : this.exception.getMessage();
+        return this.method.name + this.method.desc + ": " + result;
+    }
+}
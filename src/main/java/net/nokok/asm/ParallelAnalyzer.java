@@ -0,0 +1,189 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Type;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.analysis.Analyzer;
+import net.nokok.azm.tree.analysis.AnalyzerException;
+import net.nokok.azm.tree.analysis.BasicValue;
+import net.nokok.azm.tree.analysis.Frame;
+import net.nokok.azm.tree.analysis.Interpreter;
+import net.nokok.azm.tree.analysis.SimpleVerifier;
+import net.nokok.azm.tree.analysis.Value;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+// ClassNodeの全メソッド、またはjarの全クラスをAnalyzerで並列に解析する
+// Interpreterはスレッドセーフでないものがあるので、メソッド毎にinterpreterFactoryで生成する
+public class ParallelAnalyzer<V extends Value> {
+    private final Function<ClassNode, Interpreter<V>> interpreterFactory;
+    private final int parsingOptions;
+    private final int parallelism;
+    private final int maxInFlight;
+    private final boolean keepFrames;
+
+    private ParallelAnalyzer(
+            Function<ClassNode, Interpreter<V>> interpreterFactory,
+            int parsingOptions,
+            int parallelism,
+            int maxInFlight,
+            boolean keepFrames) {
+        if (parallelism < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("parallelism and maxInFlight must be positive");
+        }
+        this.interpreterFactory = Objects.requireNonNull(interpreterFactory);
+        this.parsingOptions = parsingOptions;
+        this.parallelism = parallelism;
+        this.maxInFlight = maxInFlight;
+        this.keepFrames = keepFrames;
+    }
+
+    public static <V extends Value> ParallelAnalyzer<V> newAnalyzer(Function<ClassNode, Interpreter<V>> interpreterFactory) {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return new ParallelAnalyzer<>(interpreterFactory, ClassReader.SKIP_DEBUG, processors, 4 * processors, true);
+    }
+
+    // CheckClassAdapter.verifyと同じSimpleVerifierによる検証。loaderはnull可
+    public static ParallelAnalyzer<BasicValue> newVerifier(ClassLoader loader) {
+        return newAnalyzer(classNode -> {
+            List<Type> interfaces = classNode.interfaces.stream()
+                    .map(Type::getObjectType)
+                    .collect(Collectors.toList());
+            SimpleVerifier verifier = new SimpleVerifier(
+                    Type.getObjectType(classNode.name),
+                    classNode.superName == null ? null : Type.getObjectType(classNode.superName),
+                    interfaces,
+                    (classNode.access & Opcodes.ACC_INTERFACE) != 0);
+            if (loader != null) {
+                verifier.setClassLoader(loader);
+            }
+            return verifier;
+        });
+    }
+
+    public ParallelAnalyzer<V> withParsingOptions(int parsingOptions) {
+        return new ParallelAnalyzer<>(this.interpreterFactory, parsingOptions, this.parallelism, this.maxInFlight, this.keepFrames);
+    }
+
+    public ParallelAnalyzer<V> withParallelism(int parallelism) {
+        return new ParallelAnalyzer<>(this.interpreterFactory, this.parsingOptions, parallelism, this.maxInFlight, this.keepFrames);
+    }
+
+    public ParallelAnalyzer<V> withMaxInFlight(int maxInFlight) {
+        return new ParallelAnalyzer<>(this.interpreterFactory, this.parsingOptions, this.parallelism, maxInFlight, this.keepFrames);
+    }
+
+    // falseの場合はフレームを捨ててエラーだけを集める。大量のクラスを検証する場合のメモリ使用量を抑える
+    public ParallelAnalyzer<V> withKeepFrames(boolean keepFrames) {
+        return new ParallelAnalyzer<>(this.interpreterFactory, this.parsingOptions, this.parallelism, this.maxInFlight, keepFrames);
+    }
+
+    // メソッド単位で並列に解析する
+    public ClassAnalysis<V> analyze(ClassNode classNode) {
+        ExecutorService pool = Executors.newFixedThreadPool(this.parallelism);
+        try {
+            List<Future<MethodAnalysis<V>>> futures = new ArrayList<>();
+            for (MethodNode method : classNode.methods) {
+                futures.add(pool.submit(() -> analyze(classNode, method)));
+            }
+            List<MethodAnalysis<V>> methods = new ArrayList<>();
+            for (Future<MethodAnalysis<V>> future : futures) {
+                methods.add(ClassPipeline.await(future));
+            }
+            return ClassAnalysis.of(classNode.name, methods);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // メソッドは呼び出し元のスレッドで順に解析する
+    public ClassAnalysis<V> analyze(byte[] classFile) {
+        return analyzeSequentially(read(classFile));
+    }
+
+    // クラス単位で並列に解析し、entriesと同じ順序でoutputに渡す
+    // クラスファイル以外のエントリと、マルチリリースjarのMETA-INF/versions/以下のクラスは無視する
+    public void analyze(Iterator<ClassEntry> entries, Consumer<ClassAnalysis<V>> output) {
+        ExecutorService pool = Executors.newFixedThreadPool(this.parallelism);
+        try {
+            ArrayDeque<Future<ClassAnalysis<V>>> inFlight = new ArrayDeque<>();
+            while (entries.hasNext()) {
+                ClassEntry entry = entries.next();
+                if (!entry.isBaseClassFile()) {
+                    continue;
+                }
+                if (inFlight.size() >= this.maxInFlight) {
+                    output.accept(ClassPipeline.await(inFlight.poll()));
+                }
+                inFlight.add(pool.submit(() -> analyze(entry.getContent())));
+            }
+            while (!inFlight.isEmpty()) {
+                output.accept(ClassPipeline.await(inFlight.poll()));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // エントリ名順に解析する。解析しないエントリは読まない
+    public void analyzeJar(Path jar, Consumer<ClassAnalysis<V>> output) throws IOException {
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            Iterator<ClassEntry> entries = jarFile.stream()
+                    .filter(e -> ClassEntry.isBaseClassFile(e.getName()))
+                    .sorted((l, r) -> l.getName().compareTo(r.getName()))
+                    .map(e -> ClassEntry.of(e.getName(), ClassPipeline.readAllBytes(jarFile, e)))
+                    .iterator();
+            analyze(entries, output);
+        }
+    }
+
+    // 失敗したクラスだけを返す
+    public List<ClassAnalysis<V>> verifyJar(Path jar) throws IOException {
+        List<ClassAnalysis<V>> failures = new ArrayList<>();
+        withKeepFrames(false).analyzeJar(jar, analysis -> {
+            if (!analysis.isSuccessful()) {
+                failures.add(analysis);
+            }
+        });
+        return failures;
+    }
+
+    private ClassNode read(byte[] classFile) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classFile).accept(classNode, this.parsingOptions);
+        return classNode;
+    }
+
+    private ClassAnalysis<V> analyzeSequentially(ClassNode classNode) {
+        List<MethodAnalysis<V>> methods = new ArrayList<>();
+        for (MethodNode method : classNode.methods) {
+            methods.add(analyze(classNode, method));
+        }
+        return ClassAnalysis.of(classNode.name, methods);
+    }
+
+    private MethodAnalysis<V> analyze(ClassNode classNode, MethodNode method) {
+        Analyzer<V> analyzer = new Analyzer<>(this.interpreterFactory.apply(classNode));
+        try {
+            Frame<V>[] frames = analyzer.analyze(classNode.name, method);
+            return MethodAnalysis.success(method, this.keepFrames ? frames : null);
+        } catch (AnalyzerException e) {
+            return MethodAnalysis.failure(method, e);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package net.nokok.asm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+// 変換前のクラスファイルのハッシュと変換のフィンガープリントをキーに、変換後のクラスファイルをファイルに保存するキャッシュ
+// javaagentなどでJVMの起動毎に同じクラスを変換する場合に、前回の変換結果を再利用する
+// ファイルは追記のみで、開いた時点の内容はメモリマップして読む。複数のJVMで同じファイルを共有できる
+// 追記するとmaxSizeを超える場合はファイルを空のファイルに置き換える(ローテーション)。他のJVMは次の追記で置き換えに気づいて新しいファイルに移る
+public class TransformCache implements Closeable {
+    // レコード: MAGIC(4) キー(32) 長さ(4, 変換なしは-1) CRC32(4) 内容
+    private static final int MAGIC = 0x415A4D43;
+    private static final int KEY_LENGTH = 32;
+    private static final int HEADER_LENGTH = 4 + KEY_LENGTH + 4 + 4;
+    private static final int UNCHANGED = -1;
+
+    // ファイルサイズの上限のデフォルト値
+    public static final long DEFAULT_MAX_SIZE = 256L << 20;
+
+    // 実パス -> 開いているファイル。FileChannel.lockは同じJVM内で重複して取得できないため、同じファイルはチャネルを共有する
+    private static final Map<Path, CacheFile> OPEN_FILES = new HashMap<>();
+
+    private final CacheFile file;
+    private final byte[] fingerprint;
+    private final long maxSize;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private boolean closed;
+
+    private TransformCache(CacheFile file, String fingerprint, long maxSize) {
+        this.file = file;
+        this.fingerprint = fingerprint.getBytes(StandardCharsets.UTF_8);
+        this.maxSize = maxSize;
+    }
+
+    // fingerprintは変換の内容を表す文字列(変換クラスのバージョンなど)。変換の内容が変わった場合は別の値にする
+    public static TransformCache open(Path file, String fingerprint) throws IOException {
+        return open(file, fingerprint, DEFAULT_MAX_SIZE);
+    }
+
+    // maxSizeはファイルサイズの上限。メモリマップできる2GB未満でなければならない
+    public static TransformCache open(Path file, String fingerprint, long maxSize) throws IOException {
+        Objects.requireNonNull(fingerprint);
+        if (maxSize < HEADER_LENGTH || maxSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxSize must be between " + HEADER_LENGTH + " and " + Integer.MAX_VALUE + ": " + maxSize);
+        }
+        return new TransformCache(CacheFile.acquire(file), fingerprint, maxSize);
+    }
+
+    // キャッシュにない場合はtransformerで変換して保存する。transformerがnullを返した場合(変換なし)はnullを返す
+    public byte[] computeIfAbsent(byte[] classFile, Function<byte[], byte[]> transformer) {
+        byte[] key = hash(classFile);
+        Generation generation = this.file.generation;
+        Location location = generation.index.get(ByteBuffer.wrap(key));
+        if (location == Location.UNCHANGED) {
+            this.hitCount.increment();
+            return null;
+        }
+        if (location != null) {
+            byte[] content = generation.read(location);
+            // 壊れているレコードは再変換して追記し直す
+            if (content != null) {
+                this.hitCount.increment();
+                return content;
+            }
+        }
+        this.missCount.increment();
+        byte[] transformed = transformer.apply(classFile);
+        try {
+            this.file.append(key, transformed, this.maxSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return transformed;
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    // キャッシュされている変換結果の数
+    public int size() {
+        return this.file.generation.index.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        this.file.release();
+    }
+
+    private byte[] hash(byte[] classFile) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(this.fingerprint);
+            digest.update((byte) 0);
+            digest.update(classFile);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // bufferの先頭から完全なレコードを索引に加え、読み込んだバイト数を返す
+    // 書き込み途中のレコード(他のJVMが追記中など)や壊れたレコード以降は読まない
+    private static long loadIndex(ByteBuffer buffer, long baseOffset, Map<ByteBuffer, Location> index) {
+        int recordStart = buffer.position();
+        while (buffer.remaining() >= HEADER_LENGTH && buffer.getInt() == MAGIC) {
+            byte[] key = new byte[KEY_LENGTH];
+            buffer.get(key);
+            int length = buffer.getInt();
+            int crc = buffer.getInt();
+            if (length == UNCHANGED) {
+                index.put(ByteBuffer.wrap(key), Location.UNCHANGED);
+            } else if (length < 0 || length > buffer.remaining()) {
+                break;
+            } else {
+                index.put(ByteBuffer.wrap(key), new Location(baseOffset + buffer.position(), length, crc));
+                buffer.position(buffer.position() + length);
+            }
+            recordStart = buffer.position();
+        }
+        return recordStart;
+    }
+
+    private static Object fileKey(Path path) throws IOException {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static int crc32(byte[] content) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(content, 0, content.length);
+        return (int) crc32.getValue();
+    }
+
+    // 同じJVM内でパスごとに一つだけ作られ、そのパスのTransformCacheで共有される
+    private static final class CacheFile {
+        private final Path path;
+        // 現在のファイル。ローテーションで置き換わる
+        volatile Generation generation;
+        // ローテーション前のファイルのチャネル。読み込み中のスレッドがあるかもしれないので、閉じられるまで開いたままにする
+        private final List<FileChannel> retiredChannels = new ArrayList<>();
+        // OPEN_FILESのロック中にのみ使う
+        private int references;
+
+        private CacheFile(Path path) throws IOException {
+            this.path = path;
+            this.generation = Generation.open(path);
+        }
+
+        static CacheFile acquire(Path file) throws IOException {
+            try {
+                Files.createFile(file);
+            } catch (FileAlreadyExistsException e) {
+                // 既存のファイルを使う
+            }
+            Path path = file.toRealPath();
+            synchronized (OPEN_FILES) {
+                CacheFile cacheFile = OPEN_FILES.get(path);
+                if (cacheFile == null) {
+                    cacheFile = new CacheFile(path);
+                    OPEN_FILES.put(path, cacheFile);
+                }
+                cacheFile.references++;
+                return cacheFile;
+            }
+        }
+
+        void release() throws IOException {
+            synchronized (OPEN_FILES) {
+                if (--this.references > 0) {
+                    return;
+                }
+                OPEN_FILES.remove(this.path);
+            }
+            synchronized (this) {
+                this.generation.channel.close();
+                for (FileChannel channel : this.retiredChannels) {
+                    channel.close();
+                }
+            }
+        }
+
+        // 同じJVM内のスレッドはこのオブジェクトのロックで、他のJVMとはファイルのロックで同時に追記しないようにする
+        synchronized void append(byte[] key, byte[] content, long maxSize) throws IOException {
+            int length = content == null ? UNCHANGED : content.length;
+            int crc = content == null ? 0 : crc32(content);
+            ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + Math.max(length, 0));
+            record.putInt(MAGIC).put(key).putInt(length).putInt(crc);
+            if (content != null) {
+                record.put(content);
+            }
+            record.flip();
+            // 空のファイルにも入らないレコードは保存しない
+            if (record.remaining() > maxSize) {
+                return;
+            }
+            while (true) {
+                Generation generation = this.generation;
+                FileLock lock = generation.channel.lock();
+                try {
+                    if (Objects.equals(fileKey(this.path), generation.fileKey)) {
+                        generation.loadTail();
+                        long recordStart = generation.end;
+                        if (recordStart + record.remaining() <= maxSize) {
+                            long position = recordStart;
+                            while (record.hasRemaining()) {
+                                position += generation.channel.write(record, position);
+                            }
+                            generation.end = position;
+                            generation.index.put(ByteBuffer.wrap(key), content == null ? Location.UNCHANGED : new Location(recordStart + HEADER_LENGTH, length, crc));
+                            return;
+                        }
+                        rotate();
+                    }
+                } finally {
+                    lock.release();
+                }
+                // 自分か他のJVMがファイルを置き換えたので、新しいファイルに追記する
+                this.retiredChannels.add(generation.channel);
+                this.generation = Generation.open(this.path);
+            }
+        }
+
+        // 空のファイルをアトミックに移動して置き換える。置き換える前のファイルを開いている他のJVMはそのまま読み続けられる
+        private void rotate() throws IOException {
+            Path temporary = Files.createTempFile(this.path.getParent(), this.path.getFileName().toString(), ".tmp");
+            try {
+                Files.move(temporary, this.path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(temporary);
+                throw e;
+            }
+        }
+    }
+
+    // ローテーションされるまでの一つのファイルの内容
+    private static final class Generation {
+        final FileChannel channel;
+        // ファイルが置き換えられたことを検出するためのキー。サポートされていない場合はnull
+        final Object fileKey;
+        // 開いた時点のファイルの内容
+        final MappedByteBuffer mapped;
+        // キー(ByteBuffer.wrap(SHA-256)) -> 内容の位置。位置が-1の場合は変換なし
+        final Map<ByteBuffer, Location> index = new ConcurrentHashMap<>();
+        // ここまでのレコードは索引に読み込み済み。CacheFileのロック中にのみ使う
+        long end;
+
+        private Generation(FileChannel channel, Object fileKey, MappedByteBuffer mapped) {
+            this.channel = channel;
+            this.fileKey = fileKey;
+            this.mapped = mapped;
+        }
+
+        static Generation open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long size = channel.size();
+                // 2GBを超えるファイル(以前のバージョンで作られたものなど)はマップできないので読まず、次の追記でローテーションする
+                boolean mappable = size <= Integer.MAX_VALUE;
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, mappable ? size : 0);
+                Generation generation = new Generation(channel, fileKey(path), mapped);
+                generation.end = mappable ? loadIndex(mapped.duplicate(), 0, generation.index) : size;
+                return generation;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        // ファイルのロック中に呼ぶ。他のJVMも書き込んでいないので、
+        // 読み込み済みの位置以降の完全なレコードは他のJVMが追記したもので、不完全なレコードは壊れている
+        void loadTail() throws IOException {
+            long size = this.channel.size();
+            if (this.end >= size) {
+                return;
+            }
+            if (size - this.end <= Integer.MAX_VALUE) {
+                ByteBuffer tail = this.channel.map(FileChannel.MapMode.READ_ONLY, this.end, size - this.end);
+                this.end += loadIndex(tail, this.end, this.index);
+            }
+            if (this.end < size) {
+                this.channel.truncate(this.end);
+            }
+        }
+
+        // CRCが一致しない場合はnull
+        byte[] read(Location location) {
+            byte[] content = new byte[location.length];
+            try {
+                if (location.offset + location.length <= this.mapped.capacity()) {
+                    ByteBuffer buffer = this.mapped.duplicate();
+                    buffer.position((int) location.offset);
+                    buffer.get(content);
+                } else {
+                    ByteBuffer buffer = ByteBuffer.wrap(content);
+                    while (buffer.hasRemaining()) {
+                        if (this.channel.read(buffer, location.offset + buffer.position()) < 0) {
+                            throw new IOException("Unexpected end of cache file");
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return crc32(content) == location.crc ? content : null;
+        }
+    }
+
+    private static final class Location {
+        static final Location UNCHANGED = new Location(-1, 0, 0);
+
+        final long offset;
+        final int length;
+        final int crc;
+
+        Location(long offset, int length, int crc) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+        }
+    }
+}
@@ -27,9 +27,10 @@
 // THE POSSIBILITY OF SUCH DAMAGE.
 package net.nokok.azm;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * A parser to make a {@link ClassVisitor} visit a ClassFile structure, as defined in the Java
@@ -87,6 +88,92 @@ public class ClassReader {
      */
     static final int EXPAND_ASM_INSNS = 256;
 
+    /**
+     * The tag of CONSTANT_Utf8 constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_UTF8 = Symbol.CONSTANT_UTF8_TAG;
+
+    /**
+     * The tag of CONSTANT_Integer constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_INTEGER = Symbol.CONSTANT_INTEGER_TAG;
+
+    /**
+     * The tag of CONSTANT_Float constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_FLOAT = Symbol.CONSTANT_FLOAT_TAG;
+
+    /**
+     * The tag of CONSTANT_Long constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_LONG = Symbol.CONSTANT_LONG_TAG;
+
+    /**
+     * The tag of CONSTANT_Double constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_DOUBLE = Symbol.CONSTANT_DOUBLE_TAG;
+
+    /**
+     * The tag of CONSTANT_Class constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_CLASS = Symbol.CONSTANT_CLASS_TAG;
+
+    /**
+     * The tag of CONSTANT_String constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_STRING = Symbol.CONSTANT_STRING_TAG;
+
+    /**
+     * The tag of CONSTANT_Fieldref constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_FIELDREF = Symbol.CONSTANT_FIELDREF_TAG;
+
+    /**
+     * The tag of CONSTANT_Methodref constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_METHODREF = Symbol.CONSTANT_METHODREF_TAG;
+
+    /**
+     * The tag of CONSTANT_InterfaceMethodref constant pool entries, as returned by {@link
+     * #getItemTag}.
+     */
+    public static final int CONSTANT_INTERFACE_METHODREF = Symbol.CONSTANT_INTERFACE_METHODREF_TAG;
+
+    /**
+     * The tag of CONSTANT_NameAndType constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_NAME_AND_TYPE = Symbol.CONSTANT_NAME_AND_TYPE_TAG;
+
+    /**
+     * The tag of CONSTANT_MethodHandle constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_METHOD_HANDLE = Symbol.CONSTANT_METHOD_HANDLE_TAG;
+
+    /**
+     * The tag of CONSTANT_MethodType constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_METHOD_TYPE = Symbol.CONSTANT_METHOD_TYPE_TAG;
+
+    /**
+     * The tag of CONSTANT_InvokeDynamic constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_INVOKE_DYNAMIC = Symbol.CONSTANT_INVOKE_DYNAMIC_TAG;
+
+    /**
+     * The tag of CONSTANT_Module constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_MODULE = Symbol.CONSTANT_MODULE_TAG;
+
+    /**
+     * The tag of CONSTANT_Package constant pool entries, as returned by {@link #getItemTag}.
+     */
+    public static final int CONSTANT_PACKAGE = Symbol.CONSTANT_PACKAGE_TAG;
+
+    /**
+     * The size of the temporary byte array used to read class input streams chunk by chunk.
+     */
+    private static final int INPUT_STREAM_DATA_CHUNK_SIZE = 4096;
+
     /**
      * A byte array containing the JVMS ClassFile structure to be parsed. <i>The content of this array
      * must not be modified. This field is intended for {@link Attribute} sub classes, and is normally
@@ -111,6 +198,17 @@ public class ClassReader {
      */
     private final String[] constantUtf8Values;
 
+    /**
+     * The cache shared with other readers, used to get the values of {@link #constantUtf8Values}, or
+     * <tt>null</tt>.
+     */
+    private Utf8Cache utf8Cache;
+
+    /**
+     * The listener notified of the classes read by this reader, or <tt>null</tt>.
+     */
+    private MetricsListener metricsListener;
+
     /**
      * A conservative estimate of the maximum length of the strings contained in the constant pool of
      * the class.
@@ -147,6 +245,20 @@ public class ClassReader {
         this(classFileBuffer, classFileOffset, /* checkClassVersion = */ true);
     }
 
+    /**
+     * Constructs a new {@link ClassReader} object to read the header of the given class, without
+     * checking its version. Only the accessors ({@link #getAccess()}, {@link #getClassName()}, {@link
+     * #getSuperName()}, {@link #getInterfaces()}, {@link #getAnnotationDescriptors()}) and the
+     * constant pool can be used safely with such a reader, since the rest of the class may use
+     * features that are not supported by this version of ASM.
+     *
+     * @param classFile the JVMS ClassFile structure to be read.
+     * @return a reader for the header of the given class.
+     */
+    public static ClassReader newHeaderReader(final byte[] classFile) {
+        return new ClassReader(classFile, 0, /* checkClassVersion = */ false);
+    }
+
     /**
      * Constructs a new {@link ClassReader} object. <i>This internal constructor must not be exposed
      * as a public API</i>.
@@ -224,6 +336,23 @@ public class ClassReader {
         this.header = currentCpInfoOffset;
     }
 
+    /**
+     * Constructs a new {@link ClassReader} object. The ClassFile structure is read from the given
+     * buffer's current position to its limit. If the buffer is backed by an accessible array, this
+     * array is used directly, without any copy. Otherwise (direct, memory-mapped or read-only
+     * buffers), the ClassFile bytes are copied once into an array of the exact size. In both cases
+     * the position of the given buffer is not changed.
+     *
+     * @param classFileBuffer a buffer containing the JVMS ClassFile structure to be read. <i>Its
+     *                        content must not be modified while this reader is in use.</i>
+     */
+    public ClassReader(final ByteBuffer classFileBuffer) {
+        this(
+                classFileBuffer.hasArray() ? classFileBuffer.array() : toByteArray(classFileBuffer),
+                classFileBuffer.hasArray() ? classFileBuffer.arrayOffset() + classFileBuffer.position() : 0,
+                classFileBuffer.remaining());
+    }
+
     /**
      * Constructs a new {@link ClassReader} object.
      *
@@ -250,7 +379,43 @@ public class ClassReader {
     }
 
     /**
-     * Reads the given input stream and returns its content as a byte array.
+     * Sets the cache used to decode the CONSTANT_Utf8 constant pool entries of this class. This
+     * cache can be shared with other readers, in order to decode the strings which are common to
+     * many classes only once. This method must be called before this reader is used.
+     *
+     * @param utf8Cache a cache of CONSTANT_Utf8 values, or <tt>null</tt> to decode each string in
+     *                  this reader.
+     */
+    public void setUtf8Cache(final Utf8Cache utf8Cache) {
+        this.utf8Cache = utf8Cache;
+    }
+
+    /**
+     * Sets the listener notified each time this reader is used to visit its class.
+     *
+     * @param metricsListener a metrics listener, or <tt>null</tt> to disable measurements.
+     */
+    public void setMetricsListener(final MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Copies the remaining bytes of the given buffer into a new array, without changing its position.
+     *
+     * @param byteBuffer a byte buffer.
+     * @return the bytes between the position and the limit of the given buffer.
+     */
+    private static byte[] toByteArray(final ByteBuffer byteBuffer) {
+        byte[] data = new byte[byteBuffer.remaining()];
+        byteBuffer.duplicate().get(data);
+        return data;
+    }
+
+    /**
+     * Reads the given input stream and returns its content as a byte array. The stream is read
+     * directly into the returned array, whose initial size is estimated with {@link
+     * InputStream#available}, so that no copy is needed when this estimate is exact. When no estimate
+     * is available, the array is enlarged as needed and trimmed at the end.
      *
      * @param inputStream an input stream.
      * @param close       true to close the input stream after reading.
@@ -263,14 +428,24 @@ public class ClassReader {
             throw new IOException("Class not found");
         }
         try {
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            byte[] data = new byte[inputStream.available()];
+            int available = inputStream.available();
+            byte[] data = new byte[available > 0 ? available : INPUT_STREAM_DATA_CHUNK_SIZE];
+            int length = 0;
             int bytesRead;
-            while ((bytesRead = inputStream.read(data, 0, data.length)) != -1) {
-                outputStream.write(data, 0, bytesRead);
+            while ((bytesRead = inputStream.read(data, length, data.length - length)) != -1) {
+                length += bytesRead;
+                if (length == data.length) {
+                    // Check for the end of stream before enlarging the array, to avoid a copy when the
+                    // estimated size was exact.
+                    int nextByte = inputStream.read();
+                    if (nextByte == -1) {
+                        break;
+                    }
+                    data = Arrays.copyOf(data, Math.max(2 * data.length, INPUT_STREAM_DATA_CHUNK_SIZE));
+                    data[length++] = (byte) nextByte;
+                }
             }
-            outputStream.flush();
-            return outputStream.toByteArray();
+            return length == data.length ? data : Arrays.copyOf(data, length);
         } finally {
             if (close) {
                 inputStream.close();
@@ -338,6 +513,53 @@ public class ClassReader {
         return interfaces;
     }
 
+    /**
+     * Returns the descriptors of the annotations of the class, i.e. of its RuntimeVisibleAnnotations
+     * and RuntimeInvisibleAnnotations attributes. The fields and methods of the class are skipped
+     * without being parsed, and the annotation values are not decoded.
+     *
+     * @return the descriptors of the annotations of the class, visible ones first.
+     * @see ClassVisitor#visitAnnotation(String, boolean)
+     */
+    public String[] getAnnotationDescriptors() {
+        char[] charBuffer = new char[maxStringLength];
+        int runtimeVisibleAnnotationsOffset = 0;
+        int runtimeInvisibleAnnotationsOffset = 0;
+        int currentAttributeOffset = getFirstAttributeOffset();
+        for (int i = readUnsignedShort(currentAttributeOffset - 2); i > 0; --i) {
+            String attributeName = readUTF8(currentAttributeOffset, charBuffer);
+            int attributeLength = readInt(currentAttributeOffset + 2);
+            currentAttributeOffset += 6;
+            if (Constants.RUNTIME_VISIBLE_ANNOTATIONS.equals(attributeName)) {
+                runtimeVisibleAnnotationsOffset = currentAttributeOffset;
+            } else if (Constants.RUNTIME_INVISIBLE_ANNOTATIONS.equals(attributeName)) {
+                runtimeInvisibleAnnotationsOffset = currentAttributeOffset;
+            }
+            currentAttributeOffset += attributeLength;
+        }
+        int numVisibleAnnotations =
+                runtimeVisibleAnnotationsOffset == 0 ? 0 : readUnsignedShort(runtimeVisibleAnnotationsOffset);
+        int numInvisibleAnnotations =
+                runtimeInvisibleAnnotationsOffset == 0
+                        ? 0
+                        : readUnsignedShort(runtimeInvisibleAnnotationsOffset);
+        String[] descriptors = new String[numVisibleAnnotations + numInvisibleAnnotations];
+        int currentAnnotationOffset = runtimeVisibleAnnotationsOffset + 2;
+        for (int i = 0; i < numVisibleAnnotations; ++i) {
+            descriptors[i] = readUTF8(currentAnnotationOffset, charBuffer);
+            // Skip the type_index field, and the element_value_pairs.
+            currentAnnotationOffset =
+                    readElementValues(null, currentAnnotationOffset + 2, /* named = */ true, charBuffer);
+        }
+        currentAnnotationOffset = runtimeInvisibleAnnotationsOffset + 2;
+        for (int i = 0; i < numInvisibleAnnotations; ++i) {
+            descriptors[numVisibleAnnotations + i] = readUTF8(currentAnnotationOffset, charBuffer);
+            currentAnnotationOffset =
+                    readElementValues(null, currentAnnotationOffset + 2, /* named = */ true, charBuffer);
+        }
+        return descriptors;
+    }
+
     // -----------------------------------------------------------------------------------------------
     // Public methods
     // -----------------------------------------------------------------------------------------------
@@ -372,6 +594,7 @@ public class ClassReader {
             final ClassVisitor classVisitor,
             final Attribute[] attributePrototypes,
             final int parsingOptions) {
+        long startTime = metricsListener == null ? 0 : System.nanoTime();
         Context context = new Context();
         context.attributePrototypes = attributePrototypes;
         context.parsingOptions = parsingOptions;
@@ -632,6 +855,16 @@ public class ClassReader {
 
         // Visit the end of the class.
         classVisitor.visitEnd();
+
+        if (metricsListener != null) {
+            // The ClassFile structure ends with the class attributes, and starts 11 bytes before the
+            // first constant pool entry (cpInfoOffsets contains offsets plus one).
+            metricsListener.classRead(
+                    thisClass,
+                    currentAttributeOffset - (cpInfoOffsets[1] - 11),
+                    cpInfoOffsets.length,
+                    System.nanoTime() - startTime);
+        }
     }
 
     // ----------------------------------------------------------------------------------------------
@@ -1231,8 +1464,12 @@ public class ClassReader {
             attributes = nextAttribute;
         }
 
-        // Visit the Code attribute.
-        if (codeOffset != 0) {
+        // Visit the Code attribute, unless the visitor takes care of it (e.g. to parse it lazily). The
+        // CodeSource is only created for the visitors which may accept it.
+        if (codeOffset != 0
+                && !(methodVisitor.wantsCodeSource()
+                && methodVisitor.visitCodeSource(
+                new CodeSource(this, context, codeOffset, readInt(codeOffset - 4))))) {
             methodVisitor.visitCode();
             readCode(methodVisitor, context, codeOffset);
         }
@@ -1254,7 +1491,7 @@ public class ClassReader {
      * @param codeOffset    the start offset in {@link #b} of the Code attribute, excluding its
      *                      attribute_name_index and attribute_length fields.
      */
-    private void readCode(
+    void readCode(
             final MethodVisitor methodVisitor, final Context context, final int codeOffset) {
         int currentOffset = codeOffset;
 
@@ -3241,6 +3478,184 @@ public class ClassReader {
         return cpInfoOffsets[constantPoolEntryIndex];
     }
 
+    /**
+     * Returns the tag of a constant pool entry, without decoding it. The constant pool can be scanned
+     * this way without calling {@link #accept}, for instance to find the classes or members
+     * referenced by a class:
+     * <p>
+     * <pre>
+     * for (int i = reader.getNextItem(0, ClassReader.CONSTANT_METHODREF); i != 0;
+     *         i = reader.getNextItem(i, ClassReader.CONSTANT_METHODREF)) {
+     *     String owner = reader.readItemOwner(i, charBuffer);
+     *     ...
+     * }
+     * </pre>
+     *
+     * @param constantPoolEntryIndex the index a constant pool entry in the class's constant pool
+     *                               table.
+     * @return one of the CONSTANT_* tags defined in this class, or 0 if the given index is 0 or
+     * designates the unusable entry following a CONSTANT_Long or CONSTANT_Double entry.
+     */
+    public int getItemTag(final int constantPoolEntryIndex) {
+        int cpInfoOffset = cpInfoOffsets[constantPoolEntryIndex];
+        return cpInfoOffset == 0 ? 0 : b[cpInfoOffset - 1] & 0xFF;
+    }
+
+    /**
+     * Returns the index of the next constant pool entry with the given tag.
+     *
+     * @param constantPoolEntryIndex the index of the constant pool entry after which to search, or 0
+     *                               to search from the beginning of the constant pool.
+     * @param tag                    one of the CONSTANT_* tags defined in this class.
+     * @return the index of the first constant pool entry with the given tag after
+     * <tt>constantPoolEntryIndex</tt>, or 0 if there is no such entry.
+     */
+    public int getNextItem(final int constantPoolEntryIndex, final int tag) {
+        int[] offsets = cpInfoOffsets;
+        byte[] classFileBuffer = b;
+        for (int i = constantPoolEntryIndex + 1; i < offsets.length; ++i) {
+            int cpInfoOffset = offsets[i];
+            if (cpInfoOffset != 0 && (classFileBuffer[cpInfoOffset - 1] & 0xFF) == tag) {
+                return i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of constant pool entries with the given tag.
+     *
+     * @param tag one of the CONSTANT_* tags defined in this class.
+     * @return the number of constant pool entries with the given tag.
+     */
+    public int getItemCount(final int tag) {
+        int[] offsets = cpInfoOffsets;
+        byte[] classFileBuffer = b;
+        int count = 0;
+        for (int i = 1; i < offsets.length; ++i) {
+            int cpInfoOffset = offsets[i];
+            if (cpInfoOffset != 0 && (classFileBuffer[cpInfoOffset - 1] & 0xFF) == tag) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads the string value of a constant pool entry. The decoded value of CONSTANT_Utf8 entries is
+     * cached, so this method can be called several times for the same entry at no additional cost.
+     *
+     * @param constantPoolEntryIndex the index of a CONSTANT_Utf8, CONSTANT_Class, CONSTANT_String,
+     *                               CONSTANT_MethodType, CONSTANT_Module or CONSTANT_Package entry.
+     * @param charBuffer             the buffer to be used to read the string. This buffer must be
+     *                               sufficiently large. It is not automatically resized.
+     * @return the value of the CONSTANT_Utf8 entry, or of the CONSTANT_Utf8 entry designated by the
+     * other entries (i.e. an internal name, a string literal, a method descriptor, a module name or
+     * a package name).
+     * @throws IllegalArgumentException if the entry does not have one of the above tags.
+     */
+    public String readItemUtf8(final int constantPoolEntryIndex, final char[] charBuffer) {
+        int cpInfoOffset = cpInfoOffsets[constantPoolEntryIndex];
+        switch (getItemTag(constantPoolEntryIndex)) {
+        case Symbol.CONSTANT_UTF8_TAG:
+            return readUTF(constantPoolEntryIndex, charBuffer);
+        case Symbol.CONSTANT_CLASS_TAG:
+        case Symbol.CONSTANT_STRING_TAG:
+        case Symbol.CONSTANT_METHOD_TYPE_TAG:
+        case Symbol.CONSTANT_MODULE_TAG:
+        case Symbol.CONSTANT_PACKAGE_TAG:
+            return readUTF8(cpInfoOffset, charBuffer);
+        default:
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Reads the owner of a field or method reference constant pool entry.
+     *
+     * @param constantPoolEntryIndex the index of a CONSTANT_Fieldref, CONSTANT_Methodref,
+     *                               CONSTANT_InterfaceMethodref or CONSTANT_MethodHandle entry.
+     * @param charBuffer             the buffer to be used to read the string. This buffer must be
+     *                               sufficiently large. It is not automatically resized.
+     * @return the internal name of the class owning the referenced field or method.
+     * @throws IllegalArgumentException if the entry does not have one of the above tags.
+     */
+    public String readItemOwner(final int constantPoolEntryIndex, final char[] charBuffer) {
+        return readClass(getMemberRefOffset(constantPoolEntryIndex), charBuffer);
+    }
+
+    /**
+     * Reads the name of a member reference, NameAndType or InvokeDynamic constant pool entry.
+     *
+     * @param constantPoolEntryIndex the index of a CONSTANT_Fieldref, CONSTANT_Methodref,
+     *                               CONSTANT_InterfaceMethodref, CONSTANT_MethodHandle,
+     *                               CONSTANT_NameAndType or CONSTANT_InvokeDynamic entry.
+     * @param charBuffer             the buffer to be used to read the string. This buffer must be
+     *                               sufficiently large. It is not automatically resized.
+     * @return the name of the referenced field or method, or of the invokedynamic call site.
+     * @throws IllegalArgumentException if the entry does not have one of the above tags.
+     */
+    public String readItemName(final int constantPoolEntryIndex, final char[] charBuffer) {
+        return readUTF8(getNameAndTypeOffset(constantPoolEntryIndex), charBuffer);
+    }
+
+    /**
+     * Reads the descriptor of a member reference, NameAndType or InvokeDynamic constant pool entry.
+     *
+     * @param constantPoolEntryIndex the index of a CONSTANT_Fieldref, CONSTANT_Methodref,
+     *                               CONSTANT_InterfaceMethodref, CONSTANT_MethodHandle,
+     *                               CONSTANT_NameAndType or CONSTANT_InvokeDynamic entry.
+     * @param charBuffer             the buffer to be used to read the string. This buffer must be
+     *                               sufficiently large. It is not automatically resized.
+     * @return the descriptor of the referenced field or method, or of the invokedynamic call site.
+     * @throws IllegalArgumentException if the entry does not have one of the above tags.
+     */
+    public String readItemDescriptor(final int constantPoolEntryIndex, final char[] charBuffer) {
+        return readUTF8(getNameAndTypeOffset(constantPoolEntryIndex) + 2, charBuffer);
+    }
+
+    /**
+     * Returns the start offset in {@link #b} of a member reference cp_info structure, plus one.
+     *
+     * @param constantPoolEntryIndex the index of a CONSTANT_Fieldref, CONSTANT_Methodref,
+     *                               CONSTANT_InterfaceMethodref or CONSTANT_MethodHandle entry. In the
+     *                               latter case the offset of the referenced entry is returned.
+     * @return the start offset in {@link #b} of the member reference cp_info structure, plus one.
+     */
+    private int getMemberRefOffset(final int constantPoolEntryIndex) {
+        int cpInfoOffset = cpInfoOffsets[constantPoolEntryIndex];
+        switch (getItemTag(constantPoolEntryIndex)) {
+        case Symbol.CONSTANT_FIELDREF_TAG:
+        case Symbol.CONSTANT_METHODREF_TAG:
+        case Symbol.CONSTANT_INTERFACE_METHODREF_TAG:
+            return cpInfoOffset;
+        case Symbol.CONSTANT_METHOD_HANDLE_TAG:
+            return cpInfoOffsets[readUnsignedShort(cpInfoOffset + 1)];
+        default:
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Returns the start offset in {@link #b} of the NameAndType cp_info structure designated by a
+     * constant pool entry, plus one.
+     *
+     * @param constantPoolEntryIndex the index of a CONSTANT_Fieldref, CONSTANT_Methodref,
+     *                               CONSTANT_InterfaceMethodref, CONSTANT_MethodHandle,
+     *                               CONSTANT_NameAndType or CONSTANT_InvokeDynamic entry.
+     * @return the start offset in {@link #b} of the NameAndType cp_info structure, plus one.
+     */
+    private int getNameAndTypeOffset(final int constantPoolEntryIndex) {
+        int tag = getItemTag(constantPoolEntryIndex);
+        if (tag == Symbol.CONSTANT_NAME_AND_TYPE_TAG) {
+            return cpInfoOffsets[constantPoolEntryIndex];
+        }
+        if (tag == Symbol.CONSTANT_INVOKE_DYNAMIC_TAG) {
+            return cpInfoOffsets[readUnsignedShort(cpInfoOffsets[constantPoolEntryIndex] + 2)];
+        }
+        return cpInfoOffsets[readUnsignedShort(getMemberRefOffset(constantPoolEntryIndex) + 2)];
+    }
+
     /**
      * Returns a conservative estimate of the maximum length of the strings contained in the class's
      * constant pool table.
@@ -3348,6 +3763,10 @@ public class ClassReader {
             return value;
         }
         int cpInfoOffset = cpInfoOffsets[constantPoolEntryIndex];
+        if (utf8Cache != null) {
+            return constantUtf8Values[constantPoolEntryIndex] =
+                    utf8Cache.get(this, cpInfoOffset + 2, readUnsignedShort(cpInfoOffset), charBuffer);
+        }
         return constantUtf8Values[constantPoolEntryIndex] =
                 readUTF(cpInfoOffset + 2, readUnsignedShort(cpInfoOffset), charBuffer);
     }
@@ -3361,7 +3780,7 @@ public class ClassReader {
      *                   large. It is not automatically resized.
      * @return the String corresponding to the specified UTF8 string.
      */
-    private String readUTF(final int utfOffset, final int utfLength, final char[] charBuffer) {
+    String readUTF(final int utfOffset, final int utfLength, final char[] charBuffer) {
         int currentOffset = utfOffset;
         int endOffset = currentOffset + utfLength;
         int strLength = 0;
@@ -281,6 +281,41 @@ public abstract class ClassVisitor {
         return null;
     }
 
+    /**
+     * Visits a method of the class which must be passed through as is, i.e. without any change to
+     * its annotations, attributes and code. This method is intended to be called by a class adapter
+     * on its delegate {@link #cv}, from its {@link #visitMethod} method, for the methods it does not
+     * transform. It lets the rest of the visitor chain skip the wrapping of these methods so that, if
+     * the returned visitor is the {@link MethodWriter} of a {@link ClassWriter} sharing the constant
+     * pool of the {@link ClassReader} (see {@link ClassWriter#ClassWriter(ClassReader, int)}), the
+     * reader copies the method as is instead of parsing it.
+     * <p>
+     * <p>The default implementation calls {@link #visitMethod}, so that the class visitors which do
+     * not know about this method still see all the methods. Class visitors which do not change the
+     * methods that they do not transform, i.e. whose {@link #visitMethod} method returns the visitor
+     * returned by {@link #cv} for these methods, can override this method to delegate to {@link
+     * #cv} instead.
+     *
+     * @param access     the method's access flags (see {@link Opcodes}). This parameter also indicates if
+     *                   the method is synthetic and/or deprecated.
+     * @param name       the method's name.
+     * @param descriptor the method's descriptor (see {@link Type}).
+     * @param signature  the method's signature. May be <tt>null</tt> if the method parameters, return
+     *                   type and exceptions do not use generic types.
+     * @param exceptions the internal names of the method's exception classes (see {@link
+     *                   Type#getInternalName()}). May be <tt>null</tt>.
+     * @return an object to visit the byte code of the method, or <tt>null</tt> if this class visitor
+     * is not interested in visiting the code of this method.
+     */
+    public MethodVisitor visitMethodAsIs(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        return visitMethod(access, name, descriptor, signature, exceptions);
+    }
+
     /**
      * Visits the end of the class. This method, which is the last one to be called, is used to inform
      * the visitor that all the fields and methods of the class have been visited.
@@ -60,6 +60,36 @@ public class ClassWriter extends ClassVisitor {
      */
     public static final int COMPUTE_FRAMES = 2;
 
+    /**
+     * A flag to reuse the existing stack map frames of methods when {@link #COMPUTE_FRAMES} is set.
+     * If this flag is set, the frames of type {@link Opcodes#F_NEW} visited at the beginning of a
+     * basic block are trusted and written as is, and only the frames of the other basic blocks (e.g.
+     * those added by a transformation) are computed from the methods bytecode. This is much faster
+     * than computing all the frames, in particular for transformations which insert code without
+     * changing the existing control flow (e.g. at method entry and before return instructions), but
+     * requires the original frames to be visited with {@link ClassReader#EXPAND_FRAMES}, and to be
+     * kept consistent with the transformed code. If a reused frame is detected to be inconsistent
+     * with the code (i.e. if its stack size does not match), all the frames of the method are
+     * computed from scratch. This flag has no effect without {@link #COMPUTE_FRAMES}.
+     *
+     * @see #ClassWriter(int)
+     */
+    public static final int REUSE_FRAMES = 4;
+
+    /**
+     * A flag to remove the unreachable code of methods when {@link #COMPUTE_FRAMES} is set. Without
+     * this flag, the unreachable code found when computing the stack map frames is replaced with NOP
+     * ... NOP ATHROW instructions (because it cannot be given a consistent frame), and is kept in
+     * the generated class. If this flag is set, this code is removed instead, and the jump offsets,
+     * exception table, line number, local variable and type annotation ranges are updated
+     * accordingly. This requires a second pass over the generated class (a {@link ClassReader} to
+     * {@link ClassWriter} round trip), which is only done if some unreachable code has been found.
+     * This flag has no effect without {@link #COMPUTE_FRAMES}.
+     *
+     * @see #ClassWriter(int)
+     */
+    public static final int REMOVE_DEAD_CODE = 8;
+
     // Note: fields are ordered as in the ClassFile structure, and those related to attributes are
     // ordered as in Section 4.7 of the JVMS.
 
@@ -207,6 +237,17 @@ public class ClassWriter extends ClassVisitor {
      */
     private int compute;
 
+    /**
+     * The option flags passed to the constructor, used to reinitialize {@link #compute} in {@link
+     * #reset(ClassReader)}.
+     */
+    private final int flags;
+
+    /**
+     * The listener notified of the work done by this writer, or <tt>null</tt>.
+     */
+    MetricsListener metricsListener;
+
     // -----------------------------------------------------------------------------------------------
     // Constructor
     // -----------------------------------------------------------------------------------------------
@@ -215,7 +256,8 @@ public class ClassWriter extends ClassVisitor {
      * Constructs a new {@link ClassWriter} object.
      *
      * @param flags option flags that can be used to modify the default behavior of this class. Must
-     *              be zero or more of {@link #COMPUTE_MAXS} and {@link #COMPUTE_FRAMES}.
+     *              be zero or more of {@link #COMPUTE_MAXS}, {@link #COMPUTE_FRAMES}, {@link
+     *              #REUSE_FRAMES} and {@link #REMOVE_DEAD_CODE}.
      */
     public ClassWriter(final int flags) {
         this(null, flags);
@@ -241,19 +283,31 @@ public class ClassWriter extends ClassVisitor {
      *                    copy the entire constant pool and bootstrap methods from the original class and also to
      *                    copy other fragments of original bytecode where applicable.
      * @param flags       option flags that can be used to modify the default behavior of this class.Must be
-     *                    zero or more of {@link #COMPUTE_MAXS} and {@link #COMPUTE_FRAMES}. <i>These option flags do
+     *                    zero or more of {@link #COMPUTE_MAXS}, {@link #COMPUTE_FRAMES}, {@link #REUSE_FRAMES} and {@link #REMOVE_DEAD_CODE}. <i>These option flags do
      *                    not affect methods that are copied as is in the new class. This means that neither the
      *                    maximum stack size nor the stack frames will be computed for these methods</i>.
      */
     public ClassWriter(final ClassReader classReader, final int flags) {
         super(Opcodes.ASM6);
         symbolTable = classReader == null ? new SymbolTable(this) : new SymbolTable(this, classReader);
+        this.flags = flags;
+        this.compute = getCompute(flags);
+    }
+
+    /**
+     * Returns the value of {@link #compute} corresponding to the given option flags.
+     *
+     * @param flags zero or more of {@link #COMPUTE_MAXS} and {@link #COMPUTE_FRAMES}.
+     * @return one of {@link MethodWriter#COMPUTE_NOTHING}, {@link
+     * MethodWriter#COMPUTE_MAX_STACK_AND_LOCAL} or {@link MethodWriter#COMPUTE_ALL_FRAMES}.
+     */
+    private static int getCompute(final int flags) {
         if ((flags & COMPUTE_FRAMES) != 0) {
-            this.compute = MethodWriter.COMPUTE_ALL_FRAMES;
+            return MethodWriter.COMPUTE_ALL_FRAMES;
         } else if ((flags & COMPUTE_MAXS) != 0) {
-            this.compute = MethodWriter.COMPUTE_MAX_STACK_AND_LOCAL;
+            return MethodWriter.COMPUTE_MAX_STACK_AND_LOCAL;
         } else {
-            this.compute = MethodWriter.COMPUTE_NOTHING;
+            return MethodWriter.COMPUTE_NOTHING;
         }
     }
 
@@ -409,7 +463,15 @@ public class ClassWriter extends ClassVisitor {
             final String signature,
             final String[] exceptions) {
         MethodWriter methodWriter =
-                new MethodWriter(symbolTable, access, name, descriptor, signature, exceptions, compute);
+                new MethodWriter(
+                        symbolTable,
+                        access,
+                        name,
+                        descriptor,
+                        signature,
+                        exceptions,
+                        compute,
+                        compute == MethodWriter.COMPUTE_ALL_FRAMES && (flags & REUSE_FRAMES) != 0);
         if (firstMethod == null) {
             firstMethod = methodWriter;
         } else {
@@ -418,6 +480,16 @@ public class ClassWriter extends ClassVisitor {
         return lastMethod = methodWriter;
     }
 
+    @Override
+    public final MethodVisitor visitMethodAsIs(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        return visitMethod(access, name, descriptor, signature, exceptions);
+    }
+
     @Override
     public final void visitEnd() {
         // Nothing to do.
@@ -552,12 +624,24 @@ public class ClassWriter extends ClassVisitor {
         result.putShort(methodsCount);
         boolean hasFrames = false;
         boolean hasAsmInstructions = false;
+        int[][] deadCodeRanges = null;
+        int methodIndex = 0;
         methodWriter = firstMethod;
         while (methodWriter != null) {
             hasFrames |= methodWriter.hasFrames();
             hasAsmInstructions |= methodWriter.hasAsmInstructions();
+            if ((flags & REMOVE_DEAD_CODE) != 0) {
+                int[] methodDeadCodeRanges = methodWriter.getDeadCodeRanges();
+                if (methodDeadCodeRanges != null) {
+                    if (deadCodeRanges == null) {
+                        deadCodeRanges = new int[methodsCount][];
+                    }
+                    deadCodeRanges[methodIndex] = methodDeadCodeRanges;
+                }
+            }
             methodWriter.putMethodInfo(result);
             methodWriter = (MethodWriter) methodWriter.mv;
+            ++methodIndex;
         }
         // For ease of reference, we use here the same attribute order as in Section 4.7 of the JVMS.
         result.putShort(attributesCount);
@@ -625,8 +709,8 @@ public class ClassWriter extends ClassVisitor {
         }
 
         // Third step: do a ClassReader->ClassWriter round trip if the generated class contains ASM
-        // specific instructions due to large forward jumps.
-        if (hasAsmInstructions) {
+        // specific instructions due to large forward jumps, or unreachable code to be removed.
+        if (hasAsmInstructions || deadCodeRanges != null) {
             Attribute[] attributes = getAttributePrototypes();
             firstField = null;
             lastField = null;
@@ -638,18 +722,94 @@ public class ClassWriter extends ClassVisitor {
             lastRuntimeInvisibleTypeAnnotation = null;
             moduleWriter = null;
             firstAttribute = null;
-            compute = hasFrames ? MethodWriter.COMPUTE_INSERTED_FRAMES : MethodWriter.COMPUTE_NOTHING;
-            new ClassReader(result.data, 0, /* checkClassVersion = */ false)
-                    .accept(
-                            this,
-                            attributes,
-                            (hasFrames ? ClassReader.EXPAND_FRAMES : 0) | ClassReader.EXPAND_ASM_INSNS);
+            int parsingOptions = hasFrames ? ClassReader.EXPAND_FRAMES : 0;
+            if (hasAsmInstructions) {
+                compute = hasFrames ? MethodWriter.COMPUTE_INSERTED_FRAMES : MethodWriter.COMPUTE_NOTHING;
+                parsingOptions |= ClassReader.EXPAND_ASM_INSNS;
+            } else {
+                // The remaining frames are still valid, but the maximum stack size can decrease.
+                compute = MethodWriter.COMPUTE_MAX_STACK_AND_LOCAL;
+            }
+            if (deadCodeRanges == null) {
+                new ClassReader(result.data, 0, /* checkClassVersion = */ false)
+                        .accept(this, attributes, parsingOptions);
+            } else {
+                DeadCodeRemover deadCodeRemover = new DeadCodeRemover(this, deadCodeRanges);
+                deadCodeRemover
+                        .newClassReader(result.data, /* checkClassVersion = */ false)
+                        .accept(deadCodeRemover, attributes, parsingOptions);
+            }
             return toByteArray();
         } else {
+            if (metricsListener != null) {
+                metricsListener.classWritten(
+                        symbolTable.getClassName(),
+                        result.length,
+                        symbolTable.getEntryCount(),
+                        symbolTable.getCollisionCount());
+            }
             return result.data;
         }
     }
 
+    /**
+     * Sets the listener notified of the work done by this writer. The listener is kept when this
+     * writer is {@link #reset}.
+     *
+     * @param metricsListener a metrics listener, or <tt>null</tt> to disable measurements.
+     */
+    public void setMetricsListener(final MetricsListener metricsListener) {
+        this.metricsListener = metricsListener;
+    }
+
+    /**
+     * Discards the content of this ClassWriter, so that it can be reused to generate another class
+     * with the same option flags. The internal buffers of the symbol table (the constant pool and the
+     * hash set of its entries) are kept, which avoids reallocating and enlarging them for each class.
+     * This is useful to generate many classes with a single writer, e.g. one per thread. <i>This
+     * method must not be called while a class is being generated</i>.
+     */
+    public void reset() {
+        reset(null);
+    }
+
+    /**
+     * Discards the content of this ClassWriter, so that it can be reused to transform another class.
+     * The constant pool and bootstrap methods of the given ClassReader are copied, as with {@link
+     * #ClassWriter(ClassReader, int)}, in the internal buffers of the symbol table, which are kept
+     * from the previous class and enlarged to the constant pool size of the given reader if needed.
+     *
+     * @param classReader the {@link ClassReader} used to read the original class, or <tt>null</tt>
+     *                    to generate a class from scratch.
+     */
+    public void reset(final ClassReader classReader) {
+        version = 0;
+        accessFlags = 0;
+        thisClass = 0;
+        superClass = 0;
+        interfaceCount = 0;
+        interfaces = null;
+        firstField = null;
+        lastField = null;
+        firstMethod = null;
+        lastMethod = null;
+        numberOfClasses = 0;
+        classes = null;
+        enclosingClassIndex = 0;
+        enclosingMethodIndex = 0;
+        signatureIndex = 0;
+        sourceFileIndex = 0;
+        debugExtension = null;
+        lastRuntimeVisibleAnnotation = null;
+        lastRuntimeInvisibleAnnotation = null;
+        lastRuntimeVisibleTypeAnnotation = null;
+        lastRuntimeInvisibleTypeAnnotation = null;
+        moduleWriter = null;
+        firstAttribute = null;
+        compute = getCompute(flags);
+        symbolTable.reset(classReader);
+    }
+
     /**
      * Returns the prototypes of the attributes used by this class, its fields and its methods.
      *
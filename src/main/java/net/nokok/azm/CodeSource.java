@@ -0,0 +1,148 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm;
+
+/**
+ * The location of the Code attribute of a method in a {@link ClassReader}. It is passed by the
+ * reader to {@link MethodVisitor#visitCodeSource}, and allows a visitor to defer the parsing of the
+ * method's code, or to skip it entirely when the code is copied as is in a {@link ClassWriter}
+ * sharing the constant pool of the reader (see {@link ClassWriter#ClassWriter(ClassReader, int)}).
+ */
+public final class CodeSource {
+
+    /**
+     * The ClassReader containing the Code attribute.
+     */
+    final ClassReader classReader;
+
+    /**
+     * The offset in {@link ClassReader#b} of the Code attribute content, i.e. excluding its
+     * attribute_name_index and attribute_length fields.
+     */
+    final int codeOffset;
+
+    /**
+     * The length in bytes of the Code attribute content, i.e. its attribute_length field.
+     */
+    final int codeLength;
+
+    /**
+     * The access flags of the method containing this code.
+     */
+    private final int methodAccessFlags;
+
+    /**
+     * The name of the method containing this code.
+     */
+    private final String methodName;
+
+    /**
+     * The descriptor of the method containing this code.
+     */
+    private final String methodDescriptor;
+
+    /**
+     * The options used to parse the class containing this code.
+     */
+    private final int parsingOptions;
+
+    /**
+     * The prototypes of the attributes that must be parsed in this code.
+     */
+    private final Attribute[] attributePrototypes;
+
+    /**
+     * The start offsets of each element of the bootstrap_methods array of the class, or
+     * <tt>null</tt>.
+     */
+    private final int[] bootstrapMethodOffsets;
+
+    /**
+     * Constructs a new {@link CodeSource}.
+     *
+     * @param classReader the ClassReader containing the Code attribute.
+     * @param context     information about the class being parsed, and about the method containing
+     *                    this code.
+     * @param codeOffset  the offset of the Code attribute content in the class reader.
+     * @param codeLength  the length of the Code attribute content.
+     */
+    CodeSource(
+            final ClassReader classReader,
+            final Context context,
+            final int codeOffset,
+            final int codeLength) {
+        this.classReader = classReader;
+        this.codeOffset = codeOffset;
+        this.codeLength = codeLength;
+        this.methodAccessFlags = context.currentMethodAccessFlags;
+        this.methodName = context.currentMethodName;
+        this.methodDescriptor = context.currentMethodDescriptor;
+        this.parsingOptions = context.parsingOptions;
+        this.attributePrototypes = context.attributePrototypes;
+        this.bootstrapMethodOffsets = context.bootstrapMethodOffsets;
+    }
+
+    /**
+     * Returns the ClassReader containing this code.
+     *
+     * @return the ClassReader containing this code.
+     */
+    public ClassReader getClassReader() {
+        return classReader;
+    }
+
+    /**
+     * Returns the size of this code, in bytes.
+     *
+     * @return the length of the Code attribute content, including the bytecode, the exception table
+     * and the attributes of the code (line numbers, local variables, stack map frames, etc).
+     */
+    public int getLength() {
+        return codeLength;
+    }
+
+    /**
+     * Makes the given visitor visit this code, as {@link ClassReader#accept} would have done it, i.e.
+     * from {@link MethodVisitor#visitCode} to {@link MethodVisitor#visitMaxs} included. The {@link
+     * MethodVisitor#visitEnd} method is not called.
+     *
+     * @param methodVisitor the visitor that must visit this code.
+     */
+    public void accept(final MethodVisitor methodVisitor) {
+        Context context = new Context();
+        context.attributePrototypes = attributePrototypes;
+        context.parsingOptions = parsingOptions;
+        context.charBuffer = new char[classReader.getMaxStringLength()];
+        context.bootstrapMethodOffsets = bootstrapMethodOffsets;
+        context.currentMethodAccessFlags = methodAccessFlags;
+        context.currentMethodName = methodName;
+        context.currentMethodDescriptor = methodDescriptor;
+        methodVisitor.visitCode();
+        classReader.readCode(methodVisitor, context, codeOffset);
+    }
+}
@@ -0,0 +1,288 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm;
+
+import java.util.HashSet;
+
+/**
+ * A {@link ClassVisitor} which removes the unreachable code found by a {@link ClassWriter} with
+ * the {@link ClassWriter#REMOVE_DEAD_CODE} option, when the class generated by this writer is read
+ * back with {@link #newClassReader}. The unreachable code was replaced with NOP ... NOP ATHROW
+ * instructions, preceded by a stack map frame, and is removed with the instructions, frames, line
+ * numbers and instruction annotations it contains. The labels it contains are kept, so that the
+ * exception table ranges, local variable ranges and local variable annotation ranges which start or
+ * end in this code are moved to the following instruction.
+ */
+final class DeadCodeRemover extends ClassVisitor {
+
+    /**
+     * The [start, end) bytecode offset pairs of the unreachable code of each method, in the order
+     * in which the methods are visited. Elements are <tt>null</tt> for methods without unreachable
+     * code.
+     */
+    private final int[][] deadCodeRanges;
+
+    /**
+     * The index of the method being visited.
+     */
+    private int methodIndex;
+
+    /**
+     * The labels created by the class reader for the method being visited which are inside its
+     * unreachable code.
+     */
+    private final HashSet<Label> deadLabels;
+
+    /**
+     * Constructs a new {@link DeadCodeRemover}.
+     *
+     * @param classVisitor   the class visitor to which this remover must delegate method calls.
+     * @param deadCodeRanges the unreachable code of each method, as returned by {@link
+     *                       MethodWriter#getDeadCodeRanges}.
+     */
+    DeadCodeRemover(final ClassVisitor classVisitor, final int[][] deadCodeRanges) {
+        super(Opcodes.ASM6, classVisitor);
+        this.deadCodeRanges = deadCodeRanges;
+        this.methodIndex = -1;
+        this.deadLabels = new HashSet<Label>();
+    }
+
+    /**
+     * Returns a class reader which can be used to read the given class with this remover.
+     *
+     * @param classFile         the class generated by the {@link ClassWriter} which computed the
+     *                          unreachable code ranges.
+     * @param checkClassVersion whether to check the class version or not.
+     * @return a class reader which reports the labels it creates to this remover.
+     */
+    ClassReader newClassReader(final byte[] classFile, final boolean checkClassVersion) {
+        return new ClassReader(classFile, 0, checkClassVersion) {
+            @Override
+            protected Label readLabel(final int bytecodeOffset, final Label[] labels) {
+                Label label = super.readLabel(bytecodeOffset, labels);
+                if (isDeadCode(bytecodeOffset)) {
+                    deadLabels.add(label);
+                }
+                return label;
+            }
+        };
+    }
+
+    /**
+     * Returns whether the given bytecode offset is in the unreachable code of the method being
+     * visited.
+     *
+     * @param bytecodeOffset a bytecode offset in the method being visited.
+     * @return whether this offset is in an unreachable code range of this method.
+     */
+    private boolean isDeadCode(final int bytecodeOffset) {
+        int[] ranges = deadCodeRanges[methodIndex];
+        if (ranges != null) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (bytecodeOffset < ranges[i]) {
+                    return false;
+                }
+                if (bytecodeOffset < ranges[i + 1]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public MethodVisitor visitMethod(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        ++methodIndex;
+        deadLabels.clear();
+        MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+        if (deadCodeRanges[methodIndex] == null || methodVisitor == null) {
+            return methodVisitor;
+        }
+        return new DeadCodeMethodRemover(methodVisitor);
+    }
+
+    /**
+     * A {@link MethodVisitor} which removes the instructions following a label in the unreachable
+     * code, until a label in reachable code is visited.
+     */
+    private final class DeadCodeMethodRemover extends MethodVisitor {
+
+        /**
+         * Whether the instructions currently visited are unreachable.
+         */
+        private boolean dead;
+
+        DeadCodeMethodRemover(final MethodVisitor methodVisitor) {
+            super(Opcodes.ASM6, methodVisitor);
+        }
+
+        @Override
+        public void visitFrame(
+                final int type,
+                final int nLocal,
+                final Object[] local,
+                final int nStack,
+                final Object[] stack) {
+            if (!dead) {
+                super.visitFrame(type, nLocal, local, nStack, stack);
+            }
+        }
+
+        @Override
+        public void visitInsn(final int opcode) {
+            if (!dead) {
+                super.visitInsn(opcode);
+            }
+        }
+
+        @Override
+        public void visitIntInsn(final int opcode, final int operand) {
+            if (!dead) {
+                super.visitIntInsn(opcode, operand);
+            }
+        }
+
+        @Override
+        public void visitVarInsn(final int opcode, final int var) {
+            if (!dead) {
+                super.visitVarInsn(opcode, var);
+            }
+        }
+
+        @Override
+        public void visitTypeInsn(final int opcode, final String type) {
+            if (!dead) {
+                super.visitTypeInsn(opcode, type);
+            }
+        }
+
+        @Override
+        public void visitFieldInsn(
+                final int opcode, final String owner, final String name, final String descriptor) {
+            if (!dead) {
+                super.visitFieldInsn(opcode, owner, name, descriptor);
+            }
+        }
+
+        @Override
+        public void visitMethodInsn(
+                final int opcode,
+                final String owner,
+                final String name,
+                final String descriptor,
+                final boolean isInterface) {
+            if (!dead) {
+                super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+            }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(
+                final String name,
+                final String descriptor,
+                final Handle bootstrapMethodHandle,
+                final Object... bootstrapMethodArguments) {
+            if (!dead) {
+                super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+            }
+        }
+
+        @Override
+        public void visitJumpInsn(final int opcode, final Label label) {
+            if (!dead) {
+                super.visitJumpInsn(opcode, label);
+            }
+        }
+
+        @Override
+        public void visitLabel(final Label label) {
+            dead = deadLabels.contains(label);
+            super.visitLabel(label);
+        }
+
+        @Override
+        public void visitLdcInsn(final Object value) {
+            if (!dead) {
+                super.visitLdcInsn(value);
+            }
+        }
+
+        @Override
+        public void visitIincInsn(final int var, final int increment) {
+            if (!dead) {
+                super.visitIincInsn(var, increment);
+            }
+        }
+
+        @Override
+        public void visitTableSwitchInsn(
+                final int min, final int max, final Label dflt, final Label... labels) {
+            if (!dead) {
+                super.visitTableSwitchInsn(min, max, dflt, labels);
+            }
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+            if (!dead) {
+                super.visitLookupSwitchInsn(dflt, keys, labels);
+            }
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
+            if (!dead) {
+                super.visitMultiANewArrayInsn(descriptor, numDimensions);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitInsnAnnotation(
+                final int typeRef,
+                final TypePath typePath,
+                final String descriptor,
+                final boolean visible) {
+            if (dead) {
+                return null;
+            }
+            return super.visitInsnAnnotation(typeRef, typePath, descriptor, visible);
+        }
+
+        @Override
+        public void visitLineNumber(final int line, final Label start) {
+            if (!deadLabels.contains(start)) {
+                super.visitLineNumber(line, start);
+            }
+        }
+    }
+}
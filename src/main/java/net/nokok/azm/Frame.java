@@ -262,7 +262,12 @@ class Frame {
         if (type instanceof Integer) {
             return CONSTANT_KIND | ((Integer) type).intValue();
         } else if (type instanceof String) {
-            String descriptor = Type.getObjectType((String) type).getDescriptor();
+            String internalName = (String) type;
+            if (internalName.charAt(0) != '[') {
+                // Avoid creating a descriptor for the common case of a class type.
+                return getAbstractTypeFromInternalName(symbolTable, internalName);
+            }
+            String descriptor = Type.getObjectType(internalName).getDescriptor();
             return getAbstractTypeFromDescriptor(symbolTable, descriptor, 0);
         } else {
             return UNINITIALIZED_KIND
@@ -448,6 +453,15 @@ class Frame {
             final Object[] local,
             final int nStack,
             final Object[] stack) {
+        if (inputLocals == null) {
+            int nInputLocal = nLocal;
+            for (int i = 0; i < nLocal; ++i) {
+                if (local[i] == Opcodes.LONG || local[i] == Opcodes.DOUBLE) {
+                    ++nInputLocal;
+                }
+            }
+            inputLocals = new int[nInputLocal];
+        }
         int inputLocalIndex = 0;
         for (int i = 0; i < nLocal; ++i) {
             inputLocals[inputLocalIndex++] = getAbstractTypeFromApiFormat(symbolTable, local[i]);
@@ -480,6 +494,52 @@ class Frame {
         return inputStack.length;
     }
 
+    /**
+     * Returns the number of local variables in the input frame.
+     *
+     * @return the number of local variables in the input frame.
+     */
+    final int getInputLocalsSize() {
+        return inputLocals.length;
+    }
+
+    /**
+     * Extends the input local variables of this frame with TOP values, so that all the input frames
+     * of a method have the same number of local variables (as required by {@link #merge}).
+     *
+     * @param maxLocals the maximum number of local variables of the method.
+     */
+    final void padInputLocals(final int maxLocals) {
+        int nInputLocal = inputLocals.length;
+        if (nInputLocal < maxLocals) {
+            int[] newInputLocals = new int[maxLocals];
+            System.arraycopy(inputLocals, 0, newInputLocals, 0, nInputLocal);
+            for (int i = nInputLocal; i < maxLocals; ++i) {
+                newInputLocals[i] = TOP;
+            }
+            inputLocals = newInputLocals;
+        }
+    }
+
+    /**
+     * Discards the input frame of this frame, so that it can be computed again with {@link #merge}.
+     * The output frame, relative to the input one, is kept.
+     */
+    final void clearInputFrame() {
+        inputLocals = null;
+        inputStack = null;
+    }
+
+    /**
+     * Returns the number of stack elements in the output frame. This method must only be called
+     * after the input frame has been set.
+     *
+     * @return the number of stack elements in the output frame.
+     */
+    final int getOutputStackSize() {
+        return inputStack.length + outputStackStart + outputStackTop;
+    }
+
     // -----------------------------------------------------------------------------------------------
     // Methods related to the output frame
     // -----------------------------------------------------------------------------------------------
@@ -92,6 +92,13 @@ public class Label {
      */
     static final int FLAG_SUBROUTINE_END = 128;
 
+    /**
+     * A flag indicating that the input frame of the basic block corresponding to a label was given
+     * with {@link MethodVisitor#visitFrame}, and is reused instead of being computed (see {@link
+     * ClassWriter#REUSE_FRAMES}).
+     */
+    static final int FLAG_INPUT_FRAME_REUSED = 256;
+
     /**
      * The number of elements to add to the {@link #otherLineNumbers} array when it needs to be
      * resized to store a new source line number.
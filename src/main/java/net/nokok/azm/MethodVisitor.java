@@ -217,6 +217,40 @@ public abstract class MethodVisitor {
         }
     }
 
+    /**
+     * Returns whether this visitor may take the responsibility of the code of the method, i.e.
+     * whether {@link #visitCodeSource} may return <tt>true</tt>. {@link ClassReader} calls this
+     * method before creating the {@link CodeSource} passed to {@link #visitCodeSource}, so that this
+     * object is not allocated for the visitors which always visit the code.
+     * <p>
+     * <p>The default implementation returns <tt>false</tt>. Subclasses which override {@link
+     * #visitCodeSource} must also override this method.
+     *
+     * @return <tt>true</tt> if {@link #visitCodeSource} must be called, <tt>false</tt> if the code
+     * must be visited as usual.
+     */
+    public boolean wantsCodeSource() {
+        return false;
+    }
+
+    /**
+     * Visits the not yet parsed code of the method, if any (i.e. non abstract method). This method is
+     * called by {@link ClassReader} before the code is visited, if {@link #wantsCodeSource} returns
+     * <tt>true</tt>. If it returns <tt>true</tt>, the
+     * visitor takes the responsibility of the code (e.g. to parse it later with {@link
+     * CodeSource#accept}, or to copy it as is), and {@link #visitCode} and the other code visit
+     * methods are not called. Otherwise the code is visited as usual.
+     * <p>
+     * <p>The default implementation returns <tt>false</tt>, and does <i>not</i> delegate to {@link
+     * #mv}, since the visitor would otherwise not see the code that it may need to transform.
+     *
+     * @param codeSource the location of the code in the class being read.
+     * @return <tt>true</tt> if the code must not be visited, <tt>false</tt> otherwise.
+     */
+    public boolean visitCodeSource(final CodeSource codeSource) {
+        return false;
+    }
+
     /**
      * Starts the visit of the method's code, if any (i.e. non abstract method).
      */
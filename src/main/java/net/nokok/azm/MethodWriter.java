@@ -27,6 +27,8 @@
 // THE POSSIBILITY OF SUCH DAMAGE.
 package net.nokok.azm;
 
+import java.util.Arrays;
+
 /**
  * A {@link MethodVisitor} that generates a corresponding 'method_info' structure, as defined in the
  * Java Virtual Machine Specification (JVMS).
@@ -304,6 +306,11 @@ final class MethodWriter extends MethodVisitor {
      */
     private final int descriptorIndex;
 
+    /**
+     * The name of this method.
+     */
+    private final String name;
+
     /**
      * The descriptor of this method.
      */
@@ -505,6 +512,13 @@ final class MethodWriter extends MethodVisitor {
      */
     private final int compute;
 
+    /**
+     * Whether the frames visited with {@link #visitFrame} at the beginning of basic blocks must be
+     * reused instead of being computed. Only used if {@link #compute} is equal to {@link
+     * #COMPUTE_ALL_FRAMES}.
+     */
+    private final boolean reuseFrames;
+
     /**
      * The first basic block of the method. The next ones (in bytecode offset order) can be accessed
      * with the {@link Label#nextBasicBlock} field.
@@ -585,6 +599,18 @@ final class MethodWriter extends MethodVisitor {
      */
     private boolean hasAsmInstructions;
 
+    /**
+     * The bytecode offset ranges of the unreachable code found by {@link #computeAllFrames}, as
+     * [start, end) pairs sorted by offset. Only the first {@link #deadCodeRangesLength} elements are
+     * used. May be <tt>null</tt>.
+     */
+    private int[] deadCodeRanges;
+
+    /**
+     * The number of elements used in {@link #deadCodeRanges}.
+     */
+    private int deadCodeRangesLength;
+
     /**
      * The start offset of the last visited instruction. Used to set the offset field of type
      * annotations of type 'offset_target' (see <a
@@ -605,6 +631,12 @@ final class MethodWriter extends MethodVisitor {
      */
     int sourceLength;
 
+    /**
+     * The Code attribute which must be copied as is to get the Code attribute of this method, or
+     * <tt>null</tt>. If not null, its ClassReader is {@link #getSource}.
+     */
+    private CodeSource codeSource;
+
     // -----------------------------------------------------------------------------------------------
     // Constructor and accessors
     // -----------------------------------------------------------------------------------------------
@@ -619,6 +651,7 @@ final class MethodWriter extends MethodVisitor {
      * @param signature   the method's signature. May be <tt>null</tt>.
      * @param exceptions  the internal names of the method's exceptions. May be <tt>null</tt>.
      * @param compute     indicates what must be computed (see #compute).
+     * @param reuseFrames whether the visited frames must be reused (see #reuseFrames).
      */
     MethodWriter(
             final SymbolTable symbolTable,
@@ -627,12 +660,14 @@ final class MethodWriter extends MethodVisitor {
             final String descriptor,
             final String signature,
             final String[] exceptions,
-            final int compute) {
+            final int compute,
+            final boolean reuseFrames) {
         super(Opcodes.ASM6);
         this.symbolTable = symbolTable;
         this.accessFlags = "<init>".equals(name) ? access | Constants.ACC_CONSTRUCTOR : access;
         this.nameIndex = symbolTable.addConstantUtf8(name);
         this.descriptorIndex = symbolTable.addConstantUtf8(descriptor);
+        this.name = name;
         this.descriptor = descriptor;
         this.signatureIndex = signature == null ? 0 : symbolTable.addConstantUtf8(signature);
         if (exceptions != null && exceptions.length > 0) {
@@ -646,6 +681,7 @@ final class MethodWriter extends MethodVisitor {
             this.exceptionIndexTable = null;
         }
         this.compute = compute;
+        this.reuseFrames = reuseFrames;
         if (compute != COMPUTE_NOTHING) {
             // Update maxLocals and currentLocals.
             int argumentsSize = Type.getArgumentsAndReturnSizes(descriptor) >> 2;
@@ -672,6 +708,20 @@ final class MethodWriter extends MethodVisitor {
         return hasAsmInstructions;
     }
 
+    /**
+     * Returns the unreachable code found when computing the stack map frames of this method. This
+     * code is replaced with NOP ... NOP ATHROW in the generated bytecode.
+     *
+     * @return the [start, end) bytecode offset pairs of the unreachable code of this method, sorted
+     * by offset, or <tt>null</tt> if all its code is reachable.
+     */
+    int[] getDeadCodeRanges() {
+        if (deadCodeRanges == null) {
+            return null;
+        }
+        return Arrays.copyOf(deadCodeRanges, deadCodeRangesLength);
+    }
+
     // -----------------------------------------------------------------------------------------------
     // Implementation of the MethodVisitor abstract class
     // -----------------------------------------------------------------------------------------------
@@ -775,6 +825,22 @@ final class MethodWriter extends MethodVisitor {
         }
     }
 
+    @Override
+    public boolean wantsCodeSource() {
+        return getSource() != null && code.length == 0;
+    }
+
+    @Override
+    public boolean visitCodeSource(final CodeSource codeSource) {
+        // The code can be copied as is only if it uses the same constant pool indices as this class,
+        // i.e. if the constant pool of its class was copied in the symbol table.
+        if (codeSource.getClassReader() != getSource() || code.length > 0) {
+            return false;
+        }
+        this.codeSource = codeSource;
+        return true;
+    }
+
     @Override
     public void visitCode() {
         // Nothing to do.
@@ -788,6 +854,21 @@ final class MethodWriter extends MethodVisitor {
             final int nStack,
             final Object[] stack) {
         if (compute == COMPUTE_ALL_FRAMES) {
+            // Only frames visited at the beginning of a basic block (other than the first one, whose
+            // frame is implicit) can be reused. Frames with uninitialized types are not reused either,
+            // because their class name is not known (it is only given by the NEW instruction).
+            if (reuseFrames
+                    && type == Opcodes.F_NEW
+                    && currentBasicBlock != null
+                    && currentBasicBlock != firstBasicBlock
+                    && currentBasicBlock.bytecodeOffset == code.length
+                    && !hasUninitializedType(nLocal, local)
+                    && !hasUninitializedType(nStack, stack)) {
+                Frame frame = currentBasicBlock.frame;
+                frame.setInputFrameFromApiFormat(symbolTable, nLocal, local, nStack, stack);
+                currentBasicBlock.flags |= Label.FLAG_INPUT_FRAME_REUSED;
+                maxLocals = Math.max(maxLocals, frame.getInputLocalsSize());
+            }
             return;
         }
 
@@ -1566,7 +1647,15 @@ final class MethodWriter extends MethodVisitor {
     @Override
     public void visitMaxs(final int maxStack, final int maxLocals) {
         if (compute == COMPUTE_ALL_FRAMES) {
-            computeAllFrames();
+            MetricsListener metricsListener = symbolTable.classWriter.metricsListener;
+            if (metricsListener == null) {
+                computeAllFrames();
+            } else {
+                long startTime = System.nanoTime();
+                computeAllFrames();
+                metricsListener.framesComputed(
+                        symbolTable.getClassName(), name, descriptor, System.nanoTime() - startTime);
+            }
         } else if (compute == COMPUTE_MAX_STACK_AND_LOCAL) {
             computeMaxStackAndLocal();
         } else {
@@ -1604,41 +1693,33 @@ final class MethodWriter extends MethodVisitor {
         firstFrame.setInputFrameFromDescriptor(symbolTable, accessFlags, descriptor, this.maxLocals);
         firstFrame.accept(this);
 
-        // Fix point algorithm: add the first basic block to a list of blocks to process (i.e. blocks
-        // whose stack map frame has changed) and, while there are blocks to process, remove one from
-        // the list and update the stack map frames of its successor blocks in the control flow graph
-        // (which might change them, in which case these blocks must be processed too, and are thus
-        // added to the list of blocks to process). Also compute the maximum stack size of the method,
-        // as a by-product.
-        Label listOfBlocksToProcess = firstBasicBlock;
-        listOfBlocksToProcess.nextListElement = Label.EMPTY_LIST;
-        int maxStackSize = 0;
-        while (listOfBlocksToProcess != Label.EMPTY_LIST) {
-            // Remove a basic block from the list of blocks to process.
-            Label basicBlock = listOfBlocksToProcess;
-            listOfBlocksToProcess = listOfBlocksToProcess.nextListElement;
-            basicBlock.nextListElement = null;
-            // By definition, basicBlock is reachable.
-            basicBlock.flags |= Label.FLAG_REACHABLE;
-            // Update the (absolute) maximum stack size.
-            int maxBlockStackSize = basicBlock.frame.getInputStackSize() + basicBlock.outputStackMax;
-            if (maxBlockStackSize > maxStackSize) {
-                maxStackSize = maxBlockStackSize;
+        int maxStackSize;
+        if (reuseFrames) {
+            // All the input frames must have the same number of local variables.
+            Label basicBlock = firstBasicBlock;
+            while (basicBlock != null) {
+                if ((basicBlock.flags & Label.FLAG_INPUT_FRAME_REUSED) != 0) {
+                    basicBlock.frame.padInputLocals(this.maxLocals);
+                }
+                basicBlock = basicBlock.nextBasicBlock;
             }
-            // Update the successor blocks of basicBlock in the control flow graph.
-            Edge outgoingEdge = basicBlock.outgoingEdges;
-            while (outgoingEdge != null) {
-                Label successorBlock = outgoingEdge.successor.getCanonicalInstance();
-                boolean successorBlockChanged =
-                        basicBlock.frame.merge(symbolTable, successorBlock.frame, outgoingEdge.info);
-                if (successorBlockChanged && successorBlock.nextListElement == null) {
-                    // If successorBlock has changed it must be processed. Thus, if it is not already in the
-                    // list of blocks to process, add it to this list.
-                    successorBlock.nextListElement = listOfBlocksToProcess;
-                    listOfBlocksToProcess = successorBlock;
+            maxStackSize = computeFrames();
+            if (maxStackSize < 0) {
+                // Some reused frames are inconsistent with the code: discard them, as well as the
+                // partial results of the fix point algorithm, and compute all the frames from scratch.
+                basicBlock = firstBasicBlock;
+                while (basicBlock != null) {
+                    basicBlock.flags &= ~(Label.FLAG_INPUT_FRAME_REUSED | Label.FLAG_REACHABLE);
+                    basicBlock.nextListElement = null;
+                    if (basicBlock != firstBasicBlock) {
+                        basicBlock.frame.clearInputFrame();
+                    }
+                    basicBlock = basicBlock.nextBasicBlock;
                 }
-                outgoingEdge = outgoingEdge.nextEdge;
+                maxStackSize = computeFrames();
             }
+        } else {
+            maxStackSize = computeFrames();
         }
 
         // Loop over all the basic blocks and visit the stack map frames that must be stored in the
@@ -1669,6 +1750,7 @@ final class MethodWriter extends MethodVisitor {
                     visitFrameEnd();
                     // Remove this unreachable basic block from the exception handler ranges.
                     firstHandler = Handler.removeRange(firstHandler, basicBlock, nextBasicBlock);
+                    addDeadCodeRange(startOffset, endOffset + 1);
                     // The maximum stack size is now at least one, because of the Throwable declared above.
                     maxStackSize = Math.max(maxStackSize, 1);
                 }
@@ -1679,6 +1761,101 @@ final class MethodWriter extends MethodVisitor {
         this.maxStack = maxStackSize;
     }
 
+    /**
+     * Adds a range of unreachable code to {@link #deadCodeRanges}, merging it with the previous range
+     * if they are adjacent.
+     *
+     * @param startOffset the start offset of the unreachable code (inclusive).
+     * @param endOffset   the end offset of the unreachable code (exclusive).
+     */
+    private void addDeadCodeRange(final int startOffset, final int endOffset) {
+        if (deadCodeRanges == null) {
+            deadCodeRanges = new int[4];
+        } else if (deadCodeRanges[deadCodeRangesLength - 1] == startOffset) {
+            deadCodeRanges[deadCodeRangesLength - 1] = endOffset;
+            return;
+        } else if (deadCodeRangesLength == deadCodeRanges.length) {
+            deadCodeRanges = Arrays.copyOf(deadCodeRanges, 2 * deadCodeRangesLength);
+        }
+        deadCodeRanges[deadCodeRangesLength++] = startOffset;
+        deadCodeRanges[deadCodeRangesLength++] = endOffset;
+    }
+
+    /**
+     * Returns whether the given stack map frame types contain an uninitialized type.
+     *
+     * @param nTypes the number of types to check.
+     * @param types  the types to check, in the format used by {@link #visitFrame}.
+     * @return whether the given types contain a {@link Label} designating a NEW instruction.
+     */
+    private static boolean hasUninitializedType(final int nTypes, final Object[] types) {
+        for (int i = 0; i < nTypes; ++i) {
+            if (types[i] instanceof Label) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Computes the input frames of the reachable basic blocks of the method, with a fix point
+     * algorithm. The input frames marked with {@link Label#FLAG_INPUT_FRAME_REUSED} are not changed.
+     *
+     * @return the maximum stack size of the method, or -1 if a reused input frame is not consistent
+     * with the output frame of one of its predecessors.
+     */
+    private int computeFrames() {
+        // Fix point algorithm: add the first basic block to a list of blocks to process (i.e. blocks
+        // whose stack map frame has changed) and, while there are blocks to process, remove one from
+        // the list and update the stack map frames of its successor blocks in the control flow graph
+        // (which might change them, in which case these blocks must be processed too, and are thus
+        // added to the list of blocks to process). Also compute the maximum stack size of the method,
+        // as a by-product.
+        Label listOfBlocksToProcess = firstBasicBlock;
+        listOfBlocksToProcess.nextListElement = Label.EMPTY_LIST;
+        int maxStackSize = 0;
+        while (listOfBlocksToProcess != Label.EMPTY_LIST) {
+            // Remove a basic block from the list of blocks to process.
+            Label basicBlock = listOfBlocksToProcess;
+            listOfBlocksToProcess = listOfBlocksToProcess.nextListElement;
+            basicBlock.nextListElement = null;
+            // By definition, basicBlock is reachable.
+            basicBlock.flags |= Label.FLAG_REACHABLE;
+            // Update the (absolute) maximum stack size.
+            int maxBlockStackSize = basicBlock.frame.getInputStackSize() + basicBlock.outputStackMax;
+            if (maxBlockStackSize > maxStackSize) {
+                maxStackSize = maxBlockStackSize;
+            }
+            // Update the successor blocks of basicBlock in the control flow graph.
+            Edge outgoingEdge = basicBlock.outgoingEdges;
+            while (outgoingEdge != null) {
+                Label successorBlock = outgoingEdge.successor.getCanonicalInstance();
+                boolean successorBlockChanged;
+                if ((successorBlock.flags & Label.FLAG_INPUT_FRAME_REUSED) != 0) {
+                    // The input frame of successorBlock is known, and must only be processed once. Its
+                    // stack size is the only property which can be checked without the type hierarchy.
+                    int stackSize =
+                            outgoingEdge.info > 0 ? 1 : basicBlock.frame.getOutputStackSize();
+                    if (successorBlock.frame.getInputStackSize() != stackSize) {
+                        return -1;
+                    }
+                    successorBlockChanged = (successorBlock.flags & Label.FLAG_REACHABLE) == 0;
+                } else {
+                    successorBlockChanged =
+                            basicBlock.frame.merge(symbolTable, successorBlock.frame, outgoingEdge.info);
+                }
+                if (successorBlockChanged && successorBlock.nextListElement == null) {
+                    // If successorBlock has changed it must be processed. Thus, if it is not already in the
+                    // list of blocks to process, add it to this list.
+                    successorBlock.nextListElement = listOfBlocksToProcess;
+                    listOfBlocksToProcess = successorBlock;
+                }
+                outgoingEdge = outgoingEdge.nextEdge;
+            }
+        }
+        return maxStackSize;
+    }
+
     /**
      * Computes the maximum stack size of the method.
      */
@@ -2021,7 +2198,11 @@ final class MethodWriter extends MethodVisitor {
         // 2 bytes each for access_flags, name_index, descriptor_index and attributes_count.
         int size = 8;
         // For ease of reference, we use here the same attribute order as in Section 4.7 of the JVMS.
-        if (code.length > 0) {
+        if (codeSource != null) {
+            symbolTable.addConstantUtf8(Constants.CODE);
+            // The Code attribute has 6 header bytes, followed by its content copied as is.
+            size += 6 + codeSource.codeLength;
+        } else if (code.length > 0) {
             if (code.length > 65535) {
                 throw new IndexOutOfBoundsException("Method code too large!");
             }
@@ -2153,7 +2334,7 @@ final class MethodWriter extends MethodVisitor {
         }
         // For ease of reference, we use here the same attribute order as in Section 4.7 of the JVMS.
         int attributeCount = 0;
-        if (code.length > 0) {
+        if (codeSource != null || code.length > 0) {
             ++attributeCount;
         }
         if (numberOfExceptions > 0) {
@@ -2197,7 +2378,12 @@ final class MethodWriter extends MethodVisitor {
         }
         // For ease of reference, we use here the same attribute order as in Section 4.7 of the JVMS.
         output.putShort(attributeCount);
-        if (code.length > 0) {
+        if (codeSource != null) {
+            output
+                    .putShort(symbolTable.addConstantUtf8(Constants.CODE))
+                    .putInt(codeSource.codeLength)
+                    .putByteArray(getSource().b, codeSource.codeOffset, codeSource.codeLength);
+        } else if (code.length > 0) {
             // 2, 2, 4 and 2 bytes respectively for max_stack, max_locals, code_length and
             // attributes_count, plus the bytecode and the exception table.
             int size = 10 + code.length + Handler.getExceptionTableSize(firstHandler);
@@ -0,0 +1,101 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm;
+
+/**
+ * A listener notified of the work done by a {@link ClassReader} or a {@link ClassWriter}, which can
+ * be used to find the classes which are expensive to parse or to generate. A listener can be set
+ * with {@link ClassReader#setMetricsListener} and {@link ClassWriter#setMetricsListener}. By
+ * default no listener is set, in which case the readers and writers do not measure anything. The
+ * methods of this class do nothing, and can be overridden to collect the metrics of interest.
+ * Listeners shared between several readers or writers must be thread safe if these readers or
+ * writers are used concurrently.
+ */
+public abstract class MetricsListener {
+
+    /**
+     * Called at the end of {@link ClassReader#accept}.
+     *
+     * @param className        the internal name of the class which has been read.
+     * @param classFileLength  the length in bytes of the class file.
+     * @param constantPoolSize the number of entries in the constant pool of the class.
+     * @param nanos            the time spent in {@link ClassReader#accept}, in nanoseconds. This
+     *                         includes the time spent in the visitors.
+     */
+    public void classRead(
+            final String className,
+            final int classFileLength,
+            final int constantPoolSize,
+            final long nanos) {
+    }
+
+    /**
+     * Called at the end of {@link ClassWriter#toByteArray}.
+     *
+     * @param className        the internal name of the class which has been written.
+     * @param classFileLength  the length in bytes of the generated class file.
+     * @param symbolCount      the number of entries in the symbol table of the writer (constant pool
+     *                         entries, bootstrap methods and types used to compute frames).
+     * @param symbolCollisions the number of entries of the symbol table which share their hash set
+     *                         bucket with a previous entry.
+     */
+    public void classWritten(
+            final String className,
+            final int classFileLength,
+            final int symbolCount,
+            final int symbolCollisions) {
+    }
+
+    /**
+     * Called after the stack map frames of a method have been computed, with the {@link
+     * ClassWriter#COMPUTE_FRAMES} option.
+     *
+     * @param className        the internal name of the class containing the method.
+     * @param methodName       the name of the method.
+     * @param methodDescriptor the descriptor of the method.
+     * @param nanos            the time spent computing the frames and the maximum stack size of the
+     *                         method, in nanoseconds.
+     */
+    public void framesComputed(
+            final String className,
+            final String methodName,
+            final String methodDescriptor,
+            final long nanos) {
+    }
+
+    /**
+     * Called after each call to {@link ClassWriter#getCommonSuperClass}. Each pair of types is only
+     * merged once per class.
+     *
+     * @param type1 the internal name of a class.
+     * @param type2 the internal name of another class.
+     * @param nanos the time spent in {@link ClassWriter#getCommonSuperClass}, in nanoseconds.
+     */
+    public void commonSuperClassComputed(final String type1, final String type2, final long nanos) {
+    }
+}
@@ -27,6 +27,8 @@
 // THE POSSIBILITY OF SUCH DAMAGE.
 package net.nokok.azm;
 
+import java.util.Arrays;
+
 /**
  * The constant pool entries, the BootstrapMethods attribute entries and the (ASM specific) type
  * table entries of a class.
@@ -101,10 +103,10 @@ final class SymbolTable {
     final ClassWriter classWriter;
 
     /**
-     * The ClassReader from which this SymbolTable was constructed, or <tt>null</tt> if it was
-     * constructed from scratch.
+     * The ClassReader from which this SymbolTable was constructed (or last reset), or <tt>null</tt>
+     * if it was constructed from scratch.
      */
-    private final ClassReader sourceClassReader;
+    private ClassReader sourceClassReader;
 
     /**
      * The major version number of the class to which this symbol table belongs.
@@ -194,6 +196,51 @@ final class SymbolTable {
      */
     SymbolTable(final ClassWriter classWriter, final ClassReader classReader) {
         this.classWriter = classWriter;
+        // Reserve enough space in 'entries' to avoid too many hash set collisions (entries is not
+        // dynamically resized by the addConstant* method calls in copyConstantPool), and to account
+        // for bootstrap method entries.
+        this.entries = new Entry[classReader.getItemCount() * 2];
+        this.constantPool = new ByteVector(classReader.header - classReader.getItem(1) + 1);
+        copyConstantPool(classReader);
+    }
+
+    /**
+     * Removes all the symbols of this SymbolTable, so that it can be reused for another class. The
+     * arrays and byte vectors used to store the symbols are kept (and enlarged if needed), to avoid
+     * reallocating them for each class.
+     *
+     * @param classReader the ClassReader whose constant pool and bootstrap methods must be copied to
+     *                    initialize the SymbolTable, or <tt>null</tt> to reset it to an empty table.
+     */
+    void reset(final ClassReader classReader) {
+        majorVersion = 0;
+        className = null;
+        entryCount = 0;
+        Arrays.fill(entries, null);
+        constantPoolCount = 1;
+        constantPool.length = 0;
+        bootstrapMethodCount = 0;
+        bootstrapMethods = null;
+        if (typeTable != null) {
+            Arrays.fill(typeTable, 0, typeCount, null);
+        }
+        typeCount = 0;
+        sourceClassReader = null;
+        if (classReader != null) {
+            if (entries.length < classReader.getItemCount() * 2) {
+                entries = new Entry[classReader.getItemCount() * 2];
+            }
+            copyConstantPool(classReader);
+        }
+    }
+
+    /**
+     * Initializes this (empty) SymbolTable with the constant pool and bootstrap methods of the given
+     * ClassReader. {@link #entries} must be large enough to avoid too many hash set collisions.
+     *
+     * @param classReader the ClassReader whose constant pool and bootstrap methods must be copied.
+     */
+    private void copyConstantPool(final ClassReader classReader) {
         this.sourceClassReader = classReader;
 
         // Copy the constant pool binary content.
@@ -201,13 +248,9 @@ final class SymbolTable {
         int constantPoolOffset = classReader.getItem(1) - 1;
         int constantPoolLength = classReader.header - constantPoolOffset;
         constantPoolCount = classReader.getItemCount();
-        constantPool = new ByteVector(constantPoolLength);
         constantPool.putByteArray(inputBytes, constantPoolOffset, constantPoolLength);
 
-        // Add the constant pool items in the symbol table entries. Reserve enough space in 'entries' to
-        // avoid too many hash set collisions (entries is not dynamically resized by the addConstant*
-        // method calls below), and to account for bootstrap method entries.
-        entries = new Entry[constantPoolCount * 2];
+        // Add the constant pool items in the symbol table entries.
         char[] charBuffer = new char[classReader.getMaxStringLength()];
         int itemIndex = 1;
         while (itemIndex < constantPoolCount) {
@@ -338,6 +381,28 @@ final class SymbolTable {
         return className;
     }
 
+    /**
+     * @return the number of entries in the hash set of this symbol table.
+     */
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the number of entries in the hash set of this symbol table which are not the first
+     * entry of their hash set bucket.
+     */
+    int getCollisionCount() {
+        int collisionCount = 0;
+        for (Entry entry : entries) {
+            while (entry != null && entry.next != null) {
+                ++collisionCount;
+                entry = entry.next;
+            }
+        }
+        return collisionCount;
+    }
+
     /**
      * Sets the major version and the name of the class to which this symbol table belongs. Also adds
      * the class name to the constant pool.
@@ -1168,7 +1233,16 @@ final class SymbolTable {
         }
         String type1 = typeTable[typeTableIndex1].value;
         String type2 = typeTable[typeTableIndex2].value;
-        int commonSuperTypeIndex = addType(classWriter.getCommonSuperClass(type1, type2));
+        MetricsListener metricsListener = classWriter.metricsListener;
+        int commonSuperTypeIndex;
+        if (metricsListener == null) {
+            commonSuperTypeIndex = addType(classWriter.getCommonSuperClass(type1, type2));
+        } else {
+            long startTime = System.nanoTime();
+            String commonSuperClass = classWriter.getCommonSuperClass(type1, type2);
+            metricsListener.commonSuperClassComputed(type1, type2, System.nanoTime() - startTime);
+            commonSuperTypeIndex = addType(commonSuperClass);
+        }
         put(new Entry(typeCount, Symbol.MERGED_TYPE_TAG, data, hashCode)).info = commonSuperTypeIndex;
         return commonSuperTypeIndex;
     }
@@ -155,6 +155,30 @@ public class Type {
      */
     public static final Type DOUBLE_TYPE = new Type(DOUBLE, PRIMITIVE_DESCRIPTORS, DOUBLE, 1);
 
+    /**
+     * The maximum number of types shared by the {@link #getType(String)}, {@link
+     * #getObjectType(String)} and {@link #getMethodType(String)} methods.
+     */
+    private static final int TYPE_CACHE_CAPACITY = 4096;
+
+    /**
+     * The types returned by {@link #getType(String)}, {@link #getObjectType(String)} and {@link
+     * #getMethodType(String)}, so that the same descriptor or internal name is not parsed each time.
+     */
+    private static final TypeCache TYPE_CACHE = new TypeCache(TYPE_CACHE_CAPACITY);
+
+    /**
+     * The types corresponding to classes, returned by {@link #getType(Class)} and used by {@link
+     * #getDescriptor(Class)}.
+     */
+    private static final ClassValue<Type> CLASS_TYPES =
+            new ClassValue<Type>() {
+                @Override
+                protected Type computeValue(final Class<?> clazz) {
+                    return computeType(clazz);
+                }
+            };
+
     // -----------------------------------------------------------------------------------------------
     // Fields
     // -----------------------------------------------------------------------------------------------
@@ -191,6 +215,29 @@ public class Type {
      */
     private final int valueLength;
 
+    /**
+     * The descriptor corresponding to this type, or <tt>null</tt> if it has not been computed yet.
+     */
+    private String descriptor;
+
+    /**
+     * The argument types of this method type, or <tt>null</tt> if they have not been computed yet.
+     * This array is shared by all the threads using this type, and must therefore not be returned
+     * to the callers of {@link #getArgumentTypes()}, which get a copy of it.
+     */
+    private volatile Type[] argumentTypes;
+
+    /**
+     * The return type of this method type, or <tt>null</tt> if it has not been computed yet.
+     */
+    private Type returnType;
+
+    /**
+     * The size of the arguments and of the return value of this method type, as returned by {@link
+     * #getArgumentsAndReturnSizes()}, or 0 if it has not been computed yet.
+     */
+    private int argumentsAndReturnSizes;
+
     // -----------------------------------------------------------------------------------------------
     // Constructors
     // -----------------------------------------------------------------------------------------------
@@ -218,8 +265,17 @@ public class Type {
      * @return the {@link Type} corresponding to the given type descriptor.
      */
     public static Type getType(final String typeDescriptor) {
-        final char[] valueBuffer = typeDescriptor.toCharArray();
-        return getType(valueBuffer, 0, valueBuffer.length);
+        Type type = TYPE_CACHE.get(typeDescriptor, TypeCache.DESCRIPTOR);
+        if (type == null) {
+            final char[] valueBuffer = typeDescriptor.toCharArray();
+            type = getType(valueBuffer, 0, valueBuffer.length);
+            // Primitive types are shared constants, whose descriptor must not be changed.
+            if (type.sort >= ARRAY) {
+                type.descriptor = typeDescriptor;
+            }
+            TYPE_CACHE.put(typeDescriptor, TypeCache.DESCRIPTOR, type);
+        }
+        return type;
     }
 
     /**
@@ -229,8 +285,16 @@ public class Type {
      * @return the {@link Type} corresponding to the given internal name.
      */
     public static Type getObjectType(final String internalName) {
-        final char[] valueBuffer = internalName.toCharArray();
-        return new Type(valueBuffer[0] == '[' ? ARRAY : INTERNAL, valueBuffer, 0, valueBuffer.length);
+        Type type = TYPE_CACHE.get(internalName, TypeCache.INTERNAL_NAME);
+        if (type == null) {
+            final char[] valueBuffer = internalName.toCharArray();
+            type = new Type(valueBuffer[0] == '[' ? ARRAY : INTERNAL, valueBuffer, 0, valueBuffer.length);
+            if (type.sort == ARRAY) {
+                type.descriptor = internalName;
+            }
+            TYPE_CACHE.put(internalName, TypeCache.INTERNAL_NAME, type);
+        }
+        return type;
     }
 
     /**
@@ -241,8 +305,17 @@ public class Type {
      * @return the {@link Type} corresponding to the given method descriptor.
      */
     public static Type getMethodType(final String methodDescriptor) {
-        final char[] valueBuffer = methodDescriptor.toCharArray();
-        return new Type(METHOD, valueBuffer, 0, valueBuffer.length);
+        Type type = TYPE_CACHE.get(methodDescriptor, TypeCache.DESCRIPTOR);
+        if (type == null || type.sort != METHOD) {
+            final char[] valueBuffer = methodDescriptor.toCharArray();
+            type = new Type(METHOD, valueBuffer, 0, valueBuffer.length);
+            type.descriptor = methodDescriptor;
+            // Only valid method descriptors are cached, because getType returns the same type for them.
+            if (valueBuffer.length > 0 && valueBuffer[0] == '(') {
+                TYPE_CACHE.put(methodDescriptor, TypeCache.DESCRIPTOR, type);
+            }
+        }
+        return type;
     }
 
     /**
@@ -263,6 +336,16 @@ public class Type {
      * @return the {@link Type} corresponding to the given class.
      */
     public static Type getType(final Class<?> clazz) {
+        return CLASS_TYPES.get(clazz);
+    }
+
+    /**
+     * Computes the {@link Type} corresponding to the given class, for {@link #CLASS_TYPES}.
+     *
+     * @param clazz a class.
+     * @return the {@link Type} corresponding to the given class.
+     */
+    private static Type computeType(final Class<?> clazz) {
         if (clazz.isPrimitive()) {
             if (clazz == Integer.TYPE) {
                 return INT_TYPE;
@@ -286,7 +369,9 @@ public class Type {
                 throw new AssertionError();
             }
         } else {
-            return getType(getDescriptor(clazz));
+            StringBuilder stringBuilder = new StringBuilder();
+            appendDescriptor(stringBuilder, clazz);
+            return getType(stringBuilder.toString());
         }
     }
 
@@ -319,11 +404,23 @@ public class Type {
      * descriptor.
      */
     public static Type[] getArgumentTypes(final String methodDescriptor) {
+        return getMethodType(methodDescriptor).getArgumentTypes();
+    }
+
+    /**
+     * Returns the {@link Type} values corresponding to the argument types of the given method
+     * descriptor.
+     *
+     * @param valueBuffer a buffer containing a method descriptor.
+     * @param valueOffset the offset of the method descriptor in valueBuffer.
+     * @return the {@link Type} values corresponding to the argument types of the given method
+     * descriptor.
+     */
+    private static Type[] getArgumentTypes(final char[] valueBuffer, final int valueOffset) {
         // First step: compute the number of argument types in methodDescriptor.
-        final char[] valueBuffer = methodDescriptor.toCharArray();
         int numArgumentTypes = 0;
         // Skip the first character, which is always a '('.
-        int currentOffset = 1;
+        int currentOffset = valueOffset + 1;
         // Parse the argument types, one at a each loop iteration.
         while (valueBuffer[currentOffset] != ')') {
             while (valueBuffer[currentOffset] == '[') {
@@ -340,7 +437,7 @@ public class Type {
         // Second step: create a Type instance for each argument type.
         Type[] argumentTypes = new Type[numArgumentTypes];
         // Skip the first character, which is always a '('.
-        currentOffset = 1;
+        currentOffset = valueOffset + 1;
         // Parse and create the argument types, one at each loop iteration.
         int currentArgumentTypeIndex = 0;
         while (valueBuffer[currentOffset] != ')') {
@@ -382,21 +479,7 @@ public class Type {
      * @return the {@link Type} corresponding to the return type of the given method descriptor.
      */
     public static Type getReturnType(final String methodDescriptor) {
-        final char[] valueBuffer = methodDescriptor.toCharArray();
-        // Skip the first character, which is always a '('.
-        int currentOffset = 1;
-        // Skip the argument types, one at a each loop iteration.
-        while (valueBuffer[currentOffset] != ')') {
-            while (valueBuffer[currentOffset] == '[') {
-                currentOffset++;
-            }
-            if (valueBuffer[currentOffset++] == 'L') {
-                while (valueBuffer[currentOffset++] != ';') {
-                    // Skip the argument descriptor content.
-                }
-            }
-        }
-        return getType(valueBuffer, currentOffset + 1, valueBuffer.length - currentOffset - 1);
+        return getMethodType(methodDescriptor).getReturnType();
     }
 
     /**
@@ -588,7 +671,13 @@ public class Type {
      * @return the argument types of methods of this type.
      */
     public Type[] getArgumentTypes() {
-        return getArgumentTypes(getDescriptor());
+        Type[] types = argumentTypes;
+        if (types == null) {
+            types = getArgumentTypes(valueBuffer, valueOffset);
+            argumentTypes = types;
+        }
+        // Empty arrays can be shared, other ones must be copied since callers may modify them.
+        return types.length == 0 ? types : types.clone();
     }
 
     /**
@@ -598,7 +687,26 @@ public class Type {
      * @return the return type of methods of this type.
      */
     public Type getReturnType() {
-        return getReturnType(getDescriptor());
+        Type type = returnType;
+        if (type == null) {
+            // Skip the first character, which is always a '('.
+            int currentOffset = valueOffset + 1;
+            // Skip the argument types, one at a each loop iteration.
+            while (valueBuffer[currentOffset] != ')') {
+                while (valueBuffer[currentOffset] == '[') {
+                    currentOffset++;
+                }
+                if (valueBuffer[currentOffset++] == 'L') {
+                    while (valueBuffer[currentOffset++] != ';') {
+                        // Skip the argument descriptor content.
+                    }
+                }
+            }
+            type =
+                    getType(valueBuffer, currentOffset + 1, valueOffset + valueLength - currentOffset - 1);
+            returnType = type;
+        }
+        return type;
     }
 
     /**
@@ -611,7 +719,12 @@ public class Type {
      * &gt;&gt; 2</tt>, and returnSize to <tt>i &amp; 0x03</tt>).
      */
     public int getArgumentsAndReturnSizes() {
-        return getArgumentsAndReturnSizes(getDescriptor());
+        int sizes = argumentsAndReturnSizes;
+        if (sizes == 0) {
+            sizes = getArgumentsAndReturnSizes(getDescriptor());
+            argumentsAndReturnSizes = sizes;
+        }
+        return sizes;
     }
 
     // -----------------------------------------------------------------------------------------------
@@ -624,17 +737,22 @@ public class Type {
      * @return the descriptor corresponding to this type.
      */
     public String getDescriptor() {
-        if (sort == OBJECT) {
-            return new String(valueBuffer, valueOffset - 1, valueLength + 2);
-        } else if (sort == INTERNAL) {
-            StringBuilder stringBuilder = new StringBuilder();
-            stringBuilder.append('L');
-            stringBuilder.append(valueBuffer, valueOffset, valueLength);
-            stringBuilder.append(';');
-            return stringBuilder.toString();
-        } else {
-            return new String(valueBuffer, valueOffset, valueLength);
+        String value = descriptor;
+        if (value == null) {
+            if (sort == OBJECT) {
+                value = new String(valueBuffer, valueOffset - 1, valueLength + 2);
+            } else if (sort == INTERNAL) {
+                StringBuilder stringBuilder = new StringBuilder();
+                stringBuilder.append('L');
+                stringBuilder.append(valueBuffer, valueOffset, valueLength);
+                stringBuilder.append(';');
+                value = stringBuilder.toString();
+            } else {
+                value = new String(valueBuffer, valueOffset, valueLength);
+            }
+            descriptor = value;
         }
+        return value;
     }
 
     /**
@@ -695,9 +813,7 @@ public class Type {
      * @return the descriptor corresponding to the given class.
      */
     public static String getDescriptor(final Class<?> clazz) {
-        StringBuilder stringBuilder = new StringBuilder();
-        appendDescriptor(stringBuilder, clazz);
-        return stringBuilder.toString();
+        return getType(clazz).getDescriptor();
     }
 
     /**
@@ -0,0 +1,139 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm;
+
+/**
+ * A bounded registry of shared {@link Type} instances, used by the static factory methods of
+ * {@link Type} so that the types which are used over and over, such as <tt>java/lang/Object</tt>
+ * or <tt>()V</tt>, are parsed and allocated only once. This registry can be used concurrently in
+ * several threads without synchronization.
+ * <p>
+ * <p>Like {@link Utf8Cache}, this registry is a direct-mapped table: each type is stored in a slot
+ * given by the hash of the string from which it was created, and replaces the type previously
+ * stored in this slot, if any. Its memory footprint is therefore bounded by its capacity and by the
+ * maximum length of the cached strings.
+ */
+final class TypeCache {
+
+    /**
+     * The kind of the strings which are field or method descriptors.
+     */
+    static final int DESCRIPTOR = 0;
+
+    /**
+     * The kind of the strings which are internal names.
+     */
+    static final int INTERNAL_NAME = 1;
+
+    /**
+     * The maximum length of the cached strings. Types created from longer strings are not cached.
+     */
+    static final int MAX_LENGTH = 256;
+
+    /**
+     * The slots of this cache. The length of this array is a power of two. Entries are immutable,
+     * and so are the {@link Type} instances they contain (apart from values which are computed
+     * lazily and are safe to publish), which makes them safe to publish without synchronization.
+     */
+    private final Entry[] entries;
+
+    /**
+     * Constructs a new {@link TypeCache}.
+     *
+     * @param capacity the maximum number of types in the cache. Must be a power of two.
+     */
+    TypeCache(final int capacity) {
+        this.entries = new Entry[capacity];
+    }
+
+    /**
+     * Returns the type created from the given string, if it is in this cache.
+     *
+     * @param value a field or method descriptor, or an internal name.
+     * @param kind  the kind of value, either {@link #DESCRIPTOR} or {@link #INTERNAL_NAME}.
+     * @return the cached type created from the given value, or <tt>null</tt>.
+     */
+    Type get(final String value, final int kind) {
+        Entry entry = entries[index(value)];
+        if (entry != null && entry.kind == kind && entry.value.equals(value)) {
+            return entry.type;
+        }
+        return null;
+    }
+
+    /**
+     * Stores the given type in this cache, if the given value is not too long.
+     *
+     * @param value a field or method descriptor, or an internal name.
+     * @param kind  the kind of value, either {@link #DESCRIPTOR} or {@link #INTERNAL_NAME}.
+     * @param type  the type created from value.
+     */
+    void put(final String value, final int kind, final Type type) {
+        if (value.length() <= MAX_LENGTH) {
+            entries[index(value)] = new Entry(value, kind, type);
+        }
+    }
+
+    /**
+     * Returns the index of the slot corresponding to the given string.
+     *
+     * @param value a string.
+     * @return the index of the slot in {@link #entries} where value can be cached.
+     */
+    private int index(final String value) {
+        int hashCode = value.hashCode();
+        return (hashCode ^ (hashCode >>> 16)) & (entries.length - 1);
+    }
+
+    /**
+     * A cached type, with the string from which it was created.
+     */
+    private static final class Entry {
+
+        /**
+         * The string from which {@link #type} was created.
+         */
+        final String value;
+
+        /**
+         * The kind of {@link #value}, either {@link #DESCRIPTOR} or {@link #INTERNAL_NAME}.
+         */
+        final int kind;
+
+        /**
+         * The cached type.
+         */
+        final Type type;
+
+        Entry(final String value, final int kind, final Type type) {
+            this.value = value;
+            this.kind = kind;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the strings corresponding to CONSTANT_Utf8 constant pool entries, which can be
+ * shared by several {@link ClassReader}s (see {@link ClassReader#setUtf8Cache}), possibly used
+ * concurrently in several threads. Strings are keyed on the raw (modified UTF-8) bytes of their
+ * entry, so that a string which is common to many classes, such as <tt>java/lang/Object</tt>,
+ * <tt>()V</tt> or <tt>Code</tt>, is decoded and allocated only once.
+ * <p>
+ * <p>This cache is a direct-mapped table: each string is stored in a slot given by the hash of its
+ * bytes, and replaces the string previously stored in this slot, if any. Its memory footprint is
+ * therefore bounded by its capacity and by the maximum length of the cached strings.
+ */
+public final class Utf8Cache {
+
+    /**
+     * The default maximum length, in bytes, of the cached strings.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 256;
+
+    /**
+     * The slots of this cache. The length of this array is a power of two. Entries are immutable,
+     * which makes them safe to publish without synchronization.
+     */
+    private final Entry[] entries;
+
+    /**
+     * The maximum length, in bytes, of the cached strings.
+     */
+    private final int maxLength;
+
+    /**
+     * The number of strings found in this cache.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * The number of strings not found in this cache.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Constructs a new {@link Utf8Cache} caching strings of at most {@link #DEFAULT_MAX_LENGTH}
+     * bytes.
+     *
+     * @param capacity the maximum number of strings in the cache. It is rounded up to a power of two.
+     */
+    public Utf8Cache(final int capacity) {
+        this(capacity, DEFAULT_MAX_LENGTH);
+    }
+
+    /**
+     * Constructs a new {@link Utf8Cache}.
+     *
+     * @param capacity  the maximum number of strings in the cache. It is rounded up to a power of
+     *                  two.
+     * @param maxLength the maximum length, in bytes, of the cached strings. Longer strings are
+     *                  decoded by each reader, as if there was no cache.
+     */
+    public Utf8Cache(final int capacity, final int maxLength) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        }
+        if (maxLength < 0) {
+            throw new IllegalArgumentException("Invalid max length " + maxLength);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.entries = new Entry[size];
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * Returns the maximum number of strings in this cache.
+     *
+     * @return the maximum number of strings in this cache.
+     */
+    public int getCapacity() {
+        return entries.length;
+    }
+
+    /**
+     * Returns the number of lookups which found their string in this cache.
+     *
+     * @return the number of lookups which found their string in this cache.
+     */
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups which did not find their string in this cache, including the
+     * lookups of strings which are too long to be cached.
+     *
+     * @return the number of lookups which did not find their string in this cache.
+     */
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the ratio of the lookups which found their string in this cache.
+     *
+     * @return the hit count divided by the total number of lookups, or 0 if there was no lookup.
+     */
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long total = hits + missCount.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Removes all the strings from this cache, and resets its hit and miss counts.
+     */
+    public void clear() {
+        for (int i = 0; i < entries.length; ++i) {
+            entries[i] = null;
+        }
+        hitCount.reset();
+        missCount.reset();
+    }
+
+    /**
+     * Returns the string corresponding to the given modified UTF-8 bytes, decoding it and storing it
+     * in this cache if necessary.
+     *
+     * @param classReader the class reader containing the bytes.
+     * @param utfOffset   the start offset of the bytes in {@link ClassReader#b}.
+     * @param utfLength   the number of bytes.
+     * @param charBuffer  the buffer to be used to decode the string.
+     * @return the String corresponding to the given bytes.
+     */
+    String get(
+            final ClassReader classReader,
+            final int utfOffset,
+            final int utfLength,
+            final char[] charBuffer) {
+        if (utfLength > maxLength) {
+            missCount.increment();
+            return classReader.readUTF(utfOffset, utfLength, charBuffer);
+        }
+        byte[] classFileBuffer = classReader.b;
+        int hashCode = utfLength;
+        for (int i = utfOffset, end = utfOffset + utfLength; i < end; ++i) {
+            hashCode = 31 * hashCode + classFileBuffer[i];
+        }
+        hashCode ^= hashCode >>> 16;
+        int index = hashCode & (entries.length - 1);
+        Entry entry = entries[index];
+        if (entry != null
+                && entry.hashCode == hashCode
+                && entry.equals(classFileBuffer, utfOffset, utfLength)) {
+            hitCount.increment();
+            return entry.value;
+        }
+        missCount.increment();
+        String value = classReader.readUTF(utfOffset, utfLength, charBuffer);
+        entries[index] =
+                new Entry(
+                        hashCode,
+                        Arrays.copyOfRange(classFileBuffer, utfOffset, utfOffset + utfLength),
+                        value);
+        return value;
+    }
+
+    /**
+     * A cached string, with the bytes from which it was decoded.
+     */
+    private static final class Entry {
+
+        /**
+         * The hash code of {@link #bytes}.
+         */
+        final int hashCode;
+
+        /**
+         * The modified UTF-8 bytes of {@link #value}.
+         */
+        final byte[] bytes;
+
+        /**
+         * The cached string.
+         */
+        final String value;
+
+        Entry(final int hashCode, final byte[] bytes, final String value) {
+            this.hashCode = hashCode;
+            this.bytes = bytes;
+            this.value = value;
+        }
+
+        /**
+         * Returns whether the bytes of this entry are equal to the given ones.
+         *
+         * @param b      a byte array.
+         * @param offset the start offset of the bytes to compare in b.
+         * @param length the number of bytes to compare.
+         * @return whether the bytes of this entry are equal to the given ones.
+         */
+        boolean equals(final byte[] b, final int offset, final int length) {
+            if (bytes.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                if (bytes[i] != b[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.commons;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A {@link Remapper} using a {@link Map} to define its mapping, with the same key format as {@link
+ * SimpleRemapper}, but whose lookups do not allocate any object. The keys of the mapping are indexed
+ * when this remapper is constructed, in open addressing hash tables whose keys are compared
+ * component by component (owner, name and descriptor), instead of being concatenated for each
+ * lookup. Types in descriptors are looked up directly in the descriptor strings, and the methods of
+ * this class return their argument itself when nothing is remapped. Changes made to the mapping
+ * after the construction of this remapper are ignored.
+ */
+public class IndexedRemapper extends Remapper {
+
+    private final Map<String, String> mapping;
+
+    /**
+     * The type table: an open addressing hash table (with linear probing) whose keys are the
+     * internal names of the remapped types, and whose values are the corresponding new names.
+     */
+    private final String[] typeKeys;
+
+    private final String[] typeValues;
+
+    /**
+     * The member table: an open addressing hash table (with linear probing) whose keys are the
+     * owner, name and descriptor of the remapped methods and fields (with a <tt>null</tt>
+     * descriptor for fields, and an empty owner for invokedynamic methods), and whose values are
+     * the corresponding new names.
+     */
+    private final String[] memberOwners;
+
+    private final String[] memberNames;
+
+    private final String[] memberDescs;
+
+    private final String[] memberValues;
+
+    public IndexedRemapper(Map<String, String> mapping) {
+        this.mapping = new HashMap<String, String>(mapping);
+        int typeCount = 0;
+        int memberCount = 0;
+        for (String key : mapping.keySet()) {
+            if (key.indexOf('.') == -1) {
+                ++typeCount;
+            } else {
+                ++memberCount;
+            }
+        }
+        this.typeKeys = new String[tableSize(typeCount)];
+        this.typeValues = new String[typeKeys.length];
+        this.memberOwners = new String[tableSize(memberCount)];
+        this.memberNames = new String[memberOwners.length];
+        this.memberDescs = new String[memberOwners.length];
+        this.memberValues = new String[memberOwners.length];
+        for (Map.Entry<String, String> entry : mapping.entrySet()) {
+            String key = entry.getKey();
+            int dot = key.indexOf('.');
+            if (dot == -1) {
+                putType(key, entry.getValue());
+            } else {
+                // Keys are "owner.name(desc" for methods, ".name(desc" for invokedynamic methods, and
+                // "owner.name" for fields.
+                String owner = key.substring(0, dot);
+                int paren = key.indexOf('(', dot);
+                if (paren == -1) {
+                    putMember(owner, key.substring(dot + 1), null, entry.getValue());
+                } else {
+                    putMember(owner, key.substring(dot + 1, paren), key.substring(paren), entry.getValue());
+                }
+            }
+        }
+    }
+
+    public IndexedRemapper(String oldName, String newName) {
+        this(Collections.singletonMap(oldName, newName));
+    }
+
+    @Override
+    public String mapMethodName(String owner, String name, String desc) {
+        String s = getMember(owner, name, desc);
+        return s == null ? name : s;
+    }
+
+    @Override
+    public String mapInvokeDynamicMethodName(String name, String desc) {
+        String s = getMember("", name, desc);
+        return s == null ? name : s;
+    }
+
+    @Override
+    public String mapFieldName(String owner, String name, String desc) {
+        String s = getMember(owner, name, null);
+        return s == null ? name : s;
+    }
+
+    @Override
+    public String map(String key) {
+        return mapping.get(key);
+    }
+
+    @Override
+    public String mapType(String type) {
+        if (type == null) {
+            return null;
+        }
+        if (type.charAt(0) == '[') {
+            return mapDesc(type);
+        }
+        String newType = getType(type, 0, type.length());
+        return newType == null ? type : newType;
+    }
+
+    @Override
+    public String mapDesc(String desc) {
+        int start = 0;
+        while (desc.charAt(start) == '[') {
+            ++start;
+        }
+        if (desc.charAt(start) != 'L') {
+            return desc;
+        }
+        String newType = getType(desc, start + 1, desc.length() - 1);
+        if (newType == null) {
+            return desc;
+        }
+        return new StringBuilder(start + newType.length() + 2)
+                .append(desc, 0, start + 1)
+                .append(newType)
+                .append(';')
+                .toString();
+    }
+
+    @Override
+    public String mapMethodDesc(String desc) {
+        StringBuilder sb = null;
+        int length = desc.length();
+        // The position in desc up to which the characters have been copied in sb.
+        int copied = 0;
+        int start = 1;
+        while (start < length) {
+            char c = desc.charAt(start);
+            if (c == 'L') {
+                int end = desc.indexOf(';', start);
+                String newType = getType(desc, start + 1, end);
+                if (newType != null) {
+                    if (sb == null) {
+                        sb = new StringBuilder(length + 16);
+                    }
+                    sb.append(desc, copied, start + 1).append(newType);
+                    copied = end;
+                }
+                start = end + 1;
+            } else {
+                ++start;
+            }
+        }
+        if (sb == null) {
+            return desc;
+        }
+        return sb.append(desc, copied, length).toString();
+    }
+
+    private static int tableSize(int count) {
+        int size = 8;
+        while (size < 2 * count) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the hash code of the given substring, equal to the hash code of the corresponding
+     * String (see {@link String#hashCode}).
+     */
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; ++i) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    private static int hash(String owner, String name, String desc) {
+        int h = owner.hashCode() * 31 + name.hashCode();
+        return desc == null ? h : h * 31 + desc.hashCode();
+    }
+
+    /**
+     * Spreads the bits of the given hash code, so that the low bits used as an index are well
+     * distributed (see {@link HashMap}).
+     */
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    private void putType(String type, String newType) {
+        int mask = typeKeys.length - 1;
+        int index = spread(type.hashCode()) & mask;
+        while (typeKeys[index] != null) {
+            index = (index + 1) & mask;
+        }
+        typeKeys[index] = type;
+        typeValues[index] = newType;
+    }
+
+    /**
+     * Returns the new name of the type whose internal name is s.substring(start, end), or
+     * <tt>null</tt> if it is not remapped, without allocating this substring.
+     */
+    private String getType(String s, int start, int end) {
+        int mask = typeKeys.length - 1;
+        int length = end - start;
+        int index = spread(start == 0 && end == s.length() ? s.hashCode() : hash(s, start, end)) & mask;
+        String key;
+        while ((key = typeKeys[index]) != null) {
+            if (key.length() == length && s.regionMatches(start, key, 0, length)) {
+                return typeValues[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private void putMember(String owner, String name, String desc, String newName) {
+        int mask = memberOwners.length - 1;
+        int index = spread(hash(owner, name, desc)) & mask;
+        while (memberOwners[index] != null) {
+            index = (index + 1) & mask;
+        }
+        memberOwners[index] = owner;
+        memberNames[index] = name;
+        memberDescs[index] = desc;
+        memberValues[index] = newName;
+    }
+
+    private String getMember(String owner, String name, String desc) {
+        int mask = memberOwners.length - 1;
+        int index = spread(hash(owner, name, desc)) & mask;
+        String key;
+        while ((key = memberOwners[index]) != null) {
+            if (key.equals(owner)
+                    && memberNames[index].equals(name)
+                    && (desc == null ? memberDescs[index] == null : desc.equals(memberDescs[index]))) {
+                return memberValues[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,672 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.commons;
+
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Type;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.IincInsnNode;
+import net.nokok.azm.tree.InsnList;
+import net.nokok.azm.tree.InsnNode;
+import net.nokok.azm.tree.IntInsnNode;
+import net.nokok.azm.tree.JumpInsnNode;
+import net.nokok.azm.tree.LabelNode;
+import net.nokok.azm.tree.LdcInsnNode;
+import net.nokok.azm.tree.LookupSwitchInsnNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.TableSwitchInsnNode;
+import net.nokok.azm.tree.TryCatchBlockNode;
+import net.nokok.azm.tree.VarInsnNode;
+import net.nokok.azm.tree.analysis.LiveVariables;
+
+import java.util.List;
+
+/**
+ * A {@link MethodVisitor} adapter to remove redundant instructions with peephole rewrites. The
+ * following rewrites are applied until none of them applies anymore:
+ * <ul>
+ * <li>a value pushed without side effects (constant, local variable load, <tt>DUP</tt>) and
+ * immediately popped is removed, and <tt>POP POP</tt> is replaced with <tt>POP2</tt>,</li>
+ * <li>a local variable stored into itself (<tt>xLOAD n xSTORE n</tt>) is removed,</li>
+ * <li>int and long arithmetic, shifts, negations and conversions on constants are folded,</li>
+ * <li>jumps and switch cases to a <tt>GOTO</tt> are redirected to the target of this
+ * <tt>GOTO</tt>,</li>
+ * <li>jumps to the next instruction are removed (conditional jumps are replaced with <tt>POP</tt>
+ * or <tt>POP2</tt>),</li>
+ * <li>if the method does not contain stack map frames, stores and increments of local variables
+ * which are never used afterwards are removed, as well as a store immediately followed by the only
+ * load of its value. These rewrites are not done otherwise since they could change the type of a
+ * local variable in the existing frames.</li>
+ * </ul>
+ * Floating point arithmetic is not folded, and instructions which can throw an exception (such as
+ * divisions by zero or <tt>LDC</tt> of a class) are never removed. Try catch blocks which no longer
+ * contain any instruction are removed. The maximum stack size and number of local variables are
+ * left unchanged.
+ */
+public class PeepholeOptimizer extends MethodNode {
+
+    /**
+     * The maximum number of <tt>GOTO</tt> followed when redirecting a jump.
+     */
+    private static final int MAX_JUMP_CHAIN = 32;
+
+    public PeepholeOptimizer(
+            final MethodVisitor mv,
+            final int access,
+            final String name,
+            final String desc,
+            final String signature,
+            final String[] exceptions) {
+        this(Opcodes.ASM6, mv, access, name, desc, signature, exceptions);
+        if (getClass() != PeepholeOptimizer.class) {
+            throw new IllegalStateException();
+        }
+    }
+
+    protected PeepholeOptimizer(
+            final int api,
+            final MethodVisitor mv,
+            final int access,
+            final String name,
+            final String desc,
+            final String signature,
+            final String[] exceptions) {
+        super(api, access, name, desc, signature, exceptions);
+        this.mv = mv;
+    }
+
+    @Override
+    public void visitEnd() {
+        optimize(this);
+        if (mv != null) {
+            accept(mv);
+        }
+    }
+
+    /**
+     * Applies the peephole rewrites of this class to the given method.
+     *
+     * @param methodNode a method node. Its code is loaded if necessary.
+     * @return whether the code of methodNode has been changed.
+     */
+    public static boolean optimize(final MethodNode methodNode) {
+        methodNode.loadCode();
+        InsnList insns = methodNode.instructions;
+        if (insns.size() == 0) {
+            return false;
+        }
+        boolean hasFrames = false;
+        for (AbstractInsnNode insn = insns.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getType() == AbstractInsnNode.FRAME) {
+                hasFrames = true;
+                break;
+            }
+        }
+        boolean changed = false;
+        while (true) {
+            boolean passChanged = rewrite(insns);
+            if (!hasFrames) {
+                passChanged |= removeDeadStores(methodNode);
+            }
+            if (!passChanged) {
+                break;
+            }
+            changed = true;
+        }
+        if (changed) {
+            removeEmptyTryCatchBlocks(methodNode);
+        }
+        return changed;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Local rewrites
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Applies the local rewrites in a single pass over the given instructions.
+     *
+     * @param insns the instructions of a method.
+     * @return whether the instructions have been changed.
+     */
+    private static boolean rewrite(final InsnList insns) {
+        boolean changed = false;
+        AbstractInsnNode insn = insns.getFirst();
+        while (insn != null) {
+            AbstractInsnNode nextInsn = insn.getNext();
+            int opcode = insn.getOpcode();
+            int nextOpcode = nextInsn == null ? -1 : nextInsn.getOpcode();
+            if (insn instanceof JumpInsnNode && opcode != Opcodes.JSR) {
+                JumpInsnNode jumpInsn = (JumpInsnNode) insn;
+                LabelNode target = getFinalTarget(jumpInsn.getLabel());
+                if (target != jumpInsn.getLabel()) {
+                    jumpInsn.setLabel(target);
+                    changed = true;
+                }
+                if (isNextInsn(jumpInsn, target)) {
+                    if (opcode == Opcodes.GOTO) {
+                        insns.remove(jumpInsn);
+                    } else if (opcode >= Opcodes.IF_ICMPEQ && opcode <= Opcodes.IF_ACMPNE) {
+                        insns.set(jumpInsn, new InsnNode(Opcodes.POP2));
+                    } else {
+                        insns.set(jumpInsn, new InsnNode(Opcodes.POP));
+                    }
+                    changed = true;
+                }
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode switchInsn = (TableSwitchInsnNode) insn;
+                changed |= redirect(switchInsn.getLabels());
+                LabelNode dflt = getFinalTarget(switchInsn.getDflt());
+                if (dflt != switchInsn.getDflt()) {
+                    switchInsn.setDflt(dflt);
+                    changed = true;
+                }
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode switchInsn = (LookupSwitchInsnNode) insn;
+                changed |= redirect(switchInsn.getLabels());
+                LabelNode dflt = getFinalTarget(switchInsn.getDflt());
+                if (dflt != switchInsn.getDflt()) {
+                    switchInsn.setDflt(dflt);
+                    changed = true;
+                }
+            } else if (nextInsn != null && getPushSize(insn) > 0
+                    && getPushSize(insn) == getPopSize(nextOpcode)) {
+                // A value pushed and immediately popped.
+                nextInsn = getRestartInsn(insn, nextInsn.getNext());
+                insns.remove(insn.getNext());
+                insns.remove(insn);
+                changed = true;
+            } else if (opcode == Opcodes.POP && nextOpcode == Opcodes.POP) {
+                insns.remove(nextInsn);
+                insns.set(insn, new InsnNode(Opcodes.POP2));
+                changed = true;
+            } else if (opcode >= Opcodes.ILOAD && opcode <= Opcodes.ALOAD
+                    && nextOpcode == opcode + (Opcodes.ISTORE - Opcodes.ILOAD)
+                    && ((VarInsnNode) insn).getVar() == ((VarInsnNode) nextInsn).getVar()) {
+                // A local variable stored into itself.
+                nextInsn = getRestartInsn(insn, nextInsn.getNext());
+                insns.remove(insn.getNext());
+                insns.remove(insn);
+                changed = true;
+            } else if (nextInsn != null) {
+                AbstractInsnNode constantInsn = fold(insns, insn);
+                if (constantInsn != null) {
+                    // The folded constant can be folded again with the previous instruction.
+                    AbstractInsnNode previousInsn = constantInsn.getPrevious();
+                    nextInsn = previousInsn != null ? previousInsn : constantInsn;
+                    changed = true;
+                }
+            }
+            insn = nextInsn;
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the instruction from which to continue after removing some instructions. This is the
+     * instruction before the removed ones, if any, because it can now be rewritten with the
+     * instruction following the removed ones.
+     *
+     * @param firstRemovedInsn the first removed instruction.
+     * @param nextInsn         the instruction following the removed ones.
+     * @return the instruction from which to continue.
+     */
+    private static AbstractInsnNode getRestartInsn(
+            final AbstractInsnNode firstRemovedInsn, final AbstractInsnNode nextInsn) {
+        AbstractInsnNode previousInsn = firstRemovedInsn.getPrevious();
+        return previousInsn != null ? previousInsn : nextInsn;
+    }
+
+    /**
+     * Folds the constant arithmetic starting at the given instruction, if any.
+     *
+     * @param insns the instructions of a method.
+     * @param insn  an instruction of insns.
+     * @return the instruction which replaces insn and the folded instructions, or <tt>null</tt> if
+     * there is nothing to fold.
+     */
+    private static AbstractInsnNode fold(final InsnList insns, final AbstractInsnNode insn) {
+        Object value1 = getConstant(insn);
+        if (!(value1 instanceof Integer || value1 instanceof Long)) {
+            return null;
+        }
+        AbstractInsnNode nextInsn = insn.getNext();
+        Object result = foldUnary(value1, nextInsn.getOpcode());
+        if (result != null) {
+            insns.remove(nextInsn);
+        } else {
+            Object value2 = getConstant(nextInsn);
+            AbstractInsnNode opInsn = nextInsn.getNext();
+            if (value2 == null || opInsn == null) {
+                return null;
+            }
+            result = foldBinary(value1, value2, opInsn.getOpcode());
+            if (result == null) {
+                return null;
+            }
+            insns.remove(opInsn);
+            insns.remove(nextInsn);
+        }
+        AbstractInsnNode constantInsn = newConstantInsn(result);
+        insns.set(insn, constantInsn);
+        return constantInsn;
+    }
+
+    /**
+     * Returns the result of a unary operation on a constant.
+     *
+     * @param value  an Integer or Long constant.
+     * @param opcode the opcode of the operation.
+     * @return the result of the operation, or <tt>null</tt> if it cannot be folded.
+     */
+    private static Object foldUnary(final Object value, final int opcode) {
+        if (value instanceof Integer) {
+            int i = (Integer) value;
+            switch (opcode) {
+            case Opcodes.INEG:
+                return -i;
+            case Opcodes.I2L:
+                return (long) i;
+            case Opcodes.I2B:
+                return (int) (byte) i;
+            case Opcodes.I2C:
+                return (int) (char) i;
+            case Opcodes.I2S:
+                return (int) (short) i;
+            default:
+                return null;
+            }
+        }
+        long l = (Long) value;
+        switch (opcode) {
+        case Opcodes.LNEG:
+            return -l;
+        case Opcodes.L2I:
+            return (int) l;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the result of a binary operation on two constants.
+     *
+     * @param value1 the first operand, an Integer or Long constant.
+     * @param value2 the second operand.
+     * @param opcode the opcode of the operation.
+     * @return the result of the operation, or <tt>null</tt> if it cannot be folded (because the
+     * operand types do not match the operation, or because it would throw an exception).
+     */
+    private static Object foldBinary(final Object value1, final Object value2, final int opcode) {
+        if (value1 instanceof Integer && value2 instanceof Integer) {
+            int i1 = (Integer) value1;
+            int i2 = (Integer) value2;
+            switch (opcode) {
+            case Opcodes.IADD:
+                return i1 + i2;
+            case Opcodes.ISUB:
+                return i1 - i2;
+            case Opcodes.IMUL:
+                return i1 * i2;
+            case Opcodes.IDIV:
+                return i2 == 0 ? null : (Object) (i1 / i2);
+            case Opcodes.IREM:
+                return i2 == 0 ? null : (Object) (i1 % i2);
+            case Opcodes.IAND:
+                return i1 & i2;
+            case Opcodes.IOR:
+                return i1 | i2;
+            case Opcodes.IXOR:
+                return i1 ^ i2;
+            case Opcodes.ISHL:
+                return i1 << i2;
+            case Opcodes.ISHR:
+                return i1 >> i2;
+            case Opcodes.IUSHR:
+                return i1 >>> i2;
+            default:
+                return null;
+            }
+        }
+        if (value1 instanceof Long && value2 instanceof Integer) {
+            long l1 = (Long) value1;
+            int i2 = (Integer) value2;
+            switch (opcode) {
+            case Opcodes.LSHL:
+                return l1 << i2;
+            case Opcodes.LSHR:
+                return l1 >> i2;
+            case Opcodes.LUSHR:
+                return l1 >>> i2;
+            default:
+                return null;
+            }
+        }
+        if (value1 instanceof Long && value2 instanceof Long) {
+            long l1 = (Long) value1;
+            long l2 = (Long) value2;
+            switch (opcode) {
+            case Opcodes.LADD:
+                return l1 + l2;
+            case Opcodes.LSUB:
+                return l1 - l2;
+            case Opcodes.LMUL:
+                return l1 * l2;
+            case Opcodes.LDIV:
+                return l2 == 0 ? null : (Object) (l1 / l2);
+            case Opcodes.LREM:
+                return l2 == 0 ? null : (Object) (l1 % l2);
+            case Opcodes.LAND:
+                return l1 & l2;
+            case Opcodes.LOR:
+                return l1 | l2;
+            case Opcodes.LXOR:
+                return l1 ^ l2;
+            default:
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the int or long constant pushed by the given instruction.
+     *
+     * @param insn an instruction.
+     * @return the Integer or Long pushed by insn, or <tt>null</tt> if it does not push such a
+     * constant.
+     */
+    private static Object getConstant(final AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if (opcode >= Opcodes.ICONST_M1 && opcode <= Opcodes.ICONST_5) {
+            return opcode - Opcodes.ICONST_0;
+        } else if (opcode == Opcodes.LCONST_0 || opcode == Opcodes.LCONST_1) {
+            return (long) (opcode - Opcodes.LCONST_0);
+        } else if (opcode == Opcodes.BIPUSH || opcode == Opcodes.SIPUSH) {
+            return ((IntInsnNode) insn).getOperand();
+        } else if (opcode == Opcodes.LDC) {
+            Object value = ((LdcInsnNode) insn).getCst();
+            if (value instanceof Integer || value instanceof Long) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the shortest instruction pushing the given constant.
+     *
+     * @param value an Integer or Long constant.
+     * @return an instruction pushing this constant.
+     */
+    private static AbstractInsnNode newConstantInsn(final Object value) {
+        if (value instanceof Long) {
+            long l = (Long) value;
+            if (l == 0L || l == 1L) {
+                return new InsnNode(Opcodes.LCONST_0 + (int) l);
+            }
+            return new LdcInsnNode(value);
+        }
+        int i = (Integer) value;
+        if (i >= -1 && i <= 5) {
+            return new InsnNode(Opcodes.ICONST_0 + i);
+        } else if (i == (byte) i) {
+            return new IntInsnNode(Opcodes.BIPUSH, i);
+        } else if (i == (short) i) {
+            return new IntInsnNode(Opcodes.SIPUSH, i);
+        }
+        return new LdcInsnNode(value);
+    }
+
+    /**
+     * Returns the size of the value pushed by the given instruction, if it has no other effect.
+     *
+     * @param insn an instruction.
+     * @return 1 or 2 if insn only pushes a value of this size (or duplicates the top stack values),
+     * 0 otherwise.
+     */
+    private static int getPushSize(final AbstractInsnNode insn) {
+        switch (insn.getOpcode()) {
+        case Opcodes.ACONST_NULL:
+        case Opcodes.ICONST_M1:
+        case Opcodes.ICONST_0:
+        case Opcodes.ICONST_1:
+        case Opcodes.ICONST_2:
+        case Opcodes.ICONST_3:
+        case Opcodes.ICONST_4:
+        case Opcodes.ICONST_5:
+        case Opcodes.FCONST_0:
+        case Opcodes.FCONST_1:
+        case Opcodes.FCONST_2:
+        case Opcodes.BIPUSH:
+        case Opcodes.SIPUSH:
+        case Opcodes.ILOAD:
+        case Opcodes.FLOAD:
+        case Opcodes.ALOAD:
+        case Opcodes.DUP:
+            return 1;
+        case Opcodes.LCONST_0:
+        case Opcodes.LCONST_1:
+        case Opcodes.DCONST_0:
+        case Opcodes.DCONST_1:
+        case Opcodes.LLOAD:
+        case Opcodes.DLOAD:
+        case Opcodes.DUP2:
+            return 2;
+        case Opcodes.LDC:
+            Object value = ((LdcInsnNode) insn).getCst();
+            if (value instanceof Integer || value instanceof Float || value instanceof String) {
+                return 1;
+            } else if (value instanceof Long || value instanceof Double) {
+                return 2;
+            }
+            // Loading a class, method type or method handle can fail.
+            return 0;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the size of the value popped by the given opcode, if it has no other effect.
+     *
+     * @param opcode an opcode.
+     * @return 1 for <tt>POP</tt>, 2 for <tt>POP2</tt>, 0 otherwise.
+     */
+    private static int getPopSize(final int opcode) {
+        return opcode == Opcodes.POP ? 1 : opcode == Opcodes.POP2 ? 2 : 0;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Jumps
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the label to which a jump to the given label can be redirected.
+     *
+     * @param label a jump target.
+     * @return the target of the chain of <tt>GOTO</tt> instructions starting at label, or label
+     * itself if it is not followed by a <tt>GOTO</tt>.
+     */
+    private static LabelNode getFinalTarget(final LabelNode label) {
+        LabelNode target = label;
+        for (int i = 0; i < MAX_JUMP_CHAIN; ++i) {
+            AbstractInsnNode insn = target;
+            while (insn != null && insn.getOpcode() < 0) {
+                insn = insn.getNext();
+            }
+            if (insn == null || insn.getOpcode() != Opcodes.GOTO) {
+                break;
+            }
+            LabelNode nextTarget = ((JumpInsnNode) insn).getLabel();
+            if (nextTarget == label || nextTarget == target) {
+                // An infinite loop.
+                break;
+            }
+            target = nextTarget;
+        }
+        return target;
+    }
+
+    /**
+     * Redirects the given switch targets with {@link #getFinalTarget}.
+     *
+     * @param labels the targets of a switch instruction.
+     * @return whether a target has been changed.
+     */
+    private static boolean redirect(final List<LabelNode> labels) {
+        boolean changed = false;
+        for (int i = 0, n = labels.size(); i < n; ++i) {
+            LabelNode label = labels.get(i);
+            LabelNode target = getFinalTarget(label);
+            if (target != label) {
+                labels.set(i, target);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Returns whether the given label designates the instruction following the given one.
+     *
+     * @param insn  an instruction.
+     * @param label a label.
+     * @return whether label is found after insn before any real instruction.
+     */
+    private static boolean isNextInsn(final AbstractInsnNode insn, final LabelNode label) {
+        AbstractInsnNode nextInsn = insn.getNext();
+        while (nextInsn != null && nextInsn.getOpcode() < 0) {
+            if (nextInsn == label) {
+                return true;
+            }
+            nextInsn = nextInsn.getNext();
+        }
+        return false;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Dead stores
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Removes the stores and increments of local variables which are never used afterwards.
+     *
+     * @param methodNode a method without stack map frames.
+     * @return whether the instructions have been changed.
+     */
+    private static boolean removeDeadStores(final MethodNode methodNode) {
+        InsnList insns = methodNode.instructions;
+        // The maximum number of locals is often not computed yet for generated code.
+        int maxLocals = methodNode.maxLocals;
+        methodNode.maxLocals = Math.max(maxLocals, computeMaxLocals(methodNode));
+        LiveVariables liveVariables = new LiveVariables();
+        try {
+            liveVariables.analyze(methodNode);
+        } finally {
+            methodNode.maxLocals = maxLocals;
+        }
+        AbstractInsnNode[] insnArray = insns.toArray();
+        boolean changed = false;
+        for (int i = 0; i < insnArray.length; ++i) {
+            AbstractInsnNode insn = insnArray[i];
+            int opcode = insn.getOpcode();
+            if (opcode >= Opcodes.ISTORE && opcode <= Opcodes.ASTORE) {
+                int var = ((VarInsnNode) insn).getVar();
+                AbstractInsnNode nextInsn = i + 1 < insnArray.length ? insnArray[i + 1] : null;
+                if (!liveVariables.isLiveAfter(i, var)) {
+                    boolean isLongOrDouble = opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE;
+                    insns.set(insn, new InsnNode(isLongOrDouble ? Opcodes.POP2 : Opcodes.POP));
+                    changed = true;
+                } else if (nextInsn != null
+                        && nextInsn.getOpcode() == opcode - (Opcodes.ISTORE - Opcodes.ILOAD)
+                        && ((VarInsnNode) nextInsn).getVar() == var
+                        && !liveVariables.isLiveAfter(i + 1, var)) {
+                    // The stored value is only loaded back immediately.
+                    insns.remove(insn);
+                    insns.remove(nextInsn);
+                    ++i;
+                    changed = true;
+                }
+            } else if (opcode == Opcodes.IINC
+                    && !liveVariables.isLiveAfter(i, ((IincInsnNode) insn).getVar())) {
+                insns.remove(insn);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Computes the number of local variables used by the given method.
+     *
+     * @param methodNode a method.
+     * @return the number of local variables used by the parameters and instructions of methodNode.
+     */
+    private static int computeMaxLocals(final MethodNode methodNode) {
+        int maxLocals = Type.getArgumentsAndReturnSizes(methodNode.desc) >> 2;
+        if ((methodNode.access & Opcodes.ACC_STATIC) != 0) {
+            --maxLocals;
+        }
+        for (AbstractInsnNode insn = methodNode.instructions.getFirst();
+             insn != null;
+             insn = insn.getNext()) {
+            int opcode = insn.getOpcode();
+            if (insn instanceof VarInsnNode) {
+                int size = opcode == Opcodes.LLOAD || opcode == Opcodes.DLOAD
+                        || opcode == Opcodes.LSTORE || opcode == Opcodes.DSTORE ? 2 : 1;
+                maxLocals = Math.max(maxLocals, ((VarInsnNode) insn).getVar() + size);
+            } else if (insn instanceof IincInsnNode) {
+                maxLocals = Math.max(maxLocals, ((IincInsnNode) insn).getVar() + 1);
+            }
+        }
+        return maxLocals;
+    }
+
+    /**
+     * Removes the try catch blocks which no longer contain any instruction.
+     *
+     * @param methodNode a method.
+     */
+    private static void removeEmptyTryCatchBlocks(final MethodNode methodNode) {
+        if (methodNode.tryCatchBlocks == null) {
+            return;
+        }
+        for (int i = methodNode.tryCatchBlocks.size() - 1; i >= 0; --i) {
+            TryCatchBlockNode tryCatchBlock = methodNode.tryCatchBlocks.get(i);
+            AbstractInsnNode insn = tryCatchBlock.getStart();
+            while (insn != tryCatchBlock.getEnd() && insn.getOpcode() < 0) {
+                insn = insn.getNext();
+            }
+            if (insn == tryCatchBlock.getEnd()) {
+                methodNode.tryCatchBlocks.remove(i);
+            }
+        }
+    }
+}
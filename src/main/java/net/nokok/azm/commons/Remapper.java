@@ -48,21 +48,24 @@ import net.nokok.azm.signature.SignatureWriter;
 public abstract class Remapper {
 
     public String mapDesc(String desc) {
-        Type t = Type.getType(desc);
-        switch (t.getSort()) {
-        case Type.ARRAY:
-            String s = mapDesc(t.getElementType().getDescriptor());
-            for (int i = 0; i < t.getDimensions(); ++i) {
-                s = '[' + s;
-            }
-            return s;
-        case Type.OBJECT:
-            String newType = map(t.getInternalName());
-            if (newType != null) {
-                return 'L' + newType + ';';
-            }
+        // Returns desc itself, without allocating a new string, if its type is not remapped.
+        int start = 0;
+        while (desc.charAt(start) == '[') {
+            ++start;
+        }
+        if (desc.charAt(start) != 'L') {
+            return desc;
         }
-        return desc;
+        String internalName = desc.substring(start + 1, desc.length() - 1);
+        String newInternalName = map(internalName);
+        if (newInternalName == null || newInternalName.equals(internalName)) {
+            return desc;
+        }
+        return new StringBuilder(start + newInternalName.length() + 2)
+                .append(desc, 0, start + 1)
+                .append(newInternalName)
+                .append(';')
+                .toString();
     }
 
     private Type mapType(Type t) {
@@ -86,7 +89,12 @@ public abstract class Remapper {
         if (type == null) {
             return null;
         }
-        return mapType(Type.getObjectType(type)).getInternalName();
+        if (type.charAt(0) == '[') {
+            // The internal name of an array type is its descriptor.
+            return mapDesc(type);
+        }
+        String newType = map(type);
+        return newType != null ? newType : type;
     }
 
     public String[] mapTypes(String[] types) {
@@ -114,18 +122,40 @@ public abstract class Remapper {
             return desc;
         }
 
-        Type[] args = Type.getArgumentTypes(desc);
-        StringBuilder sb = new StringBuilder("(");
-        for (int i = 0; i < args.length; i++) {
-            sb.append(mapDesc(args[i].getDescriptor()));
-        }
-        Type returnType = Type.getReturnType(desc);
-        if (returnType == Type.VOID_TYPE) {
-            sb.append(")V");
-            return sb.toString();
+        // The new descriptor is only built once a type is actually remapped, so that desc itself is
+        // returned, without allocating anything else than the object types, if nothing changes.
+        StringBuilder sb = null;
+        int length = desc.length();
+        int start = 1;
+        while (start < length) {
+            char c = desc.charAt(start);
+            if (c == ')') {
+                if (sb != null) {
+                    sb.append(')');
+                }
+                ++start;
+                continue;
+            }
+            int end = start;
+            while (desc.charAt(end) == '[') {
+                ++end;
+            }
+            end = desc.charAt(end) == 'L' ? desc.indexOf(';', end) + 1 : end + 1;
+            if (desc.charAt(end - 1) == ';') {
+                String typeDesc = desc.substring(start, end);
+                String newTypeDesc = mapDesc(typeDesc);
+                if (sb == null && newTypeDesc != typeDesc && !newTypeDesc.equals(typeDesc)) {
+                    sb = new StringBuilder(length + 16).append(desc, 0, start);
+                }
+                if (sb != null) {
+                    sb.append(newTypeDesc);
+                }
+            } else if (sb != null) {
+                sb.append(desc, start, end);
+            }
+            start = end;
         }
-        sb.append(')').append(mapDesc(returnType.getDescriptor()));
-        return sb.toString();
+        return sb == null ? desc : sb.toString();
     }
 
     public Object mapValue(Object value) {
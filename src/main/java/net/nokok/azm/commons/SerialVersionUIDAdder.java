@@ -222,6 +222,26 @@ public class SerialVersionUIDAdder extends ClassVisitor {
             final String desc,
             final String signature,
             final String[] exceptions) {
+        addSVUIDMethod(access, name, desc);
+        return super.visitMethod(access, name, desc, signature, exceptions);
+    }
+
+    @Override
+    public MethodVisitor visitMethodAsIs(
+            final int access,
+            final String name,
+            final String desc,
+            final String signature,
+            final String[] exceptions) {
+        // Only the method header is needed to compute the SVUID, the method itself is passed through.
+        addSVUIDMethod(access, name, desc);
+        if (cv != null) {
+            return cv.visitMethodAsIs(access, name, desc, signature, exceptions);
+        }
+        return null;
+    }
+
+    private void addSVUIDMethod(final int access, final String name, final String desc) {
         if (computeSVUID) {
             if ("<clinit>".equals(name)) {
                 hasStaticInitializer = true;
@@ -254,8 +274,6 @@ public class SerialVersionUIDAdder extends ClassVisitor {
                 }
             }
         }
-
-        return super.visitMethod(access, name, desc, signature, exceptions);
     }
 
     /*
@@ -90,6 +90,19 @@ public class StaticInitMerger extends ClassVisitor {
         return mv;
     }
 
+    @Override
+    public MethodVisitor visitMethodAsIs(
+            final int access,
+            final String name,
+            final String desc,
+            final String signature,
+            final String[] exceptions) {
+        if ("<clinit>".equals(name)) {
+            return visitMethod(access, name, desc, signature, exceptions);
+        }
+        return cv.visitMethodAsIs(access, name, desc, signature, exceptions);
+    }
+
     @Override
     public void visitEnd() {
         if (clinit != null) {
@@ -153,11 +153,19 @@ public abstract class AbstractInsnNode {
 
     /**
      * The index of this instruction in the list to which it belongs. The value of this field is
-     * correct only when {@link InsnList#cache} is not null. A value of -1 indicates that this
-     * instruction does not belong to any {@link InsnList}.
+     * correct only when {@link InsnList#cache} is not null, or when this instruction is part of the
+     * indexed prefix of an {@link InsnList} in incremental indexing mode. A value of -1 indicates that
+     * this instruction does not belong to any {@link InsnList}.
      */
     int index;
 
+    /**
+     * The ordinal of this instruction in the list to which it belongs. Ordinals are strictly
+     * increasing along the list, but are not contiguous. The value of this field is correct only
+     * when the list to which this instruction belongs is in incremental indexing mode.
+     */
+    long ordinal;
+
     /**
      * Constructs a new {@link AbstractInsnNode}.
      *
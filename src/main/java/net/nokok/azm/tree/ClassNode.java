@@ -155,6 +155,12 @@ public class ClassNode extends ClassVisitor {
      */
     public List<MethodNode> methods;
 
+    /**
+     * Whether the code of the methods of this class must be parsed only when needed (see {@link
+     * MethodNode#setLazyCode}).
+     */
+    private boolean lazyCode;
+
     /**
      * Constructs a new {@link ClassNode}. <i>Subclasses must not use this constructor</i>. Instead,
      * they must use the {@link #ClassNode(int)} version.
@@ -182,6 +188,28 @@ public class ClassNode extends ClassVisitor {
         this.methods = new ArrayList<MethodNode>();
     }
 
+    /**
+     * Returns whether the code of the methods of this class is parsed only when needed.
+     *
+     * @return whether the code of the methods of this class is parsed only when needed.
+     */
+    public boolean isLazyCode() {
+        return lazyCode;
+    }
+
+    /**
+     * Sets whether the code of the methods visited by this class node must be parsed only when
+     * needed. When a lazy class node is visited by a {@link net.nokok.azm.ClassReader}, the code of
+     * each method is parsed only on {@link MethodNode#loadCode}, and the code of the methods which
+     * are not loaded is copied as is by {@link #accept} to a {@link net.nokok.azm.ClassWriter}
+     * constructed with the same class reader.
+     *
+     * @param lazyCode whether the code of the methods of this class must be parsed only when needed.
+     */
+    public void setLazyCode(final boolean lazyCode) {
+        this.lazyCode = lazyCode;
+    }
+
     // -----------------------------------------------------------------------------------------------
     // Implementation of the ClassVisitor abstract class
     // -----------------------------------------------------------------------------------------------
@@ -291,6 +319,7 @@ public class ClassNode extends ClassVisitor {
             final String signature,
             final String[] exceptions) {
         MethodNode method = new MethodNode(access, name, descriptor, signature, exceptions);
+        method.setLazyCode(lazyCode);
         methods.add(method);
         return method;
     }
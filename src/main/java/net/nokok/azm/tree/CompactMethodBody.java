@@ -0,0 +1,874 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.tree;
+
+import net.nokok.azm.Handle;
+import net.nokok.azm.Label;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A compact representation of the code of a method. Instead of one {@link AbstractInsnNode} object
+ * per instruction, this class stores the opcode of each instruction in a byte array and its operand
+ * in an int array. The operand is either a value, or an index in one of the side tables, which
+ * contain the constants (type descriptors, names, {@link net.nokok.azm.tree.LdcInsnNode} values,
+ * etc), the field and method references, and the variable length data (switch tables, frames and
+ * line numbers). Labels are represented by their index, and new {@link Label} objects are created
+ * each time the code is replayed with {@link #accept(MethodVisitor)}.
+ *
+ * <p>A compact method body is built by visiting the code of a method with it, from {@link
+ * MethodVisitor#visitCode} to {@link MethodVisitor#visitMaxs}. The other method elements (such as
+ * annotations, parameters and non standard attributes) are ignored, as well as the instruction,
+ * try catch block and local variable type annotations. <i>This implementation is not thread
+ * safe</i>.
+ *
+ * @see MethodNode
+ */
+public class CompactMethodBody extends MethodVisitor {
+
+    /**
+     * The code used for labels in {@link #opcodes}. This value is not a valid JVM opcode.
+     */
+    private static final int LABEL = 253;
+
+    /**
+     * The code used for line numbers in {@link #opcodes}. This value is not a valid JVM opcode.
+     */
+    private static final int LINE = 254;
+
+    /**
+     * The code used for stack map frames in {@link #opcodes}. This value is not a valid JVM opcode.
+     */
+    private static final int FRAME = 255;
+
+    /**
+     * The code of the first label in frame types encoded in {@link #data}. Smaller non negative codes
+     * are primitive types (see {@link Opcodes#TOP}), and negative codes are reference types.
+     */
+    private static final int FRAME_LABEL = 7;
+
+    /**
+     * The opcodes of the instructions of this method body, or {@link #LABEL}, {@link #LINE} or {@link
+     * #FRAME} for the corresponding pseudo instructions. Only the first {@link #size} elements are
+     * used.
+     */
+    private byte[] opcodes;
+
+    /**
+     * The operand of each instruction of this method body. This is the operand value for {@link
+     * Opcodes#BIPUSH}, {@link Opcodes#SIPUSH}, {@link Opcodes#NEWARRAY} and var instructions, a label
+     * index for jumps and labels, <tt>var | increment &lt;&lt; 16</tt> for {@link Opcodes#IINC},
+     * <tt>memberRefIndex &lt;&lt; 1 | isInterface</tt> for field and method instructions, a constant
+     * index for type, {@link Opcodes#LDC} and invokedynamic instructions, <tt>constantIndex &lt;&lt;
+     * 8 | numDimensions</tt> for {@link Opcodes#MULTIANEWARRAY}, and an index in {@link #data} for
+     * switch instructions, line numbers and frames.
+     */
+    private int[] operands;
+
+    /**
+     * The number of instructions, including pseudo instructions, of this method body.
+     */
+    private int size;
+
+    /**
+     * The constants of this method body. Invokedynamic instructions use four consecutive constants:
+     * the method name, the method descriptor, the bootstrap method handle and an Object[] containing
+     * the bootstrap method arguments.
+     */
+    private Object[] constants;
+
+    /**
+     * The number of elements used in {@link #constants}.
+     */
+    private int constantCount;
+
+    /**
+     * The owner, name and descriptor of the field and method references of this method body.
+     */
+    private String[] memberRefs;
+
+    /**
+     * The number of elements used in {@link #memberRefs} (three per reference).
+     */
+    private int memberRefLength;
+
+    /**
+     * The variable length operands of this method body. A tableswitch uses min, max, default label
+     * and labels; a lookupswitch uses default label, number of pairs, keys and labels; a line number
+     * uses line and start label; a frame uses type, number of locals, number of stack elements, then
+     * the encoded local and stack types (see {@link #FRAME_LABEL}).
+     */
+    private int[] data;
+
+    /**
+     * The number of elements used in {@link #data}.
+     */
+    private int dataLength;
+
+    /**
+     * The try catch blocks of this method body, as start label, end label, handler label and type
+     * constant index (or -1 for finally blocks) quadruplets.
+     */
+    private int[] tryCatchBlocks;
+
+    /**
+     * The number of elements used in {@link #tryCatchBlocks}.
+     */
+    private int tryCatchBlockLength;
+
+    /**
+     * The local variables of this method body, as name constant index, descriptor constant index,
+     * signature constant index (or -1), start label, end label and index sextuplets.
+     */
+    private int[] localVariables;
+
+    /**
+     * The number of elements used in {@link #localVariables}.
+     */
+    private int localVariableLength;
+
+    /**
+     * The number of distinct labels of this method body.
+     */
+    private int labelCount;
+
+    /**
+     * The index of each visited label, while this method body is being built. This map is released
+     * by {@link #visitMaxs}.
+     */
+    private HashMap<Label, Integer> labelIndexes;
+
+    /**
+     * The maximum stack size of this method.
+     */
+    private int maxStack;
+
+    /**
+     * The maximum number of local variables of this method.
+     */
+    private int maxLocals;
+
+    /**
+     * Constructs an empty {@link CompactMethodBody}. <i>Subclasses must not use this constructor</i>.
+     * Instead, they must use the {@link #CompactMethodBody(int)} version.
+     *
+     * @throws IllegalStateException If a subclass calls this constructor.
+     */
+    public CompactMethodBody() {
+        this(Opcodes.ASM6);
+        if (getClass() != CompactMethodBody.class) {
+            throw new IllegalStateException();
+        }
+    }
+
+    /**
+     * Constructs an empty {@link CompactMethodBody}.
+     *
+     * @param api the ASM API version implemented by this visitor. Must be one of {@link
+     *            Opcodes#ASM4}, {@link Opcodes#ASM5} or {@link Opcodes#ASM6}.
+     */
+    public CompactMethodBody(final int api) {
+        super(api);
+        this.opcodes = new byte[16];
+        this.operands = new int[16];
+        this.constants = new Object[8];
+        this.memberRefs = new String[12];
+        this.data = new int[8];
+        this.tryCatchBlocks = new int[0];
+        this.localVariables = new int[0];
+        this.labelIndexes = new HashMap<Label, Integer>();
+    }
+
+    /**
+     * Constructs a {@link CompactMethodBody} containing the code of the given method.
+     *
+     * @param methodNode a method node. Its code is loaded if necessary.
+     * @return a compact method body containing the instructions, try catch blocks, local variables
+     * and maximum stack size and locals of methodNode.
+     */
+    public static CompactMethodBody of(final MethodNode methodNode) {
+        CompactMethodBody body = new CompactMethodBody();
+        methodNode.loadCode();
+        if (methodNode.instructions.size() > 0) {
+            if (methodNode.tryCatchBlocks != null) {
+                for (int i = 0, n = methodNode.tryCatchBlocks.size(); i < n; ++i) {
+                    methodNode.tryCatchBlocks.get(i).accept(body);
+                }
+            }
+            methodNode.instructions.accept(body);
+            if (methodNode.localVariables != null) {
+                for (int i = 0, n = methodNode.localVariables.size(); i < n; ++i) {
+                    methodNode.localVariables.get(i).accept(body);
+                }
+            }
+        }
+        body.visitMaxs(methodNode.maxStack, methodNode.maxLocals);
+        return body;
+    }
+
+    /**
+     * Replaces the code of the given method with the code of this method body.
+     *
+     * @param methodNode a method node. Its instructions, try catch blocks, local variables, local
+     *                   variable annotations and maximum stack size and locals are replaced.
+     */
+    public void toMethodNode(final MethodNode methodNode) {
+        methodNode.loadCode();
+        methodNode.instructions.clear();
+        methodNode.tryCatchBlocks = new ArrayList<TryCatchBlockNode>();
+        methodNode.localVariables = new ArrayList<LocalVariableNode>(localVariableLength / 6);
+        methodNode.visibleLocalVariableAnnotations = null;
+        methodNode.invisibleLocalVariableAnnotations = null;
+        replay(methodNode);
+        if (size == 0) {
+            methodNode.maxStack = maxStack;
+            methodNode.maxLocals = maxLocals;
+        }
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Accessors
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of instructions of this method body, including labels, line numbers and
+     * frames.
+     *
+     * @return the number of instructions of this method body.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the opcode of an instruction of this method body.
+     *
+     * @param index the index of an instruction.
+     * @return the opcode of this instruction, or -1 if it is a label, a line number or a frame.
+     * @throws IndexOutOfBoundsException if (index &lt; 0 || index &gt;= size()).
+     */
+    public int getOpcode(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        int opcode = opcodes[index] & 0xFF;
+        return opcode >= LABEL ? -1 : opcode;
+    }
+
+    /**
+     * Returns the type of an instruction of this method body.
+     *
+     * @param index the index of an instruction.
+     * @return the type of this instruction, as returned by {@link AbstractInsnNode#getType}.
+     * @throws IndexOutOfBoundsException if (index &lt; 0 || index &gt;= size()).
+     */
+    public int getType(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException();
+        }
+        return getInsnType(opcodes[index] & 0xFF);
+    }
+
+    /**
+     * Returns the maximum stack size of this method.
+     *
+     * @return the maximum stack size of this method.
+     */
+    public int getMaxStack() {
+        return maxStack;
+    }
+
+    /**
+     * Returns the maximum number of local variables of this method.
+     *
+     * @return the maximum number of local variables of this method.
+     */
+    public int getMaxLocals() {
+        return maxLocals;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Implementation of the MethodVisitor abstract class
+    // -----------------------------------------------------------------------------------------------
+
+    @Override
+    public void visitFrame(
+            final int type,
+            final int nLocal,
+            final Object[] local,
+            final int nStack,
+            final Object[] stack) {
+        int offset = dataLength;
+        putData(type);
+        putData(nLocal);
+        putData(nStack);
+        if (type != Opcodes.F_CHOP) {
+            for (int i = 0; i < nLocal; ++i) {
+                putData(getFrameTypeCode(local[i]));
+            }
+        }
+        for (int i = 0; i < nStack; ++i) {
+            putData(getFrameTypeCode(stack[i]));
+        }
+        add(FRAME, offset);
+    }
+
+    @Override
+    public void visitInsn(final int opcode) {
+        add(opcode, 0);
+    }
+
+    @Override
+    public void visitIntInsn(final int opcode, final int operand) {
+        add(opcode, operand);
+    }
+
+    @Override
+    public void visitVarInsn(final int opcode, final int var) {
+        add(opcode, var);
+    }
+
+    @Override
+    public void visitTypeInsn(final int opcode, final String type) {
+        add(opcode, putConstant(type));
+    }
+
+    @Override
+    public void visitFieldInsn(
+            final int opcode, final String owner, final String name, final String descriptor) {
+        add(opcode, putMemberRef(owner, name, descriptor) << 1);
+    }
+
+    /**
+     * @deprecated
+     */
+    @Deprecated
+    @Override
+    public void visitMethodInsn(
+            final int opcode, final String owner, final String name, final String descriptor) {
+        if (api >= Opcodes.ASM5) {
+            super.visitMethodInsn(opcode, owner, name, descriptor);
+            return;
+        }
+        add(opcode, putMemberRef(owner, name, descriptor) << 1
+                | (opcode == Opcodes.INVOKEINTERFACE ? 1 : 0));
+    }
+
+    @Override
+    public void visitMethodInsn(
+            final int opcode,
+            final String owner,
+            final String name,
+            final String descriptor,
+            final boolean isInterface) {
+        if (api < Opcodes.ASM5) {
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+            return;
+        }
+        add(opcode, putMemberRef(owner, name, descriptor) << 1 | (isInterface ? 1 : 0));
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(
+            final String name,
+            final String descriptor,
+            final Handle bootstrapMethodHandle,
+            final Object... bootstrapMethodArguments) {
+        int constantIndex = putConstant(name);
+        putConstant(descriptor);
+        putConstant(bootstrapMethodHandle);
+        putConstant(bootstrapMethodArguments);
+        add(Opcodes.INVOKEDYNAMIC, constantIndex);
+    }
+
+    @Override
+    public void visitJumpInsn(final int opcode, final Label label) {
+        add(opcode, getLabelIndex(label));
+    }
+
+    @Override
+    public void visitLabel(final Label label) {
+        add(LABEL, getLabelIndex(label));
+    }
+
+    @Override
+    public void visitLdcInsn(final Object value) {
+        add(Opcodes.LDC, putConstant(value));
+    }
+
+    @Override
+    public void visitIincInsn(final int var, final int increment) {
+        add(Opcodes.IINC, var | increment << 16);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(
+            final int min, final int max, final Label dflt, final Label... labels) {
+        int offset = dataLength;
+        putData(min);
+        putData(max);
+        putData(getLabelIndex(dflt));
+        for (Label label : labels) {
+            putData(getLabelIndex(label));
+        }
+        add(Opcodes.TABLESWITCH, offset);
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(final Label dflt, final int[] keys, final Label[] labels) {
+        int offset = dataLength;
+        putData(getLabelIndex(dflt));
+        putData(keys.length);
+        for (int key : keys) {
+            putData(key);
+        }
+        for (Label label : labels) {
+            putData(getLabelIndex(label));
+        }
+        add(Opcodes.LOOKUPSWITCH, offset);
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(final String descriptor, final int numDimensions) {
+        add(Opcodes.MULTIANEWARRAY, putConstant(descriptor) << 8 | numDimensions);
+    }
+
+    @Override
+    public void visitTryCatchBlock(
+            final Label start, final Label end, final Label handler, final String type) {
+        if (tryCatchBlockLength + 4 > tryCatchBlocks.length) {
+            tryCatchBlocks = Arrays.copyOf(tryCatchBlocks, Math.max(8, 2 * tryCatchBlocks.length));
+        }
+        tryCatchBlocks[tryCatchBlockLength++] = getLabelIndex(start);
+        tryCatchBlocks[tryCatchBlockLength++] = getLabelIndex(end);
+        tryCatchBlocks[tryCatchBlockLength++] = getLabelIndex(handler);
+        tryCatchBlocks[tryCatchBlockLength++] = type == null ? -1 : putConstant(type);
+    }
+
+    @Override
+    public void visitLocalVariable(
+            final String name,
+            final String descriptor,
+            final String signature,
+            final Label start,
+            final Label end,
+            final int index) {
+        if (localVariableLength + 6 > localVariables.length) {
+            localVariables = Arrays.copyOf(localVariables, Math.max(12, 2 * localVariables.length));
+        }
+        localVariables[localVariableLength++] = putConstant(name);
+        localVariables[localVariableLength++] = putConstant(descriptor);
+        localVariables[localVariableLength++] = signature == null ? -1 : putConstant(signature);
+        localVariables[localVariableLength++] = getLabelIndex(start);
+        localVariables[localVariableLength++] = getLabelIndex(end);
+        localVariables[localVariableLength++] = index;
+    }
+
+    @Override
+    public void visitLineNumber(final int line, final Label start) {
+        int offset = dataLength;
+        putData(line);
+        putData(getLabelIndex(start));
+        add(LINE, offset);
+    }
+
+    /**
+     * Ends the construction of this method body. The internal arrays are trimmed to their actual
+     * size, and the code must no longer be visited after this call.
+     */
+    @Override
+    public void visitMaxs(final int maxStack, final int maxLocals) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+        opcodes = Arrays.copyOf(opcodes, size);
+        operands = Arrays.copyOf(operands, size);
+        constants = Arrays.copyOf(constants, constantCount);
+        memberRefs = Arrays.copyOf(memberRefs, memberRefLength);
+        data = Arrays.copyOf(data, dataLength);
+        tryCatchBlocks = Arrays.copyOf(tryCatchBlocks, tryCatchBlockLength);
+        localVariables = Arrays.copyOf(localVariables, localVariableLength);
+        labelIndexes = null;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Accept method
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Makes the given method visitor visit the code of this method body, from {@link
+     * MethodVisitor#visitCode} to {@link MethodVisitor#visitMaxs}. {@link MethodVisitor#visitEnd}
+     * is not called, so that this method can be used between the visit of the other elements of a
+     * method and the end of its visit. New {@link Label} objects are created at each call.
+     *
+     * @param methodVisitor a method visitor.
+     */
+    public void accept(final MethodVisitor methodVisitor) {
+        if (size > 0) {
+            methodVisitor.visitCode();
+            replay(methodVisitor);
+        }
+    }
+
+    /**
+     * Makes the given method visitor visit the try catch blocks, the instructions, the local
+     * variables and the maximum stack size and locals of this method body, if it is not empty.
+     *
+     * @param methodVisitor a method visitor.
+     */
+    private void replay(final MethodVisitor methodVisitor) {
+        if (size == 0) {
+            return;
+        }
+        Label[] labels = new Label[labelCount];
+        for (int i = 0; i < labelCount; ++i) {
+            labels[i] = new Label();
+        }
+        for (int i = 0; i < tryCatchBlockLength; i += 4) {
+            int typeIndex = tryCatchBlocks[i + 3];
+            methodVisitor.visitTryCatchBlock(
+                    labels[tryCatchBlocks[i]],
+                    labels[tryCatchBlocks[i + 1]],
+                    labels[tryCatchBlocks[i + 2]],
+                    typeIndex == -1 ? null : (String) constants[typeIndex]);
+        }
+        for (int i = 0; i < size; ++i) {
+            int opcode = opcodes[i] & 0xFF;
+            int operand = operands[i];
+            switch (getInsnType(opcode)) {
+            case AbstractInsnNode.INSN:
+                methodVisitor.visitInsn(opcode);
+                break;
+            case AbstractInsnNode.INT_INSN:
+                methodVisitor.visitIntInsn(opcode, operand);
+                break;
+            case AbstractInsnNode.VAR_INSN:
+                methodVisitor.visitVarInsn(opcode, operand);
+                break;
+            case AbstractInsnNode.TYPE_INSN:
+                methodVisitor.visitTypeInsn(opcode, (String) constants[operand]);
+                break;
+            case AbstractInsnNode.FIELD_INSN: {
+                int memberRefIndex = operand >>> 1;
+                methodVisitor.visitFieldInsn(
+                        opcode,
+                        memberRefs[memberRefIndex],
+                        memberRefs[memberRefIndex + 1],
+                        memberRefs[memberRefIndex + 2]);
+                break;
+            }
+            case AbstractInsnNode.METHOD_INSN: {
+                int memberRefIndex = operand >>> 1;
+                methodVisitor.visitMethodInsn(
+                        opcode,
+                        memberRefs[memberRefIndex],
+                        memberRefs[memberRefIndex + 1],
+                        memberRefs[memberRefIndex + 2],
+                        (operand & 1) != 0);
+                break;
+            }
+            case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+                methodVisitor.visitInvokeDynamicInsn(
+                        (String) constants[operand],
+                        (String) constants[operand + 1],
+                        (Handle) constants[operand + 2],
+                        (Object[]) constants[operand + 3]);
+                break;
+            case AbstractInsnNode.JUMP_INSN:
+                methodVisitor.visitJumpInsn(opcode, labels[operand]);
+                break;
+            case AbstractInsnNode.LABEL:
+                methodVisitor.visitLabel(labels[operand]);
+                break;
+            case AbstractInsnNode.LDC_INSN:
+                methodVisitor.visitLdcInsn(constants[operand]);
+                break;
+            case AbstractInsnNode.IINC_INSN:
+                methodVisitor.visitIincInsn(operand & 0xFFFF, operand >> 16);
+                break;
+            case AbstractInsnNode.TABLESWITCH_INSN: {
+                int min = data[operand];
+                int max = data[operand + 1];
+                Label[] tableLabels = new Label[max - min + 1];
+                for (int j = 0; j < tableLabels.length; ++j) {
+                    tableLabels[j] = labels[data[operand + 3 + j]];
+                }
+                methodVisitor.visitTableSwitchInsn(min, max, labels[data[operand + 2]], tableLabels);
+                break;
+            }
+            case AbstractInsnNode.LOOKUPSWITCH_INSN: {
+                int numPairs = data[operand + 1];
+                int[] keys = Arrays.copyOfRange(data, operand + 2, operand + 2 + numPairs);
+                Label[] lookupLabels = new Label[numPairs];
+                for (int j = 0; j < numPairs; ++j) {
+                    lookupLabels[j] = labels[data[operand + 2 + numPairs + j]];
+                }
+                methodVisitor.visitLookupSwitchInsn(labels[data[operand]], keys, lookupLabels);
+                break;
+            }
+            case AbstractInsnNode.MULTIANEWARRAY_INSN:
+                methodVisitor.visitMultiANewArrayInsn((String) constants[operand >>> 8], operand & 0xFF);
+                break;
+            case AbstractInsnNode.FRAME: {
+                int type = data[operand];
+                int nLocal = data[operand + 1];
+                int nStack = data[operand + 2];
+                int offset = operand + 3;
+                Object[] local = null;
+                if (type != Opcodes.F_CHOP && nLocal > 0) {
+                    local = new Object[nLocal];
+                    for (int j = 0; j < nLocal; ++j) {
+                        local[j] = getFrameType(data[offset++], labels);
+                    }
+                }
+                Object[] stack = null;
+                if (nStack > 0) {
+                    stack = new Object[nStack];
+                    for (int j = 0; j < nStack; ++j) {
+                        stack[j] = getFrameType(data[offset++], labels);
+                    }
+                }
+                methodVisitor.visitFrame(type, nLocal, local, nStack, stack);
+                break;
+            }
+            case AbstractInsnNode.LINE:
+                methodVisitor.visitLineNumber(data[operand], labels[data[operand + 1]]);
+                break;
+            default:
+                throw new AssertionError();
+            }
+        }
+        for (int i = 0; i < localVariableLength; i += 6) {
+            int signatureIndex = localVariables[i + 2];
+            methodVisitor.visitLocalVariable(
+                    (String) constants[localVariables[i]],
+                    (String) constants[localVariables[i + 1]],
+                    signatureIndex == -1 ? null : (String) constants[signatureIndex],
+                    labels[localVariables[i + 3]],
+                    labels[localVariables[i + 4]],
+                    localVariables[i + 5]);
+        }
+        methodVisitor.visitMaxs(maxStack, maxLocals);
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Utility methods
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the type of the instructions with the given opcode.
+     *
+     * @param opcode an opcode, or {@link #LABEL}, {@link #LINE} or {@link #FRAME}.
+     * @return the type of the instructions with this opcode (see {@link AbstractInsnNode#getType}).
+     */
+    private static int getInsnType(final int opcode) {
+        switch (opcode) {
+        case Opcodes.BIPUSH:
+        case Opcodes.SIPUSH:
+        case Opcodes.NEWARRAY:
+            return AbstractInsnNode.INT_INSN;
+        case Opcodes.ILOAD:
+        case Opcodes.LLOAD:
+        case Opcodes.FLOAD:
+        case Opcodes.DLOAD:
+        case Opcodes.ALOAD:
+        case Opcodes.ISTORE:
+        case Opcodes.LSTORE:
+        case Opcodes.FSTORE:
+        case Opcodes.DSTORE:
+        case Opcodes.ASTORE:
+        case Opcodes.RET:
+            return AbstractInsnNode.VAR_INSN;
+        case Opcodes.NEW:
+        case Opcodes.ANEWARRAY:
+        case Opcodes.CHECKCAST:
+        case Opcodes.INSTANCEOF:
+            return AbstractInsnNode.TYPE_INSN;
+        case Opcodes.GETSTATIC:
+        case Opcodes.PUTSTATIC:
+        case Opcodes.GETFIELD:
+        case Opcodes.PUTFIELD:
+            return AbstractInsnNode.FIELD_INSN;
+        case Opcodes.INVOKEVIRTUAL:
+        case Opcodes.INVOKESPECIAL:
+        case Opcodes.INVOKESTATIC:
+        case Opcodes.INVOKEINTERFACE:
+            return AbstractInsnNode.METHOD_INSN;
+        case Opcodes.INVOKEDYNAMIC:
+            return AbstractInsnNode.INVOKE_DYNAMIC_INSN;
+        case Opcodes.IFEQ:
+        case Opcodes.IFNE:
+        case Opcodes.IFLT:
+        case Opcodes.IFGE:
+        case Opcodes.IFGT:
+        case Opcodes.IFLE:
+        case Opcodes.IF_ICMPEQ:
+        case Opcodes.IF_ICMPNE:
+        case Opcodes.IF_ICMPLT:
+        case Opcodes.IF_ICMPGE:
+        case Opcodes.IF_ICMPGT:
+        case Opcodes.IF_ICMPLE:
+        case Opcodes.IF_ACMPEQ:
+        case Opcodes.IF_ACMPNE:
+        case Opcodes.GOTO:
+        case Opcodes.JSR:
+        case Opcodes.IFNULL:
+        case Opcodes.IFNONNULL:
+            return AbstractInsnNode.JUMP_INSN;
+        case Opcodes.LDC:
+            return AbstractInsnNode.LDC_INSN;
+        case Opcodes.IINC:
+            return AbstractInsnNode.IINC_INSN;
+        case Opcodes.TABLESWITCH:
+            return AbstractInsnNode.TABLESWITCH_INSN;
+        case Opcodes.LOOKUPSWITCH:
+            return AbstractInsnNode.LOOKUPSWITCH_INSN;
+        case Opcodes.MULTIANEWARRAY:
+            return AbstractInsnNode.MULTIANEWARRAY_INSN;
+        case LABEL:
+            return AbstractInsnNode.LABEL;
+        case LINE:
+            return AbstractInsnNode.LINE;
+        case FRAME:
+            return AbstractInsnNode.FRAME;
+        default:
+            return AbstractInsnNode.INSN;
+        }
+    }
+
+    /**
+     * Appends an instruction to this method body.
+     *
+     * @param opcode  an opcode, or {@link #LABEL}, {@link #LINE} or {@link #FRAME}.
+     * @param operand the encoded operand of the instruction (see {@link #operands}).
+     */
+    private void add(final int opcode, final int operand) {
+        if (size == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, Math.max(16, 2 * size));
+            operands = Arrays.copyOf(operands, opcodes.length);
+        }
+        opcodes[size] = (byte) opcode;
+        operands[size++] = operand;
+    }
+
+    /**
+     * Appends a value to {@link #data}.
+     *
+     * @param value an int value.
+     */
+    private void putData(final int value) {
+        if (dataLength == data.length) {
+            data = Arrays.copyOf(data, Math.max(8, 2 * dataLength));
+        }
+        data[dataLength++] = value;
+    }
+
+    /**
+     * Appends a constant to {@link #constants}.
+     *
+     * @param value a constant value.
+     * @return the index of this constant.
+     */
+    private int putConstant(final Object value) {
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, Math.max(8, 2 * constantCount));
+        }
+        constants[constantCount] = value;
+        return constantCount++;
+    }
+
+    /**
+     * Appends a field or method reference to {@link #memberRefs}.
+     *
+     * @param owner      the internal name of the field or method owner class.
+     * @param name       the field or method name.
+     * @param descriptor the field or method descriptor.
+     * @return the index of the owner of this reference in {@link #memberRefs}.
+     */
+    private int putMemberRef(final String owner, final String name, final String descriptor) {
+        if (memberRefLength + 3 > memberRefs.length) {
+            memberRefs = Arrays.copyOf(memberRefs, Math.max(12, 2 * memberRefs.length));
+        }
+        memberRefs[memberRefLength] = owner;
+        memberRefs[memberRefLength + 1] = name;
+        memberRefs[memberRefLength + 2] = descriptor;
+        memberRefLength += 3;
+        return memberRefLength - 3;
+    }
+
+    /**
+     * Returns the index of the given label, assigning a new index if necessary.
+     *
+     * @param label a label.
+     * @return the index of this label.
+     */
+    private int getLabelIndex(final Label label) {
+        Integer labelIndex = labelIndexes.get(label);
+        if (labelIndex == null) {
+            labelIndex = labelCount++;
+            labelIndexes.put(label, labelIndex);
+        }
+        return labelIndex;
+    }
+
+    /**
+     * Returns the code of the given frame type (see {@link #FRAME_LABEL}).
+     *
+     * @param type a frame type, as defined in {@link MethodVisitor#visitFrame}.
+     * @return the code of this type.
+     */
+    private int getFrameTypeCode(final Object type) {
+        if (type instanceof Integer) {
+            return (Integer) type;
+        } else if (type instanceof String) {
+            return -1 - putConstant(type);
+        } else {
+            return FRAME_LABEL + getLabelIndex((Label) type);
+        }
+    }
+
+    /**
+     * Returns the frame type corresponding to the given code (see {@link #FRAME_LABEL}).
+     *
+     * @param code   a frame type code.
+     * @param labels the labels of this method body.
+     * @return the corresponding frame type, as defined in {@link MethodVisitor#visitFrame}.
+     */
+    private Object getFrameType(final int code, final Label[] labels) {
+        if (code < 0) {
+            return constants[-1 - code];
+        } else if (code < FRAME_LABEL) {
+            return code;
+        } else {
+            return labels[code - FRAME_LABEL];
+        }
+    }
+}
@@ -117,22 +117,22 @@ public class FrameNode extends AbstractInsnNode {
 
     @Override
     public void accept(final MethodVisitor methodVisitor) {
-        switch (getType()) {
+        switch (this.type) {
         case Opcodes.F_NEW:
         case Opcodes.F_FULL:
-            methodVisitor.visitFrame(getType(), getLocal().size(), asArray(getLocal()), getStack().size(), asArray(getStack()));
+            methodVisitor.visitFrame(this.type, getLocal().size(), asArray(getLocal()), getStack().size(), asArray(getStack()));
             break;
         case Opcodes.F_APPEND:
-            methodVisitor.visitFrame(getType(), getLocal().size(), asArray(getLocal()), 0, null);
+            methodVisitor.visitFrame(this.type, getLocal().size(), asArray(getLocal()), 0, null);
             break;
         case Opcodes.F_CHOP:
-            methodVisitor.visitFrame(getType(), getLocal().size(), null, 0, null);
+            methodVisitor.visitFrame(this.type, getLocal().size(), null, 0, null);
             break;
         case Opcodes.F_SAME:
-            methodVisitor.visitFrame(getType(), 0, null, 0, null);
+            methodVisitor.visitFrame(this.type, 0, null, 0, null);
             break;
         case Opcodes.F_SAME1:
-            methodVisitor.visitFrame(getType(), 0, null, 1, asArray(getStack()));
+            methodVisitor.visitFrame(this.type, 0, null, 1, asArray(getStack()));
             break;
         default:
             throw new IllegalArgumentException();
@@ -142,7 +142,7 @@ public class FrameNode extends AbstractInsnNode {
     @Override
     public AbstractInsnNode clone(final Map<LabelNode, LabelNode> clonedLabels) {
         FrameNode clone = new FrameNode();
-        clone.setType(getType());
+        clone.setType(this.type);
         if (getLocal() != null) {
             clone.setLocal(new ArrayList<Object>());
             for (int i = 0, n = getLocal().size(); i < n; ++i) {
@@ -214,7 +214,7 @@ public class FrameNode extends AbstractInsnNode {
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         FrameNode frameNode = (FrameNode) o;
-        return getType() == frameNode.getType() &&
+        return this.type == frameNode.type &&
                 Objects.equals(getLocal(), frameNode.getLocal()) &&
                 Objects.equals(getStack(), frameNode.getStack());
     }
@@ -222,7 +222,7 @@ public class FrameNode extends AbstractInsnNode {
     @Override
     public int hashCode() {
 
-        return Objects.hash(super.hashCode(), getType(), getLocal(), getStack());
+        return Objects.hash(super.hashCode(), this.type, getLocal(), getStack());
     }
 
     @Override
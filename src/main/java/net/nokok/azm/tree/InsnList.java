@@ -29,6 +29,7 @@ package net.nokok.azm.tree;
 
 import net.nokok.azm.MethodVisitor;
 
+import java.lang.reflect.Array;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.ListIterator;
@@ -41,6 +42,18 @@ import java.util.Objects;
  */
 public class InsnList implements Collection<AbstractInsnNode> {
 
+    /**
+     * The gap between the ordinals of two consecutive instructions, after the ordinals of a range of
+     * instructions have been reassigned.
+     */
+    private static final long ORDINAL_GAP = 1L << 16;
+
+    /**
+     * The minimum gap between the ordinals of two consecutive instructions that a reassigned range of
+     * instructions must have. This leaves room for several insertions between any two of them.
+     */
+    private static final long MIN_ORDINAL_GAP = 1L << 6;
+
     /**
      * The number of instructions in this list.
      */
@@ -62,6 +75,26 @@ public class InsnList implements Collection<AbstractInsnNode> {
      */
     AbstractInsnNode[] cache;
 
+    /**
+     * Whether this list maintains the indexes of its instructions incrementally. In this mode the
+     * {@link #cache} is not used, the ordinals of the instructions are kept up to date by all the
+     * methods that modify the list, and the indexes of the instructions are only invalidated after
+     * the modified position.
+     */
+    private boolean incrementalIndexing;
+
+    /**
+     * The instructions of this list whose index is known, in incremental indexing mode. Only the
+     * first {@link #indexedInsnCount} elements of this array are valid.
+     */
+    private AbstractInsnNode[] indexedInsns;
+
+    /**
+     * The number of instructions, at the beginning of this list, whose index is known, in
+     * incremental indexing mode.
+     */
+    private int indexedInsnCount;
+
     /**
      * Returns the number of instructions in this list.
      *
@@ -78,13 +111,13 @@ public class InsnList implements Collection<AbstractInsnNode> {
 
     @Override
     public boolean contains(Object o) {
-        for (AbstractInsnNode node : cache) {
-            if (node == null) {
-                continue;
-            }
-            if (node.equals(o)) {
+        // The cache may not be built, and is never built in incremental indexing mode.
+        AbstractInsnNode currentInsn = firstInsn;
+        while (currentInsn != null) {
+            if (currentInsn.equals(o)) {
                 return true;
             }
+            currentInsn = currentInsn.nextInsn;
         }
         return false;
     }
@@ -111,7 +144,8 @@ public class InsnList implements Collection<AbstractInsnNode> {
      * Returns the instruction whose index is given. This method builds a cache of the instructions in
      * this list to avoid scanning the whole list each time it is called. Once the cache is built,
      * this method runs in constant time. This cache is invalidated by all the methods that modify the
-     * list.
+     * list. In incremental indexing mode, only the indexes after the modified position are
+     * invalidated, and are recomputed on demand.
      *
      * @param index the index of the instruction that must be returned.
      * @return the instruction whose index is given.
@@ -121,6 +155,12 @@ public class InsnList implements Collection<AbstractInsnNode> {
         if (index < 0 || index >= size) {
             throw new IndexOutOfBoundsException();
         }
+        if (incrementalIndexing) {
+            if (index >= indexedInsnCount) {
+                extendIndexes(null, index);
+            }
+            return indexedInsns[index];
+        }
         if (cache == null) {
             cache = toArray();
         }
@@ -147,7 +187,8 @@ public class InsnList implements Collection<AbstractInsnNode> {
      * Returns the index of the given instruction in this list. This method builds a cache of the
      * instruction indexes to avoid scanning the whole list each time it is called. Once the cache is
      * built, this method run in constant time. The cache is invalidated by all the methods that
-     * modify the list.
+     * modify the list. In incremental indexing mode, only the indexes after the modified position are
+     * invalidated, and are recomputed on demand.
      *
      * @param insnNode an instruction <i>of this list</i>.
      * @return the index of the given instruction in this list. <i>The result of this method is
@@ -155,12 +196,71 @@ public class InsnList implements Collection<AbstractInsnNode> {
      * to test if an instruction belongs to an instruction list or not.
      */
     public int indexOf(final AbstractInsnNode insnNode) {
+        if (incrementalIndexing) {
+            if (!isIndexed(insnNode)) {
+                extendIndexes(insnNode, size);
+            }
+            return insnNode.index;
+        }
         if (cache == null) {
             cache = toArray();
         }
         return insnNode.index;
     }
 
+    /**
+     * Compares the positions of two instructions of this list. In incremental indexing mode this
+     * method runs in constant time, even after the list has been modified.
+     *
+     * @param insnNode1 an instruction <i>of this list</i>.
+     * @param insnNode2 an instruction <i>of this list</i>.
+     * @return a negative value, zero or a positive value if insnNode1 is respectively before, equal
+     * to or after insnNode2 in this list.
+     */
+    public int compare(final AbstractInsnNode insnNode1, final AbstractInsnNode insnNode2) {
+        if (incrementalIndexing) {
+            return Long.compare(insnNode1.ordinal, insnNode2.ordinal);
+        }
+        return Integer.compare(indexOf(insnNode1), indexOf(insnNode2));
+    }
+
+    /**
+     * Returns whether this list maintains the indexes of its instructions incrementally.
+     *
+     * @return whether this list is in incremental indexing mode.
+     */
+    public boolean isIncrementalIndexing() {
+        return incrementalIndexing;
+    }
+
+    /**
+     * Enables or disables the incremental indexing mode. In this mode, each instruction has an
+     * ordinal which is kept up to date by the methods that modify the list (ordinals are spaced so
+     * that most insertions only number the inserted instructions), and a modification only
+     * invalidates the indexes after the modified position. This makes {@link #get}, {@link #indexOf}
+     * and {@link #compare} cheap in transformations which interleave lookups and modifications.
+     *
+     * @param incrementalIndexing whether the indexes must be maintained incrementally.
+     */
+    public void setIncrementalIndexing(final boolean incrementalIndexing) {
+        if (this.incrementalIndexing == incrementalIndexing) {
+            return;
+        }
+        this.incrementalIndexing = incrementalIndexing;
+        cache = null;
+        indexedInsns = null;
+        indexedInsnCount = 0;
+        if (incrementalIndexing) {
+            long ordinal = 0;
+            AbstractInsnNode currentInsn = firstInsn;
+            while (currentInsn != null) {
+                currentInsn.ordinal = ordinal;
+                ordinal += ORDINAL_GAP;
+                currentInsn = currentInsn.nextInsn;
+            }
+        }
+    }
+
     /**
      * Makes the given visitor visit all the instructions in this list.
      *
@@ -212,8 +312,19 @@ public class InsnList implements Collection<AbstractInsnNode> {
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public <T> T[] toArray(T[] a) {
-        return (T[]) this.cache;
+        T[] array = a.length >= size ? a : (T[]) Array.newInstance(a.getClass().getComponentType(), size);
+        int currentInsnIndex = 0;
+        AbstractInsnNode currentInsn = firstInsn;
+        while (currentInsn != null) {
+            array[currentInsnIndex++] = (T) currentInsn;
+            currentInsn = currentInsn.nextInsn;
+        }
+        if (array.length > size) {
+            array[size] = null;
+        }
+        return array;
     }
 
     /**
@@ -237,7 +348,16 @@ public class InsnList implements Collection<AbstractInsnNode> {
         } else {
             firstInsn = newInsnNode;
         }
-        if (cache != null) {
+        if (incrementalIndexing) {
+            newInsnNode.ordinal = oldInsnNode.ordinal;
+            if (isIndexed(oldInsnNode)) {
+                int index = oldInsnNode.index;
+                indexedInsns[index] = newInsnNode;
+                newInsnNode.index = index;
+            } else {
+                newInsnNode.index = 0; // newInnsnNode now belongs to an InsnList.
+            }
+        } else if (cache != null) {
             int index = oldInsnNode.index;
             cache[index] = newInsnNode;
             newInsnNode.index = index;
@@ -264,7 +384,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
             insnNode.previousInsn = lastInsn;
         }
         lastInsn = insnNode;
-        cache = null;
+        insnsInserted(insnNode, insnNode, 1);
         insnNode.index = 0; // insnNode now belongs to an InsnList.
         return true;
     }
@@ -276,7 +396,12 @@ public class InsnList implements Collection<AbstractInsnNode> {
 
     @Override
     public boolean containsAll(Collection<?> c) {
-        return Arrays.asList(this.cache).containsAll(c);
+        for (Object o : c) {
+            if (!contains(o)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
@@ -315,7 +440,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
             firstInsnListElement.previousInsn = lastInsn;
             lastInsn = insnList.lastInsn;
         }
-        cache = null;
+        insnsInserted(insnList.firstInsn, insnList.lastInsn, insnList.size);
         insnList.removeAll(false);
     }
 
@@ -334,7 +459,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
             insnNode.nextInsn = firstInsn;
         }
         firstInsn = insnNode;
-        cache = null;
+        insnsInserted(insnNode, insnNode, 1);
         insnNode.index = 0; // insnNode now belongs to an InsnList.
     }
 
@@ -358,7 +483,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
             lastInsnListElement.nextInsn = firstInsn;
             firstInsn = insnList.firstInsn;
         }
-        cache = null;
+        insnsInserted(insnList.firstInsn, insnList.lastInsn, insnList.size);
         insnList.removeAll(false);
     }
 
@@ -380,7 +505,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
         previousInsn.nextInsn = insnNode;
         insnNode.nextInsn = nextInsn;
         insnNode.previousInsn = previousInsn;
-        cache = null;
+        insnsInserted(insnNode, insnNode, 1);
         insnNode.index = 0; // insnNode now belongs to an InsnList.
     }
 
@@ -408,7 +533,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
         previousInsn.nextInsn = firstInsnListElement;
         lastInsnListElement.nextInsn = nextInsn;
         firstInsnListElement.previousInsn = previousInsn;
-        cache = null;
+        insnsInserted(firstInsnListElement, lastInsnListElement, insnList.size);
         insnList.removeAll(false);
     }
 
@@ -430,7 +555,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
         nextInsn.previousInsn = insnNode;
         insnNode.nextInsn = nextInsn;
         insnNode.previousInsn = previousInsn;
-        cache = null;
+        insnsInserted(insnNode, insnNode, 1);
         insnNode.index = 0; // insnNode now belongs to an InsnList.
     }
 
@@ -458,7 +583,7 @@ public class InsnList implements Collection<AbstractInsnNode> {
         nextInsn.previousInsn = lastInsnListElement;
         lastInsnListElement.nextInsn = nextInsn;
         firstInsnListElement.previousInsn = previousInsn;
-        cache = null;
+        insnsInserted(firstInsnListElement, lastInsnListElement, insnList.size);
         insnList.removeAll(false);
     }
 
@@ -489,6 +614,9 @@ public class InsnList implements Collection<AbstractInsnNode> {
             }
         }
         cache = null;
+        if (incrementalIndexing && isIndexed(insnNode)) {
+            indexedInsnCount = insnNode.index;
+        }
         insnNode.index = -1; // insnNode no longer belongs to an InsnList.
         insnNode.previousInsn = null;
         insnNode.nextInsn = null;
@@ -514,6 +642,121 @@ public class InsnList implements Collection<AbstractInsnNode> {
         firstInsn = null;
         lastInsn = null;
         cache = null;
+        indexedInsns = null;
+        indexedInsnCount = 0;
+    }
+
+    /**
+     * Updates the caches of this list after some instructions have been linked into it.
+     *
+     * @param firstInsnNode the first inserted instruction.
+     * @param lastInsnNode  the last inserted instruction.
+     * @param count         the number of inserted instructions.
+     */
+    private void insnsInserted(
+            final AbstractInsnNode firstInsnNode, final AbstractInsnNode lastInsnNode, final int count) {
+        cache = null;
+        if (!incrementalIndexing) {
+            return;
+        }
+        AbstractInsnNode previousInsn = firstInsnNode.previousInsn;
+        if (previousInsn == null) {
+            indexedInsnCount = 0;
+        } else if (isIndexed(previousInsn)) {
+            indexedInsnCount = previousInsn.index + 1;
+        }
+        assignOrdinals(previousInsn, lastInsnNode.nextInsn, count);
+    }
+
+    /**
+     * Assigns increasing ordinals to the instructions strictly between the two given instructions.
+     * If there is not enough room between the ordinals of these two instructions, the range is
+     * extended on both sides, doubling its extension each time, until it contains enough room.
+     *
+     * @param previousInsn the instruction before the range, or <tt>null</tt> for the list start.
+     * @param nextInsn     the instruction after the range, or <tt>null</tt> for the list end.
+     * @param count        the number of instructions in the range.
+     */
+    private void assignOrdinals(
+            final AbstractInsnNode previousInsn, final AbstractInsnNode nextInsn, final int count) {
+        AbstractInsnNode lowInsn = previousInsn;
+        AbstractInsnNode highInsn = nextInsn;
+        int rangeSize = count;
+        long minGap = 1;
+        int extension = 1;
+        while (true) {
+            long low;
+            long gap;
+            if (lowInsn == null) {
+                gap = ORDINAL_GAP;
+                low = highInsn == null ? -ORDINAL_GAP : highInsn.ordinal - (rangeSize + 1) * ORDINAL_GAP;
+            } else if (highInsn == null) {
+                gap = ORDINAL_GAP;
+                low = lowInsn.ordinal;
+            } else {
+                gap = (highInsn.ordinal - lowInsn.ordinal) / (rangeSize + 1);
+                low = lowInsn.ordinal;
+            }
+            if (gap >= minGap) {
+                AbstractInsnNode currentInsn = lowInsn == null ? firstInsn : lowInsn.nextInsn;
+                for (int i = 1; i <= rangeSize; ++i) {
+                    currentInsn.ordinal = low + i * gap;
+                    currentInsn = currentInsn.nextInsn;
+                }
+                return;
+            }
+            for (int i = 0; i < extension && lowInsn != null; ++i) {
+                lowInsn = lowInsn.previousInsn;
+                ++rangeSize;
+            }
+            for (int i = 0; i < extension && highInsn != null; ++i) {
+                highInsn = highInsn.nextInsn;
+                ++rangeSize;
+            }
+            minGap = MIN_ORDINAL_GAP;
+            extension *= 2;
+        }
+    }
+
+    /**
+     * Returns whether the index of the given instruction is known, in incremental indexing mode.
+     *
+     * @param insnNode an instruction.
+     * @return whether insnNode is in the indexed prefix of this list.
+     */
+    private boolean isIndexed(final AbstractInsnNode insnNode) {
+        int index = insnNode.index;
+        return index >= 0 && index < indexedInsnCount && indexedInsns[index] == insnNode;
+    }
+
+    /**
+     * Computes the indexes of the instructions following the indexed prefix of this list, until the
+     * given instruction or the given index is reached.
+     *
+     * @param insnNode an instruction at which to stop, or <tt>null</tt>.
+     * @param index    an index at which to stop.
+     */
+    private void extendIndexes(final AbstractInsnNode insnNode, final int index) {
+        if (indexedInsns == null || indexedInsns.length < size) {
+            int length = indexedInsns == null ? 0 : indexedInsns.length;
+            AbstractInsnNode[] newIndexedInsns = new AbstractInsnNode[Math.max(size, 2 * length)];
+            if (indexedInsns != null) {
+                System.arraycopy(indexedInsns, 0, newIndexedInsns, 0, indexedInsnCount);
+            }
+            indexedInsns = newIndexedInsns;
+        }
+        int currentIndex = indexedInsnCount;
+        AbstractInsnNode currentInsn =
+                currentIndex == 0 ? firstInsn : indexedInsns[currentIndex - 1].nextInsn;
+        while (currentInsn != null) {
+            indexedInsns[currentIndex] = currentInsn;
+            currentInsn.index = currentIndex++;
+            if (currentInsn == insnNode || currentIndex > index) {
+                break;
+            }
+            currentInsn = currentInsn.nextInsn;
+        }
+        indexedInsnCount = currentIndex;
     }
 
     /**
@@ -602,20 +845,14 @@ public class InsnList implements Collection<AbstractInsnNode> {
             if (nextInsn == null) {
                 return size();
             }
-            if (cache == null) {
-                cache = toArray();
-            }
-            return nextInsn.index;
+            return indexOf(nextInsn);
         }
 
         public int previousIndex() {
             if (previousInsn == null) {
                 return -1;
             }
-            if (cache == null) {
-                cache = toArray();
-            }
-            return previousInsn.index;
+            return indexOf(previousInsn);
         }
 
         public void add(final Object o) {
@@ -30,6 +30,7 @@ package net.nokok.azm.tree;
 import net.nokok.azm.AnnotationVisitor;
 import net.nokok.azm.Attribute;
 import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.CodeSource;
 import net.nokok.azm.Handle;
 import net.nokok.azm.Label;
 import net.nokok.azm.MethodVisitor;
@@ -186,6 +187,17 @@ public class MethodNode extends MethodVisitor {
      */
     private boolean visited;
 
+    /**
+     * Whether the code of this method must be parsed only when needed (see {@link #setLazyCode}).
+     */
+    private boolean lazyCode;
+
+    /**
+     * The not yet parsed code of this method, or <tt>null</tt> if there is no such code (i.e. if the
+     * code is already in {@link #instructions}, or if this method is abstract).
+     */
+    private CodeSource codeSource;
+
     /**
      * Constructs an uninitialized {@link MethodNode}. <i>Subclasses must not use this
      * constructor</i>. Instead, they must use the {@link #MethodNode(int)} version.
@@ -372,6 +384,20 @@ public class MethodNode extends MethodVisitor {
         attrs.add(attribute);
     }
 
+    @Override
+    public boolean wantsCodeSource() {
+        return lazyCode && codeSource == null && instructions.size() == 0;
+    }
+
+    @Override
+    public boolean visitCodeSource(final CodeSource codeSource) {
+        if (!wantsCodeSource()) {
+            return false;
+        }
+        this.codeSource = codeSource;
+        return true;
+    }
+
     @Override
     public void visitCode() {
         // Nothing to do.
@@ -599,6 +625,74 @@ public class MethodNode extends MethodVisitor {
         // Nothing to do.
     }
 
+    // -----------------------------------------------------------------------------------------------
+    // Lazy code parsing
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns whether the code of this method is parsed only when needed.
+     *
+     * @return whether the code of this method is parsed only when needed.
+     */
+    public boolean isLazyCode() {
+        return lazyCode;
+    }
+
+    /**
+     * Sets whether the code of this method must be parsed only when needed. If <tt>true</tt>, the
+     * code visited by a {@link net.nokok.azm.ClassReader} is not parsed into {@link #instructions},
+     * {@link #tryCatchBlocks}, {@link #localVariables}, etc. Instead, it is parsed by {@link
+     * #loadCode}, or copied as is by {@link #accept(MethodVisitor)} if the visitor supports it (this
+     * is the case of a {@link net.nokok.azm.ClassWriter} constructed with the same class reader).
+     *
+     * @param lazyCode whether the code of this method must be parsed only when needed.
+     */
+    public void setLazyCode(final boolean lazyCode) {
+        this.lazyCode = lazyCode;
+    }
+
+    /**
+     * Returns whether the code of this method is available in {@link #instructions} and in the
+     * other code related fields.
+     *
+     * @return <tt>false</tt> if the code of this method has not been parsed yet, <tt>true</tt>
+     * otherwise.
+     */
+    public boolean isCodeLoaded() {
+        return codeSource == null;
+    }
+
+    /**
+     * Returns whether the code related fields of this method have been modified while its code was
+     * not loaded. Such modifications cannot be merged with the not yet parsed code.
+     *
+     * @return whether {@link #instructions}, {@link #tryCatchBlocks} or {@link #localVariables} are
+     * not empty while {@link #codeSource} is not <tt>null</tt>.
+     */
+    private boolean isCodeModified() {
+        return instructions.size() > 0
+                || (tryCatchBlocks != null && !tryCatchBlocks.isEmpty())
+                || (localVariables != null && !localVariables.isEmpty());
+    }
+
+    /**
+     * Parses the code of this method, if this has not already been done, into {@link
+     * #instructions}, {@link #tryCatchBlocks}, {@link #localVariables}, {@link #maxStack}, etc. This
+     * method must be called before accessing these fields when the code is parsed lazily: {@link
+     * #accept(MethodVisitor)} throws an {@link IllegalStateException} if code was added to these
+     * fields without loading the code first.
+     *
+     * @return this method node.
+     */
+    public MethodNode loadCode() {
+        if (codeSource != null) {
+            CodeSource source = codeSource;
+            codeSource = null;
+            source.accept(this);
+        }
+        return this;
+    }
+
     /**
      * Returns the LabelNode corresponding to the given Label. Creates a new LabelNode if necessary.
      * The default implementation of this method uses the {@link Label#info} field to store
@@ -804,7 +898,15 @@ public class MethodNode extends MethodVisitor {
             }
         }
         // Visit the code.
-        if (instructions.size() > 0) {
+        if (codeSource != null) {
+            if (isCodeModified()) {
+                throw new IllegalStateException(
+                        "The code of " + name + desc + " was modified before being loaded with loadCode()");
+            }
+            if (!(methodVisitor.wantsCodeSource() && methodVisitor.visitCodeSource(codeSource))) {
+                codeSource.accept(methodVisitor);
+            }
+        } else if (instructions.size() > 0) {
             methodVisitor.visitCode();
             // Visits the try catch blocks.
             if (tryCatchBlocks != null) {
@@ -0,0 +1,673 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.tree.analysis;
+
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Type;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.IincInsnNode;
+import net.nokok.azm.tree.InsnList;
+import net.nokok.azm.tree.JumpInsnNode;
+import net.nokok.azm.tree.LabelNode;
+import net.nokok.azm.tree.LookupSwitchInsnNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.TableSwitchInsnNode;
+import net.nokok.azm.tree.TryCatchBlockNode;
+import net.nokok.azm.tree.VarInsnNode;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A semantic bytecode analyzer for {@link BasicInterpreter} and {@link BasicVerifier}, which stores
+ * the frames of the analyzed method in a compact form. Since these interpreters only use the seven
+ * {@link BasicValue} constants, each value is encoded as a 4 bits type code, and the frames of all
+ * the instructions are packed in a single <tt>int</tt> array. Frames are merged in place with
+ * bitwise operations, and {@link Frame} objects are only created on demand, with {@link #getFrame}.
+ * This makes the analysis of large methods much faster, and uses much less memory, than with an
+ * {@link Analyzer}. The results of both analyzers are the same.
+ * <p>
+ * <p>The interpreter must only return the {@link BasicValue} constants, and must merge values like
+ * {@link BasicInterpreter#merge}. In particular, a {@link SimpleVerifier} can not be used with this
+ * analyzer. Methods containing JSR or RET instructions are analyzed with an {@link Analyzer}, and
+ * the resulting frames are then packed like the others.
+ */
+public class BasicAnalyzer implements Opcodes {
+
+    /**
+     * The number of bits used to encode a value.
+     */
+    private static final int VALUE_BITS = 4;
+
+    /**
+     * The number of values encoded in an <tt>int</tt>.
+     */
+    private static final int VALUES_PER_WORD = 32 / VALUE_BITS;
+
+    /**
+     * The least significant bit of each value in an <tt>int</tt>.
+     */
+    private static final int LOW_BITS = 0x11111111;
+
+    /**
+     * The values corresponding to each type code. The code of {@link
+     * BasicValue#UNINITIALIZED_VALUE} must be 0, so that the merge of two different values can be
+     * computed by clearing their bits.
+     */
+    private static final BasicValue[] VALUES = {
+            BasicValue.UNINITIALIZED_VALUE,
+            BasicValue.INT_VALUE,
+            BasicValue.FLOAT_VALUE,
+            BasicValue.LONG_VALUE,
+            BasicValue.DOUBLE_VALUE,
+            BasicValue.REFERENCE_VALUE,
+            BasicValue.RETURNADDRESS_VALUE
+    };
+
+    /**
+     * The interpreter to use to symbolically interpret the bytecode instructions.
+     */
+    private final BasicInterpreter interpreter;
+
+    /**
+     * The instructions of the currently analyzed method.
+     */
+    private InsnList insnList;
+
+    /**
+     * The size of {@link #insnList}.
+     */
+    private int insnListSize;
+
+    /**
+     * The exception handlers of the currently analyzed method (one list per instruction index).
+     */
+    private List<TryCatchBlockNode>[] handlers;
+
+    /**
+     * The maximum number of local variables of the currently analyzed method.
+     */
+    private int maxLocals;
+
+    /**
+     * The maximum stack size of the currently analyzed method.
+     */
+    private int maxStack;
+
+    /**
+     * The number of <tt>int</tt> used to encode a frame.
+     */
+    private int frameWords;
+
+    /**
+     * The encoded frames of the currently analyzed method, i.e. the type codes of the local variables
+     * followed by those of the operand stack values, {@link #frameWords} per instruction index.
+     */
+    private int[] frameValues;
+
+    /**
+     * The stack size of each frame of the currently analyzed method, or -1 for the instructions that
+     * cannot be reached.
+     */
+    private int[] stackSizes;
+
+    /**
+     * The return value of the currently analyzed method.
+     */
+    private BasicValue returnValue;
+
+    /**
+     * The index of the instruction whose frame is currently decoded in the frame used to execute the
+     * instructions, or -1. This avoids decoding the frame of an instruction which is processed just
+     * after its predecessor, in the common case where its frame is equal to the frame after this
+     * predecessor.
+     */
+    private int decodedInsnIndex;
+
+    /**
+     * The instructions that remain to process (one boolean per instruction index).
+     */
+    private boolean[] inInstructionsToProcess;
+
+    /**
+     * The indices of the instructions that remain to process in the currently analyzed method.
+     */
+    private int[] instructionsToProcess;
+
+    /**
+     * The number of instructions that remain to process in the currently analyzed method.
+     */
+    private int numInstructionsToProcess;
+
+    /**
+     * Constructs a new {@link BasicAnalyzer}.
+     *
+     * @param interpreter the interpreter to use to symbolically interpret the bytecode instructions.
+     */
+    public BasicAnalyzer(final BasicInterpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    /**
+     * Analyzes the given method. The resulting frames can then be retrieved with {@link #getFrame},
+     * {@link #getLocal} and {@link #getStack}.
+     *
+     * @param owner  the internal name of the class to which 'method' belongs.
+     * @param method the method to be analyzed.
+     * @throws AnalyzerException if a problem occurs during the analysis.
+     */
+    @SuppressWarnings("unchecked")
+    public void analyze(final String owner, final MethodNode method) throws AnalyzerException {
+        insnList = method.instructions;
+        insnListSize = (method.access & (ACC_ABSTRACT | ACC_NATIVE)) != 0 ? 0 : insnList.size();
+        maxLocals = method.maxLocals;
+        maxStack = method.maxStack;
+        frameWords = (maxLocals + maxStack + VALUES_PER_WORD - 1) / VALUES_PER_WORD;
+        frameValues = new int[insnListSize * frameWords];
+        stackSizes = new int[insnListSize];
+        for (int i = 0; i < insnListSize; ++i) {
+            stackSizes[i] = -1;
+        }
+        returnValue = interpreter.newValue(Type.getReturnType(method.desc));
+        if (insnListSize == 0) {
+            return;
+        }
+        if (hasSubroutines()) {
+            analyzeWithSubroutines(owner, method);
+            return;
+        }
+        handlers = (List<TryCatchBlockNode>[]) new List<?>[insnListSize];
+        inInstructionsToProcess = new boolean[insnListSize];
+        instructionsToProcess = new int[insnListSize];
+        numInstructionsToProcess = 0;
+
+        // For each exception handler, and each instruction within its range, record in 'handlers' the
+        // fact that execution can flow from this instruction to the exception handler.
+        for (int i = 0; i < method.tryCatchBlocks.size(); ++i) {
+            TryCatchBlockNode tryCatchBlock = method.tryCatchBlocks.get(i);
+            int startIndex = insnList.indexOf(tryCatchBlock.getStart());
+            int endIndex = insnList.indexOf(tryCatchBlock.getEnd());
+            for (int j = startIndex; j < endIndex; ++j) {
+                List<TryCatchBlockNode> insnHandlers = handlers[j];
+                if (insnHandlers == null) {
+                    insnHandlers = new ArrayList<TryCatchBlockNode>();
+                    handlers[j] = insnHandlers;
+                }
+                insnHandlers.add(tryCatchBlock);
+            }
+        }
+
+        // The frame used to execute the instructions, and the encoded frames after the execution of
+        // an instruction, and at the start of an exception handler.
+        Frame<BasicValue> currentFrame = computeInitialFrame(owner, method);
+        int[] currentValues = new int[frameWords];
+        int[] handlerValues = new int[frameWords];
+        encode(currentFrame, currentValues, 0);
+        decodedInsnIndex = -1;
+        merge(0, currentValues, 0, 0);
+        decodedInsnIndex = 0;
+
+        // Control flow analysis.
+        while (numInstructionsToProcess > 0) {
+            // Get and remove one instruction from the list of instructions to process.
+            int insnIndex = instructionsToProcess[--numInstructionsToProcess];
+            inInstructionsToProcess[insnIndex] = false;
+
+            // Simulate the execution of this instruction.
+            AbstractInsnNode insnNode = null;
+            try {
+                insnNode = insnList.get(insnIndex);
+                int insnOpcode = insnNode.getOpcode();
+                int insnType = insnNode.getType();
+
+                if (insnType == AbstractInsnNode.LABEL
+                        || insnType == AbstractInsnNode.LINE
+                        || insnType == AbstractInsnNode.FRAME) {
+                    merge(insnIndex + 1, frameValues, insnIndex * frameWords, stackSizes[insnIndex]);
+                    if (decodedInsnIndex == insnIndex
+                            && isFrameEqual(
+                            insnIndex + 1, frameValues, insnIndex * frameWords, stackSizes[insnIndex])) {
+                        decodedInsnIndex = insnIndex + 1;
+                    }
+                } else {
+                    if (decodedInsnIndex != insnIndex) {
+                        decode(insnIndex, currentFrame);
+                    }
+                    decodedInsnIndex = -1;
+                    currentFrame.execute(insnNode, interpreter);
+                    int stackSize = encode(insnNode, insnIndex, currentFrame, currentValues);
+
+                    if (insnNode instanceof JumpInsnNode) {
+                        JumpInsnNode jumpInsn = (JumpInsnNode) insnNode;
+                        if (insnOpcode != GOTO) {
+                            merge(insnIndex + 1, currentValues, 0, stackSize);
+                        }
+                        merge(insnList.indexOf(jumpInsn.getLabel()), currentValues, 0, stackSize);
+                    } else if (insnNode instanceof LookupSwitchInsnNode) {
+                        LookupSwitchInsnNode lookupSwitchInsn = (LookupSwitchInsnNode) insnNode;
+                        merge(insnList.indexOf(lookupSwitchInsn.getDflt()), currentValues, 0, stackSize);
+                        List<LabelNode> labels = lookupSwitchInsn.getLabels();
+                        for (int i = 0; i < labels.size(); ++i) {
+                            merge(insnList.indexOf(labels.get(i)), currentValues, 0, stackSize);
+                        }
+                    } else if (insnNode instanceof TableSwitchInsnNode) {
+                        TableSwitchInsnNode tableSwitchInsn = (TableSwitchInsnNode) insnNode;
+                        merge(insnList.indexOf(tableSwitchInsn.getDflt()), currentValues, 0, stackSize);
+                        List<LabelNode> labels = tableSwitchInsn.getLabels();
+                        for (int i = 0; i < labels.size(); ++i) {
+                            merge(insnList.indexOf(labels.get(i)), currentValues, 0, stackSize);
+                        }
+                    } else if (insnOpcode != ATHROW && (insnOpcode < IRETURN || insnOpcode > RETURN)) {
+                        merge(insnIndex + 1, currentValues, 0, stackSize);
+                    }
+                    if (isFrameEqual(insnIndex + 1, currentValues, 0, stackSize)) {
+                        decodedInsnIndex = insnIndex + 1;
+                    }
+                }
+
+                List<TryCatchBlockNode> insnHandlers = handlers[insnIndex];
+                if (insnHandlers != null) {
+                    for (int i = 0; i < insnHandlers.size(); ++i) {
+                        TryCatchBlockNode tryCatchBlock = insnHandlers.get(i);
+                        Type catchType;
+                        if (tryCatchBlock.getType() == null) {
+                            catchType = Type.getObjectType("java/lang/Throwable");
+                        } else {
+                            catchType = Type.getObjectType(tryCatchBlock.getType());
+                        }
+                        // The handler frame is the frame before the instruction, with the exception as
+                        // its single stack value.
+                        System.arraycopy(frameValues, insnIndex * frameWords, handlerValues, 0, frameWords);
+                        clearStack(handlerValues);
+                        setValue(handlerValues, maxLocals, encode(interpreter.newValue(catchType)));
+                        merge(insnList.indexOf(tryCatchBlock.getHandler()), handlerValues, 0, 1);
+                    }
+                }
+            } catch (AnalyzerException e) {
+                throw new AnalyzerException(
+                        e.node, "Error at instruction " + insnIndex + ": " + e.getMessage(), e);
+            } catch (Exception e) {
+                throw new AnalyzerException(
+                        insnNode, "Error at instruction " + insnIndex + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the currently analyzed method contains JSR or RET instructions.
+     *
+     * @return whether the currently analyzed method contains JSR or RET instructions.
+     */
+    private boolean hasSubroutines() {
+        for (AbstractInsnNode insn = insnList.getFirst(); insn != null; insn = insn.getNext()) {
+            int opcode = insn.getOpcode();
+            if (opcode == JSR || opcode == RET) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Analyzes the given method with an {@link Analyzer}, and encodes the resulting frames.
+     *
+     * @param owner  the internal name of the class to which 'method' belongs.
+     * @param method the method to be analyzed.
+     * @throws AnalyzerException if a problem occurs during the analysis.
+     */
+    private void analyzeWithSubroutines(final String owner, final MethodNode method)
+            throws AnalyzerException {
+        Frame<BasicValue>[] frames = new Analyzer<BasicValue>(interpreter).analyze(owner, method);
+        for (int i = 0; i < insnListSize; ++i) {
+            if (frames[i] != null) {
+                stackSizes[i] = encode(frames[i], frameValues, i * frameWords);
+            }
+        }
+    }
+
+    /**
+     * Computes the initial execution stack frame of the given method.
+     *
+     * @param owner  the internal name of the class to which 'method' belongs.
+     * @param method the method to be analyzed.
+     * @return the initial execution stack frame of the 'method'.
+     */
+    private Frame<BasicValue> computeInitialFrame(final String owner, final MethodNode method) {
+        Frame<BasicValue> frame = newFrame();
+        int currentLocal = 0;
+        if ((method.access & ACC_STATIC) == 0) {
+            Type ownerType = Type.getObjectType(owner);
+            frame.setLocal(currentLocal++, interpreter.newValue(ownerType));
+        }
+        Type[] argumentTypes = Type.getArgumentTypes(method.desc);
+        for (int i = 0; i < argumentTypes.length; ++i) {
+            frame.setLocal(currentLocal++, interpreter.newValue(argumentTypes[i]));
+            if (argumentTypes[i].getSize() == 2) {
+                frame.setLocal(currentLocal++, interpreter.newValue(null));
+            }
+        }
+        while (currentLocal < maxLocals) {
+            frame.setLocal(currentLocal++, interpreter.newValue(null));
+        }
+        return frame;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Accessors to the analysis results
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns whether the given instruction of the last analyzed method can be reached.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @return <tt>false</tt> if the instruction cannot be reached (dead code), <tt>true</tt>
+     * otherwise.
+     */
+    public boolean isReachable(final int insnIndex) {
+        return stackSizes[insnIndex] != -1;
+    }
+
+    /**
+     * Returns the stack size before the given instruction of the last analyzed method.
+     *
+     * @param insnIndex the index of a reachable instruction of the last analyzed method.
+     * @return the number of values in the operand stack before this instruction.
+     */
+    public int getStackSize(final int insnIndex) {
+        return stackSizes[insnIndex];
+    }
+
+    /**
+     * Returns the value of a local variable before the given instruction of the last analyzed method.
+     *
+     * @param insnIndex the index of a reachable instruction of the last analyzed method.
+     * @param index     the index of a local variable.
+     * @return the value of the local variable, which is one of the {@link BasicValue} constants.
+     */
+    public BasicValue getLocal(final int insnIndex, final int index) {
+        if (index >= maxLocals) {
+            throw new IndexOutOfBoundsException("Trying to access an inexistant local variable " + index);
+        }
+        return VALUES[getValue(frameValues, insnIndex * frameWords, index)];
+    }
+
+    /**
+     * Returns a value of the operand stack before the given instruction of the last analyzed method.
+     *
+     * @param insnIndex the index of a reachable instruction of the last analyzed method.
+     * @param index     the index of a stack value, starting from the bottom of the stack.
+     * @return the stack value, which is one of the {@link BasicValue} constants.
+     */
+    public BasicValue getStack(final int insnIndex, final int index) {
+        if (index >= stackSizes[insnIndex]) {
+            throw new IndexOutOfBoundsException("Trying to access an inexistant stack element " + index);
+        }
+        return VALUES[getValue(frameValues, insnIndex * frameWords, maxLocals + index)];
+    }
+
+    /**
+     * Returns the symbolic execution stack frame before the given instruction of the last analyzed
+     * method. A new frame is created at each call.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @return the symbolic state of the execution stack frame before this instruction, or
+     * <tt>null</tt> if it cannot be reached (dead code).
+     */
+    public Frame<BasicValue> getFrame(final int insnIndex) {
+        if (stackSizes[insnIndex] == -1) {
+            return null;
+        }
+        Frame<BasicValue> frame = newFrame();
+        decode(insnIndex, frame);
+        return frame;
+    }
+
+    /**
+     * Returns the symbolic execution stack frame for each instruction of the last analyzed method.
+     * <i>This method creates a frame for each reachable instruction, use {@link #getFrame} to create
+     * only the needed ones</i>.
+     *
+     * @return the symbolic state of the execution stack frame at each bytecode instruction of the
+     * method, in the same form as {@link Analyzer#analyze}.
+     */
+    @SuppressWarnings("unchecked")
+    public Frame<BasicValue>[] getFrames() {
+        Frame<BasicValue>[] frames = (Frame<BasicValue>[]) new Frame<?>[insnListSize];
+        for (int i = 0; i < insnListSize; ++i) {
+            frames[i] = getFrame(i);
+        }
+        return frames;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Encoding and merging of the frames
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Constructs a new frame with the size of the frames of the currently analyzed method.
+     *
+     * @return the created frame.
+     */
+    private Frame<BasicValue> newFrame() {
+        Frame<BasicValue> frame = new Frame<BasicValue>(maxLocals, maxStack);
+        frame.setReturn(returnValue);
+        return frame;
+    }
+
+    /**
+     * Returns the type code of the given value.
+     *
+     * @param value one of the {@link BasicValue} constants.
+     * @return the type code of value.
+     * @throws AnalyzerException if value is not one of the {@link BasicValue} constants.
+     */
+    private static int encode(final BasicValue value) throws AnalyzerException {
+        for (int i = 0; i < VALUES.length; ++i) {
+            if (VALUES[i] == value) {
+                return i;
+            }
+        }
+        for (int i = 0; i < VALUES.length; ++i) {
+            if (VALUES[i].equals(value)) {
+                return i;
+            }
+        }
+        throw new AnalyzerException(null, "Unsupported value " + value);
+    }
+
+    /**
+     * Encodes the given frame.
+     *
+     * @param frame  a frame.
+     * @param values where the type codes of the frame values must be stored.
+     * @param offset the offset of the encoded frame in values.
+     * @return the stack size of the frame.
+     * @throws AnalyzerException if the frame contains an unsupported value.
+     */
+    private int encode(final Frame<BasicValue> frame, final int[] values, final int offset)
+            throws AnalyzerException {
+        for (int i = 0; i < frameWords; ++i) {
+            values[offset + i] = 0;
+        }
+        for (int i = 0; i < maxLocals; ++i) {
+            values[offset + i / VALUES_PER_WORD] |=
+                    encode(frame.getLocal(i)) << ((i % VALUES_PER_WORD) * VALUE_BITS);
+        }
+        int stackSize = frame.getStackSize();
+        for (int i = 0; i < stackSize; ++i) {
+            int index = maxLocals + i;
+            values[offset + index / VALUES_PER_WORD] |=
+                    encode(frame.getStack(i)) << ((index % VALUES_PER_WORD) * VALUE_BITS);
+        }
+        return stackSize;
+    }
+
+    /**
+     * Encodes the frame after the execution of the given instruction. Only the values which can be
+     * changed by this instruction are encoded, the others are copied from the frame before it.
+     *
+     * @param insn      the executed instruction.
+     * @param insnIndex the index of the executed instruction.
+     * @param frame     the frame after the execution of the instruction.
+     * @param values    where the type codes of the frame values must be stored.
+     * @return the stack size of the frame.
+     * @throws AnalyzerException if the frame contains an unsupported value.
+     */
+    private int encode(
+            final AbstractInsnNode insn,
+            final int insnIndex,
+            final Frame<BasicValue> frame,
+            final int[] values)
+            throws AnalyzerException {
+        System.arraycopy(frameValues, insnIndex * frameWords, values, 0, frameWords);
+        int opcode = insn.getOpcode();
+        if ((opcode >= ISTORE && opcode <= ASTORE) || opcode == IINC) {
+            // A store can also invalidate the previous and next local variables (long and double values).
+            int var = opcode == IINC ? ((IincInsnNode) insn).getVar() : ((VarInsnNode) insn).getVar();
+            for (int i = Math.max(0, var - 1), n = Math.min(maxLocals, var + 2); i < n; ++i) {
+                setValue(values, i, encode(frame.getLocal(i)));
+            }
+        }
+        int stackSize = frame.getStackSize();
+        for (int i = 0; i < maxStack; ++i) {
+            setValue(values, maxLocals + i, i < stackSize ? encode(frame.getStack(i)) : 0);
+        }
+        return stackSize;
+    }
+
+    /**
+     * Returns whether the frame at the given instruction index is equal to the given encoded frame.
+     *
+     * @param insnIndex an instruction index.
+     * @param values    an array containing an encoded frame.
+     * @param offset    the offset of the encoded frame in values.
+     * @param stackSize the stack size of the encoded frame.
+     * @return whether the frame at insnIndex is equal to the given one.
+     */
+    private boolean isFrameEqual(
+            final int insnIndex, final int[] values, final int offset, final int stackSize) {
+        if (insnIndex >= insnListSize || stackSizes[insnIndex] != stackSize) {
+            return false;
+        }
+        int frameOffset = insnIndex * frameWords;
+        for (int i = 0; i < frameWords; ++i) {
+            if (frameValues[frameOffset + i] != values[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes the frame of the given instruction into the given frame.
+     *
+     * @param insnIndex the index of a reachable instruction.
+     * @param frame     where the decoded frame must be stored.
+     */
+    private void decode(final int insnIndex, final Frame<BasicValue> frame) {
+        int offset = insnIndex * frameWords;
+        for (int i = 0; i < maxLocals; ++i) {
+            frame.setLocal(i, VALUES[getValue(frameValues, offset, i)]);
+        }
+        frame.clearStack();
+        for (int i = 0, n = stackSizes[insnIndex]; i < n; ++i) {
+            frame.push(VALUES[getValue(frameValues, offset, maxLocals + i)]);
+        }
+    }
+
+    private static int getValue(final int[] values, final int offset, final int index) {
+        return (values[offset + index / VALUES_PER_WORD] >>> ((index % VALUES_PER_WORD) * VALUE_BITS))
+                & ((1 << VALUE_BITS) - 1);
+    }
+
+    private static void setValue(final int[] values, final int index, final int code) {
+        int shift = (index % VALUES_PER_WORD) * VALUE_BITS;
+        int word = index / VALUES_PER_WORD;
+        values[word] = (values[word] & ~(((1 << VALUE_BITS) - 1) << shift)) | (code << shift);
+    }
+
+    /**
+     * Clears the stack values of the given encoded frame.
+     *
+     * @param values an encoded frame.
+     */
+    private void clearStack(final int[] values) {
+        for (int i = maxLocals, n = maxLocals + maxStack; i < n; ++i) {
+            setValue(values, i, 0);
+        }
+    }
+
+    /**
+     * Merges the given encoded frame into the frame at the given instruction index. If the frame at
+     * the given instruction index changes as a result of this merge, the instruction index is added
+     * to the list of instructions to process (if it is not already the case).
+     *
+     * @param insnIndex an instruction index.
+     * @param values    an array containing an encoded frame. This frame is left unchanged by this
+     *                  method.
+     * @param offset    the offset of the encoded frame in values.
+     * @param stackSize the stack size of the encoded frame.
+     * @throws AnalyzerException if the frames have incompatible sizes.
+     */
+    private void merge(final int insnIndex, final int[] values, final int offset, final int stackSize)
+            throws AnalyzerException {
+        if (insnIndex >= insnListSize) {
+            throw new AnalyzerException(null, "Execution can fall off the end of the code");
+        }
+        boolean changed;
+        int frameOffset = insnIndex * frameWords;
+        if (stackSizes[insnIndex] == -1) {
+            System.arraycopy(values, offset, frameValues, frameOffset, frameWords);
+            stackSizes[insnIndex] = stackSize;
+            changed = true;
+        } else {
+            if (stackSizes[insnIndex] != stackSize) {
+                throw new AnalyzerException(null, "Incompatible stack heights");
+            }
+            changed = false;
+            for (int i = 0; i < frameWords; ++i) {
+                int oldWord = frameValues[frameOffset + i];
+                // Compute a mask of the values which differ, and set them to UNINITIALIZED_VALUE.
+                int diff = oldWord ^ values[offset + i];
+                diff = (diff | (diff >>> 1) | (diff >>> 2) | (diff >>> 3)) & LOW_BITS;
+                int newWord = oldWord & ~(diff * ((1 << VALUE_BITS) - 1));
+                if (newWord != oldWord) {
+                    frameValues[frameOffset + i] = newWord;
+                    changed = true;
+                }
+            }
+        }
+        if (changed && insnIndex == decodedInsnIndex) {
+            decodedInsnIndex = -1;
+        }
+        if (changed && !inInstructionsToProcess[insnIndex]) {
+            inInstructionsToProcess[insnIndex] = true;
+            instructionsToProcess[numInstructionsToProcess++] = insnIndex;
+        }
+    }
+}
@@ -0,0 +1,920 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.tree.analysis;
+
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.InsnList;
+import net.nokok.azm.tree.JumpInsnNode;
+import net.nokok.azm.tree.LabelNode;
+import net.nokok.azm.tree.LookupSwitchInsnNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.TableSwitchInsnNode;
+import net.nokok.azm.tree.TryCatchBlockNode;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The control flow graph of a method, made of basic blocks and of the control flow edges between
+ * them, with its dominator and post dominator trees. The blocks are numbered in instruction order,
+ * the entry block being block 0, and the blocks and edges are stored in <tt>int</tt> arrays: the
+ * successors of block i are successors[successorOffsets[i]] to successors[successorOffsets[i + 1] -
+ * 1], and likewise for the other edge lists. Each try catch block range starts and ends at a block
+ * boundary, so that the exception handlers of all the instructions of a block are the same. A
+ * graph can be shared by several analyses of the same method, such as {@link LiveVariables} and
+ * {@link ReachingDefinitions}, as long as the method is not modified.
+ * <p>
+ * <p>The dominators are computed lazily, with the iterative algorithm of Cooper, Harvey and
+ * Kennedy, taking exception edges into account. A RET instruction is considered to jump to the
+ * instruction following any JSR instruction. The dominator trees are published through volatile
+ * fields, so that a graph can also be shared by several threads.
+ */
+public class ControlFlowGraph implements Opcodes {
+
+    /**
+     * The method whose control flow graph this is.
+     */
+    final MethodNode method;
+
+    /**
+     * The instructions of the method.
+     */
+    final AbstractInsnNode[] insns;
+
+    /**
+     * The number of instructions of the method.
+     */
+    final int insnCount;
+
+    /**
+     * The number of basic blocks of the method.
+     */
+    final int blockCount;
+
+    /**
+     * The index of the first instruction of each block, followed by {@link #insnCount}.
+     */
+    final int[] blockStarts;
+
+    /**
+     * The index of the block containing each instruction.
+     */
+    final int[] insnBlocks;
+
+    /**
+     * The offsets of the normal successors of each block in {@link #successors}, followed by the
+     * length of this array.
+     */
+    final int[] successorOffsets;
+
+    /**
+     * The normal successors of all the blocks (jump targets and fall through).
+     */
+    final int[] successors;
+
+    /**
+     * The offsets of the normal predecessors of each block in {@link #predecessors}, followed by the
+     * length of this array.
+     */
+    final int[] predecessorOffsets;
+
+    /**
+     * The normal predecessors of all the blocks.
+     */
+    final int[] predecessors;
+
+    /**
+     * The offsets of the exception handlers of each block in {@link #handlers}, followed by the length
+     * of this array.
+     */
+    final int[] handlerOffsets;
+
+    /**
+     * The first block of the exception handlers of all the blocks.
+     */
+    final int[] handlers;
+
+    /**
+     * The offsets of the blocks protected by each block in {@link #protectedBlocks}, followed by the
+     * length of this array. This is empty for blocks which do not start an exception handler.
+     */
+    final int[] protectedBlockOffsets;
+
+    /**
+     * The blocks protected by all the exception handler blocks.
+     */
+    final int[] protectedBlocks;
+
+    /**
+     * The dominator tree, whose parents are the immediate dominator of each block, or -1 for the entry
+     * block and for the blocks which cannot be reached. Computed lazily, <tt>null</tt> before.
+     */
+    private volatile DominatorTree dominatorTree;
+
+    /**
+     * The post dominator tree, whose parents are the immediate post dominator of each block, {@link
+     * #blockCount} for the blocks which are only post dominated by the exit of the method, or -1 for
+     * those which cannot reach it. The root is the exit node, with index {@link #blockCount}, which is
+     * its own parent. Computed lazily, <tt>null</tt> before.
+     */
+    private volatile DominatorTree postDominatorTree;
+
+    /**
+     * Constructs the control flow graph of the given method.
+     *
+     * @param method a method. Its instructions must not be modified while this graph is used.
+     */
+    public ControlFlowGraph(final MethodNode method) {
+        this.method = method;
+        InsnList insnList = method.instructions;
+        insns =
+                (method.access & (ACC_ABSTRACT | ACC_NATIVE)) != 0
+                        ? new AbstractInsnNode[0]
+                        : insnList.toArray();
+        insnCount = insns.length;
+        List<TryCatchBlockNode> tryCatchBlocks = method.tryCatchBlocks;
+        int tryCatchBlockCount = insnCount == 0 ? 0 : tryCatchBlocks.size();
+
+        // Find the first instruction of each block.
+        boolean[] isBlockStart = new boolean[insnCount + 1];
+        boolean hasJsr = false;
+        if (insnCount > 0) {
+            isBlockStart[0] = true;
+        }
+        for (int i = 0; i < insnCount; ++i) {
+            AbstractInsnNode insn = insns[i];
+            int opcode = insn.getOpcode();
+            if (insn instanceof JumpInsnNode) {
+                isBlockStart[insnList.indexOf(((JumpInsnNode) insn).getLabel())] = true;
+                isBlockStart[i + 1] = true;
+                hasJsr |= opcode == JSR;
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lookupSwitchInsn = (LookupSwitchInsnNode) insn;
+                markBlockStarts(insnList, lookupSwitchInsn.getDflt(), lookupSwitchInsn.getLabels(), isBlockStart);
+                isBlockStart[i + 1] = true;
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tableSwitchInsn = (TableSwitchInsnNode) insn;
+                markBlockStarts(insnList, tableSwitchInsn.getDflt(), tableSwitchInsn.getLabels(), isBlockStart);
+                isBlockStart[i + 1] = true;
+            } else if (opcode == ATHROW || opcode == RET || (opcode >= IRETURN && opcode <= RETURN)) {
+                isBlockStart[i + 1] = true;
+            }
+        }
+        for (int i = 0; i < tryCatchBlockCount; ++i) {
+            TryCatchBlockNode tryCatchBlock = tryCatchBlocks.get(i);
+            isBlockStart[insnList.indexOf(tryCatchBlock.getStart())] = true;
+            isBlockStart[insnList.indexOf(tryCatchBlock.getEnd())] = true;
+            isBlockStart[insnList.indexOf(tryCatchBlock.getHandler())] = true;
+        }
+
+        // Merge the consecutive blocks made only of labels, line numbers and frames with the next
+        // block. These nodes cannot throw exceptions, so this does not change the try catch ranges.
+        int runStart = 0;
+        boolean runHasBlockStart = false;
+        for (int i = 0; i < insnCount; ++i) {
+            if (insns[i].getOpcode() >= 0) {
+                if (runHasBlockStart) {
+                    for (int j = runStart; j <= i; ++j) {
+                        isBlockStart[j] = false;
+                    }
+                    isBlockStart[runStart] = true;
+                }
+                runStart = i + 1;
+                runHasBlockStart = false;
+            } else {
+                runHasBlockStart |= isBlockStart[i];
+            }
+        }
+
+        // Number the blocks.
+        int numBlocks = 0;
+        for (int i = 0; i < insnCount; ++i) {
+            if (isBlockStart[i]) {
+                ++numBlocks;
+            }
+        }
+        blockCount = numBlocks;
+        blockStarts = new int[blockCount + 1];
+        insnBlocks = new int[insnCount];
+        int currentBlock = -1;
+        for (int i = 0; i < insnCount; ++i) {
+            if (isBlockStart[i]) {
+                blockStarts[++currentBlock] = i;
+            }
+            insnBlocks[i] = currentBlock;
+        }
+        blockStarts[blockCount] = insnCount;
+
+        // The blocks following a JSR instruction, which are the successors of all the RET instructions.
+        int[] returnBlocks = new int[0];
+        if (hasJsr) {
+            int numReturnBlocks = 0;
+            returnBlocks = new int[blockCount];
+            for (int i = 0; i < insnCount - 1; ++i) {
+                if (insns[i].getOpcode() == JSR) {
+                    returnBlocks[numReturnBlocks++] = insnBlocks[i + 1];
+                }
+            }
+            returnBlocks = Arrays.copyOf(returnBlocks, numReturnBlocks);
+        }
+
+        // Compute the normal successors of each block, from its last instruction.
+        successorOffsets = new int[blockCount + 1];
+        int[] edges = new int[blockCount * 2];
+        int numEdges = 0;
+        int[] lastAdded = new int[blockCount];
+        Arrays.fill(lastAdded, -1);
+        for (int block = 0; block < blockCount; ++block) {
+            successorOffsets[block] = numEdges;
+            AbstractInsnNode insn = insns[blockStarts[block + 1] - 1];
+            int opcode = insn.getOpcode();
+            int[] targets;
+            if (insn instanceof JumpInsnNode) {
+                int target = insnBlocks[insnList.indexOf(((JumpInsnNode) insn).getLabel())];
+                targets =
+                        opcode == GOTO || opcode == JSR || block + 1 == blockCount
+                                ? new int[]{target}
+                                : new int[]{block + 1, target};
+            } else if (insn instanceof LookupSwitchInsnNode) {
+                LookupSwitchInsnNode lookupSwitchInsn = (LookupSwitchInsnNode) insn;
+                targets = getBlocks(insnList, lookupSwitchInsn.getDflt(), lookupSwitchInsn.getLabels());
+            } else if (insn instanceof TableSwitchInsnNode) {
+                TableSwitchInsnNode tableSwitchInsn = (TableSwitchInsnNode) insn;
+                targets = getBlocks(insnList, tableSwitchInsn.getDflt(), tableSwitchInsn.getLabels());
+            } else if (opcode == RET) {
+                targets = returnBlocks;
+            } else if (opcode == ATHROW || (opcode >= IRETURN && opcode <= RETURN) || block + 1 == blockCount) {
+                targets = new int[0];
+            } else {
+                targets = new int[]{block + 1};
+            }
+            for (int target : targets) {
+                if (lastAdded[target] != block) {
+                    lastAdded[target] = block;
+                    if (numEdges == edges.length) {
+                        edges = Arrays.copyOf(edges, numEdges * 2);
+                    }
+                    edges[numEdges++] = target;
+                }
+            }
+        }
+        successorOffsets[blockCount] = numEdges;
+        successors = Arrays.copyOf(edges, numEdges);
+
+        // Compute the exception handlers of each block, as (block, handler) pairs sorted by block.
+        int numHandlerEdges = 0;
+        int[] handlerCounts = new int[blockCount + 1];
+        for (int i = 0; i < tryCatchBlockCount; ++i) {
+            TryCatchBlockNode tryCatchBlock = tryCatchBlocks.get(i);
+            int startBlock = insnBlocks[insnList.indexOf(tryCatchBlock.getStart())];
+            int endBlock = insnBlocks[insnList.indexOf(tryCatchBlock.getEnd())];
+            for (int block = startBlock; block < endBlock; ++block) {
+                handlerCounts[block]++;
+                numHandlerEdges++;
+            }
+        }
+        int[] handlerSources = new int[numHandlerEdges];
+        int[] handlerTargets = new int[numHandlerEdges];
+        int[] positions = toOffsets(handlerCounts);
+        for (int i = 0; i < tryCatchBlockCount; ++i) {
+            TryCatchBlockNode tryCatchBlock = tryCatchBlocks.get(i);
+            int startBlock = insnBlocks[insnList.indexOf(tryCatchBlock.getStart())];
+            int endBlock = insnBlocks[insnList.indexOf(tryCatchBlock.getEnd())];
+            int handlerBlock = insnBlocks[insnList.indexOf(tryCatchBlock.getHandler())];
+            for (int block = startBlock; block < endBlock; ++block) {
+                int position = positions[block]++;
+                handlerSources[position] = block;
+                handlerTargets[position] = handlerBlock;
+            }
+        }
+        // Remove the duplicate handlers of each block.
+        handlerOffsets = new int[blockCount + 1];
+        Arrays.fill(lastAdded, -1);
+        int numHandlers = 0;
+        for (int i = 0, block = 0; block <= blockCount; ++block) {
+            handlerOffsets[block] = numHandlers;
+            for (; i < numHandlerEdges && handlerSources[i] == block; ++i) {
+                int handlerBlock = handlerTargets[i];
+                if (lastAdded[handlerBlock] != block) {
+                    lastAdded[handlerBlock] = block;
+                    handlerSources[numHandlers] = block;
+                    handlerTargets[numHandlers++] = handlerBlock;
+                }
+            }
+        }
+        handlers = Arrays.copyOf(handlerTargets, numHandlers);
+
+        // Compute the reverse edges.
+        predecessorOffsets = new int[blockCount + 1];
+        predecessors = reverse(successorOffsets, successors, predecessorOffsets);
+        protectedBlockOffsets = new int[blockCount + 1];
+        protectedBlocks = reverse(handlerOffsets, handlers, protectedBlockOffsets);
+    }
+
+    private static void markBlockStarts(
+            final InsnList insnList,
+            final LabelNode dflt,
+            final List<LabelNode> labels,
+            final boolean[] isBlockStart) {
+        isBlockStart[insnList.indexOf(dflt)] = true;
+        for (int i = 0; i < labels.size(); ++i) {
+            isBlockStart[insnList.indexOf(labels.get(i))] = true;
+        }
+    }
+
+    private int[] getBlocks(final InsnList insnList, final LabelNode dflt, final List<LabelNode> labels) {
+        int[] blocks = new int[labels.size() + 1];
+        blocks[0] = insnBlocks[insnList.indexOf(dflt)];
+        for (int i = 0; i < labels.size(); ++i) {
+            blocks[i + 1] = insnBlocks[insnList.indexOf(labels.get(i))];
+        }
+        return blocks;
+    }
+
+    /**
+     * Replaces the given counts with the corresponding start offsets.
+     *
+     * @param counts a number of elements per block, followed by an unused element.
+     * @return counts, containing the offset of the first element of each block, followed by the total
+     * number of elements.
+     */
+    private static int[] toOffsets(final int[] counts) {
+        int offset = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            int count = counts[i];
+            counts[i] = offset;
+            offset += count;
+        }
+        return counts;
+    }
+
+    /**
+     * Computes the reverse of the given edges.
+     *
+     * @param offsets        the offsets of the edges of each block in targets.
+     * @param targets        the targets of the edges.
+     * @param reverseOffsets where the offsets of the reverse edges of each block must be stored.
+     * @return the targets of the reverse edges.
+     */
+    private int[] reverse(final int[] offsets, final int[] targets, final int[] reverseOffsets) {
+        for (int i = 0; i < targets.length; ++i) {
+            reverseOffsets[targets[i]]++;
+        }
+        toOffsets(reverseOffsets);
+        int[] positions = reverseOffsets.clone();
+        int[] reverseTargets = new int[targets.length];
+        for (int block = 0; block < blockCount; ++block) {
+            for (int i = offsets[block]; i < offsets[block + 1]; ++i) {
+                reverseTargets[positions[targets[i]]++] = block;
+            }
+        }
+        return reverseTargets;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Accessors to the blocks and edges
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the method whose control flow graph this is.
+     *
+     * @return the method whose control flow graph this is.
+     */
+    public MethodNode getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns the number of instructions of the method.
+     *
+     * @return the number of instructions of the method (0 for abstract and native methods).
+     */
+    public int getInsnCount() {
+        return insnCount;
+    }
+
+    /**
+     * Returns the number of basic blocks of the method.
+     *
+     * @return the number of basic blocks of the method.
+     */
+    public int getBlockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Returns the block containing the given instruction.
+     *
+     * @param insnIndex the index of an instruction of the method.
+     * @return the index of the block containing this instruction.
+     */
+    public int getBlock(final int insnIndex) {
+        return insnBlocks[insnIndex];
+    }
+
+    /**
+     * Returns the index of the first instruction of a block.
+     *
+     * @param block a block index.
+     * @return the index of the first instruction of this block.
+     */
+    public int getBlockStart(final int block) {
+        return blockStarts[block];
+    }
+
+    /**
+     * Returns the index of the instruction following the last instruction of a block.
+     *
+     * @param block a block index.
+     * @return the index of the last instruction of this block, plus one.
+     */
+    public int getBlockEnd(final int block) {
+        return blockStarts[block + 1];
+    }
+
+    /**
+     * Returns the number of normal successors of a block.
+     *
+     * @param block a block index.
+     * @return the number of normal successors of this block.
+     */
+    public int getSuccessorCount(final int block) {
+        return successorOffsets[block + 1] - successorOffsets[block];
+    }
+
+    /**
+     * Returns a normal successor of a block, i.e. a block to which it jumps or falls through.
+     *
+     * @param block a block index.
+     * @param index the index of a successor, between 0 and {@link #getSuccessorCount} - 1.
+     * @return the corresponding successor block.
+     */
+    public int getSuccessor(final int block, final int index) {
+        return successors[successorOffsets[block] + index];
+    }
+
+    /**
+     * Returns the number of normal predecessors of a block.
+     *
+     * @param block a block index.
+     * @return the number of normal predecessors of this block.
+     */
+    public int getPredecessorCount(final int block) {
+        return predecessorOffsets[block + 1] - predecessorOffsets[block];
+    }
+
+    /**
+     * Returns a normal predecessor of a block, i.e. a block which jumps or falls through to it.
+     *
+     * @param block a block index.
+     * @param index the index of a predecessor, between 0 and {@link #getPredecessorCount} - 1.
+     * @return the corresponding predecessor block.
+     */
+    public int getPredecessor(final int block, final int index) {
+        return predecessors[predecessorOffsets[block] + index];
+    }
+
+    /**
+     * Returns the normal successors of a block.
+     *
+     * @param block a block index.
+     * @return the normal successors of this block. A new array is returned at each call.
+     */
+    public int[] getSuccessors(final int block) {
+        return Arrays.copyOfRange(successors, successorOffsets[block], successorOffsets[block + 1]);
+    }
+
+    /**
+     * Returns the normal predecessors of a block.
+     *
+     * @param block a block index.
+     * @return the normal predecessors of this block. A new array is returned at each call.
+     */
+    public int[] getPredecessors(final int block) {
+        return Arrays.copyOfRange(predecessors, predecessorOffsets[block], predecessorOffsets[block + 1]);
+    }
+
+    /**
+     * Returns the exception handlers of a block, i.e. its exceptional successors.
+     *
+     * @param block a block index.
+     * @return the blocks starting the exception handlers of this block. A new array is returned at
+     * each call.
+     */
+    public int[] getHandlers(final int block) {
+        return Arrays.copyOfRange(handlers, handlerOffsets[block], handlerOffsets[block + 1]);
+    }
+
+    /**
+     * Returns the blocks protected by an exception handler, i.e. its exceptional predecessors.
+     *
+     * @param block a block index.
+     * @return the blocks having this block as exception handler. A new array is returned at each call.
+     */
+    public int[] getProtectedBlocks(final int block) {
+        return Arrays.copyOfRange(
+                protectedBlocks, protectedBlockOffsets[block], protectedBlockOffsets[block + 1]);
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Dominators
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns whether a block can be reached from the entry block, following normal and exceptional
+     * edges.
+     *
+     * @param block a block index.
+     * @return whether this block can be reached. Returns <tt>false</tt> if block is not a block index,
+     * for instance for a method without code, which has no blocks.
+     */
+    public boolean isReachable(final int block) {
+        return isBlock(block) && (block == 0 || getDominatorTree().parents[block] != -1);
+    }
+
+    /**
+     * Returns the immediate dominator of a block. A block a dominates a block b if all the paths from
+     * the entry block to b contain a.
+     *
+     * @param block a block index.
+     * @return the immediate dominator of this block, or -1 for the entry block, for the blocks which
+     * cannot be reached, and if block is not a block index.
+     */
+    public int getImmediateDominator(final int block) {
+        return isBlock(block) ? getDominatorTree().parents[block] : -1;
+    }
+
+    /**
+     * Returns whether a block dominates another block. A reachable block dominates itself.
+     *
+     * @param dominator a block index.
+     * @param block     another block index.
+     * @return whether all the paths from the entry block to block contain dominator.
+     */
+    public boolean dominates(final int dominator, final int block) {
+        if (!isBlock(dominator) || !isBlock(block)) {
+            return false;
+        }
+        return isAncestor(getDominatorTree().orders, dominator, block);
+    }
+
+    /**
+     * Returns the immediate post dominator of a block. A block a post dominates a block b if all the
+     * paths from b to the exit of the method contain a. The blocks ending with a return or ATHROW
+     * instruction, or without successor, are considered to exit the method.
+     *
+     * @param block a block index.
+     * @return the immediate post dominator of this block, or -1 if it is only post dominated by the
+     * exit of the method, if it cannot reach it, or if block is not a block index.
+     */
+    public int getImmediatePostDominator(final int block) {
+        if (!isBlock(block)) {
+            return -1;
+        }
+        int postDominator = getPostDominatorTree().parents[block];
+        return postDominator == blockCount ? -1 : postDominator;
+    }
+
+    /**
+     * Returns whether a block post dominates another block. A block which can reach the exit of the
+     * method post dominates itself.
+     *
+     * @param postDominator a block index.
+     * @param block         another block index.
+     * @return whether all the paths from block to the exit of the method contain postDominator.
+     */
+    public boolean postDominates(final int postDominator, final int block) {
+        if (!isBlock(postDominator) || !isBlock(block)) {
+            return false;
+        }
+        return isAncestor(getPostDominatorTree().orders, postDominator, block);
+    }
+
+    /**
+     * Returns whether the given index is a block index. The graph of a method without code, such as an
+     * abstract or native method, has no blocks.
+     *
+     * @param block an index.
+     * @return whether block is between 0 inclusive and the number of blocks exclusive.
+     */
+    private boolean isBlock(final int block) {
+        return block >= 0 && block < blockCount;
+    }
+
+    private DominatorTree getDominatorTree() {
+        DominatorTree tree = dominatorTree;
+        if (tree == null) {
+            // The dominators are computed on the graph containing the normal and exceptional edges.
+            int[] edgeOffsets = new int[blockCount + 1];
+            int[] edges = merge(successorOffsets, successors, handlerOffsets, handlers, edgeOffsets);
+            int[] reverseEdgeOffsets = new int[blockCount + 1];
+            int[] reverseEdges =
+                    merge(predecessorOffsets, predecessors, protectedBlockOffsets, protectedBlocks, reverseEdgeOffsets);
+            int[] idoms = computeDominators(blockCount, 0, edgeOffsets, edges, reverseEdgeOffsets, reverseEdges);
+            int[] orders = computeTreeOrders(idoms, 0);
+            if (blockCount > 0) {
+                idoms[0] = -1;
+            }
+            // Concurrent callers may compute the tree more than once, but they all get the same result.
+            tree = new DominatorTree(idoms, orders);
+            dominatorTree = tree;
+        }
+        return tree;
+    }
+
+    private DominatorTree getPostDominatorTree() {
+        DominatorTree tree = postDominatorTree;
+        if (tree == null) {
+            // The post dominators are computed on the reverse graph, with an additional node (with index
+            // blockCount) representing the exit of the method.
+            int exitNode = blockCount;
+            int[] edgeOffsets = new int[blockCount + 1];
+            int[] edges = merge(successorOffsets, successors, handlerOffsets, handlers, edgeOffsets);
+            int[] reverseEdgeOffsets = new int[blockCount + 1];
+            int[] reverseEdges =
+                    merge(predecessorOffsets, predecessors, protectedBlockOffsets, protectedBlocks, reverseEdgeOffsets);
+            boolean[] isExit = new boolean[blockCount];
+            int numExits = 0;
+            for (int block = 0; block < blockCount; ++block) {
+                int opcode = insns[blockStarts[block + 1] - 1].getOpcode();
+                if (opcode == ATHROW
+                        || (opcode >= IRETURN && opcode <= RETURN)
+                        || edgeOffsets[block] == edgeOffsets[block + 1]) {
+                    isExit[block] = true;
+                    ++numExits;
+                }
+            }
+            // Successors in the reverse graph: the predecessors, and the exit blocks for the exit node.
+            int[] postSuccessorOffsets = Arrays.copyOf(reverseEdgeOffsets, blockCount + 2);
+            int[] postSuccessors = Arrays.copyOf(reverseEdges, reverseEdges.length + numExits);
+            int position = reverseEdges.length;
+            for (int block = 0; block < blockCount; ++block) {
+                if (isExit[block]) {
+                    postSuccessors[position++] = block;
+                }
+            }
+            postSuccessorOffsets[blockCount + 1] = position;
+            // Predecessors in the reverse graph: the successors, and the exit node for the exit blocks.
+            int[] postPredecessorOffsets = new int[blockCount + 2];
+            int[] postPredecessors = new int[edges.length + numExits];
+            position = 0;
+            for (int block = 0; block < blockCount; ++block) {
+                postPredecessorOffsets[block] = position;
+                for (int i = edgeOffsets[block]; i < edgeOffsets[block + 1]; ++i) {
+                    postPredecessors[position++] = edges[i];
+                }
+                if (isExit[block]) {
+                    postPredecessors[position++] = exitNode;
+                }
+            }
+            postPredecessorOffsets[blockCount] = position;
+            postPredecessorOffsets[blockCount + 1] = position;
+            int[] ipdoms =
+                    computeDominators(
+                            blockCount + 1,
+                            exitNode,
+                            postSuccessorOffsets,
+                            postSuccessors,
+                            postPredecessorOffsets,
+                            postPredecessors);
+            tree = new DominatorTree(ipdoms, computeTreeOrders(ipdoms, exitNode));
+            postDominatorTree = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Merges two edge lists.
+     *
+     * @param offsets1      the offsets of the edges of each block in edges1.
+     * @param edges1        some edges.
+     * @param offsets2      the offsets of the edges of each block in edges2.
+     * @param edges2        some other edges.
+     * @param mergedOffsets where the offsets of the edges of each block in the result must be stored.
+     * @return the union of the given edges.
+     */
+    private int[] merge(
+            final int[] offsets1,
+            final int[] edges1,
+            final int[] offsets2,
+            final int[] edges2,
+            final int[] mergedOffsets) {
+        int[] merged = new int[edges1.length + edges2.length];
+        int position = 0;
+        for (int block = 0; block < blockCount; ++block) {
+            mergedOffsets[block] = position;
+            for (int i = offsets1[block]; i < offsets1[block + 1]; ++i) {
+                merged[position++] = edges1[i];
+            }
+            for (int i = offsets2[block]; i < offsets2[block + 1]; ++i) {
+                merged[position++] = edges2[i];
+            }
+        }
+        mergedOffsets[blockCount] = position;
+        return merged;
+    }
+
+    /**
+     * Computes the immediate dominators of the nodes of a graph, with the algorithm described in "A
+     * Simple, Fast Dominance Algorithm" by Cooper, Harvey and Kennedy.
+     *
+     * @param nodeCount          the number of nodes of the graph.
+     * @param entry              the entry node of the graph.
+     * @param successorOffsets   the offsets of the successors of each node in successors.
+     * @param successors         the successors of all the nodes.
+     * @param predecessorOffsets the offsets of the predecessors of each node in predecessors.
+     * @param predecessors       the predecessors of all the nodes.
+     * @return the immediate dominator of each node, entry for the entry node, and -1 for the nodes
+     * which cannot be reached from the entry node.
+     */
+    private static int[] computeDominators(
+            final int nodeCount,
+            final int entry,
+            final int[] successorOffsets,
+            final int[] successors,
+            final int[] predecessorOffsets,
+            final int[] predecessors) {
+        int[] idoms = new int[nodeCount];
+        Arrays.fill(idoms, -1);
+        if (nodeCount == 0) {
+            return idoms;
+        }
+        // Compute a reverse postorder of the reachable nodes, with an iterative depth first search.
+        int[] postorderNumbers = new int[nodeCount];
+        Arrays.fill(postorderNumbers, -1);
+        int[] reversePostorder = new int[nodeCount];
+        int[] stack = new int[nodeCount];
+        int[] nextEdges = new int[nodeCount];
+        boolean[] visited = new boolean[nodeCount];
+        int numVisited = 0;
+        int stackSize = 0;
+        stack[stackSize++] = entry;
+        visited[entry] = true;
+        nextEdges[entry] = successorOffsets[entry];
+        while (stackSize > 0) {
+            int node = stack[stackSize - 1];
+            if (nextEdges[node] < successorOffsets[node + 1]) {
+                int successor = successors[nextEdges[node]++];
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    nextEdges[successor] = successorOffsets[successor];
+                    stack[stackSize++] = successor;
+                }
+            } else {
+                --stackSize;
+                postorderNumbers[node] = numVisited++;
+            }
+        }
+        for (int node = 0; node < nodeCount; ++node) {
+            if (postorderNumbers[node] != -1) {
+                reversePostorder[numVisited - 1 - postorderNumbers[node]] = node;
+            }
+        }
+
+        idoms[entry] = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < numVisited; ++i) {
+                int node = reversePostorder[i];
+                int newIdom = -1;
+                for (int j = predecessorOffsets[node]; j < predecessorOffsets[node + 1]; ++j) {
+                    int predecessor = predecessors[j];
+                    if (idoms[predecessor] == -1) {
+                        continue;
+                    }
+                    if (newIdom == -1) {
+                        newIdom = predecessor;
+                    } else {
+                        // Find the nearest common ancestor of predecessor and newIdom.
+                        int finger1 = predecessor;
+                        int finger2 = newIdom;
+                        while (finger1 != finger2) {
+                            while (postorderNumbers[finger1] < postorderNumbers[finger2]) {
+                                finger1 = idoms[finger1];
+                            }
+                            while (postorderNumbers[finger2] < postorderNumbers[finger1]) {
+                                finger2 = idoms[finger2];
+                            }
+                        }
+                        newIdom = finger1;
+                    }
+                }
+                if (idoms[node] != newIdom) {
+                    idoms[node] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+        return idoms;
+    }
+
+    /**
+     * Computes the preorder and postorder numbers of the nodes of a tree, which can then be used to
+     * know in constant time if a node is an ancestor of another.
+     *
+     * @param parents the parent of each node, root for the root node, and -1 for the nodes which are not
+     *                in the tree.
+     * @param root    the root node of the tree.
+     * @return the preorder and postorder numbers of each node, interleaved (-1 for the nodes which are
+     * not in the tree).
+     */
+    private static int[] computeTreeOrders(final int[] parents, final int root) {
+        int nodeCount = parents.length;
+        if (nodeCount == 0) {
+            return new int[0];
+        }
+        int[] childOffsets = new int[nodeCount + 1];
+        for (int node = 0; node < nodeCount; ++node) {
+            if (node != root && parents[node] != -1) {
+                childOffsets[parents[node]]++;
+            }
+        }
+        toOffsets(childOffsets);
+        int[] positions = childOffsets.clone();
+        int[] children = new int[childOffsets[nodeCount]];
+        for (int node = 0; node < nodeCount; ++node) {
+            if (node != root && parents[node] != -1) {
+                children[positions[parents[node]]++] = node;
+            }
+        }
+        int[] orders = new int[2 * nodeCount];
+        Arrays.fill(orders, -1);
+        int[] stack = new int[nodeCount];
+        int[] nextChildren = childOffsets.clone();
+        int preorder = 0;
+        int postorder = 0;
+        int stackSize = 0;
+        stack[stackSize++] = root;
+        orders[2 * root] = preorder++;
+        while (stackSize > 0) {
+            int node = stack[stackSize - 1];
+            if (nextChildren[node] < childOffsets[node + 1]) {
+                int child = children[nextChildren[node]++];
+                orders[2 * child] = preorder++;
+                stack[stackSize++] = child;
+            } else {
+                --stackSize;
+                orders[2 * node + 1] = postorder++;
+            }
+        }
+        return orders;
+    }
+
+    private static boolean isAncestor(final int[] orders, final int ancestor, final int node) {
+        return orders[2 * ancestor] != -1
+                && orders[2 * node] != -1
+                && orders[2 * ancestor] <= orders[2 * node]
+                && orders[2 * node + 1] <= orders[2 * ancestor + 1];
+    }
+
+    /**
+     * A dominator or post dominator tree. Its fields are final, and it is published through a volatile
+     * field, so that a thread which reads this field sees the arrays fully initialized.
+     */
+    private static final class DominatorTree {
+
+        /**
+         * The parent of each node in the tree, or -1 for the nodes which are not in the tree. See
+         * {@link #dominatorTree} and {@link #postDominatorTree} for the parent of the root.
+         */
+        final int[] parents;
+
+        /**
+         * The preorder and postorder numbers of each node in the tree, interleaved, or -1 for the nodes
+         * which are not in the tree.
+         */
+        final int[] orders;
+
+        DominatorTree(final int[] parents, final int[] orders) {
+            this.parents = parents;
+            this.orders = orders;
+        }
+    }
+}
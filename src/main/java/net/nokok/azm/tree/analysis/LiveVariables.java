@@ -0,0 +1,306 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.tree.analysis;
+
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.IincInsnNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.VarInsnNode;
+
+/**
+ * A live variables analysis. A local variable is live before an instruction if its current value
+ * can be used by this instruction or by an instruction reachable from it, i.e. if there is a path
+ * from this instruction to a load of this variable which does not contain a store to this
+ * variable. The analysis is performed on the basic blocks of the method with a worklist algorithm,
+ * and the sets of live variables are stored as bit sets in a single <tt>long</tt> array.
+ * <p>
+ * <p>Only the first local variable of long and double values is considered to be used and defined
+ * by the load and store instructions. The local variables which are live at the start of an
+ * exception handler are live in all the instructions of the corresponding try catch block range.
+ */
+public class LiveVariables implements Opcodes {
+
+    /**
+     * The control flow graph of the last analyzed method.
+     */
+    private ControlFlowGraph graph;
+
+    /**
+     * The number of <tt>long</tt> used to store a set of local variables.
+     */
+    private int setWords;
+
+    /**
+     * The local variables which are live before each instruction of the last analyzed method,
+     * {@link #setWords} per instruction index.
+     */
+    private long[] liveBefore;
+
+    /**
+     * The local variables which are live after each block of the last analyzed method, {@link
+     * #setWords} per block.
+     */
+    private long[] liveOut;
+
+    /**
+     * Analyzes the given method.
+     *
+     * @param method the method to be analyzed.
+     */
+    public void analyze(final MethodNode method) {
+        analyze(new ControlFlowGraph(method));
+    }
+
+    /**
+     * Analyzes the method of the given control flow graph.
+     *
+     * @param graph the control flow graph of the method to be analyzed.
+     */
+    public void analyze(final ControlFlowGraph graph) {
+        AbstractInsnNode[] insns = graph.insns;
+        this.graph = graph;
+        int words = (graph.method.maxLocals + 63) >>> 6;
+        setWords = words;
+        int blockCount = graph.blockCount;
+        int[] blockStarts = graph.blockStarts;
+
+        // Compute the variables used before being defined, and the variables defined, in each block.
+        long[] use = new long[blockCount * words];
+        long[] def = new long[blockCount * words];
+        for (int block = 0; block < blockCount; ++block) {
+            int offset = block * words;
+            for (int i = blockStarts[block + 1] - 1; i >= blockStarts[block]; --i) {
+                AbstractInsnNode insn = insns[i];
+                int var = getDefinedVar(insn);
+                if (var != -1) {
+                    def[offset + (var >>> 6)] |= 1L << var;
+                    use[offset + (var >>> 6)] &= ~(1L << var);
+                }
+                var = getUsedVar(insn);
+                if (var != -1) {
+                    use[offset + (var >>> 6)] |= 1L << var;
+                }
+            }
+        }
+
+        // Compute the live variables at the start and at the end of each block, with a worklist
+        // algorithm. Blocks are processed in reverse order first, which is usually a good order for a
+        // backward analysis.
+        long[] liveIn = new long[blockCount * words];
+        long[] liveOut = new long[blockCount * words];
+        long[] handlerIn = new long[words];
+        boolean[] inWorklist = new boolean[blockCount];
+        int[] worklist = new int[blockCount];
+        int worklistSize = 0;
+        for (int block = 0; block < blockCount; ++block) {
+            worklist[worklistSize++] = block;
+            inWorklist[block] = true;
+        }
+        while (worklistSize > 0) {
+            int block = worklist[--worklistSize];
+            inWorklist[block] = false;
+            int offset = block * words;
+            computeHandlerIn(block, liveIn, handlerIn);
+            for (int i = graph.successorOffsets[block]; i < graph.successorOffsets[block + 1]; ++i) {
+                int successorOffset = graph.successors[i] * words;
+                for (int j = 0; j < words; ++j) {
+                    liveOut[offset + j] |= liveIn[successorOffset + j];
+                }
+            }
+            boolean changed = false;
+            for (int j = 0; j < words; ++j) {
+                liveOut[offset + j] |= handlerIn[j];
+                long newIn = use[offset + j] | (liveOut[offset + j] & ~def[offset + j]) | handlerIn[j];
+                if (newIn != liveIn[offset + j]) {
+                    liveIn[offset + j] = newIn;
+                    changed = true;
+                }
+            }
+            if (changed) {
+                for (int i = graph.predecessorOffsets[block]; i < graph.predecessorOffsets[block + 1]; ++i) {
+                    worklistSize = push(graph.predecessors[i], worklist, worklistSize, inWorklist);
+                }
+                for (int i = graph.protectedBlockOffsets[block];
+                     i < graph.protectedBlockOffsets[block + 1];
+                     ++i) {
+                    worklistSize = push(graph.protectedBlocks[i], worklist, worklistSize, inWorklist);
+                }
+            }
+        }
+
+        // Compute the live variables before each instruction, from the end of each block.
+        this.liveOut = liveOut;
+        liveBefore = new long[graph.insnCount * words];
+        long[] live = new long[words];
+        for (int block = 0; block < blockCount; ++block) {
+            computeHandlerIn(block, liveIn, handlerIn);
+            System.arraycopy(liveOut, block * words, live, 0, words);
+            for (int i = blockStarts[block + 1] - 1; i >= blockStarts[block]; --i) {
+                AbstractInsnNode insn = insns[i];
+                int var = getDefinedVar(insn);
+                if (var != -1) {
+                    live[var >>> 6] &= ~(1L << var);
+                }
+                var = getUsedVar(insn);
+                if (var != -1) {
+                    live[var >>> 6] |= 1L << var;
+                }
+                for (int j = 0; j < words; ++j) {
+                    live[j] |= handlerIn[j];
+                }
+                System.arraycopy(live, 0, liveBefore, i * words, words);
+            }
+        }
+    }
+
+    /**
+     * Computes the union of the live variables at the start of the exception handlers of a block.
+     *
+     * @param block     a block index.
+     * @param liveIn    the live variables at the start of each block.
+     * @param handlerIn where the result must be stored.
+     */
+    private void computeHandlerIn(final int block, final long[] liveIn, final long[] handlerIn) {
+        int words = setWords;
+        for (int j = 0; j < words; ++j) {
+            handlerIn[j] = 0;
+        }
+        for (int i = graph.handlerOffsets[block]; i < graph.handlerOffsets[block + 1]; ++i) {
+            int handlerOffset = graph.handlers[i] * words;
+            for (int j = 0; j < words; ++j) {
+                handlerIn[j] |= liveIn[handlerOffset + j];
+            }
+        }
+    }
+
+    private static int push(
+            final int block, final int[] worklist, final int worklistSize, final boolean[] inWorklist) {
+        if (inWorklist[block]) {
+            return worklistSize;
+        }
+        inWorklist[block] = true;
+        worklist[worklistSize] = block;
+        return worklistSize + 1;
+    }
+
+    /**
+     * Returns the local variable whose value is used by the given instruction.
+     *
+     * @param insn an instruction.
+     * @return the local variable used by insn, or -1.
+     */
+    static int getUsedVar(final AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if ((opcode >= ILOAD && opcode <= ALOAD) || opcode == RET) {
+            return ((VarInsnNode) insn).getVar();
+        }
+        if (opcode == IINC) {
+            return ((IincInsnNode) insn).getVar();
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the local variable whose value is defined by the given instruction.
+     *
+     * @param insn an instruction.
+     * @return the local variable defined by insn, or -1.
+     */
+    static int getDefinedVar(final AbstractInsnNode insn) {
+        int opcode = insn.getOpcode();
+        if (opcode >= ISTORE && opcode <= ASTORE) {
+            return ((VarInsnNode) insn).getVar();
+        }
+        if (opcode == IINC) {
+            return ((IincInsnNode) insn).getVar();
+        }
+        return -1;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Accessors to the analysis results
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns whether a local variable is live before the given instruction of the last analyzed
+     * method.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @param var       the index of a local variable.
+     * @return whether the value of var before this instruction can be used later.
+     */
+    public boolean isLive(final int insnIndex, final int var) {
+        return (liveBefore[insnIndex * setWords + (var >>> 6)] & (1L << var)) != 0;
+    }
+
+    /**
+     * Returns whether a local variable is live after the given instruction of the last analyzed
+     * method. This is useful to find the stores whose value is never used.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @param var       the index of a local variable.
+     * @return whether the value of var after this instruction can be used later.
+     */
+    public boolean isLiveAfter(final int insnIndex, final int var) {
+        int block = graph.insnBlocks[insnIndex];
+        if (insnIndex + 1 < graph.blockStarts[block + 1]) {
+            return isLive(insnIndex + 1, var);
+        }
+        return (liveOut[block * setWords + (var >>> 6)] & (1L << var)) != 0;
+    }
+
+    /**
+     * Returns the local variables which are live before the given instruction of the last analyzed
+     * method.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @return a bit set of live local variables (bit i of element j is set if the local variable
+     * 64 * j + i is live). A new array is returned at each call.
+     */
+    public long[] getLiveVariables(final int insnIndex) {
+        long[] live = new long[setWords];
+        System.arraycopy(liveBefore, insnIndex * setWords, live, 0, setWords);
+        return live;
+    }
+
+    /**
+     * Returns the number of local variables which are live before the given instruction of the last
+     * analyzed method.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @return the number of live local variables.
+     */
+    public int getLiveVariableCount(final int insnIndex) {
+        int count = 0;
+        for (int i = insnIndex * setWords, n = i + setWords; i < n; ++i) {
+            count += Long.bitCount(liveBefore[i]);
+        }
+        return count;
+    }
+}
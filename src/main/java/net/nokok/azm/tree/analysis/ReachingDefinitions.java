@@ -0,0 +1,470 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.tree.analysis;
+
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Type;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.MethodNode;
+
+import java.util.Arrays;
+
+/**
+ * A reaching definitions analysis, which also computes the def-use chains of the local variables.
+ * A definition is a store or IINC instruction, or the initial value of a method parameter (including
+ * <tt>this</tt>). Definitions are identified by an index: the initial values of the parameters come
+ * first, followed by the store and IINC instructions in instruction order. A definition reaches an
+ * instruction if there is a path from this definition to this instruction which does not contain
+ * another definition of the same local variable.
+ * <p>
+ * <p>The analysis is performed on the basic blocks of the method with a worklist algorithm, using
+ * bit sets of definitions stored in <tt>long</tt> arrays. Only the sets at the start of each block
+ * are kept after the analysis. The def-use chains are stored in <tt>int</tt> arrays. As in {@link
+ * LiveVariables}, only the first local variable of long and double values is considered.
+ */
+public class ReachingDefinitions implements Opcodes {
+
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     * The control flow graph of the last analyzed method.
+     */
+    private ControlFlowGraph graph;
+
+    /**
+     * The instructions of the last analyzed method.
+     */
+    private AbstractInsnNode[] insns;
+
+    /**
+     * The number of definitions of the last analyzed method corresponding to parameters.
+     */
+    private int parameterDefinitionCount;
+
+    /**
+     * The instruction index of each definition, or -1 for parameter definitions.
+     */
+    private int[] definitionInsns;
+
+    /**
+     * The local variable of each definition.
+     */
+    private int[] definitionVars;
+
+    /**
+     * The definition of each instruction, or -1.
+     */
+    private int[] insnDefinitions;
+
+    /**
+     * The number of <tt>long</tt> used to store a set of definitions.
+     */
+    private int setWords;
+
+    /**
+     * The definitions reaching the start of each block, {@link #setWords} per block.
+     */
+    private long[] reachIn;
+
+    /**
+     * The definitions of each local variable, {@link #setWords} per local variable.
+     */
+    private long[] varDefinitions;
+
+    /**
+     * The offsets of the definitions used by each instruction in {@link #useDefinitions}, followed by
+     * the length of this array.
+     */
+    private int[] useDefinitionOffsets;
+
+    /**
+     * The definitions used by all the instructions.
+     */
+    private int[] useDefinitions;
+
+    /**
+     * The offsets of the instructions using each definition in {@link #definitionUses}, followed by the
+     * length of this array.
+     */
+    private int[] definitionUseOffsets;
+
+    /**
+     * The instructions using all the definitions.
+     */
+    private int[] definitionUses;
+
+    /**
+     * Analyzes the given method.
+     *
+     * @param method the method to be analyzed.
+     */
+    public void analyze(final MethodNode method) {
+        analyze(new ControlFlowGraph(method));
+    }
+
+    /**
+     * Analyzes the method of the given control flow graph.
+     *
+     * @param graph the control flow graph of the method to be analyzed.
+     */
+    public void analyze(final ControlFlowGraph graph) {
+        MethodNode method = graph.method;
+        int insnCount = graph.insnCount;
+        AbstractInsnNode[] insns = graph.insns;
+        this.graph = graph;
+        this.insns = insns;
+        int maxLocals = method.maxLocals;
+
+        // Number the definitions.
+        Type[] argumentTypes = Type.getArgumentTypes(method.desc);
+        int numParameterDefinitions = argumentTypes.length + ((method.access & ACC_STATIC) == 0 ? 1 : 0);
+        int numDefinitions = numParameterDefinitions;
+        insnDefinitions = new int[insnCount];
+        for (int i = 0; i < insnCount; ++i) {
+            insnDefinitions[i] = LiveVariables.getDefinedVar(insns[i]) == -1 ? -1 : numDefinitions++;
+        }
+        parameterDefinitionCount = numParameterDefinitions;
+        definitionInsns = new int[numDefinitions];
+        definitionVars = new int[numDefinitions];
+        int currentLocal = 0;
+        int definition = 0;
+        if ((method.access & ACC_STATIC) == 0) {
+            definitionInsns[definition] = -1;
+            definitionVars[definition++] = currentLocal++;
+        }
+        for (Type argumentType : argumentTypes) {
+            definitionInsns[definition] = -1;
+            definitionVars[definition++] = currentLocal;
+            currentLocal += argumentType.getSize();
+        }
+        for (int i = 0; i < insnCount; ++i) {
+            if (insnDefinitions[i] != -1) {
+                definitionInsns[definition] = i;
+                definitionVars[definition++] = LiveVariables.getDefinedVar(insns[i]);
+            }
+        }
+        int words = (numDefinitions + 63) >>> 6;
+        setWords = words;
+        varDefinitions = new long[Math.max(maxLocals, currentLocal) * words];
+        for (int i = 0; i < numDefinitions; ++i) {
+            setBit(varDefinitions, definitionVars[i] * words, i);
+        }
+
+        // Compute the definitions generated and killed by each block. The definitions of a block are
+        // contiguous, which is used to compute the definitions reaching its exception handlers.
+        int blockCount = graph.blockCount;
+        int[] blockStarts = graph.blockStarts;
+        long[] gen = new long[blockCount * words];
+        long[] kill = new long[blockCount * words];
+        int[] firstDefinitions = new int[blockCount + 1];
+        definition = numParameterDefinitions;
+        for (int block = 0; block < blockCount; ++block) {
+            firstDefinitions[block] = definition;
+            int offset = block * words;
+            for (int i = blockStarts[block]; i < blockStarts[block + 1]; ++i) {
+                if (insnDefinitions[i] != -1) {
+                    int varOffset = definitionVars[definition] * words;
+                    for (int j = 0; j < words; ++j) {
+                        gen[offset + j] &= ~varDefinitions[varOffset + j];
+                        kill[offset + j] |= varDefinitions[varOffset + j];
+                    }
+                    setBit(gen, offset, definition++);
+                }
+            }
+        }
+        firstDefinitions[blockCount] = definition;
+
+        // Compute the definitions reaching the start and the end of each block, with a worklist
+        // algorithm. Blocks are processed in instruction order first.
+        long[] reachIn = new long[blockCount * words];
+        long[] reachOut = new long[blockCount * words];
+        boolean[] inWorklist = new boolean[blockCount];
+        int[] worklist = new int[blockCount];
+        int worklistSize = 0;
+        for (int block = blockCount - 1; block >= 0; --block) {
+            worklist[worklistSize++] = block;
+            inWorklist[block] = true;
+        }
+        while (worklistSize > 0) {
+            int block = worklist[--worklistSize];
+            inWorklist[block] = false;
+            int offset = block * words;
+            if (block == 0) {
+                for (int i = 0; i < numParameterDefinitions; ++i) {
+                    setBit(reachIn, 0, i);
+                }
+            }
+            for (int i = graph.predecessorOffsets[block]; i < graph.predecessorOffsets[block + 1]; ++i) {
+                int predecessorOffset = graph.predecessors[i] * words;
+                for (int j = 0; j < words; ++j) {
+                    reachIn[offset + j] |= reachOut[predecessorOffset + j];
+                }
+            }
+            for (int i = graph.protectedBlockOffsets[block];
+                 i < graph.protectedBlockOffsets[block + 1];
+                 ++i) {
+                // Any definition reaching an instruction of a protected block reaches the handler.
+                int protectedBlock = graph.protectedBlocks[i];
+                int protectedOffset = protectedBlock * words;
+                for (int j = 0; j < words; ++j) {
+                    reachIn[offset + j] |= reachIn[protectedOffset + j];
+                }
+                for (int d = firstDefinitions[protectedBlock]; d < firstDefinitions[protectedBlock + 1]; ++d) {
+                    setBit(reachIn, offset, d);
+                }
+            }
+            boolean changed = false;
+            for (int j = 0; j < words; ++j) {
+                long newOut = gen[offset + j] | (reachIn[offset + j] & ~kill[offset + j]);
+                if (newOut != reachOut[offset + j]) {
+                    reachOut[offset + j] = newOut;
+                    changed = true;
+                }
+            }
+            // The handlers must also be updated when the start of a protected block changes, which is
+            // not always visible at its end.
+            for (int i = graph.handlerOffsets[block]; i < graph.handlerOffsets[block + 1]; ++i) {
+                int handlerOffset = graph.handlers[i] * words;
+                for (int j = 0; j < words; ++j) {
+                    if ((reachIn[offset + j] & ~reachIn[handlerOffset + j]) != 0) {
+                        worklistSize = push(graph.handlers[i], worklist, worklistSize, inWorklist);
+                        break;
+                    }
+                }
+            }
+            if (changed) {
+                for (int i = graph.successorOffsets[block]; i < graph.successorOffsets[block + 1]; ++i) {
+                    worklistSize = push(graph.successors[i], worklist, worklistSize, inWorklist);
+                }
+            }
+        }
+        this.reachIn = reachIn;
+        computeChains(numDefinitions);
+    }
+
+    /**
+     * Computes the def-use chains from the definitions reaching the start of each block.
+     *
+     * @param numDefinitions the number of definitions.
+     */
+    private void computeChains(final int numDefinitions) {
+        int words = setWords;
+        int insnCount = graph.insnCount;
+        long[] reach = new long[words];
+        useDefinitionOffsets = new int[insnCount + 1];
+        int[] chains = new int[16];
+        int numChains = 0;
+        for (int block = 0; block < graph.blockCount; ++block) {
+            System.arraycopy(reachIn, block * words, reach, 0, words);
+            for (int i = graph.blockStarts[block]; i < graph.blockStarts[block + 1]; ++i) {
+                useDefinitionOffsets[i] = numChains;
+                int var = LiveVariables.getUsedVar(insns[i]);
+                if (var != -1) {
+                    int varOffset = var * words;
+                    for (int j = 0; j < words; ++j) {
+                        long bits = reach[j] & varDefinitions[varOffset + j];
+                        while (bits != 0) {
+                            if (numChains == chains.length) {
+                                chains = Arrays.copyOf(chains, numChains * 2);
+                            }
+                            chains[numChains++] = (j << 6) + Long.numberOfTrailingZeros(bits);
+                            bits &= bits - 1;
+                        }
+                    }
+                }
+                updateReachingDefinitions(i, reach);
+            }
+        }
+        useDefinitionOffsets[insnCount] = numChains;
+        useDefinitions = Arrays.copyOf(chains, numChains);
+
+        // Compute the reverse chains.
+        definitionUseOffsets = new int[numDefinitions + 1];
+        for (int i = 0; i < numChains; ++i) {
+            definitionUseOffsets[useDefinitions[i]]++;
+        }
+        int offset = 0;
+        for (int i = 0; i <= numDefinitions; ++i) {
+            int count = definitionUseOffsets[i];
+            definitionUseOffsets[i] = offset;
+            offset += count;
+        }
+        int[] positions = definitionUseOffsets.clone();
+        definitionUses = new int[numChains];
+        for (int i = 0; i < insnCount; ++i) {
+            for (int j = useDefinitionOffsets[i]; j < useDefinitionOffsets[i + 1]; ++j) {
+                definitionUses[positions[useDefinitions[j]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Updates a set of reaching definitions with the effect of an instruction.
+     *
+     * @param insnIndex the index of an instruction.
+     * @param reach     the definitions reaching this instruction, replaced with the definitions
+     *                  reaching the next one.
+     */
+    private void updateReachingDefinitions(final int insnIndex, final long[] reach) {
+        int definition = insnDefinitions[insnIndex];
+        if (definition != -1) {
+            int varOffset = definitionVars[definition] * setWords;
+            for (int j = 0; j < setWords; ++j) {
+                reach[j] &= ~varDefinitions[varOffset + j];
+            }
+            setBit(reach, 0, definition);
+        }
+    }
+
+    private static void setBit(final long[] set, final int offset, final int index) {
+        set[offset + (index >>> 6)] |= 1L << index;
+    }
+
+    private static int push(
+            final int block, final int[] worklist, final int worklistSize, final boolean[] inWorklist) {
+        if (inWorklist[block]) {
+            return worklistSize;
+        }
+        inWorklist[block] = true;
+        worklist[worklistSize] = block;
+        return worklistSize + 1;
+    }
+
+    private static int[] toArray(final int[] values, final int start, final int end) {
+        if (start == end) {
+            return EMPTY;
+        }
+        int[] result = new int[end - start];
+        System.arraycopy(values, start, result, 0, end - start);
+        return result;
+    }
+
+    // -----------------------------------------------------------------------------------------------
+    // Accessors to the analysis results
+    // -----------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of definitions of the last analyzed method.
+     *
+     * @return the number of definitions of the last analyzed method.
+     */
+    public int getDefinitionCount() {
+        return definitionInsns.length;
+    }
+
+    /**
+     * Returns the number of definitions of the last analyzed method corresponding to the initial value
+     * of its parameters. These are the definitions 0 to getParameterDefinitionCount() - 1.
+     *
+     * @return the number of parameter definitions of the last analyzed method.
+     */
+    public int getParameterDefinitionCount() {
+        return parameterDefinitionCount;
+    }
+
+    /**
+     * Returns the instruction corresponding to a definition.
+     *
+     * @param definition a definition index.
+     * @return the index of the store or IINC instruction of this definition, or -1 for a parameter
+     * definition.
+     */
+    public int getDefinitionInsn(final int definition) {
+        return definitionInsns[definition];
+    }
+
+    /**
+     * Returns the local variable defined by a definition.
+     *
+     * @param definition a definition index.
+     * @return the local variable defined by this definition.
+     */
+    public int getDefinitionVar(final int definition) {
+        return definitionVars[definition];
+    }
+
+    /**
+     * Returns the definition corresponding to an instruction.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @return the definition of this instruction, or -1 if it is not a store or IINC instruction.
+     */
+    public int getDefinition(final int insnIndex) {
+        return insnDefinitions[insnIndex];
+    }
+
+    /**
+     * Returns the definitions reaching the given instruction, for all the local variables. This
+     * method computes the result from the start of the enclosing basic block.
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @return the sorted indices of the definitions reaching this instruction.
+     */
+    public int[] getReachingDefinitions(final int insnIndex) {
+        int block = graph.insnBlocks[insnIndex];
+        long[] reach = new long[setWords];
+        System.arraycopy(reachIn, block * setWords, reach, 0, setWords);
+        for (int i = graph.blockStarts[block]; i < insnIndex; ++i) {
+            updateReachingDefinitions(i, reach);
+        }
+        int count = 0;
+        for (long word : reach) {
+            count += Long.bitCount(word);
+        }
+        int[] result = new int[count];
+        count = 0;
+        for (int j = 0; j < setWords; ++j) {
+            for (long bits = reach[j]; bits != 0; bits &= bits - 1) {
+                result[count++] = (j << 6) + Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the definitions whose value can be used by the given instruction (use-def chain).
+     *
+     * @param insnIndex the index of an instruction of the last analyzed method.
+     * @return the sorted indices of the definitions of the local variable used by this instruction
+     * which reach it, or an empty array if this instruction is not a load, IINC or RET instruction.
+     */
+    public int[] getUsedDefinitions(final int insnIndex) {
+        return toArray(useDefinitions, useDefinitionOffsets[insnIndex], useDefinitionOffsets[insnIndex + 1]);
+    }
+
+    /**
+     * Returns the instructions which can use the value of the given definition (def-use chain).
+     *
+     * @param definition a definition index.
+     * @return the sorted indices of the load, IINC and RET instructions which can use the value of
+     * this definition.
+     */
+    public int[] getUses(final int definition) {
+        return toArray(definitionUses, definitionUseOffsets[definition], definitionUseOffsets[definition + 1]);
+    }
+}
@@ -44,7 +44,6 @@ import net.nokok.azm.TypeReference;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -319,7 +318,7 @@ public abstract class Printer {
      * therefore printed in a two steps process: a string tree is constructed during the visit, and
      * printed to a sequential stream at the end of the visit. This string tree is stored in this
      * field, as a string list that can contain other string lists, which can themselves contain other
-     * string lists, and so on.
+     * string lists, and so on. In streaming mode (see {@link #setOutput}), this list stays empty.
      */
     public final List<Object> text;
 
@@ -336,7 +335,7 @@ public abstract class Printer {
     protected Printer(final int api) {
         this.api = api;
         this.stringBuilder = new StringBuilder();
-        this.text = new ArrayList<Object>();
+        this.text = new PrinterText();
     }
 
     // -----------------------------------------------------------------------------------------------
@@ -1125,12 +1124,42 @@ public abstract class Printer {
     }
 
     /**
-     * Prints the text constructed by this visitor.
+     * Makes this printer write its text directly to the given output, as the visit events arrive,
+     * instead of constructing a string tree in {@link #text}. This avoids keeping the whole text of
+     * large classes in memory, but requires the methods of a class to be visited one after the other
+     * (which is the case with a {@link ClassReader}). This method must be called before the visit of
+     * the class. At the end of the visit, {@link #print} must be called to write the text which is
+     * still pending.
+     *
+     * @param output where the text must be written.
+     */
+    public void setOutput(final Appendable output) {
+        ((PrinterText) text).setOutput(output);
+    }
+
+    /**
+     * Marks the text of this printer as complete, at the end of the visit of the corresponding
+     * annotation, field, method or module. In streaming mode, this allows the text which follows it
+     * in the text of the parent printer to be written without waiting for the next visit events.
+     */
+    final void endText() {
+        ((PrinterText) text).end();
+    }
+
+    /**
+     * Prints the text constructed by this visitor. In streaming mode (see {@link #setOutput}), the
+     * text which is still pending is written to the output of this printer instead, and this output
+     * is flushed.
      *
      * @param printWriter the print writer to be used.
      */
     public void print(final PrintWriter printWriter) {
-        printList(printWriter, text);
+        PrinterText printerText = (PrinterText) text;
+        if (printerText.isStreaming()) {
+            printerText.finish();
+        } else {
+            printList(printWriter, text);
+        }
     }
 
     /**
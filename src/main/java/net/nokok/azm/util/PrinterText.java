@@ -0,0 +1,192 @@
+// ASM: a very small and fast Java bytecode manipulation framework
+// Copyright (c) 2000-2011 INRIA, France Telecom
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions
+// are met:
+// 1. Redistributions of source code must retain the above copyright
+//    notice, this list of conditions and the following disclaimer.
+// 2. Redistributions in binary form must reproduce the above copyright
+//    notice, this list of conditions and the following disclaimer in the
+//    documentation and/or other materials provided with the distribution.
+// 3. Neither the name of the copyright holders nor the names of its
+//    contributors may be used to endorse or promote products derived from
+//    this software without specific prior written permission.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF
+// THE POSSIBILITY OF SUCH DAMAGE.
+package net.nokok.azm.util;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The string tree of a {@link Printer} (see {@link Printer#text}). By default this is a plain
+ * list. In streaming mode (see {@link Printer#setOutput}), the strings added to this list are
+ * written directly to an {@link Appendable} instead of being stored, and the lists added to it
+ * (i.e. the string trees of nested printers) are switched to streaming mode too.
+ * <p>
+ * <p>The strings added to a list after a nested list can't be written immediately: for instance
+ * the closing parenthesis of an annotation is added just after the (still empty) nested list of
+ * its values. Such strings are kept in {@link #pendingText}, and written when the nested list is
+ * known to be complete, i.e. when this list is used again after the nested list has received some
+ * text, when another nested list is added, when the nested list is ended (see {@link #end}), or at
+ * the end of the visit.
+ */
+final class PrinterText extends ArrayList<Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Where the text must be written, or <tt>null</tt> if this list is not in streaming mode.
+     */
+    private transient Appendable output;
+
+    /**
+     * The list which contains this one in streaming mode, or <tt>null</tt> for the root list.
+     */
+    private transient PrinterText parent;
+
+    /**
+     * The last nested list added to this one in streaming mode, if it is not known to be complete.
+     */
+    private transient PrinterText openText;
+
+    /**
+     * The strings added to this list after {@link #openText}, which must be written after it.
+     */
+    private transient List<Object> pendingText;
+
+    /**
+     * Whether this list, or one of its nested lists, received some text since it was added to its
+     * parent.
+     */
+    private transient boolean used;
+
+    /**
+     * Switches this list to streaming mode. The text already added to this list is written
+     * immediately.
+     *
+     * @param output where the text must be written.
+     */
+    void setOutput(final Appendable output) {
+        this.output = output;
+        for (Object o : this) {
+            write(o);
+        }
+        super.clear();
+    }
+
+    /**
+     * @return whether this list is in streaming mode.
+     */
+    boolean isStreaming() {
+        return output != null;
+    }
+
+    @Override
+    public boolean add(final Object o) {
+        if (output == null) {
+            return super.add(o);
+        }
+        for (PrinterText text = this; text != null && !text.used; text = text.parent) {
+            text.used = true;
+        }
+        if (o instanceof PrinterText) {
+            closeOpenText();
+            PrinterText nestedText = (PrinterText) o;
+            nestedText.setOutput(output);
+            nestedText.parent = this;
+            nestedText.used = false;
+            openText = nestedText;
+        } else if (openText == null) {
+            write(o);
+        } else if (openText.used) {
+            closeOpenText();
+            write(o);
+        } else {
+            if (pendingText == null) {
+                pendingText = new ArrayList<Object>();
+            }
+            pendingText.add(o);
+        }
+        return true;
+    }
+
+    /**
+     * Marks this list as complete, which means that no more text will be added to it. In streaming
+     * mode, the text which was added to the parent list after this one is then written, even if
+     * this list is empty (for instance for an annotation without values). Otherwise this text would
+     * stay pending until the parent list is used again after another nested list.
+     */
+    void end() {
+        if (parent != null && parent.openText == this) {
+            parent.closeOpenText();
+        }
+    }
+
+    /**
+     * Writes all the pending text of this list and of its nested lists, and flushes the output if
+     * possible. Must be called on the root list at the end of the visit.
+     */
+    void finish() {
+        closeOpenText();
+        if (output instanceof Flushable) {
+            try {
+                ((Flushable) output).flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the pending text of {@link #openText} and of this list, and forgets {@link #openText}.
+     */
+    private void closeOpenText() {
+        if (openText != null) {
+            openText.closeOpenText();
+            openText = null;
+        }
+        if (pendingText != null) {
+            for (Object o : pendingText) {
+                write(o);
+            }
+            pendingText = null;
+        }
+    }
+
+    /**
+     * Writes the given string or string tree to {@link #output}.
+     *
+     * @param o a string or a string tree.
+     */
+    private void write(final Object o) {
+        try {
+            if (o instanceof List) {
+                for (Object element : (List<?>) o) {
+                    write(element);
+                }
+            } else if (o instanceof CharSequence) {
+                output.append((CharSequence) o);
+            } else {
+                output.append(o.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -89,6 +89,7 @@ public final class TraceAnnotationVisitor extends AnnotationVisitor {
     @Override
     public void visitEnd() {
         printer.visitAnnotationEnd();
+        printer.endText();
         super.visitEnd();
     }
 }
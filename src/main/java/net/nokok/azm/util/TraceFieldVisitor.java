@@ -89,6 +89,7 @@ public final class TraceFieldVisitor extends FieldVisitor {
     @Override
     public void visitEnd() {
         p.visitFieldEnd();
+        p.endText();
         super.visitEnd();
     }
 }
@@ -316,6 +316,7 @@ public final class TraceMethodVisitor extends MethodVisitor {
     @Override
     public void visitEnd() {
         p.visitMethodEnd();
+        p.endText();
         super.visitEnd();
     }
 }
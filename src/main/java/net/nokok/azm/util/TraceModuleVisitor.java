@@ -107,6 +107,7 @@ public final class TraceModuleVisitor extends ModuleVisitor {
     @Override
     public void visitEnd() {
         p.visitModuleEnd();
+        p.endText();
         super.visitEnd();
     }
 }
@@ -0,0 +1,75 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.analysis.Analyzer;
+import net.nokok.azm.tree.analysis.AnalyzerException;
+import net.nokok.azm.tree.analysis.BasicAnalyzer;
+import net.nokok.azm.tree.analysis.BasicInterpreter;
+import net.nokok.azm.tree.analysis.BasicValue;
+import net.nokok.azm.tree.analysis.BasicVerifier;
+import net.nokok.azm.tree.analysis.Frame;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BasicAnalyzerTest {
+
+    @Test
+    void testSameFramesAsAnalyzer() throws IOException, AnalyzerException {
+        for (Class<?> clazz : new Class<?>[]{ClassReader.class, ClassWriter.class, ClassPipeline.class}) {
+            ClassNode classNode = read(clazz);
+            for (MethodNode method : classNode.methods) {
+                Frame<BasicValue>[] expected =
+                        new Analyzer<BasicValue>(new BasicVerifier()).analyze(classNode.name, method);
+                BasicAnalyzer analyzer = new BasicAnalyzer(new BasicVerifier());
+                analyzer.analyze(classNode.name, method);
+                Frame<BasicValue>[] actual = analyzer.getFrames();
+                assertEquals(expected.length, actual.length);
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(String.valueOf(expected[i]), String.valueOf(actual[i]), method.name + " " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testVerifyError() throws AnalyzerException {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "foo/Bar", null, "java/lang/Object", null);
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_STATIC, "sum", "(IF)I", null, null);
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitVarInsn(Opcodes.FLOAD, 1);
+        method.visitInsn(Opcodes.IADD);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(2, 2);
+        method.visitEnd();
+        writer.visitEnd();
+        ClassNode classNode = new ClassNode();
+        new ClassReader(writer.toByteArray()).accept(classNode, 0);
+
+        BasicAnalyzer analyzer = new BasicAnalyzer(new BasicInterpreter());
+        analyzer.analyze("foo/Bar", classNode.methods.get(0));
+        assertEquals(BasicValue.INT_VALUE, analyzer.getStack(3, 0));
+        assertThrows(AnalyzerException.class, () -> new BasicAnalyzer(new BasicVerifier())
+                .analyze("foo/Bar", classNode.methods.get(0)));
+    }
+
+    private static ClassNode read(Class<?> clazz) throws IOException {
+        try (InputStream inputStream =
+                     clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            ClassNode classNode = new ClassNode();
+            new ClassReader(inputStream).accept(classNode, 0);
+            return classNode;
+        }
+    }
+}
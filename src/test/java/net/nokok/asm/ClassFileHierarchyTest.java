@@ -0,0 +1,116 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Label;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.FrameNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassFileHierarchyTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCommonSuperClass() throws IOException {
+        try (ClassFileHierarchy hierarchy = ClassFileHierarchy.newHierarchy(createClasspath(), null, 16)) {
+            assertEquals("foo/A", hierarchy.getCommonSuperClass("foo/B", "foo/C"));
+            assertEquals("foo/A", hierarchy.getCommonSuperClass("foo/D", "foo/C"));
+            assertEquals("foo/B", hierarchy.getCommonSuperClass("foo/D", "foo/B"));
+            assertEquals("foo/I", hierarchy.getCommonSuperClass("foo/I", "foo/D"));
+            assertEquals("java/lang/Object", hierarchy.getCommonSuperClass("foo/I", "foo/C"));
+            assertTrue(hierarchy.isInterface("foo/I"));
+            assertFalse(hierarchy.isInterface("foo/D"));
+            assertEquals("foo/B", hierarchy.getSuperName("foo/D"));
+            assertThrows(TypeNotPresentException.class, () -> hierarchy.getCommonSuperClass("foo/A", "foo/Unknown"));
+        }
+    }
+
+    @Test
+    void testComputeFrames() throws IOException {
+        try (ClassFileHierarchy hierarchy = ClassFileHierarchy.newHierarchy(createClasspath(), null, 16)) {
+            ClassWriter writer = new HierarchyClassWriter(hierarchy, ClassWriter.COMPUTE_FRAMES);
+            writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "foo/E", null, "java/lang/Object", null);
+            MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "choose", "(Z)Ljava/lang/Object;", null, null);
+            method.visitCode();
+            Label otherwise = new Label();
+            Label end = new Label();
+            method.visitVarInsn(Opcodes.ILOAD, 0);
+            method.visitJumpInsn(Opcodes.IFEQ, otherwise);
+            method.visitInsn(Opcodes.ACONST_NULL);
+            method.visitTypeInsn(Opcodes.CHECKCAST, "foo/D");
+            method.visitJumpInsn(Opcodes.GOTO, end);
+            method.visitLabel(otherwise);
+            method.visitInsn(Opcodes.ACONST_NULL);
+            method.visitTypeInsn(Opcodes.CHECKCAST, "foo/C");
+            method.visitLabel(end);
+            method.visitInsn(Opcodes.ARETURN);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+            writer.visitEnd();
+
+            ClassNode classNode = new ClassNode();
+            new ClassReader(writer.toByteArray()).accept(classNode, ClassReader.EXPAND_FRAMES);
+            FrameNode lastFrame = null;
+            for (int i = 0; i < classNode.methods.get(0).instructions.size(); i++) {
+                if (classNode.methods.get(0).instructions.get(i) instanceof FrameNode) {
+                    lastFrame = (FrameNode) classNode.methods.get(0).instructions.get(i);
+                }
+            }
+            assertEquals(List.of("foo/A"), lastFrame.getStack());
+        }
+    }
+
+    @Test
+    void testFallbackClassLoader() throws IOException {
+        // JDKのクラスはClassReaderがサポートしていないバージョンのこともあるが、ヘッダは読める
+        try (ClassFileHierarchy hierarchy = ClassFileHierarchy.newHierarchy(List.of(), ClassLoader.getSystemClassLoader(), 16)) {
+            assertEquals("java/util/AbstractList", hierarchy.getCommonSuperClass("java/util/ArrayList", "java/util/LinkedList"));
+            assertEquals("java/util/List", hierarchy.getCommonSuperClass("java/util/List", "java/util/ArrayList"));
+            assertEquals("java/util/AbstractList", hierarchy.getSuperName("java/util/ArrayList"));
+            assertTrue(hierarchy.isInterface("java/util/List"));
+        }
+    }
+
+    private List<Path> createClasspath() throws IOException {
+        Path classes = Files.createDirectories(this.directory.resolve("classes/foo")).getParent();
+        Files.write(classes.resolve("foo/A.class"), generateClass("foo/A", 0, "java/lang/Object"));
+        Files.write(classes.resolve("foo/B.class"), generateClass("foo/B", 0, "foo/A"));
+        Path jar = this.directory.resolve("classes.jar");
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(jar))) {
+            write(jarOutput, "foo/C", generateClass("foo/C", 0, "foo/A"));
+            write(jarOutput, "foo/I", generateClass("foo/I", Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "java/lang/Object"));
+            write(jarOutput, "foo/D", generateClass("foo/D", 0, "foo/B", "foo/I"));
+        }
+        return List.of(classes, jar);
+    }
+
+    private static void write(JarOutputStream jarOutput, String name, byte[] content) throws IOException {
+        jarOutput.putNextEntry(new JarEntry(name + ".class"));
+        jarOutput.write(content);
+        jarOutput.closeEntry();
+    }
+
+    private static byte[] generateClass(String name, int access, String superName, String... interfaces) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | access, name, null, superName, interfaces);
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,102 @@
+package net.nokok.asm;
+
+import net.nokok.azm.AnnotationVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Opcodes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassIndexTest {
+
+    @Test
+    void testBuildFromJarAndDirectory(@TempDir Path directory) throws IOException {
+        Path jar = directory.resolve("classes.jar");
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(jar))) {
+            put(jarOutput, "foo/Base", generateClass("foo/Base", "java/lang/Object", Opcodes.ACC_PUBLIC, new String[]{"java/lang/Runnable"}, "Lfoo/Marker;"));
+            put(jarOutput, "foo/Sub", generateClass("foo/Sub", "foo/Base", Opcodes.ACC_PUBLIC, new String[0], null));
+            put(jarOutput, "foo/Shadowed", generateClass("foo/Shadowed", "foo/Base", Opcodes.ACC_PUBLIC, new String[0], null));
+            // マルチリリースjarの別バージョンのクラスは索引に含めない
+            put(jarOutput, "META-INF/versions/9/foo/Sub", generateClass("foo/Sub", "java/lang/Object", Opcodes.ACC_PUBLIC, new String[0], null));
+            put(jarOutput, "META-INF/versions/9/foo/Versioned", generateClass("foo/Versioned", "foo/Base", Opcodes.ACC_PUBLIC, new String[0], null));
+        }
+        Path classes = Files.createDirectories(directory.resolve("classes"));
+        Files.createDirectories(classes.resolve("foo"));
+        Files.write(classes.resolve("foo/SubSub.class"), generateClass("foo/SubSub", "foo/Sub", Opcodes.ACC_PUBLIC, new String[0], "Lfoo/Marker;"));
+        Files.write(classes.resolve("foo/Shadowed.class"), generateClass("foo/Shadowed", "java/lang/Object", Opcodes.ACC_PUBLIC, new String[0], null));
+        Files.createDirectories(classes.resolve("META-INF/versions/9/foo"));
+        Files.write(classes.resolve("META-INF/versions/9/foo/Versioned.class"), generateClass("foo/Versioned", "foo/Base", Opcodes.ACC_PUBLIC, new String[0], null));
+        Files.write(classes.resolve("foo/Marker.class"), generateClass("foo/Marker", "java/lang/Object", Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT | Opcodes.ACC_ANNOTATION, new String[]{"java/lang/annotation/Annotation"}, null));
+
+        ClassIndex index = ClassIndex.build(List.of(classes, jar), true, 2);
+        assertEquals(5, index.size());
+        assertEquals(List.of(), index.getUnreadableClassFiles());
+        assertTrue(index.contains("foo/Sub"));
+        assertFalse(index.contains("foo/Versioned"));
+        assertFalse(index.contains("java/lang/Object"));
+        // ディレクトリが先なのでディレクトリのfoo/Shadowedが優先される
+        assertEquals("java/lang/Object", index.getSuperName("foo/Shadowed"));
+        assertEquals("foo/Base", index.getSuperName("foo/Sub"));
+        assertNull(index.getSuperName("java/lang/Object"));
+        assertEquals(List.of("java/lang/Runnable"), index.getInterfaces("foo/Base"));
+        assertTrue(index.isInterface("foo/Marker"));
+        assertEquals(-1, index.getAccess("foo/Missing"));
+
+        assertEquals(List.of("foo/Sub"), index.getDirectSubclasses("foo/Base"));
+        assertEquals(Set.of("foo/Sub", "foo/SubSub"), Set.copyOf(index.getAllSubclasses("foo/Base")));
+        assertEquals(Set.of("foo/Base", "foo/Sub", "foo/SubSub"), Set.copyOf(index.getAllSubclasses("java/lang/Runnable")));
+        assertEquals(List.of(), index.getAllSubclasses("foo/SubSub"));
+
+        assertEquals(List.of("foo/Marker"), index.getAnnotations("foo/Base"));
+        assertEquals(Set.of("foo/Base", "foo/SubSub"), Set.copyOf(index.getAnnotatedClasses("foo/Marker")));
+
+        ClassIndex withoutAnnotations = ClassIndex.build(List.of(classes, jar), false, 2);
+        assertEquals(List.of(), withoutAnnotations.getAnnotatedClasses("foo/Marker"));
+    }
+
+    @Test
+    void testNewerAndUnreadableClassFiles(@TempDir Path directory) throws IOException {
+        Path classes = Files.createDirectories(directory.resolve("classes"));
+        Files.createDirectories(classes.resolve("foo"));
+        // ClassReaderがサポートしていないバージョン(Java 11)のクラスもヘッダは読める
+        byte[] newer = generateClass("foo/Newer", "java/lang/Object", Opcodes.ACC_PUBLIC, new String[0], "Lfoo/Marker;");
+        newer[7] = 55;
+        Files.write(classes.resolve("foo/Newer.class"), newer);
+        Files.write(classes.resolve("foo/Broken.class"), new byte[]{(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52, 0, 2, 99});
+
+        ClassIndex index = ClassIndex.build(List.of(classes), true, 2);
+        assertEquals(List.of("foo/Newer"), index.getClassNames());
+        assertEquals(List.of("foo/Newer"), index.getAnnotatedClasses("foo/Marker"));
+        assertEquals(List.of(classes.resolve("foo/Broken.class").toString()), index.getUnreadableClassFiles());
+    }
+
+    private static void put(JarOutputStream jarOutput, String name, byte[] content) throws IOException {
+        jarOutput.putNextEntry(new JarEntry(name + ".class"));
+        jarOutput.write(content);
+        jarOutput.closeEntry();
+    }
+
+    private static byte[] generateClass(String name, String superName, int access, String[] interfaces, String annotation) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, access, name, null, superName, interfaces);
+        if (annotation != null) {
+            AnnotationVisitor annotationVisitor = writer.visitAnnotation(annotation, true);
+            annotationVisitor.visit("value", "x");
+            annotationVisitor.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
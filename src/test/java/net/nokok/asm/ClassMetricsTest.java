@@ -0,0 +1,108 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Label;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.ClassNode;
+import org.junit.jupiter.api.Test;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassMetricsTest {
+
+    @Test
+    void testPipelineMetrics() throws IOException {
+        byte[] classFile;
+        try (InputStream inputStream = ClassReader.class.getResourceAsStream("ClassReader.class")) {
+            classFile = inputStream.readAllBytes();
+        }
+        ClassMetrics metrics = ClassMetrics.newMetrics();
+        // MethodWriterが直接使われるとメソッドがそのままコピーされ、フレームが計算されない
+        byte[] result = ClassPipeline.newPipeline(writer -> new ClassVisitor(Opcodes.ASM6, writer) {
+                    @Override
+                    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                        return new MethodVisitor(Opcodes.ASM6, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                        };
+                    }
+                })
+                .withWriterFlags(ClassWriter.COMPUTE_FRAMES)
+                .withMetricsListener(metrics)
+                .transform(classFile);
+
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classFile).accept(classNode, 0);
+        assertEquals(1, metrics.getClassesRead());
+        assertEquals(classFile.length, metrics.getBytesRead());
+        assertEquals(new ClassReader(classFile).getItemCount(), metrics.getConstantPoolEntriesRead());
+        assertEquals(1, metrics.getClassesWritten());
+        assertEquals(result.length, metrics.getBytesWritten());
+        assertTrue(metrics.getSymbolTableEntries() > 0);
+        assertEquals(classNode.methods.stream().filter(m -> m.instructions.size() > 0).count(), metrics.getFrameComputations());
+        assertEquals("net/nokok/azm/ClassReader", metrics.getSlowestClass());
+        assertTrue(metrics.getSlowestFrameComputation().startsWith("net/nokok/azm/ClassReader."));
+
+        metrics.reset();
+        assertEquals(0, metrics.getClassesRead());
+        assertEquals(0, metrics.getSlowestClassNanos());
+        assertNull(metrics.getSlowestFrameComputation());
+    }
+
+    @Test
+    void testCommonSuperClass() {
+        // static Object f(boolean b) { return b ? Integer.valueOf(0) : Long.valueOf(0); }
+        ClassMetrics metrics = ClassMetrics.newMetrics();
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        writer.setMetricsListener(metrics);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "foo/Bar", null, "java/lang/Object", null);
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_STATIC, "f", "(Z)Ljava/lang/Object;", null, null);
+        Label elseLabel = new Label();
+        Label end = new Label();
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitJumpInsn(Opcodes.IFEQ, elseLabel);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;", false);
+        method.visitJumpInsn(Opcodes.GOTO, end);
+        method.visitLabel(elseLabel);
+        method.visitInsn(Opcodes.LCONST_0);
+        method.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Long", "valueOf", "(J)Ljava/lang/Long;", false);
+        method.visitLabel(end);
+        method.visitInsn(Opcodes.ARETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        writer.visitEnd();
+        writer.toByteArray();
+
+        assertEquals(1, metrics.getFrameComputations());
+        assertEquals(1, metrics.getCommonSuperClassCalls());
+        assertEquals(1, metrics.getClassesWritten());
+        assertEquals(0, metrics.getClassesRead());
+        // フレーム計算の時間は読み込みの時間とは別に集計する
+        assertNull(metrics.getSlowestClass());
+        assertEquals("foo/Bar.f(Z)Ljava/lang/Object;", metrics.getSlowestFrameComputation());
+    }
+
+    @Test
+    void testRegister() throws JMException {
+        ClassMetrics metrics = ClassMetrics.newMetrics();
+        metrics.classRead("foo/Bar", 100, 10, 5);
+        ObjectName name = metrics.register("net.nokok.asm:type=ClassMetrics,name=test");
+        try {
+            assertEquals(100L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BytesRead"));
+            assertEquals("foo/Bar", ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SlowestClass"));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}
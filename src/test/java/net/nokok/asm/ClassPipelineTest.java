@@ -0,0 +1,172 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Utf8Cache;
+import net.nokok.azm.tree.ClassNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassPipelineTest {
+
+    private final ClassPipeline pipeline = ClassPipeline
+            .newPipeline(writer -> new ClassVisitor(Opcodes.ASM6, writer) {
+                @Override
+                public void visitEnd() {
+                    super.visitField(Opcodes.ACC_PUBLIC, "transformed", "Z", null, null).visitEnd();
+                    super.visitEnd();
+                }
+            })
+            .withParallelism(4)
+            .withMaxInFlight(3);
+
+    @Test
+    void testTransformClassFile() {
+        ClassNode classNode = read(pipeline.transform(generateClass("foo/Bar")));
+        assertEquals("foo/Bar", classNode.name);
+        assertEquals(1, classNode.fields.size());
+        assertEquals("transformed", classNode.fields.get(0).name);
+        assertEquals(2, classNode.methods.size());
+    }
+
+    @Test
+    void testTransformKeepsOrder() {
+        List<ClassEntry> entries = IntStream.range(0, 100)
+                .mapToObj(i -> ClassEntry.of("foo/C" + i + ".class", generateClass("foo/C" + i)))
+                .collect(Collectors.toList());
+        List<ClassEntry> output = new ArrayList<>();
+        pipeline.transform(entries.stream(), output::add);
+        assertEquals(entries.size(), output.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).getName(), output.get(i).getName());
+            assertEquals("foo/C" + i, read(output.get(i).getContent()).name);
+        }
+    }
+
+    @Test
+    void testTransformJar(@TempDir Path directory) throws IOException {
+        Path input = directory.resolve("input.jar");
+        Path output = directory.resolve("output.jar");
+        byte[] resource = {1, 2, 3};
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Main-Class", "foo.A");
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(input), manifest)) {
+            for (String name : new String[]{"foo/B", "foo/A", "bar/C"}) {
+                jarOutput.putNextEntry(new JarEntry(name + ".class"));
+                jarOutput.write(generateClass(name));
+                jarOutput.closeEntry();
+            }
+            jarOutput.putNextEntry(new JarEntry("META-INF/resource.bin"));
+            jarOutput.write(resource);
+            jarOutput.closeEntry();
+        }
+
+        pipeline.transformJar(input, output);
+
+        try (JarFile jarFile = new JarFile(output.toFile())) {
+            List<String> names = Collections.list(jarFile.entries()).stream()
+                    .map(JarEntry::getName)
+                    .collect(Collectors.toList());
+            // マニフェストが先頭で、他のエントリは入力と同じ順序
+            assertEquals(
+                    List.of("META-INF/MANIFEST.MF", "foo/B.class", "foo/A.class", "bar/C.class", "META-INF/resource.bin"),
+                    names);
+            assertArrayEquals(resource, jarFile.getInputStream(jarFile.getEntry("META-INF/resource.bin")).readAllBytes());
+            ClassNode classNode = read(jarFile.getInputStream(jarFile.getEntry("foo/A.class")).readAllBytes());
+            assertEquals("transformed", classNode.fields.get(0).name);
+        }
+        try (JarInputStream jarInput = new JarInputStream(Files.newInputStream(output))) {
+            assertEquals("foo.A", jarInput.getManifest().getMainAttributes().getValue("Main-Class"));
+        }
+    }
+
+    @Test
+    void testTransformWithUtf8Cache() {
+        Utf8Cache utf8Cache = new Utf8Cache(64);
+        ClassPipeline cached = pipeline.withUtf8Cache(utf8Cache);
+        for (int i = 0; i < 10; i++) {
+            byte[] classFile = generateClass("foo/C" + i);
+            assertArrayEquals(pipeline.transform(classFile), cached.transform(classFile));
+        }
+        assertTrue(utf8Cache.getHitCount() > 0);
+        assertTrue(utf8Cache.getMissCount() > 0);
+    }
+
+    @Test
+    void testVersionedEntriesAreCopied() {
+        // マルチリリースjarの別バージョンのクラスは、ClassReaderがサポートしていないバージョンのこともあるので変換しない
+        byte[] versioned = generateClass("foo/Bar");
+        versioned[7] = 55;
+        List<ClassEntry> entries = List.of(
+                ClassEntry.of("foo/Bar.class", generateClass("foo/Bar")),
+                ClassEntry.of("META-INF/versions/11/foo/Bar.class", versioned));
+        List<ClassEntry> output = new ArrayList<>();
+        pipeline.transform(entries.stream(), output::add);
+        assertEquals("transformed", read(output.get(0).getContent()).fields.get(0).name);
+        assertSame(entries.get(1), output.get(1));
+    }
+
+    @Test
+    void testTransformPropagatesFailure() {
+        ClassPipeline failing = ClassPipeline.newPipeline(writer -> {
+            throw new IllegalStateException("failure");
+        });
+        List<ClassEntry> entries = List.of(ClassEntry.of("foo/Bar.class", generateClass("foo/Bar")));
+        IllegalStateException e = assertThrows(
+                IllegalStateException.class,
+                () -> failing.transform(entries.stream(), entry -> {
+                }));
+        assertEquals("failure", e.getMessage());
+    }
+
+    private static ClassNode read(byte[] classFile) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classFile).accept(classNode, 0);
+        return classNode;
+    }
+
+    private static byte[] generateClass(String name) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "answer", "()I", null, null);
+        method.visitCode();
+        method.visitIntInsn(Opcodes.BIPUSH, 42);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
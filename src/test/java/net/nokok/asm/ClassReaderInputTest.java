@@ -0,0 +1,106 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Opcodes;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ClassReaderInputTest {
+
+    private static byte[] readClass() throws IOException {
+        try (InputStream input = ClassReader.class.getResourceAsStream("ClassReader.class")) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static byte[] copy(ClassReader classReader) {
+        ClassWriter classWriter = new ClassWriter(0);
+        classReader.accept(classWriter, 0);
+        return classWriter.toByteArray();
+    }
+
+    @Test
+    void testByteBuffers() throws IOException {
+        byte[] classFile = readClass();
+        byte[] expected = copy(new ClassReader(classFile));
+
+        assertArrayEquals(expected, copy(new ClassReader(ByteBuffer.wrap(classFile))));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(classFile.length);
+        direct.put(classFile).flip();
+        assertArrayEquals(expected, copy(new ClassReader(direct)));
+        assertEquals(0, direct.position());
+
+        assertArrayEquals(expected, copy(new ClassReader(ByteBuffer.wrap(classFile).asReadOnlyBuffer())));
+
+        // 前後に余分なバイトがあるバッファの position から limit までを読む
+        byte[] padded = new byte[classFile.length + 20];
+        System.arraycopy(classFile, 0, padded, 7, classFile.length);
+        ByteBuffer heap = ByteBuffer.wrap(padded, 7, classFile.length);
+        assertArrayEquals(expected, copy(new ClassReader(heap)));
+        assertEquals(7, heap.position());
+        assertEquals(7 + classFile.length, heap.limit());
+
+        ByteBuffer slice = ByteBuffer.wrap(padded);
+        slice.position(3);
+        slice = slice.slice();
+        slice.position(4).limit(4 + classFile.length);
+        assertArrayEquals(expected, copy(new ClassReader(slice)));
+
+        ByteBuffer paddedDirect = ByteBuffer.allocateDirect(padded.length);
+        paddedDirect.put(padded).position(7).limit(7 + classFile.length);
+        assertArrayEquals(expected, copy(new ClassReader(paddedDirect)));
+        assertEquals(7, paddedDirect.position());
+    }
+
+    @Test
+    void testInputStreams() throws IOException {
+        byte[] classFile = readClass();
+        byte[] expected = copy(new ClassReader(classFile));
+
+        assertArrayEquals(expected, copy(new ClassReader(new ByteArrayInputStream(classFile))));
+        // 一度に少しずつしか読めず、available() が 0 を返すストリーム
+        assertArrayEquals(expected, copy(new ClassReader(new ShortReadInputStream(classFile, 0, 100))));
+        // available() が実際より小さい値や大きい値を返すストリーム
+        assertArrayEquals(expected, copy(new ClassReader(new ShortReadInputStream(classFile, 1000, 1))));
+        assertArrayEquals(expected, copy(new ClassReader(new ShortReadInputStream(classFile, 100000, 4096))));
+
+        // 4096バイトより小さいクラス
+        ClassWriter classWriter = new ClassWriter(0);
+        classWriter.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "foo/Small", null, "java/lang/Object", null);
+        classWriter.visitEnd();
+        byte[] smallClassFile = classWriter.toByteArray();
+        assertArrayEquals(smallClassFile, copy(new ClassReader(new ByteArrayInputStream(smallClassFile))));
+        assertArrayEquals(smallClassFile, copy(new ClassReader(new ShortReadInputStream(smallClassFile, 1, 1))));
+    }
+
+    private static final class ShortReadInputStream extends FilterInputStream {
+        private final int available;
+        private final int maxReadLength;
+
+        ShortReadInputStream(byte[] data, int available, int maxReadLength) {
+            super(new ByteArrayInputStream(data));
+            this.available = available;
+            this.maxReadLength = maxReadLength;
+        }
+
+        @Override
+        public int available() {
+            return this.available;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return super.read(b, off, Math.min(len, this.maxReadLength));
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Handle;
+import net.nokok.azm.Label;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.ModuleVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.commons.GeneratorAdapter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class ClassWriterResetTest {
+
+    private static final Handle BOOTSTRAP = new Handle(
+            Opcodes.H_INVOKESTATIC,
+            "java/lang/invoke/StringConcatFactory",
+            "makeConcatWithConstants",
+            "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;",
+            false);
+
+    @Test
+    void testResetGeneratesSameClasses() {
+        List<Consumer<ClassVisitor>> generators = List.of(
+                cv -> generateClass(cv, "foo/A", "a"),
+                ClassWriterResetTest::generateModule,
+                cv -> generateClass(cv, "foo/B", "bb"),
+                cv -> generateClass(cv, "foo/A", "a"));
+        for (int flags : new int[]{0, ClassWriter.COMPUTE_MAXS, ClassWriter.COMPUTE_FRAMES}) {
+            ClassWriter reused = new ClassWriter(flags);
+            for (Consumer<ClassVisitor> generator : generators) {
+                ClassWriter fresh = new ClassWriter(flags);
+                generator.accept(fresh);
+                reused.reset();
+                generator.accept(reused);
+                // 定数プール、ブートストラップメソッド、モジュール属性を含めてバイト単位で一致する
+                assertArrayEquals(fresh.toByteArray(), reused.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    void testResetWithClassReader() throws IOException {
+        ClassWriter moduleWriter = new ClassWriter(0);
+        generateModule(moduleWriter);
+        // 文字列連結のinvokedynamicを含むクラス(ブートストラップメソッドあり)とモジュールを交互にコピーする
+        List<byte[]> classFiles = List.of(
+                readClass(ClassReader.class),
+                moduleWriter.toByteArray(),
+                readClass(GeneratorAdapter.class),
+                readClass(Label.class),
+                readClass(ClassReader.class));
+        ClassWriter reused = new ClassWriter(0);
+        for (byte[] classFile : classFiles) {
+            ClassReader classReader = new ClassReader(classFile);
+            ClassWriter fresh = new ClassWriter(classReader, 0);
+            classReader.accept(fresh, 0);
+            reused.reset(classReader);
+            classReader.accept(reused, 0);
+            assertArrayEquals(fresh.toByteArray(), reused.toByteArray());
+        }
+
+        // 定数プールをコピーした後でも、reset()で空の定数プールから生成し直せる
+        ClassWriter fresh = new ClassWriter(0);
+        generateClass(fresh, "foo/A", "a");
+        reused.reset();
+        generateClass(reused, "foo/A", "a");
+        assertArrayEquals(fresh.toByteArray(), reused.toByteArray());
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream input = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return input.readAllBytes();
+        }
+    }
+
+    private static void generateClass(ClassVisitor cv, String name, String prefix) {
+        cv.visit(Opcodes.V10, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", new String[]{"java/io/Serializable"});
+        cv.visitSource(name + ".java", null);
+        cv.visitAnnotation("Ljava/lang/Deprecated;", true).visitEnd();
+        cv.visitInnerClass(name + "$Inner", name, "Inner", Opcodes.ACC_STATIC);
+        cv.visitField(Opcodes.ACC_PRIVATE, "count", "I", null, null).visitEnd();
+        cv.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "LIMIT", "J", null, 10L).visitEnd();
+        MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "describe", "(I)Ljava/lang/String;", null, null);
+        mv.visitCode();
+        Label negative = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFLT, negative);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInvokeDynamicInsn("makeConcatWithConstants", "(I)Ljava/lang/String;", BOOTSTRAP, prefix + "\u0001");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitLabel(negative);
+        mv.visitLdcInsn(prefix + "-");
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cv.visitEnd();
+    }
+
+    private static void generateModule(ClassVisitor cv) {
+        cv.visit(Opcodes.V9, Opcodes.ACC_MODULE, "module-info", null, null, null);
+        ModuleVisitor mv = cv.visitModule("foo.module", Opcodes.ACC_OPEN, "1.0");
+        mv.visitMainClass("foo/A");
+        mv.visitPackage("foo");
+        mv.visitPackage("foo/internal");
+        mv.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+        mv.visitExport("foo", 0);
+        mv.visitExport("foo/internal", 0, "bar.module");
+        mv.visitOpen("foo/internal", 0, "baz.module");
+        mv.visitUse("foo/Service");
+        mv.visitProvide("foo/Service", "foo/A", "foo/B");
+        mv.visitEnd();
+        cv.visitEnd();
+    }
+}
@@ -0,0 +1,84 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.CompactMethodBody;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.analysis.Frame;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CompactMethodBodyTest {
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] write(ClassNode classNode) {
+        ClassWriter writer = new ClassWriter(0);
+        classNode.accept(writer);
+        return writer.toByteArray();
+    }
+
+    @Test
+    void testMethodNodeRoundTrip() throws IOException {
+        for (Class<?> clazz : new Class<?>[]{ClassReader.class, Frame.class, CompactMethodBody.class}) {
+            ClassNode classNode = new ClassNode();
+            new ClassReader(readClass(clazz)).accept(classNode, 0);
+            byte[] expected = write(classNode);
+            for (MethodNode method : classNode.methods) {
+                CompactMethodBody body = CompactMethodBody.of(method);
+                assertEquals(method.instructions.size(), body.size());
+                for (int i = 0; i < body.size(); i++) {
+                    AbstractInsnNode insn = method.instructions.get(i);
+                    assertEquals(insn.getOpcode(), body.getOpcode(i));
+                    assertEquals(insn.getType(), body.getType(i));
+                }
+                body.toMethodNode(method);
+            }
+            assertArrayEquals(expected, write(classNode));
+        }
+    }
+
+    @Test
+    void testVisitorPipeline() throws IOException {
+        for (int flags : new int[]{0, ClassReader.EXPAND_FRAMES}) {
+            assertPipelineRoundTrip(readClass(ClassReader.class), flags);
+        }
+    }
+
+    private static void assertPipelineRoundTrip(byte[] classFile, int flags) {
+        ClassWriter expected = new ClassWriter(0);
+        new ClassReader(classFile).accept(expected, flags);
+
+        ClassWriter writer = new ClassWriter(0);
+        // コードを CompactMethodBody に貯めてから書き出す
+        new ClassReader(classFile).accept(new ClassVisitor(Opcodes.ASM6, writer) {
+            @Override
+            public MethodVisitor visitMethod(
+                    int access, String name, String descriptor, String signature, String[] exceptions) {
+                MethodVisitor methodVisitor = super.visitMethod(access, name, descriptor, signature, exceptions);
+                return new MethodVisitor(Opcodes.ASM6, new CompactMethodBody()) {
+                    @Override
+                    public void visitEnd() {
+                        ((CompactMethodBody) mv).accept(methodVisitor);
+                        methodVisitor.visitEnd();
+                    }
+                };
+            }
+        }, flags);
+        assertArrayEquals(expected.toByteArray(), writer.toByteArray());
+    }
+}
@@ -0,0 +1,87 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.Handle;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConstantPoolScanTest {
+
+    @Test
+    void testSameReferencesAsAccept() throws IOException {
+        ClassReader reader = readClass(ClassReader.class);
+        Set<String> fields = new HashSet<>();
+        Set<String> methods = new HashSet<>();
+        reader.accept(new ClassVisitor(Opcodes.ASM6) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM6) {
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                        fields.add(owner + "." + name + descriptor);
+                    }
+
+                    @Override
+                    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                        methods.add(owner + "." + name + descriptor);
+                    }
+
+                    @Override
+                    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                        methods.add(bootstrapMethodHandle.getOwner() + "." + bootstrapMethodHandle.getName() + bootstrapMethodHandle.getDesc());
+                    }
+                };
+            }
+        }, 0);
+
+        char[] buffer = new char[reader.getMaxStringLength()];
+        assertEquals(fields, scan(reader, ClassReader.CONSTANT_FIELDREF, buffer));
+        Set<String> scannedMethods = scan(reader, ClassReader.CONSTANT_METHODREF, buffer);
+        scannedMethods.addAll(scan(reader, ClassReader.CONSTANT_INTERFACE_METHODREF, buffer));
+        assertEquals(methods, scannedMethods);
+        assertEquals(fields.size(), reader.getItemCount(ClassReader.CONSTANT_FIELDREF));
+    }
+
+    @Test
+    void testTags() throws IOException {
+        ClassReader reader = readClass(ClassReader.class);
+        char[] buffer = new char[reader.getMaxStringLength()];
+        Set<String> classes = new HashSet<>();
+        for (int i = reader.getNextItem(0, ClassReader.CONSTANT_CLASS); i != 0; i = reader.getNextItem(i, ClassReader.CONSTANT_CLASS)) {
+            classes.add(reader.readItemUtf8(i, buffer));
+        }
+        assertTrue(classes.contains(reader.getClassName()));
+        assertTrue(classes.contains(reader.getSuperName()));
+        assertEquals(0, reader.getItemTag(0));
+        int utf8 = reader.getNextItem(0, ClassReader.CONSTANT_UTF8);
+        assertEquals(ClassReader.CONSTANT_UTF8, reader.getItemTag(utf8));
+        assertThrows(IllegalArgumentException.class, () -> reader.readItemOwner(utf8, buffer));
+        int nameAndType = reader.getNextItem(0, ClassReader.CONSTANT_NAME_AND_TYPE);
+        assertTrue(reader.readItemDescriptor(nameAndType, buffer).length() > 0);
+    }
+
+    private static Set<String> scan(ClassReader reader, int tag, char[] buffer) {
+        Set<String> result = new HashSet<>();
+        for (int i = reader.getNextItem(0, tag); i != 0; i = reader.getNextItem(i, tag)) {
+            result.add(reader.readItemOwner(i, buffer) + "." + reader.readItemName(i, buffer) + reader.readItemDescriptor(i, buffer));
+        }
+        return result;
+    }
+
+    private static ClassReader readClass(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return new ClassReader(in);
+        }
+    }
+}
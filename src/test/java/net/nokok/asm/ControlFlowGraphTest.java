@@ -0,0 +1,162 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Label;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.analysis.ControlFlowGraph;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ControlFlowGraphTest {
+
+    @Test
+    void testDiamondWithHandler() {
+        // static int f(int x) { try { if (x > 0) x = 1; else x = 2; } catch (Throwable t) { x = 3; } return x; }
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "f", "(I)I", null, null);
+        Label start = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        Label elseLabel = new Label();
+        Label join = new Label();
+        Label exit = new Label();
+        method.visitCode();
+        method.visitTryCatchBlock(start, end, handler, null);
+        method.visitLabel(start);                       // 0  block 0
+        method.visitVarInsn(Opcodes.ILOAD, 0);          // 1
+        method.visitJumpInsn(Opcodes.IFLE, elseLabel);  // 2
+        method.visitInsn(Opcodes.ICONST_1);             // 3  block 1
+        method.visitVarInsn(Opcodes.ISTORE, 0);         // 4
+        method.visitJumpInsn(Opcodes.GOTO, join);       // 5
+        method.visitLabel(elseLabel);                   // 6  block 2
+        method.visitInsn(Opcodes.ICONST_2);             // 7
+        method.visitVarInsn(Opcodes.ISTORE, 0);         // 8
+        method.visitLabel(end);                         // 9  block 3
+        method.visitLabel(join);                        // 10
+        method.visitJumpInsn(Opcodes.GOTO, exit);       // 11
+        method.visitLabel(handler);                     // 12 block 4
+        method.visitInsn(Opcodes.POP);                  // 13
+        method.visitInsn(Opcodes.ICONST_3);             // 14
+        method.visitVarInsn(Opcodes.ISTORE, 0);         // 15
+        method.visitLabel(exit);                        // 16 block 5
+        method.visitVarInsn(Opcodes.ILOAD, 0);          // 17
+        method.visitInsn(Opcodes.IRETURN);              // 18
+        method.visitMaxs(1, 1);
+        method.visitEnd();
+
+        ControlFlowGraph graph = new ControlFlowGraph(method);
+        assertEquals(6, graph.getBlockCount());
+        assertEquals(3, graph.getBlock(10));
+        assertEquals(9, graph.getBlockStart(3));
+        assertEquals(12, graph.getBlockEnd(3));
+        assertArrayEquals(new int[]{1, 2}, graph.getSuccessors(0));
+        assertArrayEquals(new int[]{3}, graph.getSuccessors(2));
+        assertArrayEquals(new int[]{1, 2}, graph.getPredecessors(3));
+        assertArrayEquals(new int[]{4}, graph.getHandlers(1));
+        assertArrayEquals(new int[0], graph.getHandlers(3));
+        assertArrayEquals(new int[]{0, 1, 2}, graph.getProtectedBlocks(4));
+        assertEquals(2, graph.getPredecessorCount(5));
+
+        assertEquals(-1, graph.getImmediateDominator(0));
+        assertEquals(0, graph.getImmediateDominator(3));
+        assertEquals(0, graph.getImmediateDominator(4));
+        assertEquals(0, graph.getImmediateDominator(5));
+        assertTrue(graph.dominates(0, 5));
+        assertTrue(graph.dominates(3, 3));
+        assertFalse(graph.dominates(1, 3));
+        assertEquals(5, graph.getImmediatePostDominator(0));
+        assertEquals(5, graph.getImmediatePostDominator(2));
+        assertEquals(5, graph.getImmediatePostDominator(3));
+        assertEquals(-1, graph.getImmediatePostDominator(5));
+        assertTrue(graph.postDominates(5, 1));
+        assertFalse(graph.postDominates(3, 1));
+    }
+
+    @Test
+    void testMethodWithoutCode() {
+        MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "f", "()V", null, null);
+        method.visitEnd();
+
+        ControlFlowGraph graph = new ControlFlowGraph(method);
+        assertEquals(0, graph.getBlockCount());
+        // ブロックがないので、どのブロック番号も存在しない
+        assertFalse(graph.isReachable(0));
+        assertEquals(-1, graph.getImmediateDominator(0));
+        assertFalse(graph.dominates(0, 0));
+        assertEquals(-1, graph.getImmediatePostDominator(0));
+        assertFalse(graph.postDominates(0, 0));
+    }
+
+    @Test
+    void testSameDominatorsAsIterativeSets() throws IOException {
+        ClassNode classNode = new ClassNode();
+        try (InputStream inputStream = ClassReader.class.getResourceAsStream("ClassReader.class")) {
+            new ClassReader(inputStream).accept(classNode, 0);
+        }
+        for (MethodNode method : classNode.methods) {
+            ControlFlowGraph graph = new ControlFlowGraph(method);
+            BitSet[] dominators = computeDominatorSets(graph);
+            for (int block = 0; block < graph.getBlockCount(); block++) {
+                assertEquals(dominators[block] != null, graph.isReachable(block));
+                for (int other = 0; other < graph.getBlockCount(); other++) {
+                    boolean expected = dominators[block] != null && dominators[block].get(other);
+                    assertEquals(expected, graph.dominates(other, block), method.name + " " + other + " " + block);
+                }
+            }
+        }
+    }
+
+    // 支配集合の定義通りの反復計算。到達できないブロックはnull
+    private static BitSet[] computeDominatorSets(ControlFlowGraph graph) {
+        int blockCount = graph.getBlockCount();
+        BitSet[] dominators = new BitSet[blockCount];
+        if (blockCount == 0) {
+            return dominators;
+        }
+        dominators[0] = new BitSet();
+        dominators[0].set(0);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int block = 1; block < blockCount; block++) {
+                BitSet newDominators = null;
+                int[] predecessors = concat(graph.getPredecessors(block), graph.getProtectedBlocks(block));
+                for (int predecessor : predecessors) {
+                    if (dominators[predecessor] == null) {
+                        continue;
+                    }
+                    if (newDominators == null) {
+                        newDominators = (BitSet) dominators[predecessor].clone();
+                    } else {
+                        newDominators.and(dominators[predecessor]);
+                    }
+                }
+                if (newDominators != null) {
+                    newDominators.set(block);
+                    if (!newDominators.equals(dominators[block])) {
+                        dominators[block] = newDominators;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return dominators;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        System.arraycopy(a, 0, result, 0, a.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
@@ -0,0 +1,192 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Label;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.IincInsnNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.VarInsnNode;
+import net.nokok.azm.tree.analysis.Analyzer;
+import net.nokok.azm.tree.analysis.AnalyzerException;
+import net.nokok.azm.tree.analysis.BasicInterpreter;
+import net.nokok.azm.tree.analysis.BasicValue;
+import net.nokok.azm.tree.analysis.Frame;
+import net.nokok.azm.tree.analysis.LiveVariables;
+import net.nokok.azm.tree.analysis.ReachingDefinitions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DataflowAnalysisTest {
+
+    @Test
+    void testSameDefinitionsAsInstructionLevelAnalysis() throws IOException, AnalyzerException {
+        for (Class<?> clazz : new Class<?>[]{ClassReader.class, ClassWriter.class}) {
+            ClassNode classNode = read(clazz);
+            for (MethodNode method : classNode.methods) {
+                BitSet[] expectedDefinitions = computeReachingDefinitions(classNode.name, method);
+                ReachingDefinitions definitions = new ReachingDefinitions();
+                definitions.analyze(method);
+                LiveVariables liveVariables = new LiveVariables();
+                liveVariables.analyze(method);
+                AbstractInsnNode[] insns = method.instructions.toArray();
+                for (int i = 0; i < insns.length; i++) {
+                    if (expectedDefinitions[i] == null || !(insns[i] instanceof VarInsnNode) || insns[i].getOpcode() > Opcodes.ALOAD) {
+                        continue;
+                    }
+                    int var = ((VarInsnNode) insns[i]).getVar();
+                    assertTrue(liveVariables.isLive(i, var));
+                    BitSet expected = new BitSet();
+                    expectedDefinitions[i].stream()
+                            .filter(d -> getVar(insns[d]) == var)
+                            .forEach(expected::set);
+                    BitSet actual = new BitSet();
+                    for (int definition : definitions.getUsedDefinitions(i)) {
+                        assertEquals(var, definitions.getDefinitionVar(definition));
+                        if (definition >= definitions.getParameterDefinitionCount()) {
+                            actual.set(definitions.getDefinitionInsn(definition));
+                        }
+                    }
+                    if (method.tryCatchBlocks.isEmpty()) {
+                        assertEquals(expected, actual, method.name + " " + i);
+                    } else {
+                        // 例外ハンドラには保護範囲の最後の命令の定義も到達するとみなすので、こちらの方が大きくなりうる
+                        expected.andNot(actual);
+                        assertTrue(expected.isEmpty(), method.name + " " + i);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void testLoop() {
+        // static int f(int n) { int a = n; int b = 0; int c = 1; while (b < a) { b++; } return b; }
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "f", "(I)I", null, null);
+        Label loop = new Label();
+        Label end = new Label();
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ILOAD, 0);     // 0
+        method.visitVarInsn(Opcodes.ISTORE, 1);    // 1
+        method.visitInsn(Opcodes.ICONST_0);        // 2
+        method.visitVarInsn(Opcodes.ISTORE, 2);    // 3
+        method.visitInsn(Opcodes.ICONST_1);        // 4
+        method.visitVarInsn(Opcodes.ISTORE, 3);    // 5
+        method.visitLabel(loop);                   // 6
+        method.visitVarInsn(Opcodes.ILOAD, 2);     // 7
+        method.visitVarInsn(Opcodes.ILOAD, 1);     // 8
+        method.visitJumpInsn(Opcodes.IF_ICMPGE, end); // 9
+        method.visitIincInsn(2, 1);                // 10
+        method.visitJumpInsn(Opcodes.GOTO, loop);  // 11
+        method.visitLabel(end);                    // 12
+        method.visitVarInsn(Opcodes.ILOAD, 2);     // 13
+        method.visitInsn(Opcodes.IRETURN);         // 14
+        method.visitMaxs(2, 4);
+        method.visitEnd();
+
+        LiveVariables liveVariables = new LiveVariables();
+        liveVariables.analyze(method);
+        assertArrayEquals(new long[]{1L}, liveVariables.getLiveVariables(0));
+        assertFalse(liveVariables.isLiveAfter(5, 3));
+        assertTrue(liveVariables.isLiveAfter(1, 1));
+        assertTrue(liveVariables.isLive(11, 1));
+        assertTrue(liveVariables.isLive(11, 2));
+        assertEquals(1, liveVariables.getLiveVariableCount(13));
+
+        ReachingDefinitions definitions = new ReachingDefinitions();
+        definitions.analyze(method);
+        assertEquals(5, definitions.getDefinitionCount());
+        int initB = definitions.getDefinition(3);
+        int incB = definitions.getDefinition(10);
+        assertArrayEquals(new int[]{initB, incB}, definitions.getUsedDefinitions(13));
+        assertArrayEquals(new int[]{7, 10, 13}, definitions.getUses(initB));
+        assertArrayEquals(new int[0], definitions.getUses(definitions.getDefinition(5)));
+        assertArrayEquals(new int[]{0}, definitions.getUses(0));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 4}, definitions.getReachingDefinitions(7));
+    }
+
+    // 命令単位の単純な到達定義解析。制御フローはAnalyzerから得る
+    private static BitSet[] computeReachingDefinitions(String owner, MethodNode method) throws AnalyzerException {
+        AbstractInsnNode[] insns = method.instructions.toArray();
+        List<int[]> edges = new ArrayList<>();
+        List<int[]> exceptionEdges = new ArrayList<>();
+        Frame<BasicValue>[] frames = new Analyzer<BasicValue>(new BasicInterpreter()) {
+            @Override
+            protected void newControlFlowEdge(int insnIndex, int successorIndex) {
+                edges.add(new int[]{insnIndex, successorIndex});
+            }
+
+            @Override
+            protected boolean newControlFlowExceptionEdge(int insnIndex, int successorIndex) {
+                exceptionEdges.add(new int[]{insnIndex, successorIndex});
+                return true;
+            }
+        }.analyze(owner, method);
+        BitSet[] in = new BitSet[insns.length];
+        for (int i = 0; i < insns.length; i++) {
+            in[i] = new BitSet();
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int[] edge : edges) {
+                BitSet out = (BitSet) in[edge[0]].clone();
+                int var = getVar(insns[edge[0]]);
+                if (var != -1) {
+                    for (int d = out.nextSetBit(0); d >= 0; d = out.nextSetBit(d + 1)) {
+                        if (getVar(insns[d]) == var) {
+                            out.clear(d);
+                        }
+                    }
+                    out.set(edge[0]);
+                }
+                changed |= union(in[edge[1]], out);
+            }
+            for (int[] edge : exceptionEdges) {
+                changed |= union(in[edge[1]], in[edge[0]]);
+            }
+        }
+        for (int i = 0; i < insns.length; i++) {
+            if (frames[i] == null) {
+                in[i] = null;
+            }
+        }
+        return in;
+    }
+
+    private static boolean union(BitSet target, BitSet bits) {
+        int cardinality = target.cardinality();
+        target.or(bits);
+        return target.cardinality() != cardinality;
+    }
+
+    private static int getVar(AbstractInsnNode insn) {
+        if (insn instanceof IincInsnNode) {
+            return ((IincInsnNode) insn).getVar();
+        }
+        if (insn.getOpcode() >= Opcodes.ISTORE && insn.getOpcode() <= Opcodes.ASTORE) {
+            return ((VarInsnNode) insn).getVar();
+        }
+        return -1;
+    }
+
+    private static ClassNode read(Class<?> clazz) throws IOException {
+        try (InputStream inputStream = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            ClassNode classNode = new ClassNode();
+            new ClassReader(inputStream).accept(classNode, 0);
+            return classNode;
+        }
+    }
+}
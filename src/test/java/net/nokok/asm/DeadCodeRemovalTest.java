@@ -0,0 +1,147 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Label;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.LineNumberNode;
+import net.nokok.azm.tree.MethodNode;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DeadCodeRemovalTest {
+
+    // 到達不能コードを含む static int f(int x) を生成する
+    private static byte[] generate(int flags) {
+        ClassWriter writer = new ClassWriter(flags);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "Dead", null, "java/lang/Object", null);
+        MethodVisitor mv = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "f", "(I)I", null, null);
+        Label start = new Label();
+        Label dead = new Label();
+        Label nonZero = new Label();
+        Label one = new Label();
+        Label two = new Label();
+        Label other = new Label();
+        Label end = new Label();
+        Label handler = new Label();
+        mv.visitCode();
+        mv.visitTryCatchBlock(start, end, handler, "java/lang/RuntimeException");
+        mv.visitLabel(start);
+        mv.visitLineNumber(1, start);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFNE, nonZero);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(dead);
+        mv.visitLineNumber(2, dead);
+        mv.visitInsn(Opcodes.ICONST_5);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitJumpInsn(Opcodes.GOTO, start);
+        mv.visitLabel(nonZero);
+        mv.visitLineNumber(3, nonZero);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitTableSwitchInsn(1, 2, other, one, two);
+        mv.visitLabel(one);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(two);
+        mv.visitInsn(Opcodes.ICONST_2);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(other);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitInsn(Opcodes.ICONST_3);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(end);
+        mv.visitLabel(handler);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLocalVariable("x", "I", null, start, end, 0);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static MethodNode readMethod(byte[] classFile) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classFile).accept(classNode, 0);
+        return classNode.methods.get(0);
+    }
+
+    private static List<Integer> opcodes(MethodNode method) {
+        List<Integer> opcodes = new ArrayList<>();
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() >= 0) {
+                opcodes.add(insn.getOpcode());
+            }
+        }
+        return opcodes;
+    }
+
+    @Test
+    void testUnreachableCodeIsRemoved() throws Exception {
+        byte[] kept = generate(ClassWriter.COMPUTE_FRAMES);
+        byte[] removed = generate(ClassWriter.COMPUTE_FRAMES | ClassWriter.REMOVE_DEAD_CODE);
+        assertTrue(removed.length < kept.length);
+        assertTrue(opcodes(readMethod(kept)).contains(Opcodes.ATHROW));
+
+        MethodNode method = readMethod(removed);
+        assertEquals(Arrays.asList(
+                Opcodes.ILOAD, Opcodes.IFNE, Opcodes.ICONST_0, Opcodes.IRETURN,
+                Opcodes.ILOAD, Opcodes.TABLESWITCH,
+                Opcodes.ICONST_1, Opcodes.IRETURN, Opcodes.ICONST_2, Opcodes.IRETURN,
+                Opcodes.ILOAD, Opcodes.IRETURN,
+                Opcodes.POP, Opcodes.ICONST_M1, Opcodes.IRETURN), opcodes(method));
+        List<Integer> lines = new ArrayList<>();
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn instanceof LineNumberNode) {
+                lines.add(((LineNumberNode) insn).getLine());
+            }
+        }
+        assertEquals(Arrays.asList(1, 3), lines);
+        // 例外ハンドラの範囲は到達不能コードの前後で分割されたまま残る
+        assertEquals(2, method.tryCatchBlocks.size());
+        assertEquals(method.tryCatchBlocks.get(0).getEnd(), method.tryCatchBlocks.get(1).getStart());
+        assertEquals(1, method.localVariables.size());
+        assertEquals(1, method.maxStack);
+
+        Class<?> clazz = new ClassLoader(getClass().getClassLoader()) {
+            Class<?> define() {
+                return defineClass("Dead", removed, 0, removed.length);
+            }
+        }.define();
+        Method f = clazz.getMethod("f", int.class);
+        for (int x : new int[]{0, 1, 2, 7}) {
+            assertEquals(x, f.invoke(null, x));
+        }
+    }
+
+    @Test
+    void testReachableCodeIsUnchanged() throws Exception {
+        byte[] classFile;
+        try (java.io.InputStream in = ClassReader.class.getResourceAsStream("ClassReader.class")) {
+            classFile = in.readAllBytes();
+        }
+        ClassWriter expected = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        new ClassReader(classFile).accept(expected, ClassReader.SKIP_FRAMES);
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.REMOVE_DEAD_CODE);
+        new ClassReader(classFile).accept(writer, ClassReader.SKIP_FRAMES);
+        assertArrayEquals(expected.toByteArray(), writer.toByteArray());
+        assertFalse(opcodes(readMethod(generate(ClassWriter.COMPUTE_FRAMES | ClassWriter.REMOVE_DEAD_CODE)))
+                .contains(Opcodes.NOP));
+    }
+}
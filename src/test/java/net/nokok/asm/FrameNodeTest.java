@@ -0,0 +1,69 @@
+package net.nokok.asm;
+
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.FrameNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class FrameNodeTest {
+
+    @Test
+    void testAcceptVisitsFrameType() {
+        List<FrameNode> frames = List.of(
+                new FrameNode(Opcodes.F_NEW, 1, new Object[]{"java/lang/String"}, 1, new Object[]{Opcodes.INTEGER}),
+                new FrameNode(Opcodes.F_FULL, 1, new Object[]{"java/lang/String"}, 0, new Object[0]),
+                new FrameNode(Opcodes.F_APPEND, 2, new Object[]{Opcodes.INTEGER, Opcodes.LONG}, 0, null),
+                new FrameNode(Opcodes.F_CHOP, 1, null, 0, null),
+                new FrameNode(Opcodes.F_SAME, 0, null, 0, null),
+                new FrameNode(Opcodes.F_SAME1, 0, null, 1, new Object[]{Opcodes.FLOAT}));
+        // getType()はFRAMEを返すので、フレームの種類はvisitFrameで確認する
+        List<String> expected = List.of(
+                "-1 [java/lang/String] [1]",
+                "0 [java/lang/String] []",
+                "1 [1, 4] null",
+                "2 1 null",
+                "3 0 null",
+                "4 0 [2]");
+        List<String> visited = new ArrayList<>();
+        List<String> visitedClones = new ArrayList<>();
+        for (FrameNode frame : frames) {
+            frame.accept(new FrameRecorder(visited));
+            AbstractInsnNode clone = frame.clone(new HashMap<>());
+            clone.accept(new FrameRecorder(visitedClones));
+            assertEquals(frame, clone);
+            assertEquals(frame.hashCode(), clone.hashCode());
+        }
+        assertEquals(expected, visited);
+        assertEquals(expected, visitedClones);
+    }
+
+    @Test
+    void testFramesOfDifferentTypesAreNotEqual() {
+        FrameNode full = new FrameNode(Opcodes.F_FULL, 1, new Object[]{Opcodes.INTEGER}, 0, new Object[0]);
+        FrameNode expanded = new FrameNode(Opcodes.F_NEW, 1, new Object[]{Opcodes.INTEGER}, 0, new Object[0]);
+        assertNotEquals(full, expanded);
+        assertNotEquals(new FrameNode(Opcodes.F_SAME, 0, null, 0, null), new FrameNode(Opcodes.F_CHOP, 0, null, 0, null));
+    }
+
+    private static final class FrameRecorder extends MethodVisitor {
+        private final List<String> frames;
+
+        FrameRecorder(List<String> frames) {
+            super(Opcodes.ASM6);
+            this.frames = frames;
+        }
+
+        @Override
+        public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+            this.frames.add(type + " " + (local == null ? String.valueOf(nLocal) : List.of(local).toString()) + " " + (stack == null ? "null" : List.of(stack).toString()));
+        }
+    }
+}
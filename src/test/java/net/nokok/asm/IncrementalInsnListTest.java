@@ -0,0 +1,167 @@
+package net.nokok.asm;
+
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.InsnList;
+import net.nokok.azm.tree.InsnNode;
+import net.nokok.azm.tree.IntInsnNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalInsnListTest {
+
+    private static int counter;
+
+    // 内容による equals を避けるため、オペランドが全て異なる命令を作る
+    private static AbstractInsnNode newInsn() {
+        return new IntInsnNode(Opcodes.SIPUSH, counter++);
+    }
+
+    private static void assertConsistent(InsnList insns, List<AbstractInsnNode> expected, Random random) {
+        assertEquals(expected.size(), insns.size());
+        for (int i = 0; i < 8 && !expected.isEmpty(); i++) {
+            int a = random.nextInt(expected.size());
+            int b = random.nextInt(expected.size());
+            assertSame(expected.get(a), insns.get(a));
+            assertEquals(b, insns.indexOf(expected.get(b)));
+            assertEquals(Integer.signum(Integer.compare(a, b)),
+                    Integer.signum(insns.compare(expected.get(a), expected.get(b))));
+        }
+    }
+
+    @Test
+    void testRandomEdits() {
+        Random random = new Random(42);
+        InsnList insns = new InsnList();
+        List<AbstractInsnNode> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            AbstractInsnNode insn = newInsn();
+            insns.add(insn);
+            expected.add(insn);
+        }
+        insns.setIncrementalIndexing(true);
+        for (int step = 0; step < 5000; step++) {
+            int position = expected.isEmpty() ? 0 : random.nextInt(expected.size());
+            switch (expected.isEmpty() ? 0 : random.nextInt(7)) {
+                case 0: {
+                    AbstractInsnNode insn = newInsn();
+                    insns.add(insn);
+                    expected.add(insn);
+                    break;
+                }
+                case 1: {
+                    AbstractInsnNode insn = newInsn();
+                    insns.insert(insn);
+                    expected.add(0, insn);
+                    break;
+                }
+                case 2: {
+                    AbstractInsnNode insn = newInsn();
+                    insns.insert(expected.get(position), insn);
+                    expected.add(position + 1, insn);
+                    break;
+                }
+                case 3: {
+                    AbstractInsnNode insn = newInsn();
+                    insns.insertBefore(expected.get(position), insn);
+                    expected.add(position, insn);
+                    break;
+                }
+                case 4: {
+                    InsnList list = new InsnList();
+                    List<AbstractInsnNode> added = new ArrayList<>();
+                    for (int i = random.nextInt(4); i >= 0; i--) {
+                        AbstractInsnNode insn = newInsn();
+                        list.add(insn);
+                        added.add(insn);
+                    }
+                    insns.insert(expected.get(position), list);
+                    expected.addAll(position + 1, added);
+                    break;
+                }
+                case 5: {
+                    AbstractInsnNode insn = newInsn();
+                    insns.set(expected.get(position), insn);
+                    expected.set(position, insn);
+                    break;
+                }
+                default:
+                    insns.remove(expected.remove(position));
+                    break;
+            }
+            assertConsistent(insns, expected, random);
+        }
+    }
+
+    @Test
+    void testCollectionMethods() {
+        for (boolean incrementalIndexing : new boolean[]{false, true}) {
+            InsnList insns = new InsnList();
+            insns.setIncrementalIndexing(incrementalIndexing);
+            List<AbstractInsnNode> expected = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                AbstractInsnNode insn = newInsn();
+                insns.add(insn);
+                expected.add(insn);
+            }
+            AbstractInsnNode inserted = newInsn();
+            insns.insertBefore(expected.get(2), inserted);
+            expected.add(2, inserted);
+            insns.get(3);
+            insns.remove(expected.remove(4));
+
+            // getやindexOfで作られるキャッシュの有無によらず、リスト全体を調べる
+            assertTrue(insns.contains(inserted));
+            assertFalse(insns.contains(newInsn()));
+            assertTrue(insns.containsAll(expected));
+            assertFalse(insns.containsAll(List.of(expected.get(0), newInsn())));
+            assertArrayEquals(expected.toArray(), insns.toArray(new AbstractInsnNode[0]));
+            AbstractInsnNode[] larger = new AbstractInsnNode[expected.size() + 2];
+            larger[expected.size()] = newInsn();
+            assertSame(larger, insns.toArray(larger));
+            assertArrayEquals(expected.toArray(), Arrays.copyOf(larger, expected.size()));
+            assertNull(larger[expected.size()]);
+            assertArrayEquals(expected.toArray(), insns.toArray(new Object[expected.size()]));
+        }
+    }
+
+    @Test
+    void testRepeatedInsertionAtSamePosition() {
+        InsnList insns = new InsnList();
+        insns.setIncrementalIndexing(true);
+        AbstractInsnNode first = new InsnNode(Opcodes.NOP);
+        AbstractInsnNode last = new InsnNode(Opcodes.RETURN);
+        insns.add(first);
+        insns.add(last);
+        // 同じ位置への挿入を繰り返し、序数の振り直しが必要になるようにする
+        for (int i = 0; i < 10000; i++) {
+            AbstractInsnNode insn = newInsn();
+            insns.insertBefore(last, insn);
+            assertTrue(insns.compare(first, insn) < 0);
+            assertTrue(insns.compare(insn, last) < 0);
+            assertEquals(i + 1, insns.indexOf(insn));
+        }
+        int index = 0;
+        for (ListIterator<AbstractInsnNode> iterator = insns.iterator(); iterator.hasNext(); index++) {
+            assertEquals(index, iterator.nextIndex());
+            AbstractInsnNode insn = iterator.next();
+            assertSame(insn, insns.get(index));
+            if (insn.getPrevious() != null) {
+                assertTrue(insns.compare(insn.getPrevious(), insn) < 0);
+            }
+        }
+        assertEquals(10002, index);
+    }
+}
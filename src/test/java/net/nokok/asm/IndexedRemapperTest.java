@@ -0,0 +1,70 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.commons.ClassRemapper;
+import net.nokok.azm.commons.IndexedRemapper;
+import net.nokok.azm.commons.Remapper;
+import net.nokok.azm.commons.SimpleRemapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class IndexedRemapperTest {
+
+    private static final Map<String, String> MAPPING = Map.of(
+            "net/nokok/azm/Symbol", "foo/Sym",
+            "net/nokok/azm/ClassVisitor", "foo/Visitor",
+            "net/nokok/azm/ClassReader.readUTF8(I[C)Ljava/lang/String;", "utf8",
+            "net/nokok/azm/ClassReader.b", "bytes",
+            ".visit(Ljava/lang/Object;)V", "dynamic");
+
+    @Test
+    void testSameResultAsSimpleRemapper() throws IOException {
+        byte[] classFile = readClass(ClassReader.class);
+        assertArrayEquals(remap(classFile, new SimpleRemapper(MAPPING)), remap(classFile, new IndexedRemapper(MAPPING)));
+    }
+
+    @Test
+    void testMapping() {
+        for (Remapper remapper : new Remapper[]{new SimpleRemapper(MAPPING), new IndexedRemapper(MAPPING)}) {
+            assertEquals("(I[Lfoo/Sym;J)[[Lfoo/Visitor;", remapper.mapMethodDesc("(I[Lnet/nokok/azm/Symbol;J)[[Lnet/nokok/azm/ClassVisitor;"));
+            assertEquals("[Lfoo/Sym;", remapper.mapType("[Lnet/nokok/azm/Symbol;"));
+            assertEquals("foo/Sym", remapper.mapType("net/nokok/azm/Symbol"));
+            assertEquals("utf8", remapper.mapMethodName("net/nokok/azm/ClassReader", "readUTF8", "(I[C)Ljava/lang/String;"));
+            assertEquals("readUTF8", remapper.mapMethodName("net/nokok/azm/ClassReader", "readUTF8", "(I)Ljava/lang/String;"));
+            assertEquals("bytes", remapper.mapFieldName("net/nokok/azm/ClassReader", "b", "[B"));
+            assertEquals("dynamic", remapper.mapInvokeDynamicMethodName("visit", "(Ljava/lang/Object;)V"));
+        }
+    }
+
+    @Test
+    void testUnchangedValuesAreReturnedAsIs() {
+        String methodDesc = "(I[Ljava/lang/String;J)Lnet/nokok/azm/Symbol2;";
+        String desc = "[[Ljava/lang/Object;";
+        String type = "java/lang/Object";
+        for (Remapper remapper : new Remapper[]{new SimpleRemapper(MAPPING), new IndexedRemapper(MAPPING)}) {
+            assertSame(methodDesc, remapper.mapMethodDesc(methodDesc));
+            assertSame(desc, remapper.mapDesc(desc));
+            assertSame(type, remapper.mapType(type));
+        }
+    }
+
+    private static byte[] remap(byte[] classFile, Remapper remapper) {
+        ClassWriter writer = new ClassWriter(0);
+        new ClassReader(classFile).accept(new ClassRemapper(writer, remapper), 0);
+        return writer.toByteArray();
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream input = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.ModuleVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.MethodInsnNode;
+import net.nokok.azm.tree.ModuleExportNode;
+import net.nokok.azm.tree.ModuleNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class JarRelocatorTest {
+
+    private final JarRelocator relocator = JarRelocator.newRelocator()
+            .withRelocation("com.example", "shaded.example")
+            .withRelocation("com/example/lib", "shaded/lib")
+            .withParallelism(2)
+            .withMaxInFlight(2);
+
+    @Test
+    void testRelocate() {
+        assertEquals("shaded/lib/Util", relocator.relocate("com/example/lib/Util"));
+        assertEquals("shaded/example/Other", relocator.relocate("com/example/Other"));
+        assertEquals("com/examples/Other", relocator.relocate("com/examples/Other"));
+    }
+
+    @Test
+    void testClassWithoutReferenceIsCopied() {
+        byte[] classFile = generateClass("other/Plain", "java/lang/Object");
+        assertSame(classFile, relocator.relocateClass(classFile));
+    }
+
+    @Test
+    void testRelocateModuleInfo() {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V9, Opcodes.ACC_MODULE, "module-info", null, null, null);
+        ModuleVisitor module = writer.visitModule("app", 0, null);
+        module.visitRequire("java.base", Opcodes.ACC_MANDATED, null);
+        // パッケージ名は末尾に/がないので、移動元の接頭辞(com/example/)とは一致しない
+        module.visitExport("com/example", 0);
+        module.visitOpen("com/example", 0, "other.module");
+        module.visitExport("other", 0);
+        module.visitPackage("com/example");
+        module.visitPackage("other");
+        module.visitEnd();
+        writer.visitEnd();
+
+        ModuleNode relocated = readClass(relocator.relocateClass(writer.toByteArray())).module;
+        assertEquals(List.of("shaded/example", "other"), relocated.getExports().stream().map(ModuleExportNode::getPackaze).collect(Collectors.toList()));
+        assertEquals("shaded/example", relocated.getOpens().get(0).getPackaze());
+        assertEquals(List.of("shaded/example", "other"), relocated.getPackages());
+    }
+
+    @Test
+    void testRelocateJar(@TempDir Path directory) throws IOException {
+        Path input = directory.resolve("input.jar");
+        Path output = directory.resolve("output.jar");
+        byte[] plain = generateClass("other/Plain", "java/lang/Object");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, "app.Main");
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(input))) {
+            put(jarOutput, "com/example/lib/Util.class", generateClass("com/example/lib/Util", "java/lang/Object"));
+            put(jarOutput, "app/Main.class", generateClass("app/Main", "com/example/lib/Util"));
+            put(jarOutput, "other/Plain.class", plain);
+            put(jarOutput, "com/example/lib/data.properties", new byte[]{1});
+            put(jarOutput, "META-INF/services/com.example.lib.Service", "# comment\ncom.example.lib.Impl # impl\n".getBytes(StandardCharsets.UTF_8));
+            put(jarOutput, "META-INF/SIGNER.SF", new byte[]{2});
+            // マニフェストが先頭にないjar
+            jarOutput.putNextEntry(new JarEntry(JarFile.MANIFEST_NAME));
+            manifest.write(jarOutput);
+            jarOutput.closeEntry();
+        }
+        relocator.relocateJar(input, output);
+
+        try (JarFile jarFile = new JarFile(output.toFile())) {
+            List<String> names = jarFile.stream().map(JarEntry::getName).collect(Collectors.toList());
+            assertEquals(List.of(
+                    "META-INF/MANIFEST.MF",
+                    "shaded/lib/Util.class",
+                    "app/Main.class",
+                    "other/Plain.class",
+                    "shaded/lib/data.properties",
+                    "META-INF/services/shaded.lib.Service"), names);
+            assertEquals("# comment\nshaded.lib.Impl # impl\n", new String(read(jarFile, "META-INF/services/shaded.lib.Service"), StandardCharsets.UTF_8));
+            assertEquals("shaded/lib/Util", readClass(read(jarFile, "shaded/lib/Util.class")).name);
+            ClassNode main = readClass(read(jarFile, "app/Main.class"));
+            assertEquals("shaded/lib/Util", main.superName);
+            assertEquals("shaded/lib/Util", ((MethodInsnNode) main.methods.get(0).instructions.get(1)).getOwner());
+            assertArrayEquals(plain, read(jarFile, "other/Plain.class"));
+        }
+        try (JarInputStream jarInput = new JarInputStream(Files.newInputStream(output))) {
+            assertEquals("app.Main", jarInput.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS));
+        }
+    }
+
+    @Test
+    void testRelocateVersionedEntries(@TempDir Path directory) throws IOException {
+        Path input = directory.resolve("input.jar");
+        Path output = directory.resolve("output.jar");
+        // ClassReaderがサポートしていないバージョン(Java 11)のクラス
+        byte[] plain = withVersion(generateClass("other/Plain", "java/lang/Object"), 55);
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(input))) {
+            put(jarOutput, "other/Plain.class", generateClass("other/Plain", "java/lang/Object"));
+            put(jarOutput, "META-INF/versions/11/other/Plain.class", plain);
+        }
+        relocator.relocateJar(input, output);
+        try (JarFile jarFile = new JarFile(output.toFile())) {
+            assertArrayEquals(plain, read(jarFile, "META-INF/versions/11/other/Plain.class"));
+        }
+
+        // 移動が必要なクラスは変換できないので、エントリ名を含むエラーにする
+        byte[] util = withVersion(generateClass("com/example/lib/Util", "java/lang/Object"), 55);
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(input))) {
+            put(jarOutput, "META-INF/versions/11/com/example/lib/Util.class", util);
+        }
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> relocator.relocateJar(input, output));
+        assertTrue(exception.getMessage().contains("META-INF/versions/11/com/example/lib/Util.class"), exception.getMessage());
+    }
+
+    private static byte[] withVersion(byte[] classFile, int majorVersion) {
+        classFile[7] = (byte) majorVersion;
+        return classFile;
+    }
+
+    private static void put(JarOutputStream jarOutput, String name, byte[] content) throws IOException {
+        jarOutput.putNextEntry(new JarEntry(name));
+        jarOutput.write(content);
+        jarOutput.closeEntry();
+    }
+
+    private static byte[] read(JarFile jarFile, String name) throws IOException {
+        return jarFile.getInputStream(jarFile.getJarEntry(name)).readAllBytes();
+    }
+
+    private static ClassNode readClass(byte[] classFile) {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(classFile).accept(classNode, 0);
+        return classNode;
+    }
+
+    private static byte[] generateClass(String name, String superName) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
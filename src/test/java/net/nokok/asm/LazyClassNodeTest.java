@@ -0,0 +1,115 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.InsnNode;
+import net.nokok.azm.tree.LabelNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.TryCatchBlockNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LazyClassNodeTest {
+
+    @Test
+    void testUntouchedMethodsAreCopied() throws IOException {
+        ClassReader reader = new ClassReader(readClass(ClassReader.class));
+        ClassNode classNode = new ClassNode();
+        classNode.setLazyCode(true);
+        reader.accept(classNode, 0);
+        for (MethodNode method : classNode.methods) {
+            assertEquals(0, method.instructions.size());
+            assertEquals((method.access & Opcodes.ACC_ABSTRACT) == 0, !method.isCodeLoaded());
+        }
+
+        ClassWriter expected = new ClassWriter(reader, 0);
+        reader.accept(expected, 0);
+        ClassWriter actual = new ClassWriter(reader, 0);
+        classNode.accept(actual);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    void testLoadCode() throws IOException {
+        ClassReader reader = new ClassReader(readClass(ClassReader.class));
+        ClassNode eager = new ClassNode();
+        reader.accept(eager, 0);
+        ClassNode lazy = new ClassNode();
+        lazy.setLazyCode(true);
+        reader.accept(lazy, 0);
+        for (int i = 0; i < eager.methods.size(); i++) {
+            MethodNode method = lazy.methods.get(i).loadCode();
+            assertTrue(method.isCodeLoaded());
+            assertEquals(eager.methods.get(i).instructions.size(), method.instructions.size());
+            assertEquals(eager.methods.get(i).tryCatchBlocks.size(), method.tryCatchBlocks.size());
+            assertEquals(eager.methods.get(i).maxStack, method.maxStack);
+        }
+    }
+
+    @Test
+    void testPatchOneMethod() throws IOException {
+        ClassReader reader = new ClassReader(readClass(ClassReader.class));
+        ClassNode classNode = new ClassNode();
+        classNode.setLazyCode(true);
+        reader.accept(classNode, 0);
+        MethodNode method = classNode.methods.stream()
+                .filter(m -> m.name.equals("getClassName"))
+                .findFirst()
+                .get()
+                .loadCode();
+        method.instructions.insert(new InsnNode(Opcodes.NOP));
+
+        ClassWriter writer = new ClassWriter(reader, 0);
+        classNode.accept(writer);
+        ClassNode result = new ClassNode();
+        new ClassReader(writer.toByteArray()).accept(result, 0);
+        for (MethodNode patched : result.methods) {
+            assertTrue(patched.instructions.size() > 0);
+            if (patched.name.equals("getClassName")) {
+                assertEquals(Opcodes.NOP, patched.instructions.getFirst().getOpcode());
+            }
+        }
+    }
+
+    @Test
+    void testEditWithoutLoadCode() throws IOException {
+        ClassReader reader = new ClassReader(readClass(ClassReader.class));
+        ClassNode classNode = new ClassNode();
+        classNode.setLazyCode(true);
+        reader.accept(classNode, 0);
+        MethodNode method = classNode.methods.stream()
+                .filter(m -> m.name.equals("getClassName"))
+                .findFirst()
+                .get();
+        // loadCode()を呼ばずに追加した命令が黙って捨てられないこと
+        method.instructions.add(new InsnNode(Opcodes.NOP));
+        assertThrows(IllegalStateException.class, () -> classNode.accept(new ClassWriter(reader, 0)));
+
+        method.instructions.clear();
+        method.tryCatchBlocks.add(new TryCatchBlockNode(new LabelNode(), new LabelNode(), new LabelNode(), null));
+        assertThrows(IllegalStateException.class, () -> classNode.accept(new ClassWriter(0)));
+
+        method.tryCatchBlocks.clear();
+        ClassWriter expected = new ClassWriter(reader, 0);
+        reader.accept(expected, 0);
+        ClassWriter actual = new ClassWriter(reader, 0);
+        classNode.accept(actual);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream inputStream =
+                     clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
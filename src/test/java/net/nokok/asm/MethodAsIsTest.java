@@ -0,0 +1,129 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.MethodNode;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class MethodAsIsTest {
+
+    @Test
+    void testUntouchedMethodsSkipTheChain() throws IOException {
+        ClassReader reader = new ClassReader(readClass(ClassReader.class));
+        ClassWriter writer = new ClassWriter(reader, 0);
+        AtomicInteger visitedCodes = new AtomicInteger();
+        // visitMethodAsIsを素通しする(変更しないメソッドをそのまま渡す)アダプター
+        ClassVisitor counter = new CodeCounter(writer, visitedCodes) {
+            @Override
+            public MethodVisitor visitMethodAsIs(
+                    int access, String name, String descriptor, String signature, String[] exceptions) {
+                return cv.visitMethodAsIs(access, name, descriptor, signature, exceptions);
+            }
+        };
+        reader.accept(new Patcher(counter), 0);
+        assertEquals(1, visitedCodes.get());
+
+        ClassNode original = new ClassNode();
+        reader.accept(original, 0);
+        ClassNode result = new ClassNode();
+        new ClassReader(writer.toByteArray()).accept(result, 0);
+        assertEquals(original.methods.size(), result.methods.size());
+        for (int i = 0; i < result.methods.size(); i++) {
+            MethodNode expected = original.methods.get(i);
+            MethodNode actual = result.methods.get(i);
+            if (actual.name.equals("getClassName")) {
+                assertEquals(Opcodes.NOP, actual.instructions.getFirst().getOpcode());
+                assertNotEquals(expected.instructions.size(), actual.instructions.size());
+            } else {
+                assertArrayEquals(opcodes(expected), opcodes(actual));
+            }
+        }
+    }
+
+    @Test
+    void testAdaptersOverridingOnlyVisitMethodSeeAllMethods() throws IOException {
+        ClassReader reader = new ClassReader(readClass(ClassReader.class));
+        ClassNode original = new ClassNode();
+        reader.accept(original, 0);
+        long methodsWithCode = original.methods.stream().filter(m -> m.instructions.size() > 0).count();
+
+        // visitMethodAsIsを知らないアダプターは、これまで通り全てのメソッドを訪問する
+        AtomicInteger visitedCodes = new AtomicInteger();
+        ClassWriter writer = new ClassWriter(reader, 0);
+        reader.accept(new Patcher(new CodeCounter(writer, visitedCodes)), 0);
+        assertEquals(methodsWithCode, visitedCodes.get());
+
+        ClassNode result = new ClassNode();
+        new ClassReader(writer.toByteArray()).accept(result, 0);
+        assertEquals(original.methods.size(), result.methods.size());
+    }
+
+    // visitMethodだけをオーバーライドし、コードを訪問したメソッドを数える
+    private static class CodeCounter extends ClassVisitor {
+        private final AtomicInteger visitedCodes;
+
+        CodeCounter(ClassVisitor cv, AtomicInteger visitedCodes) {
+            super(Opcodes.ASM6, cv);
+            this.visitedCodes = visitedCodes;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(
+                int access, String name, String descriptor, String signature, String[] exceptions) {
+            return new MethodVisitor(Opcodes.ASM6, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                @Override
+                public void visitCode() {
+                    visitedCodes.incrementAndGet();
+                    super.visitCode();
+                }
+            };
+        }
+    }
+
+    // getClassNameだけを変換し、他のメソッドはそのまま渡す
+    private static class Patcher extends ClassVisitor {
+        Patcher(ClassVisitor cv) {
+            super(Opcodes.ASM6, cv);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(
+                int access, String name, String descriptor, String signature, String[] exceptions) {
+            if (!name.equals("getClassName")) {
+                return cv.visitMethodAsIs(access, name, descriptor, signature, exceptions);
+            }
+            return new MethodVisitor(Opcodes.ASM6, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                @Override
+                public void visitCode() {
+                    super.visitCode();
+                    super.visitInsn(Opcodes.NOP);
+                }
+            };
+        }
+    }
+
+    private static int[] opcodes(MethodNode method) {
+        return Arrays.stream(method.instructions.toArray()).mapToInt(AbstractInsnNode::getOpcode).toArray();
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream inputStream =
+                     clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
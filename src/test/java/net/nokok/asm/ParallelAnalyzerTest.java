@@ -0,0 +1,100 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.analysis.BasicValue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelAnalyzerTest {
+
+    private final ParallelAnalyzer<BasicValue> verifier = ParallelAnalyzer.newVerifier(null).withParallelism(4);
+
+    @Test
+    void testAnalyzeClassNode() {
+        ClassNode classNode = new ClassNode();
+        new ClassReader(generateClass("foo/Bar", true)).accept(classNode, 0);
+        ClassAnalysis<BasicValue> analysis = verifier.analyze(classNode);
+        assertEquals("foo/Bar", analysis.getClassName());
+        assertEquals(3, analysis.getMethods().size());
+        assertFalse(analysis.isSuccessful());
+        assertEquals(1, analysis.getFailures().size());
+        assertEquals("broken", analysis.getFailures().get(0).getMethod().name);
+        assertNotNull(analysis.getFailures().get(0).getException());
+        assertNotNull(analysis.getMethods().get(0).getFrames());
+    }
+
+    @Test
+    void testVerifyJar(@TempDir Path directory) throws IOException {
+        Path jar = directory.resolve("input.jar");
+        try (JarOutputStream jarOutput = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (int i = 0; i < 20; i++) {
+                jarOutput.putNextEntry(new JarEntry("foo/C" + i + ".class"));
+                jarOutput.write(generateClass("foo/C" + i, i % 5 == 0));
+                jarOutput.closeEntry();
+            }
+            // マルチリリースjarの別バージョンのクラスは解析しない
+            byte[] versioned = generateClass("foo/C0", false);
+            versioned[7] = 55;
+            jarOutput.putNextEntry(new JarEntry("META-INF/versions/11/foo/C0.class"));
+            jarOutput.write(versioned);
+            jarOutput.closeEntry();
+        }
+        List<ClassAnalysis<BasicValue>> failures = verifier.verifyJar(jar);
+        assertEquals(4, failures.size());
+        assertEquals("foo/C0", failures.get(0).getClassName());
+        assertNull(failures.get(0).getMethods().get(0).getFrames());
+
+        List<String> names = new ArrayList<>();
+        verifier.analyzeJar(jar, analysis -> {
+            names.add(analysis.getClassName());
+            assertTrue(analysis.getMethods().get(0).isSuccessful());
+        });
+        assertEquals(20, names.size());
+    }
+
+    private static byte[] generateClass(String name, boolean broken) {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        MethodVisitor constructor = writer.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(Opcodes.ALOAD, 0);
+        constructor.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(Opcodes.RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_STATIC, "answer", "()I", null, null);
+        method.visitCode();
+        method.visitIntInsn(Opcodes.BIPUSH, 42);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        if (broken) {
+            MethodVisitor brokenMethod = writer.visitMethod(Opcodes.ACC_STATIC, "broken", "()I", null, null);
+            brokenMethod.visitCode();
+            brokenMethod.visitInsn(Opcodes.FCONST_0);
+            brokenMethod.visitInsn(Opcodes.IRETURN);
+            brokenMethod.visitMaxs(0, 0);
+            brokenMethod.visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}
@@ -0,0 +1,144 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Label;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.commons.GeneratorAdapter;
+import net.nokok.azm.commons.PeepholeOptimizer;
+import net.nokok.azm.tree.AbstractInsnNode;
+import net.nokok.azm.tree.ClassNode;
+import net.nokok.azm.tree.JumpInsnNode;
+import net.nokok.azm.tree.MethodNode;
+import net.nokok.azm.tree.analysis.Analyzer;
+import net.nokok.azm.tree.analysis.AnalyzerException;
+import net.nokok.azm.tree.analysis.BasicValue;
+import net.nokok.azm.tree.analysis.BasicVerifier;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PeepholeOptimizerTest {
+
+    private static List<Integer> opcodes(MethodNode method) {
+        List<Integer> opcodes = new ArrayList<>();
+        for (AbstractInsnNode insn = method.instructions.getFirst(); insn != null; insn = insn.getNext()) {
+            if (insn.getOpcode() >= 0) {
+                opcodes.add(insn.getOpcode());
+            }
+        }
+        return opcodes;
+    }
+
+    // static int f(int x) を冗長な命令列で生成する
+    private static MethodNode newNaiveMethod() {
+        MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "f", "(I)I", null, null);
+        Label next = new Label();
+        method.visitCode();
+        method.visitInsn(Opcodes.ICONST_2);
+        method.visitInsn(Opcodes.ICONST_3);
+        method.visitInsn(Opcodes.IMUL);
+        method.visitInsn(Opcodes.INEG);
+        method.visitVarInsn(Opcodes.ISTORE, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 1);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitVarInsn(Opcodes.ISTORE, 0);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitInsn(Opcodes.IADD);
+        method.visitInsn(Opcodes.ICONST_5);
+        method.visitVarInsn(Opcodes.ISTORE, 3);
+        method.visitIincInsn(3, 1);
+        method.visitVarInsn(Opcodes.ISTORE, 2);
+        method.visitVarInsn(Opcodes.ILOAD, 2);
+        method.visitInsn(Opcodes.DUP);
+        method.visitInsn(Opcodes.POP);
+        method.visitJumpInsn(Opcodes.GOTO, next);
+        method.visitLabel(next);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        return method;
+    }
+
+    @Test
+    void testRewrites() throws Exception {
+        MethodNode method = newNaiveMethod();
+        assertTrue(PeepholeOptimizer.optimize(method));
+        assertEquals(Arrays.asList(Opcodes.BIPUSH, Opcodes.ILOAD, Opcodes.IADD, Opcodes.IRETURN), opcodes(method));
+        assertFalse(PeepholeOptimizer.optimize(method));
+
+        // 最適化したコードを実行して結果を確かめる
+        ClassNode classNode = new ClassNode();
+        classNode.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "Naive", null, "java/lang/Object", null);
+        PeepholeOptimizer optimizer = new PeepholeOptimizer(
+                classNode.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "f", "(I)I", null, null),
+                Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "f", "(I)I", null, null);
+        newNaiveMethod().accept(optimizer);
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        classNode.accept(writer);
+        byte[] classFile = writer.toByteArray();
+        Class<?> clazz = new ClassLoader(getClass().getClassLoader()) {
+            Class<?> define() {
+                return defineClass("Naive", classFile, 0, classFile.length);
+            }
+        }.define();
+        assertEquals(4, clazz.getMethod("f", int.class).invoke(null, 10));
+    }
+
+    @Test
+    void testJumpThreading() {
+        MethodNode method = new MethodNode(Opcodes.ACC_STATIC, "g", "(I)I", null, null);
+        Label first = new Label();
+        Label last = new Label();
+        method.visitCode();
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitJumpInsn(Opcodes.IFEQ, first);
+        method.visitInsn(Opcodes.ICONST_1);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitLabel(first);
+        method.visitJumpInsn(Opcodes.GOTO, last);
+        method.visitLabel(last);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(1, 1);
+        method.visitEnd();
+
+        assertTrue(PeepholeOptimizer.optimize(method));
+        JumpInsnNode jump = (JumpInsnNode) method.instructions.get(1);
+        assertSame(last.info, jump.getLabel());
+        assertEquals(Arrays.asList(Opcodes.ILOAD, Opcodes.IFEQ, Opcodes.ICONST_1, Opcodes.IRETURN,
+                Opcodes.ICONST_0, Opcodes.IRETURN), opcodes(method));
+    }
+
+    @Test
+    void testOptimizedCodeVerifies() throws IOException, AnalyzerException {
+        for (Class<?> clazz : new Class<?>[]{ClassReader.class, GeneratorAdapter.class, PeepholeOptimizer.class}) {
+            byte[] classFile;
+            try (InputStream in = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+                classFile = in.readAllBytes();
+            }
+            for (int flags : new int[]{0, ClassReader.SKIP_FRAMES}) {
+                ClassNode classNode = new ClassNode();
+                new ClassReader(classFile).accept(classNode, flags);
+                for (MethodNode method : classNode.methods) {
+                    int size = method.instructions.size();
+                    PeepholeOptimizer.optimize(method);
+                    assertTrue(method.instructions.size() <= size);
+                    new Analyzer<BasicValue>(new BasicVerifier()).analyze(classNode.name, method);
+                }
+                ClassWriter writer = new ClassWriter(flags == 0 ? 0 : ClassWriter.COMPUTE_FRAMES);
+                classNode.accept(writer);
+                new ClassReader(writer.toByteArray()).accept(new ClassNode(), 0);
+            }
+        }
+    }
+}
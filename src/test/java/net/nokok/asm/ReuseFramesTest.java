@@ -0,0 +1,167 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassVisitor;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Label;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Type;
+import net.nokok.azm.commons.AdviceAdapter;
+import net.nokok.azm.util.TraceClassVisitor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReuseFramesTest {
+
+    @Test
+    void testUnchangedFramesAreReused() throws IOException {
+        byte[] classFile = readClass(ClassReader.class);
+        // フレームを全て再利用できるので、フレームをそのまま書き出した場合と同じになる
+        assertEquals(
+                toText(write(classFile, ClassWriter.COMPUTE_MAXS, writer -> writer)),
+                toText(write(classFile, ClassWriter.COMPUTE_FRAMES | ClassWriter.REUSE_FRAMES, writer -> writer)));
+    }
+
+    @Test
+    void testInsertedBlocksAreComputed() throws Exception {
+        byte[] transformed = write(readClass(Type.class), ClassWriter.COMPUTE_FRAMES | ClassWriter.REUSE_FRAMES, BranchingAdvice::new);
+        // 検証器を通れば、計算したフレームと再利用したフレームが正しい
+        Class<?> type = new SingleClassLoader(Type.class.getName(), transformed).loadClass(Type.class.getName());
+        Object methodType = type.getMethod("getMethodType", String.class).invoke(null, "(IJLjava/lang/String;)V");
+        assertEquals(3, ((Object[]) type.getMethod("getArgumentTypes").invoke(methodType)).length);
+    }
+
+    @Test
+    void testInconsistentFramesAreRecomputed() throws IOException {
+        byte[] classFile = readClass(Type.class);
+        // スタックの大きさが合わないフレームがあれば、全てのフレームを計算し直す
+        assertEquals(
+                toText(write(classFile, ClassWriter.COMPUTE_FRAMES, writer -> writer)),
+                toText(write(classFile, ClassWriter.COMPUTE_FRAMES | ClassWriter.REUSE_FRAMES, CorruptFrames::new)));
+    }
+
+    private static byte[] write(byte[] classFile, int flags, Function<ClassVisitor, ClassVisitor> adapter) {
+        ClassWriter writer = new ClassWriter(flags);
+        new ClassReader(classFile).accept(adapter.apply(writer), ClassReader.EXPAND_FRAMES);
+        return writer.toByteArray();
+    }
+
+    private static String toText(byte[] classFile) {
+        StringWriter output = new StringWriter();
+        new ClassReader(classFile).accept(new TraceClassVisitor(new PrintWriter(output)), 0);
+        return output.toString();
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream input = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return input.readAllBytes();
+        }
+    }
+
+    // メソッドの入口と出口に分岐を挿入する
+    private static class BranchingAdvice extends ClassVisitor {
+        BranchingAdvice(ClassVisitor cv) {
+            super(Opcodes.ASM6, cv);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+            return new AdviceAdapter(Opcodes.ASM6, mv, access, name, descriptor) {
+                @Override
+                protected void onMethodEnter() {
+                    insertBranch();
+                }
+
+                @Override
+                protected void onMethodExit(int opcode) {
+                    insertBranch();
+                }
+
+                private void insertBranch() {
+                    Label label = new Label();
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/System", "nanoTime", "()J", false);
+                    mv.visitInsn(Opcodes.LCONST_0);
+                    mv.visitInsn(Opcodes.LCMP);
+                    mv.visitJumpInsn(Opcodes.IFNE, label);
+                    mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Thread", "yield", "()V", false);
+                    mv.visitLabel(label);
+                }
+            };
+        }
+    }
+
+    // 空でないスタックのフレームに要素を一つ追加する
+    private static class CorruptFrames extends ClassVisitor {
+        CorruptFrames(ClassVisitor cv) {
+            super(Opcodes.ASM6, cv);
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            return new MethodVisitor(Opcodes.ASM6, super.visitMethod(access, name, descriptor, signature, exceptions)) {
+                @Override
+                public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+                    Object[] newStack = new Object[nStack + 1];
+                    System.arraycopy(stack, 0, newStack, 0, nStack);
+                    newStack[nStack] = Opcodes.INTEGER;
+                    super.visitFrame(type, nLocal, local, nStack + 1, newStack);
+                }
+            };
+        }
+    }
+
+    private static class SingleClassLoader extends ClassLoader {
+        // Typeがパッケージプライベートのメンバーを使う補助クラス
+        private static final String TYPE_CACHE = "net.nokok.azm.TypeCache";
+
+        private final String name;
+        private final byte[] classFile;
+
+        SingleClassLoader(String name, byte[] classFile) {
+            super(SingleClassLoader.class.getClassLoader());
+            this.name = name;
+            this.classFile = classFile;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            // Type$1 などの入れ子クラスとTypeCacheも同じ実行時パッケージに置くため、このローダーで定義する
+            // TypePathやTypeReferenceなど、名前がTypeで始まるだけのクラスは親ローダーから読む
+            if (isClassOrNestedClass(name, this.name) || isClassOrNestedClass(name, TYPE_CACHE)) {
+                synchronized (getClassLoadingLock(name)) {
+                    Class<?> loaded = findLoadedClass(name);
+                    if (loaded != null) {
+                        return loaded;
+                    }
+                    byte[] bytes = name.equals(this.name) ? this.classFile : readHelperClass(name);
+                    return defineClass(name, bytes, 0, bytes.length);
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+
+        private static boolean isClassOrNestedClass(String name, String className) {
+            return name.equals(className) || name.startsWith(className + "$");
+        }
+
+        private byte[] readHelperClass(String name) throws ClassNotFoundException {
+            try (InputStream input = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if (input == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return input.readAllBytes();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
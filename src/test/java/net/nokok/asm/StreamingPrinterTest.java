@@ -0,0 +1,112 @@
+package net.nokok.asm;
+
+import net.nokok.azm.AnnotationVisitor;
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.FieldVisitor;
+import net.nokok.azm.MethodVisitor;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.util.ASMifier;
+import net.nokok.azm.util.Printer;
+import net.nokok.azm.util.Textifier;
+import net.nokok.azm.util.TraceClassVisitor;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingPrinterTest {
+
+    @Test
+    void testStreamingTextifier() throws IOException {
+        assertStreamingOutput(readClass(ClassReader.class), Textifier::new);
+        assertStreamingOutput(generateAnnotatedClass(), Textifier::new);
+    }
+
+    @Test
+    void testStreamingASMifier() throws IOException {
+        assertStreamingOutput(readClass(ClassReader.class), ASMifier::new);
+        assertStreamingOutput(generateAnnotatedClass(), ASMifier::new);
+    }
+
+    @Test
+    void testTextIsWrittenAfterEmptyAnnotation() {
+        for (Supplier<Printer> printerFactory : List.<Supplier<Printer>>of(Textifier::new, ASMifier::new)) {
+            StringWriter output = new StringWriter();
+            Printer printer = printerFactory.get();
+            printer.setOutput(output);
+            TraceClassVisitor classVisitor = new TraceClassVisitor(null, printer, new PrintWriter(output));
+            classVisitor.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "foo/Bar", null, "java/lang/Object", null);
+            MethodVisitor method = classVisitor.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "()V", null, null);
+            // 値のないアノテーションの後の命令も、メソッドの終わりを待たずに出力される
+            method.visitAnnotation("Lfoo/Test;", true).visitEnd();
+            method.visitCode();
+            for (int i = 0; i < 3; i++) {
+                int length = output.getBuffer().length();
+                method.visitInsn(Opcodes.NOP);
+                assertTrue(output.getBuffer().length() > length);
+            }
+            method.visitInsn(Opcodes.RETURN);
+            method.visitMaxs(0, 0);
+            method.visitEnd();
+            classVisitor.visitEnd();
+        }
+    }
+
+    // 文字列の木を作ってから出力した場合と同じ出力になる
+    private static void assertStreamingOutput(byte[] classFile, Supplier<Printer> printerFactory) {
+        StringWriter expected = new StringWriter();
+        new ClassReader(classFile).accept(new TraceClassVisitor(null, printerFactory.get(), new PrintWriter(expected)), 0);
+
+        StringWriter actual = new StringWriter();
+        Printer printer = printerFactory.get();
+        printer.setOutput(actual);
+        new ClassReader(classFile).accept(new TraceClassVisitor(null, printer, new PrintWriter(actual)), 0);
+        assertEquals(expected.toString(), actual.toString());
+        assertTrue(printer.getText().isEmpty());
+    }
+
+    private static byte[] generateAnnotatedClass() {
+        ClassWriter writer = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "foo/Bar", null, "java/lang/Object", null);
+        AnnotationVisitor annotation = writer.visitAnnotation("Lfoo/A;", true);
+        annotation.visit("value", 1);
+        AnnotationVisitor array = annotation.visitArray("names");
+        array.visit(null, "x");
+        array.visitAnnotation(null, "Lfoo/B;").visitEnd();
+        array.visitEnd();
+        annotation.visitEnd();
+        writer.visitAnnotation("Lfoo/Empty;", false).visitEnd();
+        FieldVisitor field = writer.visitField(Opcodes.ACC_PUBLIC, "f", "I", null, null);
+        field.visitAnnotation("Lfoo/A;", true).visitEnd();
+        field.visitEnd();
+        MethodVisitor abstractMethod = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "m", "(I)V", null, null);
+        abstractMethod.visitParameterAnnotation(0, "Lfoo/A;", true).visitEnd();
+        abstractMethod.visitEnd();
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC, "n", "()I", null, null);
+        AnnotationVisitor defaultValue = method.visitAnnotationDefault();
+        defaultValue.visit(null, 2);
+        defaultValue.visitEnd();
+        method.visitCode();
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitMaxs(0, 0);
+        method.visitEnd();
+        writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "last", "()V", null, null).visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static byte[] readClass(Class<?> clazz) throws IOException {
+        try (InputStream input = clazz.getResourceAsStream(clazz.getSimpleName() + ".class")) {
+            return input.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package net.nokok.asm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransformCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testEntriesArePersisted() throws IOException {
+        Path file = this.directory.resolve("classes.cache");
+        AtomicInteger transformations = new AtomicInteger();
+        Function<byte[], byte[]> transformer = input -> {
+            transformations.incrementAndGet();
+            return input[0] == 0 ? null : new byte[]{input[0], input[0]};
+        };
+
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            assertArrayEquals(new byte[]{1, 1}, cache.computeIfAbsent(new byte[]{1}, transformer));
+            assertArrayEquals(new byte[]{1, 1}, cache.computeIfAbsent(new byte[]{1}, transformer));
+            assertNull(cache.computeIfAbsent(new byte[]{0}, transformer));
+            assertEquals(2, transformations.get());
+            assertEquals(1, cache.getHitCount());
+        }
+
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(new byte[]{1, 1}, cache.computeIfAbsent(new byte[]{1}, transformer));
+            assertNull(cache.computeIfAbsent(new byte[]{0}, transformer));
+            assertArrayEquals(new byte[]{2, 2}, cache.computeIfAbsent(new byte[]{2}, transformer));
+            assertEquals(3, transformations.get());
+        }
+
+        // フィンガープリントが変わった場合は再変換する
+        try (TransformCache cache = TransformCache.open(file, "v2")) {
+            assertArrayEquals(new byte[]{1, 1}, cache.computeIfAbsent(new byte[]{1}, transformer));
+            assertEquals(4, transformations.get());
+            assertEquals(0, cache.getHitCount());
+        }
+    }
+
+    @Test
+    void testTruncatedRecordIsIgnored() throws IOException {
+        Path file = this.directory.resolve("classes.cache");
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            cache.computeIfAbsent(new byte[]{1}, input -> new byte[100]);
+            cache.computeIfAbsent(new byte[]{2}, input -> new byte[100]);
+        }
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 10));
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            assertEquals(1, cache.size());
+            cache.computeIfAbsent(new byte[]{3}, input -> new byte[100]);
+        }
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            assertEquals(2, cache.size());
+        }
+    }
+
+    @Test
+    void testAppendedRecordsAreLoadedUnderLock() throws IOException {
+        Path file = this.directory.resolve("classes.cache");
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            cache.computeIfAbsent(new byte[]{1}, input -> new byte[100]);
+            cache.computeIfAbsent(new byte[]{2}, input -> new byte[100]);
+        }
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 10));
+        AtomicInteger transformations = new AtomicInteger();
+        Function<byte[], byte[]> transformer = input -> {
+            transformations.incrementAndGet();
+            return new byte[100];
+        };
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            assertEquals(1, cache.size());
+            // 開いた後に他のJVMが壊れたレコードを切り詰めて追記した場合、その追記は切り詰めない
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                channel.write(ByteBuffer.wrap(content), 0);
+            }
+            cache.computeIfAbsent(new byte[]{3}, transformer);
+            assertEquals(3, cache.size());
+            cache.computeIfAbsent(new byte[]{2}, transformer);
+            assertEquals(1, transformations.get());
+        }
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            assertEquals(3, cache.size());
+        }
+    }
+
+    @Test
+    void testInstancesInSameJvmShareFile() throws IOException {
+        Path file = this.directory.resolve("classes.cache");
+        AtomicInteger transformations = new AtomicInteger();
+        Function<byte[], byte[]> transformer = input -> {
+            transformations.incrementAndGet();
+            return new byte[]{input[0], input[0]};
+        };
+        try (TransformCache second = TransformCache.open(this.directory.resolve(".").resolve("classes.cache"), "v1")) {
+            try (TransformCache first = TransformCache.open(file, "v1")) {
+                first.computeIfAbsent(new byte[]{1}, transformer);
+                second.computeIfAbsent(new byte[]{2}, transformer);
+                assertArrayEquals(new byte[]{2, 2}, first.computeIfAbsent(new byte[]{2}, transformer));
+                assertArrayEquals(new byte[]{1, 1}, second.computeIfAbsent(new byte[]{1}, transformer));
+                assertEquals(2, transformations.get());
+            }
+            // 他のインスタンスが閉じられても使える
+            second.computeIfAbsent(new byte[]{3}, transformer);
+            assertEquals(3, second.size());
+        }
+        try (TransformCache cache = TransformCache.open(file, "v1")) {
+            assertEquals(3, cache.size());
+        }
+    }
+
+    @Test
+    void testFileIsRotatedAtMaxSize() throws IOException {
+        Path file = this.directory.resolve("classes.cache");
+        // レコードは144バイト
+        long maxSize = 1000;
+        AtomicInteger transformations = new AtomicInteger();
+        Function<byte[], byte[]> transformer = input -> {
+            transformations.incrementAndGet();
+            return new byte[100];
+        };
+        try (TransformCache cache = TransformCache.open(file, "v1", maxSize)) {
+            for (int i = 0; i < 20; i++) {
+                cache.computeIfAbsent(new byte[]{(byte) i}, transformer);
+                assertTrue(Files.size(file) <= maxSize);
+            }
+            assertEquals(20 % 6, cache.size());
+            cache.computeIfAbsent(new byte[]{19}, transformer);
+            assertEquals(20, transformations.get());
+            // 空のファイルにも入らない変換結果は保存しない
+            cache.computeIfAbsent(new byte[]{20}, input -> new byte[1000]);
+            assertEquals(20 % 6, cache.size());
+        }
+        try (TransformCache cache = TransformCache.open(file, "v1", maxSize)) {
+            assertEquals(20 % 6, cache.size());
+        }
+        assertThrows(IllegalArgumentException.class, () -> TransformCache.open(file, "v1", 1L << 31));
+    }
+}
@@ -0,0 +1,99 @@
+package net.nokok.asm;
+
+import net.nokok.azm.Type;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TypeCacheTest {
+
+    @Test
+    void testTypesAreShared() {
+        assertSame(Type.getType("Ljava/lang/String;"), Type.getType("Ljava/lang/String;"));
+        assertSame(Type.getObjectType("java/lang/String"), Type.getObjectType("java/lang/String"));
+        assertSame(Type.getMethodType("(IJ)V"), Type.getType("(IJ)V"));
+        assertSame(Type.getType(String.class), Type.getType(String.class));
+        assertSame(Type.getDescriptor(int[][].class), Type.getDescriptor(int[][].class));
+        assertEquals("[[I", Type.getDescriptor(int[][].class));
+        assertSame(Type.INT_TYPE, Type.getType(int.class));
+
+        // 記述子と内部名は区別される
+        assertEquals(Type.INT_TYPE, Type.getType("I"));
+        assertEquals(Type.OBJECT, Type.getObjectType("I").getSort());
+        assertEquals("LI;", Type.getObjectType("I").getDescriptor());
+        assertEquals(Type.getType("Ljava/lang/String;"), Type.getObjectType("java/lang/String"));
+    }
+
+    @Test
+    void testPrimitiveTypesAreNotModified() {
+        // 基本型は共有される定数なので、先頭が基本型の長い文字列の記述子を設定してはいけない
+        assertSame(Type.INT_TYPE, Type.getType("Ix"));
+        assertEquals("I", Type.INT_TYPE.getDescriptor());
+        assertEquals("I", Type.getType("Ix").getDescriptor());
+        assertEquals("I", Type.getType("I").getDescriptor());
+        assertEquals("J", Type.getType("JJ").getDescriptor());
+        assertEquals("J", Type.LONG_TYPE.getDescriptor());
+    }
+
+    @Test
+    void testMethodTypes() {
+        Type methodType = Type.getMethodType("(I[JLjava/lang/String;D)Ljava/lang/Object;");
+        Type[] argumentTypes = methodType.getArgumentTypes();
+        assertArrayEquals(new Type[]{
+                Type.INT_TYPE, Type.getType("[J"), Type.getType(String.class), Type.DOUBLE_TYPE
+        }, argumentTypes);
+        assertEquals(Type.getType(Object.class), methodType.getReturnType());
+        assertEquals((1 + 1 + 1 + 1 + 2) << 2 | 1, methodType.getArgumentsAndReturnSizes());
+
+        // 返された配列を変更しても型には影響しない
+        argumentTypes[0] = Type.VOID_TYPE;
+        assertEquals(Type.INT_TYPE, methodType.getArgumentTypes()[0]);
+        assertNotEquals(argumentTypes, methodType.getArgumentTypes());
+        assertArrayEquals(
+                methodType.getArgumentTypes(),
+                Type.getArgumentTypes("(I[JLjava/lang/String;D)Ljava/lang/Object;"));
+        assertEquals(0, Type.getMethodType("()V").getArgumentTypes().length);
+        assertEquals(Type.VOID_TYPE, Type.getReturnType("()V"));
+
+        // 他の型の一部として生成されたメソッド型以外の型
+        Type composed = Type.getMethodType(Type.LONG_TYPE, Type.getObjectType("a/B"), Type.BOOLEAN_TYPE);
+        assertEquals("(La/B;Z)J", composed.getDescriptor());
+        assertArrayEquals(new Type[]{Type.getObjectType("a/B"), Type.BOOLEAN_TYPE}, composed.getArgumentTypes());
+        assertEquals(Type.LONG_TYPE, composed.getReturnType());
+    }
+
+    @Test
+    void testConcurrentLookups() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    // キャッシュの容量を超える数の型を生成して、置き換えが起きても正しい型が返ることを確認する
+                    for (int i = 0; i < 20000; i++) {
+                        String internalName = "p/C" + (i % 5000);
+                        Type type = Type.getObjectType(internalName);
+                        assertEquals(internalName, type.getInternalName());
+                        Type methodType = Type.getMethodType("(L" + internalName + ";I)V");
+                        assertEquals(type, methodType.getArgumentTypes()[0]);
+                        assertEquals(Type.VOID_TYPE, methodType.getReturnType());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package net.nokok.asm;
+
+import net.nokok.azm.ClassReader;
+import net.nokok.azm.ClassWriter;
+import net.nokok.azm.Opcodes;
+import net.nokok.azm.Utf8Cache;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class Utf8CacheTest {
+
+    private static final byte[] CLASS_FILE = generateClass("foo/Bar", "java/lang/Object", "()V", "あいう");
+
+    @Test
+    void testCapacity() {
+        assertEquals(1, new Utf8Cache(1).getCapacity());
+        assertEquals(128, new Utf8Cache(100).getCapacity());
+    }
+
+    @Test
+    void testCollisions() {
+        // 容量が1なので全ての文字列が同じスロットを使い、互いに置き換える
+        Utf8Cache utf8Cache = new Utf8Cache(1);
+        Map<Integer, String> expected = readStrings(CLASS_FILE, null);
+        assertEquals(expected, readStrings(CLASS_FILE, utf8Cache));
+        assertEquals(expected, readStrings(CLASS_FILE, utf8Cache));
+        assertEquals(readStrings(generateClass("foo/Baz", "foo/Bar"), null), readStrings(generateClass("foo/Baz", "foo/Bar"), utf8Cache));
+        assertEquals(0, utf8Cache.getHitCount());
+
+        // 直前に読んだ文字列はスロットに残っている
+        String first = readString(CLASS_FILE, utf8Cache, "java/lang/Object");
+        assertSame(first, readString(CLASS_FILE, utf8Cache, "java/lang/Object"));
+        assertEquals(1, utf8Cache.getHitCount());
+        assertEquals("あいう", readString(CLASS_FILE, utf8Cache, "あいう"));
+        assertNotSame(first, readString(CLASS_FILE, utf8Cache, "java/lang/Object"));
+    }
+
+    @Test
+    void testMaxLength() {
+        Utf8Cache utf8Cache = new Utf8Cache(64, 4);
+        assertEquals(readStrings(CLASS_FILE, null), readStrings(CLASS_FILE, utf8Cache));
+        long misses = utf8Cache.getMissCount();
+        // 4バイトを超える文字列はキャッシュされない
+        assertSame(readString(CLASS_FILE, utf8Cache, "()V"), readString(CLASS_FILE, utf8Cache, "()V"));
+        assertNotSame(readString(CLASS_FILE, utf8Cache, "java/lang/Object"), readString(CLASS_FILE, utf8Cache, "java/lang/Object"));
+        // 3文字だが9バイト
+        assertNotSame(readString(CLASS_FILE, utf8Cache, "あいう"), readString(CLASS_FILE, utf8Cache, "あいう"));
+        assertEquals(2, utf8Cache.getHitCount());
+        assertEquals(misses + 4, utf8Cache.getMissCount());
+    }
+
+    @Test
+    void testClear() {
+        Utf8Cache utf8Cache = new Utf8Cache(64);
+        String first = readString(CLASS_FILE, utf8Cache, "java/lang/Object");
+        assertSame(first, readString(CLASS_FILE, utf8Cache, "java/lang/Object"));
+        assertEquals(0.5, utf8Cache.getHitRate());
+
+        utf8Cache.clear();
+        assertEquals(0, utf8Cache.getHitCount());
+        assertEquals(0, utf8Cache.getMissCount());
+        assertEquals(0.0, utf8Cache.getHitRate());
+        assertNotSame(first, readString(CLASS_FILE, utf8Cache, "java/lang/Object"));
+        assertEquals(1, utf8Cache.getMissCount());
+    }
+
+    // 定数プールの全てのCONSTANT_Utf8を読む。ClassReaderは読んだ文字列を保持するので、毎回新しいClassReaderを使う
+    private static Map<Integer, String> readStrings(byte[] classFile, Utf8Cache utf8Cache) {
+        ClassReader reader = new ClassReader(classFile);
+        reader.setUtf8Cache(utf8Cache);
+        char[] charBuffer = new char[reader.getMaxStringLength()];
+        Map<Integer, String> strings = new HashMap<>();
+        for (int i = reader.getNextItem(0, ClassReader.CONSTANT_UTF8); i != 0; i = reader.getNextItem(i, ClassReader.CONSTANT_UTF8)) {
+            strings.put(i, reader.readItemUtf8(i, charBuffer));
+        }
+        return strings;
+    }
+
+    private static String readString(byte[] classFile, Utf8Cache utf8Cache, String value) {
+        ClassReader reader = new ClassReader(classFile);
+        reader.setUtf8Cache(utf8Cache);
+        ClassReader uncached = new ClassReader(classFile);
+        char[] charBuffer = new char[reader.getMaxStringLength()];
+        for (int i = reader.getNextItem(0, ClassReader.CONSTANT_UTF8); i != 0; i = reader.getNextItem(i, ClassReader.CONSTANT_UTF8)) {
+            if (value.equals(uncached.readItemUtf8(i, charBuffer))) {
+                return reader.readItemUtf8(i, charBuffer);
+            }
+        }
+        throw new AssertionError(value);
+    }
+
+    private static byte[] generateClass(String name, String superName, String... strings) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, name, null, superName, null);
+        for (String string : strings) {
+            writer.newUTF8(string);
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+}